@@ -0,0 +1,400 @@
+package com.example.callcounter;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether an auto-answer actually connected. Each ringing call is a session in a
+ * CallSessionTable; answer strategies (notification action, app launch, accessibility click,
+ * blind taps) start an attempt on their session and schedule their follow-up steps through
+ * schedule(), which tags them with the session as a Handler token. The first connect signal
+ * (OFFHOOK, the in-call notification replacing the ringing one, or a running call timer on the
+ * call screen) confirms the session and removes every pending step at once, so a later tap
+ * can't land on mute or hang up, and never touches another call's steps. An attempt that sees
+ * no signal within the configured confirm timeout counts as a false success and is retried.
+ */
+public class AnswerConfirmationDetector {
+
+    private static final String TAG = "CallCounter";
+
+    public static final String SIGNAL_OFFHOOK = "offhook";
+    public static final String SIGNAL_ONGOING_NOTIFICATION = "ongoing_notification";
+    public static final String SIGNAL_CALL_TIMER = "call_timer";
+
+    // Ringing sessions older than this missed their end signal and are dropped
+    static final long MAX_RING_MS = 120000;
+    // A notification key stays answered this long even if its removal is never seen
+    private static final long RUNG_KEY_TTL_MS = 2 * MAX_RING_MS;
+    // Screen-only calls have no end signal; one still up after this is taken to be over
+    private static final long MAX_SCREEN_CALL_MS = 2 * 60 * 60 * 1000L;
+
+    // Call screens show elapsed time as m:ss or h:mm:ss once connected. A lone reading could be
+    // a chat timestamp, so the timer only counts once it is seen advancing
+    private static final Pattern CALL_TIMER = Pattern.compile("(?:(\\d{1,2}):)?(\\d{1,2}):(\\d{2})");
+
+    private static AnswerConfirmationDetector instance;
+
+    private final Context appContext;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final CallSessionTable sessions = new CallSessionTable();
+    // Ringing notification keys already registered as a call -> when, until the notification
+    // is removed. A repost of a notification whose session was abandoned or dropped as stale
+    // is the same call and must not be counted or answered again
+    private final ConcurrentHashMap<String, Long> rungKeys = new ConcurrentHashMap<>();
+
+    private long confirmedCount;
+    private long totalConfirmMs;
+    private long lastConfirmMs = -1;
+    private long falseSuccesses;
+    private long abandoned;
+
+    public static synchronized AnswerConfirmationDetector getInstance(Context context) {
+        if (instance == null) {
+            instance = new AnswerConfirmationDetector(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AnswerConfirmationDetector(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    /** Registers a ringing call. Returns null if id is already ringing or up (a reposted notification). */
+    CallSessionTable.CallSession onRinging(String id, String channel) {
+        long now = SystemClock.elapsedRealtime();
+        endStale(now);
+        CallSessionTable.CallSession session = sessions.ring(id, channel, now, true);
+        if (session != null) Metrics.CALLS_SEEN.inc(channel);
+        return session;
+    }
+
+    /**
+     * Registers the call behind a ringing notification. Returns null if the notification's key
+     * was already rung and the notification hasn't been removed since, so each key is
+     * answered at most once however often the app reposts it.
+     */
+    CallSessionTable.CallSession onRingingNotification(String key, String channel) {
+        long now = SystemClock.elapsedRealtime();
+        Long rungAt = rungKeys.putIfAbsent(key, now);
+        if (rungAt != null) {
+            if (now - rungAt < RUNG_KEY_TTL_MS) return null;
+            // Its removal was missed (listener unbound); by now this is a new call
+            rungKeys.put(key, now);
+        }
+        return onRinging(key, channel);
+    }
+
+    /** A watched app's notification went away; its key may ring again as a new call. */
+    void onNotificationRemoved(String key) {
+        rungKeys.remove(key);
+    }
+
+    /** The open session registered under id, or null. */
+    CallSessionTable.CallSession getSession(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * The call a call screen on channel most likely belongs to: the newest one not yet
+     * connected. With none open (the notification listener is off, say) one is registered
+     * under the channel so the screen's answer strategies still get a session.
+     */
+    CallSessionTable.CallSession screenSession(String channel) {
+        int unanswered = (1 << CallSessionTable.STATE_RINGING) | (1 << CallSessionTable.STATE_ANSWERING);
+        long now = SystemClock.elapsedRealtime();
+        endStale(now);
+        CallSessionTable.CallSession session = sessions.newest(channel, unanswered);
+        if (session != null) return session;
+        String id = channel + ":screen";
+        session = sessions.ring(id, channel, now, false);
+        if (session == null) {
+            // Lost a race with another registration, or the last screen call is still up
+            return sessions.get(id);
+        }
+        Metrics.CALLS_SEEN.inc(channel);
+        return session;
+    }
+
+    /** True while a call on channel that was only seen on screen is connected. */
+    boolean hasScreenCall(String channel) {
+        for (CallSessionTable.CallSession session : sessions.onChannel(channel)) {
+            if (!session.endSignalled && session.state() == CallSessionTable.STATE_CONNECTED) return true;
+        }
+        return false;
+    }
+
+    /** channel's call screen went away; ends its connected screen-only calls, which have no other end signal. */
+    void onCallScreenGone(String channel) {
+        for (CallSessionTable.CallSession session : sessions.onChannel(channel)) {
+            if (!session.endSignalled && session.state() == CallSessionTable.STATE_CONNECTED) {
+                Log.d(TAG, "Call screen for " + session + " is gone; ending it");
+                onCallEnded(session);
+            }
+        }
+    }
+
+    /** Ends sessions whose ring outlasted any real ring, i.e. whose end signal never came. */
+    void dropStaleSessions() {
+        endStale(SystemClock.elapsedRealtime());
+    }
+
+    private void endStale(long now) {
+        for (CallSessionTable.CallSession session : sessions.staleRinging(now - MAX_RING_MS)) {
+            Log.w(TAG, "Dropping " + session + ": no end signal after " + MAX_RING_MS + " ms");
+            onCallEnded(session);
+        }
+        for (Iterator<Map.Entry<String, Long>> it = rungKeys.entrySet().iterator(); it.hasNext(); ) {
+            if (now - it.next().getValue() >= RUNG_KEY_TTL_MS) it.remove();
+        }
+    }
+
+    /**
+     * Starts (or joins) the answer attempt for session. retry re-runs the most reliable strategy
+     * if the call doesn't connect; it may be null. Returns false if nothing should be clicked:
+     * the call is already connected or over, or the concurrent-ring policy leaves it to the user
+     * because another call holds the answer slot.
+     */
+    synchronized boolean beginAttempt(CallSessionTable.CallSession session, Runnable retry) {
+        int state = session.state();
+        if (state == CallSessionTable.STATE_CONNECTED || state == CallSessionTable.STATE_ENDED) return false;
+        DetectionConfig config = session.config != null ? session.config : DetectionConfigStore.getInstance(appContext).get();
+        if (!sessions.claimAnswer(session, config.ringPolicy)) {
+            if (!session.policySkipped) {
+                session.policySkipped = true;
+                Metrics.CALLS_SKIPPED.inc(session.channel, "ring_policy");
+                Log.d(TAG, "Not answering " + session + ": another call holds the answer slot (" + config.ringPolicy + ")");
+            }
+            return false;
+        }
+        if (retry != null) session.retry = retry;
+        if (session.config == null) {
+            session.config = config;
+            session.answerStartedAt = SystemClock.elapsedRealtime();
+            scheduleTimeout(session);
+        }
+        return true;
+    }
+
+    /**
+     * Runs step after delayMs unless the session is confirmed or ended first. Returns false
+     * (and drops the step) if the session has no open attempt.
+     */
+    boolean schedule(CallSessionTable.CallSession session, Runnable step, long delayMs) {
+        if (session.state() != CallSessionTable.STATE_ANSWERING) return false;
+        handler.postAtTime(() -> {
+            if (session.state() == CallSessionTable.STATE_ANSWERING) step.run();
+        }, session, SystemClock.uptimeMillis() + delayMs);
+        return true;
+    }
+
+    /** Records that an answer strategy ran for session and whether it reported success. */
+    void onStrategy(CallSessionTable.CallSession session, String strategy, boolean ok) {
+        if (session != null) session.strategy = strategy;
+        Metrics.STRATEGY_RUNS.inc(strategy, ok ? "ok" : "failed");
+    }
+
+    /** Ends session after delayMs unless it connects first; for a ringing notification that went away. */
+    void endUnlessConnected(CallSessionTable.CallSession session, long delayMs) {
+        handler.postAtTime(() -> {
+            if (session.state() != CallSessionTable.STATE_CONNECTED) onCallEnded(session);
+        }, session, SystemClock.uptimeMillis() + delayMs);
+    }
+
+    /** True if a call on channel is in one of the states in stateMask (1 << CallSessionTable.STATE_x). */
+    boolean hasSession(String channel, int stateMask) {
+        return sessions.newest(channel, stateMask) != null;
+    }
+
+    /** True while a call on channel has an answer attempt waiting for its connect signal. */
+    public boolean isPending(String channel) {
+        return sessions.newest(channel, 1 << CallSessionTable.STATE_ANSWERING) != null;
+    }
+
+    /** True if a call on channel is connected and no other call there is still ringing. */
+    public boolean isConfirmed(String channel) {
+        int unanswered = (1 << CallSessionTable.STATE_RINGING) | (1 << CallSessionTable.STATE_ANSWERING);
+        return sessions.newest(channel, 1 << CallSessionTable.STATE_CONNECTED) != null
+                && sessions.newest(channel, unanswered) == null;
+    }
+
+    /**
+     * Records a connect signal that only names the channel (OFFHOOK, a call timer): it goes to
+     * the newest call being answered there, else the newest one still ringing, which the user
+     * must have picked up. Returns true if it confirmed an auto-answer.
+     */
+    public boolean confirm(String channel, String signal) {
+        CallSessionTable.CallSession session = sessions.newest(channel, 1 << CallSessionTable.STATE_ANSWERING);
+        if (session == null) session = sessions.newest(channel, 1 << CallSessionTable.STATE_RINGING);
+        return session != null && confirm(session, signal);
+    }
+
+    /** Records a connect signal for session. Returns true if it confirmed a pending attempt. */
+    boolean confirm(CallSessionTable.CallSession session, String signal) {
+        if (session.transition(CallSessionTable.STATE_RINGING, CallSessionTable.STATE_CONNECTED)) {
+            handler.removeCallbacksAndMessages(session);
+            if (!session.endSignalled) endScreenCallLater(session);
+            Metrics.CALLS_ANSWERED.inc(session.channel, "user");
+            Log.d(TAG, "Call " + session + " was answered without us");
+            return false;
+        }
+        if (!session.transition(CallSessionTable.STATE_ANSWERING, CallSessionTable.STATE_CONNECTED)) return false;
+        handler.removeCallbacksAndMessages(session);
+        // Nothing will say when a screen-only call ends, so it can't keep other rings waiting
+        if (!session.endSignalled) {
+            sessions.releaseSlot(session);
+            endScreenCallLater(session);
+        }
+        long elapsed;
+        synchronized (this) {
+            elapsed = SystemClock.elapsedRealtime() - session.answerStartedAt;
+            confirmedCount++;
+            totalConfirmMs += elapsed;
+            lastConfirmMs = elapsed;
+        }
+        String channel = session.channel;
+        String strategy = session.strategy;
+        Metrics.CALLS_ANSWERED.inc(channel, "auto");
+        Metrics.STRATEGY_CONFIRMED.inc(channel, strategy != null ? strategy : "unknown");
+        Metrics.CONFIRM_SECONDS.observe(elapsed / 1000.0, channel);
+        Log.d(TAG, "Answer on " + channel + " confirmed by " + signal + " after " + elapsed + " ms");
+        CallJournal.getInstance(appContext).recordLiveEvent(channel, CallJournal.EVENT_ANSWERED, null);
+        Telemetry.getInstance(appContext).record("answer_confirmed", channel, "signal", signal, "ms", elapsed);
+        // Audio starts only now: a click or PendingIntent that "succeeded" may not have connected
+        CallAudioSession.getInstance(appContext).onCallAnswered(session);
+        return true;
+    }
+
+    // Backstop for a screen-only call whose screen going away was never seen
+    private void endScreenCallLater(CallSessionTable.CallSession session) {
+        handler.postAtTime(() -> {
+            Log.w(TAG, "Ending " + session + ": still up after " + MAX_SCREEN_CALL_MS + " ms with no end signal");
+            onCallEnded(session);
+        }, session, SystemClock.uptimeMillis() + MAX_SCREEN_CALL_MS);
+    }
+
+    /** The call ended or stopped ringing; cancels anything still scheduled for it and stops its audio. */
+    void onCallEnded(CallSessionTable.CallSession session) {
+        if (sessions.end(session)) {
+            handler.removeCallbacksAndMessages(session);
+            CallAudioSession.getInstance(appContext).onCallEnded(session);
+        }
+    }
+
+    /** Every call on channel ended (cellular IDLE); cancels anything still scheduled for them. */
+    public void onCallEnded(String channel) {
+        for (CallSessionTable.CallSession session : sessions.onChannel(channel)) {
+            onCallEnded(session);
+        }
+    }
+
+    public int getOpenSessions() {
+        return sessions.size();
+    }
+
+    public synchronized long getConfirmedCount() {
+        return confirmedCount;
+    }
+
+    public synchronized long getAverageConfirmMs() {
+        return confirmedCount > 0 ? totalConfirmMs / confirmedCount : -1;
+    }
+
+    public synchronized long getLastConfirmMs() {
+        return lastConfirmMs;
+    }
+
+    public synchronized long getFalseSuccesses() {
+        return falseSuccesses;
+    }
+
+    public synchronized long getAbandoned() {
+        return abandoned;
+    }
+
+    /**
+     * Feeds text from the app's accessibility events while an attempt is pending; a call timer
+     * that advances between two events confirms the answer.
+     */
+    public boolean onScreenText(String channel, List<CharSequence> texts) {
+        int seconds = parseCallTimer(texts);
+        if (seconds < 0) return false;
+        CallSessionTable.CallSession session = sessions.newest(channel, 1 << CallSessionTable.STATE_ANSWERING);
+        if (session == null) return false;
+        synchronized (this) {
+            int previous = session.lastTimerSeconds;
+            session.lastTimerSeconds = seconds;
+            if (!timerAdvanced(previous, seconds, session.config.maxTimerStepSeconds)) return false;
+        }
+        return confirm(session, SIGNAL_CALL_TIMER);
+    }
+
+    // A live call timer ticks forward by a little; a first reading, a stuck or reset timer, or a
+    // jump (an unrelated duration on screen) confirms nothing. previous is -1 before any reading
+    static boolean timerAdvanced(int previous, int seconds, int maxStepSeconds) {
+        return previous >= 0 && seconds > previous && seconds - previous <= maxStepSeconds;
+    }
+
+    // Seconds shown by the first text that is exactly a timer ("0:07", "1:02:33"), or -1
+    static int parseCallTimer(List<CharSequence> texts) {
+        if (texts == null) return -1;
+        for (CharSequence text : texts) {
+            if (text == null || text.length() > 16) continue;
+            Matcher matcher = CALL_TIMER.matcher(text.toString().trim());
+            if (!matcher.matches()) continue;
+            int hours = matcher.group(1) != null ? Integer.parseInt(matcher.group(1)) : 0;
+            int minutes = Integer.parseInt(matcher.group(2));
+            int seconds = Integer.parseInt(matcher.group(3));
+            if (minutes > 59 || seconds > 59) continue;
+            return hours * 3600 + minutes * 60 + seconds;
+        }
+        return -1;
+    }
+
+    private void scheduleTimeout(CallSessionTable.CallSession session) {
+        handler.postAtTime(() -> onTimeout(session), session, SystemClock.uptimeMillis() + session.config.confirmTimeoutMs);
+    }
+
+    private void onTimeout(CallSessionTable.CallSession session) {
+        Runnable retry;
+        synchronized (this) {
+            if (session.state() != CallSessionTable.STATE_ANSWERING) return;
+            falseSuccesses++;
+            // Drop whatever the failed cascade still had queued before starting over
+            handler.removeCallbacksAndMessages(session);
+            if (session.retry == null || session.retries >= session.config.maxAnswerRetries) {
+                abandoned++;
+                retry = null;
+            } else {
+                session.retries++;
+                scheduleTimeout(session);
+                retry = session.retry;
+            }
+        }
+        Metrics.ANSWERS_UNCONFIRMED.inc(session.channel, retry == null ? "abandoned" : "retried");
+        Telemetry.getInstance(appContext).record("answer_unconfirmed", session.channel,
+                "retry", session.retries, "abandoned", retry == null);
+        if (retry == null) {
+            // Frees the answer slot for the next call
+            onCallEnded(session);
+            Log.w(TAG, "Answer on " + session.channel + " never connected; giving up");
+            return;
+        }
+        Log.w(TAG, "No connect signal on " + session.channel + " within " + session.config.confirmTimeoutMs
+                + " ms, retry " + session.retries + "/" + session.config.maxAnswerRetries);
+        try {
+            retry.run();
+        } catch (Exception e) {
+            Log.e(TAG, "Answer retry failed: " + e.getMessage());
+        }
+    }
+}
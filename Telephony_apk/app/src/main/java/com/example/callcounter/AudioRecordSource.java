@@ -0,0 +1,61 @@
+package com.example.callcounter;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Process;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PcmSource backed by AudioRecord: mono 16-bit at CallAudioPipeline.SEND_SAMPLE_RATE from the
+ * voice-communication input (echo-cancelled where the device supports it).
+ */
+class AudioRecordSource implements CallAudioPipeline.PcmSource {
+
+    private static final String TAG = "CallAudioPipeline";
+
+    private AudioRecord record;
+
+    @Override
+    public void start() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        int minBuffer = AudioRecord.getMinBufferSize(CallAudioPipeline.SEND_SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        try {
+            record = new AudioRecord(MediaRecorder.AudioSource.VOICE_COMMUNICATION,
+                    CallAudioPipeline.SEND_SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT, Math.max(minBuffer, CallAudioPipeline.CHUNK_BYTES * 4));
+            if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+                Log.e(TAG, "AudioRecord failed to initialize");
+                record.release();
+                record = null;
+                return;
+            }
+            record.startRecording();
+        } catch (SecurityException e) {
+            Log.e(TAG, "RECORD_AUDIO not granted: " + e.getMessage());
+            record = null;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst, int bytes) {
+        if (record == null) return -1;
+        return record.read(dst, bytes);
+    }
+
+    @Override
+    public void stop() {
+        if (record != null) {
+            try {
+                record.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "AudioRecord stop failed: " + e.getMessage());
+            }
+            record.release();
+            record = null;
+        }
+    }
+}
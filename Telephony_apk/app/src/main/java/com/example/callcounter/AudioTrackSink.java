@@ -0,0 +1,67 @@
+package com.example.callcounter;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PcmSink backed by a streaming AudioTrack: mono 16-bit at CallAudioPipeline.RECEIVE_SAMPLE_RATE
+ * on the voice-communication usage. Writes block, which paces the playback thread.
+ */
+class AudioTrackSink implements CallAudioPipeline.PcmSink {
+
+    private static final String TAG = "CallAudioPipeline";
+
+    private AudioTrack track;
+
+    @Override
+    public void start() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        int minBuffer = AudioTrack.getMinBufferSize(CallAudioPipeline.RECEIVE_SAMPLE_RATE,
+                AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        track = new AudioTrack(
+                new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_VOICE_COMMUNICATION)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                        .build(),
+                new AudioFormat.Builder()
+                        .setSampleRate(CallAudioPipeline.RECEIVE_SAMPLE_RATE)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .build(),
+                Math.max(minBuffer, CallAudioPipeline.CHUNK_BYTES * 2),
+                AudioTrack.MODE_STREAM,
+                AudioManager.AUDIO_SESSION_ID_GENERATE);
+        if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+            Log.e(TAG, "AudioTrack failed to initialize");
+            track.release();
+            track = null;
+            return;
+        }
+        track.play();
+    }
+
+    @Override
+    public int write(ByteBuffer src, int bytes) {
+        if (track == null) return -1;
+        return track.write(src, bytes, AudioTrack.WRITE_BLOCKING);
+    }
+
+    @Override
+    public void stop() {
+        if (track != null) {
+            try {
+                track.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "AudioTrack stop failed: " + e.getMessage());
+            }
+            track.release();
+            track = null;
+        }
+    }
+}
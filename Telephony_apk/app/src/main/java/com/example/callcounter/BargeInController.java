@@ -0,0 +1,86 @@
+package com.example.callcounter;
+
+/**
+ * Stops the AI mid-sentence when the caller talks over it. The capture thread's
+ * VoiceActivityDetector reports speech start; if a model turn is playing, queued playout is
+ * flushed at once and the turn is marked interrupted, so audio still streaming in for that
+ * turn is discarded until the model starts its next one.
+ *
+ * Model turn boundaries come from the network receiver through onModelTurnStarted /
+ * onModelTurnComplete; the rest runs on the capture thread.
+ */
+public class BargeInController implements VoiceActivityDetector.Listener {
+
+    public interface Listener {
+        void onBargeIn(int turnId);
+    }
+
+    private final CallAudioPipeline pipeline;
+    private final VoiceActivityDetector detector;
+    private volatile Listener listener;
+
+    private volatile int currentTurn;
+    private volatile int interruptedTurn = -1;
+    private volatile boolean turnActive;
+    private volatile long bargeIns;
+
+    public BargeInController(CallAudioPipeline pipeline) {
+        this.pipeline = pipeline;
+        this.detector = new VoiceActivityDetector(CallAudioPipeline.SEND_SAMPLE_RATE);
+        detector.setListener(this);
+        pipeline.setCaptureDetector(detector);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public VoiceActivityDetector getDetector() {
+        return detector;
+    }
+
+    /** Receiver side: the model began a new response. Returns its turn id. */
+    public int onModelTurnStarted() {
+        int turn = ++currentTurn;
+        turnActive = true;
+        return turn;
+    }
+
+    /** Receiver side: all audio for the current turn has been delivered. */
+    public void onModelTurnComplete() {
+        turnActive = false;
+        pipeline.endDownlinkTurn();
+    }
+
+    /** Receiver side: false while the current turn has been interrupted; drop its audio. */
+    public boolean shouldAcceptModelAudio() {
+        return interruptedTurn != currentTurn;
+    }
+
+    public boolean isTurnInterrupted() {
+        return interruptedTurn == currentTurn;
+    }
+
+    public long getBargeInCount() {
+        return bargeIns;
+    }
+
+    @Override
+    public void onSpeechStart(long frameIndex) {
+        // Trailing audio of a completed turn still counts as the model speaking
+        boolean modelSpeaking = turnActive || pipeline.downlinkBufferedBytes() > 0;
+        int turn = currentTurn;
+        if (!modelSpeaking || interruptedTurn == turn) return;
+
+        interruptedTurn = turn;
+        pipeline.flushDownlink();
+        bargeIns++;
+        Listener l = listener;
+        if (l != null) l.onBargeIn(turn);
+    }
+
+    @Override
+    public void onSpeechEnd(long frameIndex) {
+        // Nothing to do: the model's next turn is driven by the server
+    }
+}
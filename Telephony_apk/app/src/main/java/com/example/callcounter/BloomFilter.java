@@ -0,0 +1,51 @@
+package com.example.callcounter;
+
+/**
+ * Fixed-size Bloom filter over strings. mightContain() == false is a definite "not present",
+ * which lets ContactResolver answer unknown callers without touching the contacts provider.
+ */
+final class BloomFilter {
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    // Sized for roughly 1% false positives at the expected number of entries
+    BloomFilter(int expectedEntries) {
+        int entries = Math.max(expectedEntries, 16);
+        bitCount = (int) Math.min(Integer.MAX_VALUE - 63L, (long) Math.ceil(entries * 9.6));
+        bits = new long[(bitCount + 63) >>> 6];
+        hashCount = 7;
+    }
+
+    void add(String value) {
+        int h1 = value.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(String value) {
+        int h1 = value.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Second, independent-enough hash for double hashing (murmur3 finalizer)
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+}
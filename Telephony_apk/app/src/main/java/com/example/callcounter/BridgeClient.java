@@ -0,0 +1,567 @@
+package com.example.callcounter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Phone side of the BridgeProtocol link to the PC agent. One NIO thread owns the socket:
+ * it connects (and reconnects with backoff), pumps uplink PCM from an attached
+ * CallAudioPipeline straight into preallocated direct frame buffers, writes queued frames
+ * with gathering writes (header + payload, many frames per syscall), and parses incoming
+ * frames in place from a direct receive buffer.
+ *
+ * Frames come from fixed pools, so the send queues are bounded. When the audio queue is full,
+ * audio is dropped according to the DropPolicy (it's only worth sending while it's fresh).
+ * Call events and control messages have their own smaller queue that is written first and
+ * never dropped; when it is full the caller blocks for a short while as backpressure.
+ * Like CallAudioPipeline this class has no android.* dependencies so the bridge can be
+ * exercised on a plain JVM against BridgeLoopbackPeer.
+ */
+public class BridgeClient {
+
+    public enum DropPolicy {
+        DROP_NEWEST,
+        DROP_OLDEST
+    }
+
+    /** Called on the I/O thread. ByteBuffer arguments are only valid during the call. */
+    public interface Listener {
+        void onConnected();
+        void onDisconnected();
+        void onAudio(ByteBuffer pcm);
+        void onCallEvent(String channel, String event, String number);
+        void onControl(int code, ByteBuffer args);
+    }
+
+    private static final int AUDIO_QUEUE_FRAMES = 64;
+    private static final int AUDIO_PAYLOAD_BYTES = CallAudioPipeline.CHUNK_BYTES * 2;
+    private static final int CONTROL_QUEUE_FRAMES = 16;
+    private static final int CONTROL_PAYLOAD_BYTES = 1024;
+    private static final int GATHER_FRAMES = 16;
+    private static final long BLOCK_TIMEOUT_MS = 200;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final long RECONNECT_MIN_MS = 500;
+    private static final long RECONNECT_MAX_MS = 10000;
+    private static final long SELECT_TIMEOUT_MS = 10;
+    private static final long HEARTBEAT_INTERVAL_MS = 2000;
+    private static final long PEER_TIMEOUT_MS = HEARTBEAT_INTERVAL_MS * 3;
+
+    private static final class Frame {
+        final ByteBuffer header = ByteBuffer.allocateDirect(BridgeProtocol.HEADER_BYTES);
+        final ByteBuffer payload;
+        final ArrayBlockingQueue<Frame> pool;
+        int type;
+        int timestampMs;
+
+        Frame(int payloadBytes, ArrayBlockingQueue<Frame> pool) {
+            this.payload = ByteBuffer.allocateDirect(payloadBytes);
+            this.pool = pool;
+        }
+
+        void release() {
+            pool.offer(this);
+        }
+    }
+
+    private final InetSocketAddress address;
+    private final DropPolicy dropPolicy;
+    private final ArrayBlockingQueue<Frame> freeAudio = new ArrayBlockingQueue<>(AUDIO_QUEUE_FRAMES);
+    private final ArrayBlockingQueue<Frame> pendingAudio = new ArrayBlockingQueue<>(AUDIO_QUEUE_FRAMES);
+    private final ArrayBlockingQueue<Frame> freeControl = new ArrayBlockingQueue<>(CONTROL_QUEUE_FRAMES);
+    private final ArrayBlockingQueue<Frame> pendingControl = new ArrayBlockingQueue<>(CONTROL_QUEUE_FRAMES);
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+    private final long startMs = System.currentTimeMillis();
+
+    // I/O thread state
+    private final Frame[] inFlight = new Frame[GATHER_FRAMES];
+    private final ByteBuffer[] gather = new ByteBuffer[GATHER_FRAMES * 2];
+    private int inFlightCount;
+    private int gatherIndex;
+    // Assigned when a frame goes on the wire, so sequence order is wire order
+    private int sequence;
+    private final ByteBuffer receiveBuffer =
+            ByteBuffer.allocateDirect(BridgeProtocol.HEADER_BYTES + BridgeProtocol.MAX_PAYLOAD_BYTES);
+    private SocketChannel channel;
+    private SelectionKey key;
+    private long lastSendMs;
+    private long lastReceiveMs;
+
+    private volatile Selector selector;
+    private volatile boolean running;
+    private volatile boolean connected;
+    private volatile Listener listener;
+    private volatile CallAudioPipeline pipeline;
+    private volatile BargeInController bargeIn;
+    private Thread ioThread;
+
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong backpressureTimeouts = new AtomicLong();
+    private volatile long framesSent;
+    private volatile long bytesSent;
+    private volatile long framesReceived;
+    private volatile long reconnects;
+    private volatile String lastError;
+
+    public BridgeClient(String host, int port, DropPolicy dropPolicy) {
+        this.address = new InetSocketAddress(host, port);
+        this.dropPolicy = dropPolicy;
+        for (int i = 0; i < AUDIO_QUEUE_FRAMES; i++) {
+            freeAudio.add(new Frame(AUDIO_PAYLOAD_BYTES, freeAudio));
+        }
+        for (int i = 0; i < CONTROL_QUEUE_FRAMES; i++) {
+            freeControl.add(new Frame(CONTROL_PAYLOAD_BYTES, freeControl));
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Streams the pipeline's uplink to the peer and feeds received downlink audio into it.
+     * With a BargeInController, model turn control frames drive it, audio of an interrupted
+     * turn is dropped, and barge-ins are reported to the peer.
+     */
+    public void attachPipeline(CallAudioPipeline pipeline, BargeInController bargeIn) {
+        this.pipeline = pipeline;
+        this.bargeIn = bargeIn;
+        if (bargeIn != null) {
+            // Runs on the capture thread, which must not wait for queue space
+            bargeIn.setListener(turn -> sendControl(BridgeProtocol.CONTROL_INTERRUPTED, null, 0));
+        }
+    }
+
+    public void detachPipeline() {
+        this.pipeline = null;
+        this.bargeIn = null;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            lastError = "Selector open failed: " + e.getMessage();
+            return;
+        }
+        running = true;
+        ioThread = new Thread(this::ioLoop, "bridge-io");
+        ioThread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        // Also cuts short a reconnect backoff sleep
+        ioThread.interrupt();
+        try {
+            ioThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ioThread = null;
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    // --- producers (any thread) ---
+
+    /** Queues PCM for the peer, splitting it into frames. Returns false if any of it was dropped. */
+    public boolean sendAudio(ByteBuffer pcm) {
+        while (pcm.hasRemaining()) {
+            Frame frame = acquireForAudio();
+            if (frame == null) {
+                droppedFrames.incrementAndGet();
+                pcm.position(pcm.limit());
+                return false;
+            }
+            frame.payload.clear();
+            int length = Math.min(pcm.remaining(), AUDIO_PAYLOAD_BYTES);
+            int oldLimit = pcm.limit();
+            pcm.limit(pcm.position() + length);
+            frame.payload.put(pcm);
+            pcm.limit(oldLimit);
+            frame.payload.flip();
+            enqueue(frame, BridgeProtocol.TYPE_AUDIO_UPLINK);
+        }
+        return true;
+    }
+
+    public boolean sendCallEvent(String channel, String event, String number) {
+        Frame frame = acquireControl(BLOCK_TIMEOUT_MS);
+        if (frame == null) return false;
+        frame.payload.clear();
+        try {
+            BridgeProtocol.putString(frame.payload, channel);
+            BridgeProtocol.putString(frame.payload, event);
+            BridgeProtocol.putString(frame.payload, number);
+        } catch (BufferOverflowException e) {
+            frame.release();
+            throw new IllegalArgumentException("Call event too long");
+        }
+        frame.payload.flip();
+        enqueue(frame, BridgeProtocol.TYPE_CALL_EVENT);
+        return true;
+    }
+
+    public boolean sendControl(int code, byte[] args) {
+        return sendControl(code, args, BLOCK_TIMEOUT_MS);
+    }
+
+    private boolean sendControl(int code, byte[] args, long timeoutMs) {
+        if (args != null && args.length > CONTROL_PAYLOAD_BYTES - 1) {
+            throw new IllegalArgumentException("Control arguments too long: " + args.length);
+        }
+        Frame frame = acquireControl(timeoutMs);
+        if (frame == null) return false;
+        frame.payload.clear();
+        frame.payload.put((byte) code);
+        if (args != null) frame.payload.put(args);
+        frame.payload.flip();
+        enqueue(frame, BridgeProtocol.TYPE_CONTROL);
+        return true;
+    }
+
+    private Frame acquireForAudio() {
+        Frame frame = freeAudio.poll();
+        if (frame == null && dropPolicy == DropPolicy.DROP_OLDEST) {
+            // Reuse the oldest queued frame; it holds the stalest audio anyway
+            frame = pendingAudio.poll();
+            if (frame != null) droppedFrames.incrementAndGet();
+        }
+        return frame;
+    }
+
+    private Frame acquireControl(long timeoutMs) {
+        try {
+            Frame frame = freeControl.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            if (frame == null) backpressureTimeouts.incrementAndGet();
+            return frame;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void enqueue(Frame frame, int type) {
+        frame.type = type;
+        frame.timestampMs = (int) (System.currentTimeMillis() - startMs);
+        if (frame.pool == freeAudio) {
+            pendingAudio.offer(frame);
+        } else {
+            pendingControl.offer(frame);
+        }
+        // One wakeup per batch is enough; the I/O thread drains everything queued
+        if (Thread.currentThread() != ioThread && wakeupRequested.compareAndSet(false, true)) {
+            Selector s = selector;
+            if (s != null) s.wakeup();
+        }
+    }
+
+    // --- I/O thread ---
+
+    private void ioLoop() {
+        long backoffMs = RECONNECT_MIN_MS;
+        while (running) {
+            if (channel == null) {
+                if (connect()) {
+                    backoffMs = RECONNECT_MIN_MS;
+                } else {
+                    sleepQuietly(backoffMs);
+                    backoffMs = Math.min(backoffMs * 2, RECONNECT_MAX_MS);
+                }
+                continue;
+            }
+            try {
+                selector.select(SELECT_TIMEOUT_MS);
+                wakeupRequested.set(false);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey selected = keys.next();
+                    keys.remove();
+                    if (selected.isValid() && selected.isReadable()) {
+                        readFrames();
+                    }
+                }
+                if (channel == null) continue;
+
+                long now = System.currentTimeMillis();
+                pumpUplink();
+                if (now - lastSendMs >= HEARTBEAT_INTERVAL_MS && pendingControl.isEmpty()) {
+                    Frame frame = freeControl.poll();
+                    if (frame != null) {
+                        frame.payload.clear();
+                        frame.payload.flip();
+                        enqueue(frame, BridgeProtocol.TYPE_HEARTBEAT);
+                    }
+                }
+                if (now - lastReceiveMs > PEER_TIMEOUT_MS) {
+                    throw new IOException("Peer silent for " + (now - lastReceiveMs) + "ms");
+                }
+                boolean drained = flushWrites();
+                key.interestOps(drained ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } catch (IOException | RuntimeException e) {
+                lastError = "Bridge connection lost: " + e.getMessage();
+                disconnect();
+            }
+        }
+        disconnect();
+    }
+
+    private boolean connect() {
+        SocketChannel socket = null;
+        try {
+            socket = SocketChannel.open();
+            socket.socket().setTcpNoDelay(true);
+            socket.socket().connect(address, CONNECT_TIMEOUT_MS);
+            socket.configureBlocking(false);
+            key = socket.register(selector, SelectionKey.OP_READ);
+            channel = socket;
+            receiveBuffer.clear();
+            lastSendMs = lastReceiveMs = System.currentTimeMillis();
+            connected = true;
+            if (reconnects++ > 0) {
+                // Audio queued while we were down is stale by now
+                releasePendingAudio();
+            }
+            Listener l = listener;
+            if (l != null) l.onConnected();
+            return true;
+        } catch (IOException e) {
+            lastError = "Bridge connect failed: " + e.getMessage();
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return false;
+        }
+    }
+
+    private void disconnect() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+        key = null;
+        for (int i = 0; i < inFlightCount; i++) {
+            inFlight[i].release();
+            inFlight[i] = null;
+        }
+        inFlightCount = 0;
+        releasePendingAudio();
+        connected = false;
+        Listener l = listener;
+        if (l != null) l.onDisconnected();
+    }
+
+    private void releasePendingAudio() {
+        Frame frame;
+        while ((frame = pendingAudio.poll()) != null) {
+            frame.release();
+        }
+    }
+
+    private void pumpUplink() {
+        CallAudioPipeline p = pipeline;
+        if (p == null) return;
+        while (p.uplinkAvailableBytes() >= CallAudioPipeline.CHUNK_BYTES) {
+            // No free frame: leave the audio in the pipeline's ring, which drops on its own overflow
+            Frame frame = freeAudio.poll();
+            if (frame == null) return;
+            frame.payload.clear();
+            frame.payload.limit(CallAudioPipeline.CHUNK_BYTES);
+            p.readUplink(frame.payload);
+            frame.payload.flip();
+            enqueue(frame, BridgeProtocol.TYPE_AUDIO_UPLINK);
+        }
+    }
+
+    /** Returns true once everything queued has been written. */
+    private boolean flushWrites() throws IOException {
+        while (true) {
+            if (inFlightCount == 0) {
+                Frame frame;
+                while (inFlightCount < GATHER_FRAMES
+                        && ((frame = pendingControl.poll()) != null || (frame = pendingAudio.poll()) != null)) {
+                    frame.header.clear();
+                    BridgeProtocol.writeHeader(frame.header, frame.type, frame.payload.remaining(),
+                            sequence++, frame.timestampMs);
+                    frame.header.flip();
+                    inFlight[inFlightCount] = frame;
+                    gather[inFlightCount * 2] = frame.header;
+                    gather[inFlightCount * 2 + 1] = frame.payload;
+                    inFlightCount++;
+                }
+                gatherIndex = 0;
+                if (inFlightCount == 0) return true;
+            }
+
+            int buffers = inFlightCount * 2;
+            long written = channel.write(gather, gatherIndex, buffers - gatherIndex);
+            bytesSent += written;
+            while (gatherIndex < buffers && !gather[gatherIndex].hasRemaining()) {
+                gatherIndex++;
+            }
+            if (gatherIndex < buffers) {
+                return false;
+            }
+
+            for (int i = 0; i < inFlightCount; i++) {
+                inFlight[i].release();
+                inFlight[i] = null;
+                gather[i * 2] = null;
+                gather[i * 2 + 1] = null;
+            }
+            framesSent += inFlightCount;
+            inFlightCount = 0;
+            lastSendMs = System.currentTimeMillis();
+        }
+    }
+
+    private void readFrames() throws IOException {
+        int read = channel.read(receiveBuffer);
+        if (read < 0) {
+            throw new IOException("Peer closed the connection");
+        }
+        lastReceiveMs = System.currentTimeMillis();
+        receiveBuffer.flip();
+        while (receiveBuffer.remaining() >= BridgeProtocol.HEADER_BYTES) {
+            int start = receiveBuffer.position();
+            int length = BridgeProtocol.readPayloadLength(receiveBuffer, start);
+            if (receiveBuffer.remaining() < BridgeProtocol.HEADER_BYTES + length) break;
+
+            int type = BridgeProtocol.readType(receiveBuffer, start);
+            int payloadStart = start + BridgeProtocol.HEADER_BYTES;
+            int limit = receiveBuffer.limit();
+            // Dispatch a window of the receive buffer itself; no copy, no slice object
+            receiveBuffer.limit(payloadStart + length).position(payloadStart);
+            dispatch(type);
+            receiveBuffer.limit(limit).position(payloadStart + length);
+            framesReceived++;
+        }
+        receiveBuffer.compact();
+    }
+
+    private void dispatch(int type) {
+        Listener l = listener;
+        switch (type) {
+            case BridgeProtocol.TYPE_AUDIO_DOWNLINK: {
+                CallAudioPipeline p = pipeline;
+                BargeInController b = bargeIn;
+                if (p != null) {
+                    if (b == null || b.shouldAcceptModelAudio()) p.writeDownlink(receiveBuffer);
+                } else if (l != null) {
+                    l.onAudio(receiveBuffer);
+                }
+                break;
+            }
+            case BridgeProtocol.TYPE_CALL_EVENT:
+                if (l != null) {
+                    String channelName = BridgeProtocol.getString(receiveBuffer);
+                    String event = BridgeProtocol.getString(receiveBuffer);
+                    String number = BridgeProtocol.getString(receiveBuffer);
+                    l.onCallEvent(channelName, event, number);
+                }
+                break;
+            case BridgeProtocol.TYPE_CONTROL: {
+                if (!receiveBuffer.hasRemaining()) break;
+                int code = receiveBuffer.get() & 0xFF;
+                handleControl(code);
+                if (l != null) l.onControl(code, receiveBuffer);
+                break;
+            }
+            case BridgeProtocol.TYPE_HEARTBEAT:
+                break;
+            default:
+                // Unknown types are skipped so newer peers can add frames
+                break;
+        }
+    }
+
+    private void handleControl(int code) {
+        BargeInController b = bargeIn;
+        switch (code) {
+            case BridgeProtocol.CONTROL_PING: {
+                Frame frame = freeControl.poll();
+                if (frame != null) {
+                    frame.payload.clear();
+                    frame.payload.put((byte) BridgeProtocol.CONTROL_PONG);
+                    frame.payload.flip();
+                    enqueue(frame, BridgeProtocol.TYPE_CONTROL);
+                }
+                break;
+            }
+            case BridgeProtocol.CONTROL_MODEL_TURN_START:
+                if (b != null) b.onModelTurnStarted();
+                break;
+            case BridgeProtocol.CONTROL_MODEL_TURN_COMPLETE:
+                if (b != null) b.onModelTurnComplete();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void sleepQuietly(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- metrics ---
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getFramesReceived() {
+        return framesReceived;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getBackpressureTimeouts() {
+        return backpressureTimeouts.get();
+    }
+
+    public int getQueuedFrames() {
+        return pendingAudio.size() + pendingControl.size();
+    }
+
+    public long getReconnects() {
+        return Math.max(0, reconnects - 1);
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.callcounter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the PC agent so BridgeClient can be exercised on any JVM without the Live API:
+ * accepts one connection at a time on localhost, echoes uplink audio back as downlink
+ * (like a model that repeats the caller), answers heartbeats and pings, and counts what it
+ * received. Uses a blocking channel on its own thread; speed isn't the point here.
+ */
+public class BridgeLoopbackPeer {
+
+    private final ServerSocketChannel server;
+    private final ByteBuffer receiveBuffer =
+            ByteBuffer.allocateDirect(BridgeProtocol.HEADER_BYTES + BridgeProtocol.MAX_PAYLOAD_BYTES);
+    private final ByteBuffer header = ByteBuffer.allocateDirect(BridgeProtocol.HEADER_BYTES);
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+    private final Object writeLock = new Object();
+
+    private volatile boolean running;
+    private volatile SocketChannel client;
+    private volatile boolean echoAudio = true;
+    private Thread thread;
+    private int sequence;
+
+    private final AtomicLong audioFrames = new AtomicLong();
+    private final AtomicLong audioBytes = new AtomicLong();
+    private final AtomicLong callEvents = new AtomicLong();
+    private final AtomicLong controlFrames = new AtomicLong();
+    private final AtomicLong sequenceGaps = new AtomicLong();
+    private volatile String lastCallEvent;
+    private volatile int lastControlCode = -1;
+
+    /** Binds 127.0.0.1:port; pass 0 for an ephemeral port and read it back with getPort(). */
+    public BridgeLoopbackPeer(int port) throws IOException {
+        server = ServerSocketChannel.open();
+        server.socket().setReuseAddress(true);
+        server.socket().bind(new InetSocketAddress("127.0.0.1", port));
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public void setEchoAudio(boolean echoAudio) {
+        this.echoAudio = echoAudio;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::serve, "bridge-loopback-peer");
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        closeQuietly(client);
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Drops the current connection, e.g. to exercise the client's reconnect path. */
+    public void dropConnection() {
+        closeQuietly(client);
+    }
+
+    /** Sends a control frame to the connected client. Returns false if nobody is connected. */
+    public boolean sendControl(int code) {
+        ByteBuffer payload = ByteBuffer.allocate(1);
+        payload.put((byte) code).flip();
+        return send(BridgeProtocol.TYPE_CONTROL, payload);
+    }
+
+    private void serve() {
+        while (running) {
+            SocketChannel accepted;
+            try {
+                accepted = server.accept();
+                accepted.socket().setTcpNoDelay(true);
+            } catch (IOException e) {
+                break;
+            }
+            client = accepted;
+            receiveBuffer.clear();
+            int expectedSequence = -1;
+            try {
+                while (running) {
+                    if (accepted.read(receiveBuffer) < 0) break;
+                    receiveBuffer.flip();
+                    while (receiveBuffer.remaining() >= BridgeProtocol.HEADER_BYTES) {
+                        int start = receiveBuffer.position();
+                        int length = BridgeProtocol.readPayloadLength(receiveBuffer, start);
+                        if (receiveBuffer.remaining() < BridgeProtocol.HEADER_BYTES + length) break;
+                        int type = BridgeProtocol.readType(receiveBuffer, start);
+                        int seq = BridgeProtocol.readSequence(receiveBuffer, start);
+                        if (expectedSequence >= 0 && seq != expectedSequence) sequenceGaps.incrementAndGet();
+                        expectedSequence = seq + 1;
+
+                        int payloadStart = start + BridgeProtocol.HEADER_BYTES;
+                        int limit = receiveBuffer.limit();
+                        receiveBuffer.limit(payloadStart + length).position(payloadStart);
+                        handle(type);
+                        receiveBuffer.limit(limit).position(payloadStart + length);
+                    }
+                    receiveBuffer.compact();
+                }
+            } catch (IOException | RuntimeException e) {
+                // Connection dropped or garbage received; wait for the next one
+            } finally {
+                client = null;
+                closeQuietly(accepted);
+            }
+        }
+    }
+
+    private void handle(int type) {
+        switch (type) {
+            case BridgeProtocol.TYPE_AUDIO_UPLINK:
+                audioFrames.incrementAndGet();
+                audioBytes.addAndGet(receiveBuffer.remaining());
+                if (echoAudio) send(BridgeProtocol.TYPE_AUDIO_DOWNLINK, receiveBuffer);
+                break;
+            case BridgeProtocol.TYPE_CALL_EVENT: {
+                String channel = BridgeProtocol.getString(receiveBuffer);
+                String event = BridgeProtocol.getString(receiveBuffer);
+                String number = BridgeProtocol.getString(receiveBuffer);
+                lastCallEvent = channel + "|" + event + "|" + number;
+                callEvents.incrementAndGet();
+                break;
+            }
+            case BridgeProtocol.TYPE_CONTROL: {
+                int code = receiveBuffer.get() & 0xFF;
+                lastControlCode = code;
+                controlFrames.incrementAndGet();
+                if (code == BridgeProtocol.CONTROL_PING) sendControl(BridgeProtocol.CONTROL_PONG);
+                break;
+            }
+            case BridgeProtocol.TYPE_HEARTBEAT:
+                send(BridgeProtocol.TYPE_HEARTBEAT, ByteBuffer.allocate(0));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private boolean send(int type, ByteBuffer payload) {
+        SocketChannel channel = client;
+        if (channel == null) return false;
+        synchronized (writeLock) {
+            try {
+                header.clear();
+                BridgeProtocol.writeHeader(header, type, payload.remaining(), sequence++, 0);
+                header.flip();
+                gather[0] = header;
+                gather[1] = payload;
+                while (header.hasRemaining() || payload.hasRemaining()) {
+                    channel.write(gather);
+                }
+                return true;
+            } catch (IOException e) {
+                closeQuietly(channel);
+                return false;
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public long getAudioFrames() {
+        return audioFrames.get();
+    }
+
+    public long getAudioBytes() {
+        return audioBytes.get();
+    }
+
+    public long getCallEvents() {
+        return callEvents.get();
+    }
+
+    public long getControlFrames() {
+        return controlFrames.get();
+    }
+
+    public long getSequenceGaps() {
+        return sequenceGaps.get();
+    }
+
+    public String getLastCallEvent() {
+        return lastCallEvent;
+    }
+
+    public int getLastControlCode() {
+        return lastControlCode;
+    }
+
+    public boolean isClientConnected() {
+        return client != null;
+    }
+}
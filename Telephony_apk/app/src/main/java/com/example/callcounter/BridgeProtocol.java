@@ -0,0 +1,91 @@
+package com.example.callcounter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Wire format shared by the phone and the PC-side Live API client over a local TCP socket
+ * (adb reverse tcp:PORT tcp:PORT, or plain localhost). Every frame is a 16-byte big-endian
+ * header followed by the payload:
+ *
+ *   magic u16 (0xCA11) | version u8 | type u8 | payload length u32 | sequence u32 | timestamp ms u32
+ *
+ * Audio payloads are raw 16-bit little-endian mono PCM: uplink at 16 kHz, downlink at 24 kHz.
+ * Call events carry three u16-length-prefixed UTF-8 strings (channel, event, number).
+ * Control frames carry a u8 code followed by code-specific bytes.
+ */
+public final class BridgeProtocol {
+
+    public static final int DEFAULT_PORT = 47011;
+
+    public static final int MAGIC = 0xCA11;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int MAX_PAYLOAD_BYTES = 64 * 1024;
+
+    public static final int TYPE_AUDIO_UPLINK = 1;
+    public static final int TYPE_AUDIO_DOWNLINK = 2;
+    public static final int TYPE_CALL_EVENT = 3;
+    public static final int TYPE_CONTROL = 4;
+    public static final int TYPE_HEARTBEAT = 5;
+
+    public static final int CONTROL_PING = 1;
+    public static final int CONTROL_PONG = 2;
+    public static final int CONTROL_SESSION_START = 3;
+    public static final int CONTROL_SESSION_END = 4;
+    public static final int CONTROL_MODEL_TURN_START = 5;
+    public static final int CONTROL_MODEL_TURN_COMPLETE = 6;
+    public static final int CONTROL_INTERRUPTED = 7;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BridgeProtocol() {
+    }
+
+    /** Writes a header at dst's position and advances it by HEADER_BYTES. */
+    public static void writeHeader(ByteBuffer dst, int type, int payloadLength, int sequence, int timestampMs) {
+        dst.putShort((short) MAGIC);
+        dst.put((byte) VERSION);
+        dst.put((byte) type);
+        dst.putInt(payloadLength);
+        dst.putInt(sequence);
+        dst.putInt(timestampMs);
+    }
+
+    /**
+     * Validates the header at the absolute index and returns its payload length.
+     *
+     * @throws IllegalStateException on a bad magic, version or length; the stream can't be resynced
+     */
+    public static int readPayloadLength(ByteBuffer src, int index) {
+        int magic = src.getShort(index) & 0xFFFF;
+        int version = src.get(index + 2) & 0xFF;
+        int length = src.getInt(index + 4);
+        if (magic != MAGIC || version != VERSION || length < 0 || length > MAX_PAYLOAD_BYTES) {
+            throw new IllegalStateException("Bad bridge frame header: magic=" + Integer.toHexString(magic)
+                    + " version=" + version + " length=" + length);
+        }
+        return length;
+    }
+
+    public static int readType(ByteBuffer src, int index) {
+        return src.get(index + 3) & 0xFF;
+    }
+
+    public static int readSequence(ByteBuffer src, int index) {
+        return src.getInt(index + 8);
+    }
+
+    static void putString(ByteBuffer dst, String value) {
+        byte[] bytes = value != null ? value.getBytes(UTF_8) : new byte[0];
+        dst.putShort((short) bytes.length);
+        dst.put(bytes);
+    }
+
+    static String getString(ByteBuffer src) {
+        int length = src.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        src.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
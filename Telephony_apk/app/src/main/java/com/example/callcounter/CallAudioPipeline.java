@@ -0,0 +1,277 @@
+package com.example.callcounter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming audio core for AI call handling: a capture thread feeds the uplink ring
+ * (16 kHz, sent to the model) and a playback thread drains an adaptive JitterBuffer
+ * (24 kHz, model audio). Chunks are 1024 frames of mono 16-bit PCM, matching the Python client's
+ * SEND_SAMPLE_RATE / RECEIVE_SAMPLE_RATE / CHUNK_SIZE. All buffers are allocated up
+ * front; nothing in the loops allocates or takes a lock. Devices are abstracted as
+ * PcmSource / PcmSink so the core runs on a plain JVM with synthetic PCM.
+ */
+public class CallAudioPipeline {
+
+    public static final int SEND_SAMPLE_RATE = 16000;
+    public static final int RECEIVE_SAMPLE_RATE = 24000;
+    public static final int CHUNK_FRAMES = 1024;
+    public static final int BYTES_PER_FRAME = 2;
+    public static final int CHUNK_BYTES = CHUNK_FRAMES * BYTES_PER_FRAME;
+
+    // 32 chunks = ~2 s of uplink audio
+    private static final int RING_CHUNKS = 32;
+    private static final int DOWNLINK_MAX_DEPTH_MS = 1500;
+
+    /** Capture device. read() fills dst from index 0 and returns the byte count (negative on error). */
+    public interface PcmSource {
+        void start();
+        int read(ByteBuffer dst, int bytes);
+        void stop();
+    }
+
+    /** Playback device. write() consumes from dst's position and may block to pace playback. */
+    public interface PcmSink {
+        void start();
+        int write(ByteBuffer src, int bytes);
+        void stop();
+    }
+
+    private final PcmSource source;
+    private final PcmSink sink;
+    private final PcmRingBuffer uplink = new PcmRingBuffer(CHUNK_BYTES * RING_CHUNKS);
+    private final JitterBuffer downlink = new JitterBuffer(RECEIVE_SAMPLE_RATE, DOWNLINK_MAX_DEPTH_MS, CHUNK_FRAMES);
+    private final ByteBuffer captureChunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer playbackChunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ShortBuffer captureSamplesView = captureChunk.asShortBuffer();
+    private final short[] captureSamples = new short[CHUNK_FRAMES];
+    private final ShortBuffer playbackSamplesView = playbackChunk.asShortBuffer();
+    private final short[] playbackSamples = new short[CHUNK_FRAMES];
+    // Set before start(); runs on the capture thread
+    private volatile VoiceActivityDetector captureDetector;
+    // Prompt clip being played ahead of model audio; consumed by the playback thread
+    private final AtomicReference<ByteBuffer> prompt = new AtomicReference<>();
+    // Optional taps; offer() never blocks the audio threads
+    private volatile CallRecorder uplinkRecorder;
+    private volatile CallRecorder downlinkRecorder;
+
+    private volatile boolean running;
+    private Thread captureThread;
+    private Thread playbackThread;
+
+    // Each counter is written by a single thread
+    private volatile long uplinkDroppedBytes;
+    // The core stays free of android.* so it runs on a plain JVM; owners log this
+    private volatile String lastError;
+
+    public CallAudioPipeline(PcmSource source, PcmSink sink) {
+        this.source = source;
+        this.sink = sink;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        captureThread = new Thread(this::captureLoop, "call-audio-capture");
+        playbackThread = new Thread(this::playbackLoop, "call-audio-playback");
+        captureThread.start();
+        playbackThread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        joinQuietly(captureThread);
+        joinQuietly(playbackThread);
+        captureThread = null;
+        playbackThread = null;
+    }
+
+    /**
+     * Plays a prerecorded 24 kHz clip (e.g. a PromptCache view) until model audio is ready,
+     * then fades it out and hands over. The clip is written to the sink straight from its own
+     * buffer, so a mapped clip plays without a copy. Replaces any prompt still playing.
+     */
+    public void playPrompt(ByteBuffer clip) {
+        prompt.set(clip.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    public void stopPrompt() {
+        prompt.set(null);
+    }
+
+    public boolean isPromptPlaying() {
+        return prompt.get() != null;
+    }
+
+    public void setCaptureDetector(VoiceActivityDetector detector) {
+        this.captureDetector = detector;
+    }
+
+    /** Records what the caller says and what they hear (prompts and model audio). Either may be null. */
+    public void setRecorders(CallRecorder uplink, CallRecorder downlink) {
+        this.uplinkRecorder = uplink;
+        this.downlinkRecorder = downlink;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Network sender side: drains captured 16 kHz PCM into dst. Returns bytes copied. */
+    public int readUplink(ByteBuffer dst) {
+        return uplink.read(dst);
+    }
+
+    /** Network receiver side: queues 24 kHz model PCM for playback. Returns bytes accepted. */
+    public int writeDownlink(ByteBuffer src) {
+        return downlink.offer(src);
+    }
+
+    /** Network receiver side: the model finished its turn. */
+    public void endDownlinkTurn() {
+        downlink.endOfStream();
+    }
+
+    /** Drops queued model audio, e.g. when the caller interrupts. Safe from any thread. */
+    public void flushDownlink() {
+        downlink.flush();
+    }
+
+    public JitterBuffer getDownlinkJitterBuffer() {
+        return downlink;
+    }
+
+    public int uplinkAvailableBytes() {
+        return uplink.availableBytes();
+    }
+
+    public int downlinkBufferedBytes() {
+        return downlink.getBufferedBytes();
+    }
+
+    public long getUplinkDroppedBytes() {
+        return uplinkDroppedBytes;
+    }
+
+    public long getDownlinkDroppedBytes() {
+        return downlink.getOverflowDroppedFrames() * BYTES_PER_FRAME;
+    }
+
+    public long getPlaybackUnderruns() {
+        return downlink.getUnderruns();
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    private void captureLoop() {
+        try {
+            source.start();
+            while (running) {
+                captureChunk.clear();
+                int read = source.read(captureChunk, CHUNK_BYTES);
+                if (read <= 0) {
+                    if (read < 0) {
+                        lastError = "Capture read failed: " + read;
+                        break;
+                    }
+                    continue;
+                }
+                VoiceActivityDetector detector = captureDetector;
+                if (detector != null) {
+                    int samples = read / BYTES_PER_FRAME;
+                    captureSamplesView.clear();
+                    captureSamplesView.get(captureSamples, 0, samples);
+                    detector.process(captureSamples, 0, samples);
+                }
+                captureChunk.limit(read);
+                CallRecorder recorder = uplinkRecorder;
+                if (recorder != null) {
+                    recorder.offer(captureChunk, read);
+                }
+                int written = uplink.write(captureChunk);
+                if (written < read) {
+                    // Sender fell behind; drop the newest audio rather than block the recorder
+                    uplinkDroppedBytes += read - written;
+                }
+            }
+        } catch (Exception e) {
+            lastError = "Capture loop failed: " + e.getMessage();
+        } finally {
+            source.stop();
+        }
+    }
+
+    private void playbackLoop() {
+        try {
+            sink.start();
+            while (running) {
+                ByteBuffer clip = prompt.get();
+                if (clip != null) {
+                    if (!playPromptChunk(clip)) break;
+                    continue;
+                }
+                // Always a full chunk; the jitter buffer pads with silence so the sink keeps a steady clock
+                downlink.read(playbackSamples, 0, CHUNK_FRAMES);
+                playbackSamplesView.clear();
+                playbackSamplesView.put(playbackSamples, 0, CHUNK_FRAMES);
+                playbackChunk.clear();
+                if (!writeOrFail(playbackChunk, CHUNK_BYTES)) break;
+            }
+        } catch (Exception e) {
+            lastError = "Playback loop failed: " + e.getMessage();
+        } finally {
+            sink.stop();
+        }
+    }
+
+    // Returns false if the sink failed
+    private boolean playPromptChunk(ByteBuffer clip) {
+        boolean modelReady = downlink.getBufferedMs() >= downlink.getTargetDelayMs();
+        int bytes = Math.min(clip.remaining(), CHUNK_BYTES) & ~1;
+        if (bytes == 0 || modelReady) {
+            prompt.compareAndSet(clip, null);
+            if (bytes == 0) return true;
+            // Fade the last chunk out through the copy path so the switch doesn't click
+            int frames = bytes / BYTES_PER_FRAME;
+            for (int i = 0; i < frames; i++) {
+                short sample = clip.getShort(clip.position() + i * BYTES_PER_FRAME);
+                playbackSamples[i] = (short) (sample * (frames - i) / frames);
+            }
+            playbackSamplesView.clear();
+            playbackSamplesView.put(playbackSamples, 0, frames);
+            playbackChunk.clear();
+            return writeOrFail(playbackChunk, bytes);
+        }
+        int oldLimit = clip.limit();
+        clip.limit(clip.position() + bytes);
+        boolean ok = writeOrFail(clip, bytes);
+        clip.limit(oldLimit);
+        return ok;
+    }
+
+    private boolean writeOrFail(ByteBuffer src, int bytes) {
+        CallRecorder recorder = downlinkRecorder;
+        if (recorder != null) {
+            recorder.offer(src, bytes);
+        }
+        if (sink.write(src, bytes) < 0) {
+            lastError = "Playback write failed";
+            return false;
+        }
+        return true;
+    }
+
+    private static void joinQuietly(Thread thread) {
+        if (thread == null) return;
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
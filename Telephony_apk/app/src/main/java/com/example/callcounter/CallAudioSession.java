@@ -0,0 +1,202 @@
+package com.example.callcounter;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Owns the audio side of an answered call: starts CallAudioPipeline with barge-in detection,
+ * plays the cached greeting the moment the answer is confirmed, and (unless disabled) links
+ * the pipeline to the PC agent over the bridge. Calls are recorded only if the user turned
+ * recording on. AnswerConfirmationDetector reports both ends of the call: an auto-answer
+ * confirmed by a connect signal, and the end of that session, so the microphone is never
+ * opened on a click that didn't connect. All work runs on one background thread so the
+ * detector never waits on audio or socket setup.
+ */
+public class CallAudioSession {
+
+    private static final String TAG = "CallCounter";
+    private static final String PREFS_NAME = "CallCounterPrefs";
+    private static final String KEY_BRIDGE_ENABLED = "bridge_enabled";
+    // Written by MainActivity's switches; read when a call starts
+    static final String KEY_RECORD_CALLS = "record_calls";
+    static final String KEY_RECORD_ADPCM = "record_adpcm";
+    private static final String RECORDINGS_DIR = "recordings";
+
+    private static CallAudioSession instance;
+
+    private final Context appContext;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+    // Only touched on the worker thread
+    private CallAudioPipeline pipeline;
+    private BargeInController bargeIn;
+    private BridgeClient bridge;
+    private CallRecorder callerRecorder;
+    private CallRecorder agentRecorder;
+    private String activeChannel;
+    private CallSessionTable.CallSession activeCall;
+
+    public static synchronized CallAudioSession getInstance(Context context) {
+        if (instance == null) {
+            instance = new CallAudioSession(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CallAudioSession(Context appContext) {
+        this.appContext = appContext;
+        // Map and verify prompts now rather than on the first answer
+        PromptCache.getInstance(appContext);
+        worker.execute(this::repairRecordings);
+    }
+
+    /** Starts call audio for call, whose auto-answer was just confirmed. */
+    void onCallAnswered(CallSessionTable.CallSession call) {
+        // Soak runs simulate calls; there is no audio to open
+        if (LoadHarness.isRunning()) return;
+        worker.execute(() -> startSession(call));
+    }
+
+    /** Stops call audio if it is running for call, which has ended. */
+    void onCallEnded(CallSessionTable.CallSession call) {
+        worker.execute(() -> endSession(call));
+    }
+
+    private void startSession(CallSessionTable.CallSession call) {
+        String channel = call.channel;
+        if (call.isEnded()) {
+            // Hung up before the worker got to it
+            return;
+        }
+        if (pipeline != null) {
+            Log.d(TAG, "Call audio already running for " + activeCall + ", ignoring answer of " + call);
+            return;
+        }
+        if (ContextCompat.checkSelfPermission(appContext, Manifest.permission.RECORD_AUDIO)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "RECORD_AUDIO not granted, call audio not started");
+            return;
+        }
+        try {
+            pipeline = new CallAudioPipeline(new AudioRecordSource(), new AudioTrackSink());
+            activeCall = call;
+            activeChannel = channel;
+            bargeIn = new BargeInController(pipeline);
+            startRecording(channel);
+
+            ByteBuffer greeting = PromptCache.getInstance(appContext).get(PromptCache.PROMPT_GREETING);
+            if (greeting != null) {
+                pipeline.playPrompt(greeting);
+            }
+            pipeline.start();
+            Log.d(TAG, "Call audio started for " + channel + (greeting != null ? " with greeting" : ""));
+
+            SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            if (prefs.getBoolean(KEY_BRIDGE_ENABLED, true)) {
+                bridge = new BridgeClient("127.0.0.1", BridgeProtocol.DEFAULT_PORT, BridgeClient.DropPolicy.DROP_OLDEST);
+                bridge.attachPipeline(pipeline, bargeIn);
+                bridge.start();
+                bridge.sendControl(BridgeProtocol.CONTROL_SESSION_START, null);
+                bridge.sendCallEvent(channel, "answered", null);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to start call audio: " + e.getMessage());
+            endSession(call);
+        }
+    }
+
+    private void endSession(CallSessionTable.CallSession call) {
+        if (pipeline == null || call != activeCall) {
+            // Another call ended (a second ring, another app's call); ours is still up
+            return;
+        }
+        try {
+            if (bridge != null) {
+                bridge.sendControl(BridgeProtocol.CONTROL_SESSION_END, null);
+                bridge.stop();
+                if (bridge.getLastError() != null) Log.d(TAG, "Bridge: " + bridge.getLastError());
+            }
+            pipeline.stop();
+            stopRecording();
+            if (pipeline.getLastError() != null) {
+                Log.e(TAG, "Call audio error: " + pipeline.getLastError());
+            }
+            Log.d(TAG, "Call audio stopped for " + activeChannel
+                    + ": underruns=" + pipeline.getPlaybackUnderruns()
+                    + " bargeIns=" + (bargeIn != null ? bargeIn.getBargeInCount() : 0));
+            Telemetry.getInstance(appContext).record("audio_session", activeChannel,
+                    "underruns", pipeline.getPlaybackUnderruns(),
+                    "barge_ins", bargeIn != null ? bargeIn.getBargeInCount() : 0,
+                    "uplink_dropped", pipeline.getUplinkDroppedBytes(),
+                    "recorded_ms", callerRecorder != null ? callerRecorder.getRecordedMs() : 0,
+                    "bridge", bridge != null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error stopping call audio: " + e.getMessage());
+        } finally {
+            pipeline = null;
+            bargeIn = null;
+            bridge = null;
+            callerRecorder = null;
+            agentRecorder = null;
+            activeChannel = null;
+            activeCall = null;
+        }
+    }
+
+    private void startRecording(String channel) {
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        // Recording the other party needs their consent in many places, so it is strictly opt-in
+        if (!prefs.getBoolean(KEY_RECORD_CALLS, false)) return;
+        File dir = new File(appContext.getFilesDir(), RECORDINGS_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "Could not create recordings directory");
+            return;
+        }
+        boolean adpcm = prefs.getBoolean(KEY_RECORD_ADPCM, false);
+        String base = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + "-" + channel;
+        callerRecorder = new CallRecorder(new File(dir, base + "-caller" + CallRecorder.EXTENSION),
+                CallAudioPipeline.SEND_SAMPLE_RATE, adpcm);
+        agentRecorder = new CallRecorder(new File(dir, base + "-agent" + CallRecorder.EXTENSION),
+                CallAudioPipeline.RECEIVE_SAMPLE_RATE, adpcm);
+        if (!callerRecorder.start()) Log.e(TAG, "Recording: " + callerRecorder.getLastError());
+        if (!agentRecorder.start()) Log.e(TAG, "Recording: " + agentRecorder.getLastError());
+        pipeline.setRecorders(callerRecorder, agentRecorder);
+    }
+
+    private void stopRecording() {
+        if (pipeline != null) pipeline.setRecorders(null, null);
+        for (CallRecorder recorder : new CallRecorder[] {callerRecorder, agentRecorder}) {
+            if (recorder == null) continue;
+            recorder.stop();
+            if (recorder.getLastError() != null) {
+                Log.e(TAG, "Recording " + recorder.getTarget().getName() + ": " + recorder.getLastError());
+            } else {
+                Log.d(TAG, "Saved " + recorder.getTarget().getName() + ": " + recorder.getRecordedMs()
+                        + " ms, dropped " + recorder.getDroppedBytes() + " bytes");
+            }
+        }
+    }
+
+    // Recordings still named *.wav.part were cut short by a crash or kill
+    private void repairRecordings() {
+        try {
+            int repaired = CallRecorder.repairAll(new File(appContext.getFilesDir(), RECORDINGS_DIR));
+            if (repaired > 0) Log.d(TAG, "Repaired " + repaired + " interrupted recordings");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to repair recordings: " + e.getMessage());
+        }
+    }
+}
@@ -5,11 +5,16 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.Manifest;
 import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
 import android.os.Build;
 import android.os.IBinder;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -18,6 +23,60 @@ public class CallCounterService extends Service {
     private static final int NOTIFICATION_ID = 1;
     private static final String CHANNEL_ID = "CallCounterChannel";
 
+    private MetricsServer metricsServer;
+    private ServiceWatchdog watchdog;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Count calls that rang while the process was dead, then follow CallLog changes
+        CallLogReconciler.getInstance(this).start();
+        // Warm the contact cache before the first ring needs it
+        ContactResolver.getInstance(this);
+        // Map prompts and finalize recordings a crash left open
+        CallAudioSession.getInstance(this);
+        // Start watching detection_config.json before the first notification arrives
+        DetectionConfigStore.getInstance(this);
+        // Resume spooled telemetry uploads
+        Telemetry.getInstance(this);
+        // adb-triggered soak runs, debuggable builds only
+        LoadHarness.registerDebugTrigger(this);
+        // Prometheus endpoint on 127.0.0.1, reached through adb forward
+        registerMetricGauges();
+        metricsServer = new MetricsServer(MetricsServer.PORT);
+        metricsServer.start();
+        if (metricsServer.getLastError() != null) {
+            Log.e("CallCounter", "Metrics server not started: " + metricsServer.getLastError());
+        }
+        // Rebinds or reactivates the detection services if they drop out
+        watchdog = new ServiceWatchdog(this);
+        watchdog.start();
+    }
+
+    // Queue depths and connection state, read on the scrape thread; all plain field reads
+    private void registerMetricGauges() {
+        CallJournal journal = CallJournal.getInstance(this);
+        TelemetryUploader uploader = Telemetry.getInstance(this).getUploader();
+        AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(this);
+        DetectionConfigStore configStore = DetectionConfigStore.getInstance(this);
+        Metrics.gauge("callcounter_journal_queue_tasks", "Call journal tasks queued or running",
+                journal::pendingTasks);
+        Metrics.gauge("callcounter_telemetry_spool_bytes", "Telemetry bytes waiting for upload",
+                uploader::getPendingBytes);
+        Metrics.gauge("callcounter_call_sessions_open", "Calls ringing or up in the session table",
+                detector::getOpenSessions);
+        Metrics.gauge("callcounter_accessibility_nodes_peak", "Most accessibility nodes held at once",
+                NodeArena::getPeakLiveNodes);
+        Metrics.gauge("callcounter_accessibility_nodes_leaked", "Accessibility nodes reclaimed after a scan",
+                NodeArena::getLeakedNodes);
+        Metrics.gauge("callcounter_notification_listener_connected", "1 if the notification listener is bound",
+                () -> WhatsAppCallDetector.connected != null ? 1 : 0);
+        Metrics.gauge("callcounter_accessibility_service_connected", "1 if the accessibility service is bound",
+                () -> WhatsAppAccessibilityService.connected != null ? 1 : 0);
+        Metrics.gauge("callcounter_detection_config_version", "Version of the detection config in use",
+                () -> configStore.get().version);
+    }
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d("CallCounter", "CallCounterService onStartCommand: action=" + (intent != null ? intent.getAction() : "null"));
@@ -43,7 +102,13 @@ public class CallCounterService extends Service {
                 .addAction(R.drawable.ic_stop, "Stop", pendingStopIntent)
                 .build();
 
-        startForeground(NOTIFICATION_ID, notification);
+        // Call audio needs the microphone type to capture in the background on API 34, but a
+        // type whose permission isn't granted makes startForeground throw, so add it only then
+        int types = ServiceInfo.FOREGROUND_SERVICE_TYPE_PHONE_CALL;
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED) {
+            types |= ServiceInfo.FOREGROUND_SERVICE_TYPE_MICROPHONE;
+        }
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, notification, types);
 
         return START_STICKY;
     }
@@ -69,6 +134,13 @@ public class CallCounterService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        CallLogReconciler.getInstance(this).stop();
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        if (watchdog != null) {
+            watchdog.stop();
+        }
         Log.w("CallCounter", "CallCounterService destroyed!");
         Toast.makeText(this, "CallCounterService was killed!", Toast.LENGTH_LONG).show();
     }
@@ -0,0 +1,267 @@
+package com.example.callcounter;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only export of the call journal. Two shapes, both keyset-paged on _id so memory stays
+ * flat however long the history is:
+ *
+ *   content://com.example.callcounter.events/events?after_id=0&limit=500
+ *       one page as a cursor; pass the last _id back as after_id for the next page
+ *   content://com.example.callcounter.events/export.csv (or export.ndjson)
+ *       the whole history streamed through a pipe, read page by page on a writer thread
+ *
+ * Both accept channel, since and until (epoch millis, until exclusive) query parameters.
+ * Callers need READ_CALL_EVENTS, except adb shell/root so `adb shell content` works.
+ */
+public class CallEventsProvider extends ContentProvider {
+
+    private static final String TAG = "CallCounter";
+
+    public static final String AUTHORITY = "com.example.callcounter.events";
+    public static final String PERMISSION_READ = "com.example.callcounter.permission.READ_CALL_EVENTS";
+
+    private static final int MATCH_EVENTS = 1;
+    private static final int MATCH_EXPORT_CSV = 2;
+    private static final int MATCH_EXPORT_NDJSON = 3;
+
+    private static final int DEFAULT_PAGE = 500;
+    private static final int MAX_PAGE = 5000;
+    // Rows per query while streaming; keeps each SQLite cursor window well under its 2 MB cap
+    private static final int EXPORT_PAGE = 1000;
+
+    private static final String[] COLUMNS = {
+            CallJournal.COLUMN_ID, CallJournal.COLUMN_TIMESTAMP, CallJournal.COLUMN_CHANNEL,
+            CallJournal.COLUMN_EVENT, CallJournal.COLUMN_NUMBER, CallJournal.COLUMN_SOURCE,
+            CallJournal.COLUMN_CALL_TYPE, CallJournal.COLUMN_DURATION};
+
+    private final UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
+
+    @Override
+    public boolean onCreate() {
+        matcher.addURI(AUTHORITY, "events", MATCH_EVENTS);
+        matcher.addURI(AUTHORITY, "export.csv", MATCH_EXPORT_CSV);
+        matcher.addURI(AUTHORITY, "export.ndjson", MATCH_EXPORT_NDJSON);
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        enforceReadPermission();
+        if (matcher.match(uri) != MATCH_EVENTS) {
+            throw new IllegalArgumentException("Unknown URI " + uri);
+        }
+        // Paging only works in _id order, and free-form SQL would bypass the column whitelist
+        if (selection != null || sortOrder != null) {
+            throw new IllegalArgumentException("Use query parameters (channel, since, until) instead of selection/sortOrder");
+        }
+        String[] columns = COLUMNS;
+        if (projection != null) {
+            List<String> allowed = Arrays.asList(COLUMNS);
+            for (String column : projection) {
+                if (!allowed.contains(column)) {
+                    throw new IllegalArgumentException("Unknown column " + column);
+                }
+            }
+            columns = projection;
+        }
+        int limit = (int) Math.min(longParam(uri, "limit", DEFAULT_PAGE), MAX_PAGE);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return journal().queryEventPage(columns, longParam(uri, "after_id", 0), uri.getQueryParameter("channel"),
+                longParam(uri, "since", 0), longParam(uri, "until", Long.MAX_VALUE), limit);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        switch (matcher.match(uri)) {
+            case MATCH_EVENTS:
+                return "vnd.android.cursor.dir/vnd." + AUTHORITY;
+            case MATCH_EXPORT_CSV:
+                return "text/csv";
+            case MATCH_EXPORT_NDJSON:
+                return "application/x-ndjson";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        enforceReadPermission();
+        int match = matcher.match(uri);
+        if (match != MATCH_EXPORT_CSV && match != MATCH_EXPORT_NDJSON) {
+            throw new FileNotFoundException("Unknown URI " + uri);
+        }
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Export is read-only");
+        }
+        // Validate parameters here so a bad request fails the open instead of truncating the stream
+        final boolean csv = match == MATCH_EXPORT_CSV;
+        final String channel = uri.getQueryParameter("channel");
+        final long since;
+        final long until;
+        try {
+            since = longParam(uri, "since", 0);
+            until = longParam(uri, "until", Long.MAX_VALUE);
+        } catch (IllegalArgumentException e) {
+            throw new FileNotFoundException(e.getMessage());
+        }
+
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Could not create pipe: " + e.getMessage());
+        }
+        final CallJournal journal = journal();
+        Thread writer = new Thread(() -> {
+            long rows = 0;
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]), Charset.forName("UTF-8")), 64 * 1024)) {
+                if (csv) writeCsvHeader(out);
+                long afterId = 0;
+                while (true) {
+                    int count = 0;
+                    try (Cursor cursor = journal.queryEventPage(COLUMNS, afterId, channel, since, until, EXPORT_PAGE)) {
+                        while (cursor.moveToNext()) {
+                            if (csv) writeCsvRow(out, cursor); else writeJsonRow(out, cursor);
+                            afterId = cursor.getLong(0);
+                            count++;
+                        }
+                    }
+                    rows += count;
+                    if (count < EXPORT_PAGE) break;
+                }
+                Log.d(TAG, "Exported " + rows + " call events");
+            } catch (IOException e) {
+                // Usually EPIPE: the reader (adb, a script hitting Ctrl-C) went away early
+                Log.w(TAG, "Call events export stopped after " + rows + " rows: " + e.getMessage());
+            } catch (Exception e) {
+                Log.e(TAG, "Call events export failed: " + e.getMessage());
+            }
+        }, "call-events-export");
+        writer.start();
+        return pipe[0];
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Call events are read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Call events are read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Call events are read-only");
+    }
+
+    private CallJournal journal() {
+        return CallJournal.getInstance(getContext());
+    }
+
+    // Enforced here rather than as android:readPermission, which would also shut out adb shell
+    private void enforceReadPermission() {
+        int uid = Binder.getCallingUid();
+        if (uid == Process.myUid() || uid == Process.SHELL_UID || uid == Process.ROOT_UID) return;
+        if (getContext().checkCallingPermission(PERMISSION_READ) != PackageManager.PERMISSION_GRANTED) {
+            throw new SecurityException("Reading call events requires " + PERMISSION_READ);
+        }
+    }
+
+    private static long longParam(Uri uri, String name, long defaultValue) {
+        String value = uri.getQueryParameter(name);
+        if (value == null || value.isEmpty()) return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + value);
+        }
+    }
+
+    private static void writeCsvHeader(Writer out) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) out.write(',');
+            out.write(COLUMNS[i]);
+        }
+        out.write('\n');
+    }
+
+    private static void writeCsvRow(Writer out, Cursor cursor) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) out.write(',');
+            if (cursor.isNull(i)) continue;
+            String value = cursor.getString(i);
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                out.write(value);
+            } else {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            }
+        }
+        out.write('\n');
+    }
+
+    private static void writeJsonRow(Writer out, Cursor cursor) throws IOException {
+        out.write('{');
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) out.write(',');
+            out.write('"');
+            out.write(COLUMNS[i]);
+            out.write("\":");
+            if (cursor.isNull(i)) {
+                out.write("null");
+            } else if (cursor.getType(i) == Cursor.FIELD_TYPE_INTEGER) {
+                out.write(Long.toString(cursor.getLong(i)));
+            } else {
+                writeJsonString(out, cursor.getString(i));
+            }
+        }
+        out.write("}\n");
+    }
+
+    private static void writeJsonString(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
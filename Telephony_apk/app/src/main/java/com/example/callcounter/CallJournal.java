@@ -0,0 +1,242 @@
+package com.example.callcounter;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append-only journal of call events. Live detections (CallReceiver, WhatsAppCallDetector)
+ * and CallLog reconciliation both write here; all writes go through a single background
+ * thread so callers on the ring path never touch the disk.
+ */
+public class CallJournal extends SQLiteOpenHelper {
+
+    private static final String TAG = "CallCounter";
+    private static final String DATABASE_NAME = "call_journal.db";
+    private static final int DATABASE_VERSION = 1;
+
+    static final String TABLE_EVENTS = "call_events";
+    static final String COLUMN_ID = "_id";
+    static final String COLUMN_TIMESTAMP = "timestamp";
+    static final String COLUMN_CHANNEL = "channel";
+    static final String COLUMN_EVENT = "event";
+    static final String COLUMN_NUMBER = "number";
+    static final String COLUMN_SOURCE = "source";
+    static final String COLUMN_SOURCE_KEY = "source_key";
+    static final String COLUMN_CALL_TYPE = "call_type";
+    static final String COLUMN_DURATION = "duration";
+
+    public static final String CHANNEL_CELLULAR = "cellular";
+    public static final String CHANNEL_WHATSAPP = "whatsapp";
+    public static final String CHANNEL_WHATSAPP_BUSINESS = "whatsapp_business";
+    public static final String CHANNEL_TELEGRAM = "telegram";
+    public static final String CHANNEL_SIGNAL = "signal";
+
+    public static final String EVENT_RINGING = "ringing";
+    public static final String EVENT_ANSWERED = "answered";
+
+    static final String SOURCE_LIVE = "live";
+    static final String SOURCE_CALL_LOG = "call_log";
+
+    // A CallLog row is matched to a live ringing event if their timestamps are this close
+    static final long LIVE_MATCH_WINDOW_MS = 15000;
+
+    private static CallJournal instance;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
+    public static synchronized CallJournal getInstance(Context context) {
+        if (instance == null) {
+            instance = new CallJournal(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CallJournal(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    static final String CREATE_EVENTS_SQL = "CREATE TABLE " + TABLE_EVENTS + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+            + COLUMN_CHANNEL + " TEXT NOT NULL, "
+            + COLUMN_EVENT + " TEXT NOT NULL, "
+            + COLUMN_NUMBER + " TEXT, "
+            + COLUMN_SOURCE + " TEXT NOT NULL, "
+            + COLUMN_SOURCE_KEY + " TEXT UNIQUE, "
+            + COLUMN_CALL_TYPE + " INTEGER, "
+            + COLUMN_DURATION + " INTEGER)";
+    static final String CREATE_EVENTS_INDEX_SQL = "CREATE INDEX idx_events_channel_time ON " + TABLE_EVENTS
+            + " (" + COLUMN_CHANNEL + ", " + COLUMN_TIMESTAMP + ")";
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(CREATE_EVENTS_SQL);
+        db.execSQL(CREATE_EVENTS_INDEX_SQL);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only one schema version so far
+    }
+
+    // Runs a task on the journal's writer thread
+    void execute(Runnable task) {
+        pendingTasks.incrementAndGet();
+        writer.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                Log.e(TAG, "CallJournal task failed: " + e.getMessage());
+            } finally {
+                pendingTasks.decrementAndGet();
+            }
+        });
+    }
+
+    // Tasks queued or running on the writer thread
+    int pendingTasks() {
+        return pendingTasks.get();
+    }
+
+    public void recordLiveEvent(String channel, String event, String number) {
+        final long timestamp = System.currentTimeMillis();
+        execute(() -> {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_TIMESTAMP, timestamp);
+            values.put(COLUMN_CHANNEL, channel);
+            values.put(COLUMN_EVENT, event);
+            values.put(COLUMN_NUMBER, number);
+            values.put(COLUMN_SOURCE, SOURCE_LIVE);
+            getWritableDatabase().insert(TABLE_EVENTS, null, values);
+        });
+    }
+
+    /**
+     * Events with an id above afterId, oldest first, without phone numbers. Columns: id,
+     * timestamp, channel, event, source, call_type, duration.
+     */
+    Cursor queryEventsAfter(long afterId, int limit) {
+        return getReadableDatabase().query(TABLE_EVENTS,
+                new String[]{COLUMN_ID, COLUMN_TIMESTAMP, COLUMN_CHANNEL, COLUMN_EVENT, COLUMN_SOURCE,
+                        COLUMN_CALL_TYPE, COLUMN_DURATION},
+                COLUMN_ID + " > ?", new String[]{String.valueOf(afterId)},
+                null, null, COLUMN_ID, String.valueOf(limit));
+    }
+
+    /**
+     * One keyset page for CallEventsProvider: rows with an id above afterId, oldest first,
+     * optionally narrowed to a channel (null for all) and a timestamp range [since, until).
+     * Pass 0 / Long.MAX_VALUE to leave the range open.
+     */
+    Cursor queryEventPage(String[] columns, long afterId, String channel, long since, long until, int limit) {
+        StringBuilder selection = new StringBuilder(COLUMN_ID + " > ?");
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(afterId));
+        if (channel != null) {
+            selection.append(" AND ").append(COLUMN_CHANNEL).append(" = ?");
+            args.add(channel);
+        }
+        if (since > 0) {
+            selection.append(" AND ").append(COLUMN_TIMESTAMP).append(" >= ?");
+            args.add(String.valueOf(since));
+        }
+        if (until < Long.MAX_VALUE) {
+            selection.append(" AND ").append(COLUMN_TIMESTAMP).append(" < ?");
+            args.add(String.valueOf(until));
+        }
+        return getReadableDatabase().query(TABLE_EVENTS, columns, selection.toString(),
+                args.toArray(new String[0]), null, null, COLUMN_ID, String.valueOf(limit));
+    }
+
+    /**
+     * Merges one incoming CallLog row. If a live ringing event was already journaled for the
+     * same call it is linked to the row; otherwise a new event is inserted. Safe to call more
+     * than once for the same row.
+     *
+     * @return true if the call had not been seen before and was added to the journal
+     */
+    boolean mergeCallLogEntry(long callLogId, long date, String number, int callType, long duration) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            boolean added = mergeCallLogEntry(new Statements() {
+                @Override
+                public int update(String sql, String[] args) {
+                    try (SQLiteStatement statement = compile(db, sql, args)) {
+                        return statement.executeUpdateDelete();
+                    }
+                }
+
+                @Override
+                public long insert(String sql, String[] args) {
+                    try (SQLiteStatement statement = compile(db, sql, args)) {
+                        return statement.executeInsert();
+                    }
+                }
+            }, callLogId, date, number, callType, duration);
+            db.setTransactionSuccessful();
+            return added;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Runs the merge's statements; SQLiteDatabase in the app, any SQLite binding in tests. */
+    interface Statements {
+        /** Runs an UPDATE and returns the number of rows changed. */
+        int update(String sql, String[] args);
+
+        /** Runs an INSERT and returns the new row id, or -1 if it was ignored. */
+        long insert(String sql, String[] args);
+    }
+
+    // Links the row to an unlinked live ring close to its date, unless the row is already merged
+    static final String MERGE_LINK_SQL = "UPDATE " + TABLE_EVENTS + " SET "
+            + COLUMN_SOURCE_KEY + " = ?, " + COLUMN_CALL_TYPE + " = ?, " + COLUMN_DURATION + " = ?"
+            + " WHERE " + COLUMN_ID + " = (SELECT " + COLUMN_ID + " FROM " + TABLE_EVENTS
+            + " WHERE " + COLUMN_CHANNEL + " = ? AND " + COLUMN_EVENT + " = ? AND "
+            + COLUMN_SOURCE + " = ? AND " + COLUMN_SOURCE_KEY + " IS NULL AND "
+            + COLUMN_TIMESTAMP + " BETWEEN ? AND ? ORDER BY " + COLUMN_TIMESTAMP + " LIMIT 1)"
+            + " AND NOT EXISTS (SELECT 1 FROM " + TABLE_EVENTS + " WHERE " + COLUMN_SOURCE_KEY + " = ?)";
+    // The UNIQUE source key makes a second merge of the same row a no-op
+    static final String MERGE_INSERT_SQL = "INSERT OR IGNORE INTO " + TABLE_EVENTS + " ("
+            + COLUMN_SOURCE_KEY + ", " + COLUMN_CALL_TYPE + ", " + COLUMN_DURATION + ", "
+            + COLUMN_TIMESTAMP + ", " + COLUMN_CHANNEL + ", " + COLUMN_EVENT + ", "
+            + COLUMN_NUMBER + ", " + COLUMN_SOURCE + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** The merge itself, run inside the caller's transaction. */
+    static boolean mergeCallLogEntry(Statements db, long callLogId, long date, String number,
+                                     int callType, long duration) {
+        String sourceKey = "calllog:" + callLogId + ":" + date;
+        int linked = db.update(MERGE_LINK_SQL, new String[]{sourceKey, String.valueOf(callType),
+                String.valueOf(duration), CHANNEL_CELLULAR, EVENT_RINGING, SOURCE_LIVE,
+                String.valueOf(date - LIVE_MATCH_WINDOW_MS), String.valueOf(date + LIVE_MATCH_WINDOW_MS), sourceKey});
+        if (linked > 0) return false;
+        return db.insert(MERGE_INSERT_SQL, new String[]{sourceKey, String.valueOf(callType),
+                String.valueOf(duration), String.valueOf(date), CHANNEL_CELLULAR, EVENT_RINGING,
+                number, SOURCE_CALL_LOG}) != -1;
+    }
+
+    private static SQLiteStatement compile(SQLiteDatabase db, String sql, String[] args) {
+        SQLiteStatement statement = db.compileStatement(sql);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] == null) {
+                statement.bindNull(i + 1);
+            } else {
+                statement.bindString(i + 1, args[i]);
+            }
+        }
+        return statement;
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.callcounter;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.CallLog;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks up incoming calls that CallReceiver never saw (e.g. the process was dead) by reading
+ * CallLog.Calls incrementally from a persisted _ID watermark. Runs on the journal's writer
+ * thread, one bounded page at a time, and is triggered by a CallLog ContentObserver instead of
+ * periodic full scans.
+ *
+ * The watermark is the row _ID, not DATE: CallLog ids are assigned in insert order, while DATE
+ * is the call's start time. With call waiting the longer call's row is written after a shorter
+ * overlapping call's row but carries an earlier DATE, so a DATE watermark would skip it.
+ */
+public class CallLogReconciler {
+
+    private static final String TAG = "CallCounter";
+    private static final String PREFS_NAME = "CallCounterPrefs";
+    private static final String KEY_WATERMARK_ID = "calllog_watermark_rowid";
+
+    private static final int PAGE_SIZE = 100;
+    private static final long OBSERVER_DEBOUNCE_MS = 2000;
+
+    static final String[] PROJECTION = {
+        CallLog.Calls._ID,
+        CallLog.Calls.DATE,
+        CallLog.Calls.NUMBER,
+        CallLog.Calls.TYPE,
+        CallLog.Calls.DURATION
+    };
+
+    static final String SELECTION = CallLog.Calls._ID + " > ? AND "
+            + CallLog.Calls.TYPE + " IN (" + CallLog.Calls.INCOMING_TYPE + ", " + CallLog.Calls.MISSED_TYPE + ", "
+            + CallLog.Calls.REJECTED_TYPE + ", " + CallLog.Calls.BLOCKED_TYPE + ", "
+            + CallLog.Calls.ANSWERED_EXTERNALLY_TYPE + ")";
+    static final String SORT_ORDER = CallLog.Calls._ID + " ASC";
+
+    /** One CallLog row, as far as reconciliation cares. */
+    static final class Entry {
+        final long id;
+        final long date;
+        final String number;
+        final int type;
+        final long duration;
+
+        Entry(long id, long date, String number, int type, long duration) {
+            this.id = id;
+            this.date = date;
+            this.number = number;
+            this.type = type;
+            this.duration = duration;
+        }
+    }
+
+    /** Incoming-call rows with _ID above afterId, in _ID order, at most limit of them. */
+    interface EntrySource {
+        List<Entry> page(long afterId, int limit);
+    }
+
+    interface EntrySink {
+        /** Merges one row; returns true if it was a call the journal didn't have yet. */
+        boolean merge(Entry entry);
+
+        /** Called after each page with the watermark to persist. */
+        void pageDone(long watermarkId);
+    }
+
+    static final class Result {
+        int scanned;
+        int added;
+        long watermarkId;
+    }
+
+    private static CallLogReconciler instance;
+
+    private final Context appContext;
+    private final CallJournal journal;
+    private final SharedPreferences prefs;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable reconcileRunnable = this::requestReconcile;
+    private ContentObserver callLogObserver;
+
+    public static synchronized CallLogReconciler getInstance(Context context) {
+        if (instance == null) {
+            instance = new CallLogReconciler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CallLogReconciler(Context appContext) {
+        this.appContext = appContext;
+        this.journal = CallJournal.getInstance(appContext);
+        this.prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public void start() {
+        if (callLogObserver != null) return;
+        callLogObserver = new ContentObserver(mainHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                // CallLog fires several changes per call; coalesce them into one pass
+                mainHandler.removeCallbacks(reconcileRunnable);
+                mainHandler.postDelayed(reconcileRunnable, OBSERVER_DEBOUNCE_MS);
+            }
+        };
+        try {
+            appContext.getContentResolver().registerContentObserver(CallLog.Calls.CONTENT_URI, true, callLogObserver);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register CallLog observer: " + e.getMessage());
+        }
+        requestReconcile();
+    }
+
+    public void stop() {
+        mainHandler.removeCallbacks(reconcileRunnable);
+        if (callLogObserver != null) {
+            appContext.getContentResolver().unregisterContentObserver(callLogObserver);
+            callLogObserver = null;
+        }
+    }
+
+    public void requestReconcile() {
+        journal.execute(this::reconcile);
+    }
+
+    private void reconcile() {
+        Result result;
+        try {
+            if (!prefs.contains(KEY_WATERMARK_ID)) {
+                initWatermark();
+            }
+            result = drain(this::queryPage, prefs.getLong(KEY_WATERMARK_ID, 0), PAGE_SIZE, new EntrySink() {
+                @Override
+                public boolean merge(Entry entry) {
+                    return journal.mergeCallLogEntry(entry.id, entry.date, entry.number, entry.type, entry.duration);
+                }
+
+                @Override
+                public void pageDone(long watermarkId) {
+                    // Persist per page so a crash mid-scan resumes where it stopped
+                    prefs.edit().putLong(KEY_WATERMARK_ID, watermarkId).apply();
+                }
+            });
+        } catch (SecurityException e) {
+            Log.w(TAG, "READ_CALL_LOG not granted, skipping reconciliation");
+            return;
+        }
+
+        if (result.scanned > 0) {
+            Log.d(TAG, "CallLog reconciled: scanned=" + result.scanned + " added=" + result.added);
+        }
+        if (result.added > 0) {
+            CallReceiver.addToCallCount(appContext, result.added);
+        }
+    }
+
+    /**
+     * Merges every row after watermarkId into sink, page by page, and returns the counts and
+     * the new watermark. Pure paging logic, kept apart from the provider so it can be tested.
+     */
+    static Result drain(EntrySource source, long watermarkId, int pageSize, EntrySink sink) {
+        Result result = new Result();
+        result.watermarkId = watermarkId;
+        while (true) {
+            List<Entry> page = source.page(result.watermarkId, pageSize);
+            for (Entry entry : page) {
+                if (sink.merge(entry)) result.added++;
+                result.watermarkId = Math.max(result.watermarkId, entry.id);
+            }
+            result.scanned += page.size();
+            if (!page.isEmpty()) sink.pageDone(result.watermarkId);
+            if (page.size() < pageSize) return result;
+        }
+    }
+
+    // First run: only calls from now on are ours to count, not the whole history
+    private void initWatermark() {
+        long watermarkId;
+        try (Cursor cursor = query(new String[]{CallLog.Calls._ID}, null, null, CallLog.Calls._ID + " DESC", 1)) {
+            watermarkId = cursor != null && cursor.moveToNext() ? cursor.getLong(0) : 0;
+        }
+        prefs.edit().putLong(KEY_WATERMARK_ID, watermarkId).apply();
+        Log.d(TAG, "CallLog watermark initialized at _ID " + watermarkId);
+    }
+
+    private List<Entry> queryPage(long afterId, int limit) {
+        List<Entry> page = new ArrayList<>(limit);
+        try (Cursor cursor = query(PROJECTION, SELECTION, new String[]{String.valueOf(afterId)}, SORT_ORDER, limit)) {
+            if (cursor == null) return page;
+            int idIndex = cursor.getColumnIndexOrThrow(CallLog.Calls._ID);
+            int dateIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.DATE);
+            int numberIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.NUMBER);
+            int typeIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.TYPE);
+            int durationIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.DURATION);
+            while (cursor.moveToNext()) {
+                page.add(new Entry(cursor.getLong(idIndex), cursor.getLong(dateIndex), cursor.getString(numberIndex),
+                        cursor.getInt(typeIndex), cursor.getLong(durationIndex)));
+            }
+        }
+        return page;
+    }
+
+    private Cursor query(String[] projection, String selection, String[] selectionArgs, String sortOrder, int limit) {
+        ContentResolver resolver = appContext.getContentResolver();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortOrder);
+            queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+            return resolver.query(CallLog.Calls.CONTENT_URI, projection, queryArgs, null);
+        }
+        // Pre-O the CallLog provider accepts a LIMIT clause appended to the sort order
+        return resolver.query(CallLog.Calls.CONTENT_URI, projection, selection, selectionArgs,
+                sortOrder + " LIMIT " + limit);
+    }
+}
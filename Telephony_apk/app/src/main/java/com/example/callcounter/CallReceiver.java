@@ -6,6 +6,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.telecom.TelecomManager;
 import android.telephony.TelephonyManager;
 import android.util.Log;
@@ -15,27 +18,125 @@ import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 public class CallReceiver extends BroadcastReceiver {
 
+    // How long a number-less RINGING waits for its numbered twin before deciding without it
+    private static final long NUMBER_WAIT_MS = 2000;
+
     private static int callCount = 0;
+    // Session rung by a number-less broadcast, waiting for the numbered one; guarded by CallReceiver.class
+    private static CallSessionTable.CallSession awaitingNumber;
+    private static final Handler handler = new Handler(Looper.getMainLooper());
 
     @Override
     public void onReceive(Context context, Intent intent) {
         String state = intent.getStringExtra(TelephonyManager.EXTRA_STATE);
         Log.d("CallCounter", "CallReceiver onReceive: state=" + state);
         if (state != null && state.equals(TelephonyManager.EXTRA_STATE_RINGING)) {
-            // --- EXISTING LOGIC ---
-            callCount++;
-            Log.d("CallCounter", "Incremented callCount: " + callCount);
-            // Send a broadcast to update the UI
-            Intent uiIntent = new Intent("UPDATE_UI");
-            uiIntent.putExtra("call_count", callCount);
-            LocalBroadcastManager.getInstance(context).sendBroadcast(uiIntent);
+            String incomingNumber = intent.getStringExtra(TelephonyManager.EXTRA_INCOMING_NUMBER);
+            AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(context);
+            CallSessionTable.CallSession session;
+            synchronized (CallReceiver.class) {
+                session = ringingSession(detector);
+                if (session == null) {
+                    // Android sends RINGING twice (with and without the number) for the same call
+                    session = awaitingNumber;
+                    if (session == null || incomingNumber == null) {
+                        Log.d("CallCounter", "Cellular call already ringing, ignoring repeat broadcast");
+                        return;
+                    }
+                    awaitingNumber = null;
+                    handler.removeCallbacksAndMessages(null);
+                } else {
+                    // --- EXISTING LOGIC ---
+                    addToCallCount(context, 1);
+                    if (incomingNumber == null && expectsNumberedBroadcast(context)) {
+                        // Deciding now would skip number rules; the numbered broadcast follows
+                        awaitingNumber = session;
+                        final Context appContext = context.getApplicationContext();
+                        final CallSessionTable.CallSession waiting = session;
+                        handler.postDelayed(() -> {
+                            synchronized (CallReceiver.class) {
+                                if (awaitingNumber != waiting) return;
+                                awaitingNumber = null;
+                            }
+                            Log.w("CallCounter", "No numbered RINGING broadcast, deciding without the number");
+                            onCallerKnown(appContext, waiting, null);
+                        }, NUMBER_WAIT_MS);
+                        return;
+                    }
+                }
+            }
+            onCallerKnown(context, session, incomingNumber);
+        } else if (TelephonyManager.EXTRA_STATE_OFFHOOK.equals(state)) {
+            AnswerConfirmationDetector.getInstance(context)
+                    .confirm(CallJournal.CHANNEL_CELLULAR, AnswerConfirmationDetector.SIGNAL_OFFHOOK);
+        } else if (TelephonyManager.EXTRA_STATE_IDLE.equals(state)) {
+            synchronized (CallReceiver.class) {
+                awaitingNumber = null;
+                handler.removeCallbacksAndMessages(null);
+            }
+            // IDLE means no call at all, so every cellular session (call waiting included) is over
+            AnswerConfirmationDetector.getInstance(context).onCallEnded(CallJournal.CHANNEL_CELLULAR);
+        }
+    }
+
+    // Journals the ring and, unless caller rules deny it, starts answering
+    private void onCallerKnown(Context context, CallSessionTable.CallSession session, String incomingNumber) {
+        CallJournal.getInstance(context).recordLiveEvent(CallJournal.CHANNEL_CELLULAR,
+                CallJournal.EVENT_RINGING, incomingNumber);
+
+        // --- NEW AUTO-ANSWER LOGIC ---
+        // Name rules apply to cellular callers through their saved contact
+        ContactResolver.Contact contact = incomingNumber != null
+                ? ContactResolver.getInstance(context).lookupByNumber(incomingNumber) : null;
+        CallerRule.Action decision = CallerRuleEngine.getInstance(context)
+                .evaluate(CallJournal.CHANNEL_CELLULAR, incomingNumber, contact != null ? contact.displayName : null);
+        if (decision == CallerRule.Action.DENY) {
+            Log.d("CallCounter", "Caller rules deny auto-answer for this call.");
+            Metrics.CALLS_SKIPPED.inc(CallJournal.CHANNEL_CELLULAR, "rules");
+            return;
+        }
+        // Re-sends the answer if no OFFHOOK follows
+        final Context appContext = context.getApplicationContext();
+        if (AnswerConfirmationDetector.getInstance(context).beginAttempt(session, () -> answerPhoneCall(appContext, session))) {
+            answerPhoneCall(context, session);
+        }
+    }
+
+    // From Android 9 apps holding READ_CALL_LOG get RINGING twice, first without the number
+    private static boolean expectsNumberedBroadcast(Context context) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                && ActivityCompat.checkSelfPermission(context, Manifest.permission.READ_CALL_LOG)
+                        == PackageManager.PERMISSION_GRANTED;
+    }
+
+    // A new session per ring, unless a cellular call is still ringing (a repeat broadcast). A
+    // ring while the only cellular call is connected is call waiting, i.e. a second call
+    private static CallSessionTable.CallSession ringingSession(AnswerConfirmationDetector detector) {
+        int unanswered = (1 << CallSessionTable.STATE_RINGING) | (1 << CallSessionTable.STATE_ANSWERING);
+        synchronized (CallReceiver.class) {
+            detector.dropStaleSessions();
+            if (detector.hasSession(CallJournal.CHANNEL_CELLULAR, unanswered)) return null;
+            return detector.onRinging(CallJournal.CHANNEL_CELLULAR + ":" + SystemClock.elapsedRealtime(),
+                    CallJournal.CHANNEL_CELLULAR);
+        }
+    }
 
-            // --- NEW AUTO-ANSWER LOGIC ---
-            answerPhoneCall(context);
+    // Also called from CallLogReconciler for calls that rang while we weren't running
+    static void addToCallCount(Context context, int delta) {
+        int count;
+        synchronized (CallReceiver.class) {
+            callCount += delta;
+            count = callCount;
         }
+        Log.d("CallCounter", "Incremented callCount: " + count);
+        // Send a broadcast to update the UI
+        Intent uiIntent = new Intent("UPDATE_UI");
+        uiIntent.putExtra("call_count", count);
+        LocalBroadcastManager.getInstance(context).sendBroadcast(uiIntent);
     }
 
-    private void answerPhoneCall(Context context) {
+    private void answerPhoneCall(Context context, CallSessionTable.CallSession session) {
+        if (LoadHarness.interceptAnswer(CallJournal.CHANNEL_CELLULAR)) return;
         // TelecomManager is available from API 21 (Lollipop)
         // acceptRingingCall() requires API 26 (Oreo)
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -55,8 +156,10 @@ public class CallReceiver extends BroadcastReceiver {
                 Log.d("CallCounter", "Attempting to answer call...");
                 telecomManager.acceptRingingCall();
                 Log.d("CallCounter", "Call answered successfully via TelecomManager.");
+                AnswerConfirmationDetector.getInstance(context).onStrategy(session, "telecom", true);
             } catch (Exception e) {
                 Log.e("CallCounter", "Error answering call: " + e.getMessage());
+                AnswerConfirmationDetector.getInstance(context).onStrategy(session, "telecom", false);
             }
         } else {
             Log.e("CallCounter", "Device API level is below Oreo (API 26). Cannot auto-answer phone call.");
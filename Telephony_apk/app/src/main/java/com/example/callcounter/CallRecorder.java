@@ -0,0 +1,416 @@
+package com.example.callcounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records one mono 16-bit PCM stream of a call to a WAV file. The audio thread hands PCM over
+ * through a lock-free PcmRingBuffer and never blocks; a writer thread drains it, optionally
+ * IMA-ADPCM encodes it (about 4x smaller), and writes it with FileChannel in 64 KB chunks at
+ * 4 KB-aligned file offsets. The header sits in a 4 KB region padded with a JUNK chunk so the
+ * data starts aligned, and is rewritten and synced every couple of seconds. While recording the
+ * file is named *.wav.part; stop() finalizes and renames it, and repairAll() fixes up parts
+ * left behind by a crash. Like CallAudioPipeline this class stays free of android.*; owners log
+ * getLastError().
+ */
+public class CallRecorder {
+
+    public static final String EXTENSION = ".wav";
+    public static final String PARTIAL_EXTENSION = ".wav.part";
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_IMA_ADPCM = 0x11;
+    private static final int DATA_OFFSET = 4096;
+    private static final int WRITE_CHUNK_BYTES = 64 * 1024;
+    // ~2.7 s at 24 kHz before the audio thread has to drop
+    private static final int QUEUE_BYTES = 128 * 1024;
+    private static final long HEADER_INTERVAL_NS = 2_000_000_000L;
+    private static final long IDLE_PARK_NS = 20_000_000L;
+
+    private static final int[] STEP_TABLE = {
+        7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+        50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+        337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+        2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+        15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+    private static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8};
+
+    private final File target;
+    private final File partial;
+    private final int sampleRate;
+    private final boolean adpcm;
+    private final int blockAlign;
+    private final int samplesPerBlock;
+
+    private final PcmRingBuffer queue = new PcmRingBuffer(QUEUE_BYTES);
+    // Writer thread only
+    private final ByteBuffer drain = ByteBuffer.allocateDirect(8192).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(WRITE_CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer header = ByteBuffer.allocate(DATA_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+    private final short[] block;
+    private int blockSamples;
+    private int adpcmIndex;
+    private long alignedOffset = DATA_OFFSET; // file offset of out[0]
+    private long encodedSamples;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private volatile boolean running;
+    private Thread writerThread;
+
+    private volatile long droppedBytes; // audio thread
+    private volatile long recordedSamples; // writer thread
+    private volatile String lastError;
+
+    /** target is the final .wav path; the file is written as target + ".part" until stop(). */
+    public CallRecorder(File target, int sampleRate, boolean adpcm) {
+        this.target = target;
+        this.partial = new File(target.getPath() + ".part");
+        this.sampleRate = sampleRate;
+        this.adpcm = adpcm;
+        if (adpcm) {
+            blockAlign = sampleRate <= 11025 ? 256 : sampleRate <= 22050 ? 512 : 1024;
+            samplesPerBlock = (blockAlign - 4) * 2 + 1;
+            block = new short[samplesPerBlock];
+        } else {
+            blockAlign = CallAudioPipeline.BYTES_PER_FRAME;
+            samplesPerBlock = 1;
+            block = null;
+        }
+    }
+
+    public synchronized boolean start() {
+        if (running) return true;
+        try {
+            file = new RandomAccessFile(partial, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+            writeHeader(0);
+        } catch (IOException e) {
+            lastError = "Could not open " + partial.getName() + ": " + e.getMessage();
+            closeQuietly();
+            return false;
+        }
+        running = true;
+        writerThread = new Thread(this::writerLoop, "call-recorder-" + target.getName());
+        writerThread.start();
+        return true;
+    }
+
+    /** Drains what is queued, finalizes the header and renames the .part file to the target. */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        if (!partial.renameTo(target)) {
+            lastError = "Could not rename " + partial.getName();
+        }
+    }
+
+    /**
+     * Audio thread: queues bytes from src's position without blocking. src's position and limit
+     * are left untouched. Returns bytes queued; anything that doesn't fit is dropped and counted.
+     */
+    public int offer(ByteBuffer src, int bytes) {
+        if (!running) return 0;
+        int position = src.position();
+        int limit = src.limit();
+        src.limit(position + bytes);
+        int written = queue.write(src);
+        src.limit(limit).position(position);
+        if (written < bytes) {
+            droppedBytes += bytes - written;
+        }
+        return written;
+    }
+
+    public File getTarget() {
+        return target;
+    }
+
+    public boolean isAdpcm() {
+        return adpcm;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public long getRecordedMs() {
+        return recordedSamples * 1000 / sampleRate;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    private void writerLoop() {
+        long nextHeader = System.nanoTime() + HEADER_INTERVAL_NS;
+        try {
+            while (true) {
+                // Read the flag first so a stop() can't slip between the drain and the check
+                boolean stopping = !running;
+                drain.clear();
+                int read = queue.read(drain);
+                if (read > 0) {
+                    drain.flip();
+                    if (adpcm) {
+                        appendAdpcm(drain);
+                    } else {
+                        appendPcm(drain);
+                    }
+                } else if (stopping) {
+                    break;
+                }
+                long now = System.nanoTime();
+                if (now >= nextHeader) {
+                    // Put everything written so far on disk so a crash loses at most one interval
+                    flushPartialChunk();
+                    writeHeader(dataBytes());
+                    channel.force(false);
+                    nextHeader = now + HEADER_INTERVAL_NS;
+                }
+                if (read == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NS);
+                }
+            }
+            if (adpcm && blockSamples > 0) {
+                encodeBlock();
+            }
+            flushPartialChunk();
+            long dataBytes = dataBytes();
+            channel.truncate(DATA_OFFSET + dataBytes);
+            writeHeader(dataBytes);
+            channel.force(true);
+        } catch (IOException e) {
+            lastError = "Recording write failed: " + e.getMessage();
+            running = false;
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    private void appendPcm(ByteBuffer src) throws IOException {
+        recordedSamples += src.remaining() / CallAudioPipeline.BYTES_PER_FRAME;
+        while (src.hasRemaining()) {
+            int count = Math.min(src.remaining(), out.remaining());
+            int oldLimit = src.limit();
+            src.limit(src.position() + count);
+            out.put(src);
+            src.limit(oldLimit);
+            if (!out.hasRemaining()) writeFullChunk();
+        }
+    }
+
+    private void appendAdpcm(ByteBuffer src) throws IOException {
+        while (src.remaining() >= 2) {
+            block[blockSamples++] = src.getShort();
+            if (blockSamples == samplesPerBlock) encodeBlock();
+        }
+        recordedSamples = encodedSamples + blockSamples;
+    }
+
+    // Encodes block[0..blockSamples) as one IMA-ADPCM block; a short final block is zero-padded
+    private void encodeBlock() throws IOException {
+        if (out.remaining() < blockAlign) writeFullChunk();
+        int base = out.position();
+        int predictor = block[0];
+        int index = adpcmIndex;
+        out.putShort((short) predictor);
+        out.put((byte) index);
+        out.put((byte) 0);
+        int packed = 0;
+        for (int i = 1; i < samplesPerBlock; i++) {
+            int nibble = 0;
+            if (i < blockSamples) {
+                int step = STEP_TABLE[index];
+                int diff = block[i] - predictor;
+                if (diff < 0) {
+                    nibble = 8;
+                    diff = -diff;
+                }
+                int delta = step >> 3;
+                if (diff >= step) {
+                    nibble |= 4;
+                    diff -= step;
+                    delta += step;
+                }
+                step >>= 1;
+                if (diff >= step) {
+                    nibble |= 2;
+                    diff -= step;
+                    delta += step;
+                }
+                step >>= 1;
+                if (diff >= step) {
+                    nibble |= 1;
+                    delta += step;
+                }
+                predictor += (nibble & 8) != 0 ? -delta : delta;
+                if (predictor > Short.MAX_VALUE) predictor = Short.MAX_VALUE;
+                else if (predictor < Short.MIN_VALUE) predictor = Short.MIN_VALUE;
+                index += INDEX_TABLE[nibble & 7];
+                if (index < 0) index = 0;
+                else if (index > 88) index = 88;
+            }
+            // Two samples per byte, earlier sample in the low nibble
+            if ((i & 1) == 1) {
+                packed = nibble;
+            } else {
+                out.put((byte) (packed | (nibble << 4)));
+            }
+        }
+        if ((samplesPerBlock & 1) == 0) {
+            out.put((byte) packed);
+        }
+        out.position(base + blockAlign);
+        adpcmIndex = index;
+        encodedSamples += blockSamples;
+        blockSamples = 0;
+        if (!out.hasRemaining()) writeFullChunk();
+    }
+
+    private void writeFullChunk() throws IOException {
+        out.flip();
+        writeFully(out, alignedOffset);
+        alignedOffset += WRITE_CHUNK_BYTES;
+        out.clear();
+    }
+
+    // Writes the partly filled chunk at its aligned offset but keeps it buffered; the next
+    // write of this chunk covers the same bytes again, so file writes stay 4 KB aligned
+    private void flushPartialChunk() throws IOException {
+        if (out.position() == 0) return;
+        ByteBuffer view = out.duplicate();
+        view.flip();
+        writeFully(view, alignedOffset);
+    }
+
+    private long dataBytes() {
+        return alignedOffset - DATA_OFFSET + out.position();
+    }
+
+    private void writeFully(ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    private void writeHeader(long dataBytes) throws IOException {
+        long samples = adpcm ? encodedSamples : dataBytes / CallAudioPipeline.BYTES_PER_FRAME;
+        buildHeader(header, sampleRate, adpcm, blockAlign, samplesPerBlock, dataBytes, samples);
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    private void closeQuietly() {
+        try {
+            if (file != null) file.close();
+        } catch (IOException e) {
+            // Already failing; keep the first error
+        }
+        file = null;
+        channel = null;
+    }
+
+    // Fills dst with the 4 KB header: RIFF, fmt, [fact], JUNK padding, data chunk header
+    private static void buildHeader(ByteBuffer dst, int sampleRate, boolean adpcm, int blockAlign,
+                                    int samplesPerBlock, long dataBytes, long samples) {
+        dst.clear();
+        dst.put(FOURCC_RIFF).putInt((int) (DATA_OFFSET - 8 + dataBytes)).put(FOURCC_WAVE);
+        dst.put(FOURCC_FMT).putInt(adpcm ? 20 : 16);
+        dst.putShort((short) (adpcm ? FORMAT_IMA_ADPCM : FORMAT_PCM));
+        dst.putShort((short) 1);
+        dst.putInt(sampleRate);
+        dst.putInt(adpcm ? (int) ((long) sampleRate * blockAlign / samplesPerBlock)
+                : sampleRate * CallAudioPipeline.BYTES_PER_FRAME);
+        dst.putShort((short) blockAlign);
+        dst.putShort((short) (adpcm ? 4 : 16));
+        if (adpcm) {
+            dst.putShort((short) 2);
+            dst.putShort((short) samplesPerBlock);
+            dst.put(FOURCC_FACT).putInt(4).putInt((int) samples);
+        }
+        int junkBytes = DATA_OFFSET - 8 - (dst.position() + 8);
+        dst.put(FOURCC_JUNK).putInt(junkBytes);
+        while (dst.position() < DATA_OFFSET - 8) dst.put((byte) 0);
+        dst.put(FOURCC_DATA).putInt((int) dataBytes);
+    }
+
+    private static final byte[] FOURCC_RIFF = {'R', 'I', 'F', 'F'};
+    private static final byte[] FOURCC_WAVE = {'W', 'A', 'V', 'E'};
+    private static final byte[] FOURCC_FMT = {'f', 'm', 't', ' '};
+    private static final byte[] FOURCC_FACT = {'f', 'a', 'c', 't'};
+    private static final byte[] FOURCC_JUNK = {'J', 'U', 'N', 'K'};
+    private static final byte[] FOURCC_DATA = {'d', 'a', 't', 'a'};
+
+    /**
+     * Finalizes every *.wav.part in dir left by a crash: trims the data to whole frames or
+     * ADPCM blocks, rewrites the header lengths from the file size and renames it to *.wav.
+     * Returns the number of recordings repaired; unreadable parts are left in place.
+     */
+    public static int repairAll(File dir) throws IOException {
+        File[] parts = dir.listFiles((d, name) -> name.endsWith(PARTIAL_EXTENSION));
+        if (parts == null) return 0;
+        int repaired = 0;
+        for (File part : parts) {
+            if (repair(part)) repaired++;
+        }
+        return repaired;
+    }
+
+    private static boolean repair(File part) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(DATA_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+        try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size < DATA_OFFSET) return false;
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) return false;
+            }
+            if (!matches(header, 0, FOURCC_RIFF) || !matches(header, 8, FOURCC_WAVE)
+                    || !matches(header, 12, FOURCC_FMT) || !matches(header, DATA_OFFSET - 8, FOURCC_DATA)) {
+                return false;
+            }
+            int format = header.getShort(20) & 0xFFFF;
+            int sampleRate = header.getInt(24);
+            int blockAlign = header.getShort(32) & 0xFFFF;
+            boolean adpcm = format == FORMAT_IMA_ADPCM;
+            int samplesPerBlock = adpcm ? header.getShort(38) & 0xFFFF : 1;
+            if ((format != FORMAT_PCM && !adpcm) || blockAlign == 0) return false;
+
+            long dataBytes = (size - DATA_OFFSET) / blockAlign * blockAlign;
+            long samples = adpcm ? dataBytes / blockAlign * samplesPerBlock
+                    : dataBytes / CallAudioPipeline.BYTES_PER_FRAME;
+            channel.truncate(DATA_OFFSET + dataBytes);
+            buildHeader(header, sampleRate, adpcm, blockAlign, samplesPerBlock, dataBytes, samples);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        String name = part.getName();
+        File target = new File(part.getParentFile(), name.substring(0, name.length() - ".part".length()));
+        return part.renameTo(target);
+    }
+
+    private static boolean matches(ByteBuffer buffer, int offset, byte[] fourcc) {
+        for (int i = 0; i < 4; i++) {
+            if (buffer.get(offset + i) != fourcc[i]) return false;
+        }
+        return true;
+    }
+}
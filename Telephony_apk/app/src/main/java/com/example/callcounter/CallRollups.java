@@ -0,0 +1,303 @@
+package com.example.callcounter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pre-aggregated call counters for fast range queries over months of history. Every ring and
+ * answer is added to three ring-buffered bucket levels (minute for a day, hour for two months,
+ * day for two years). Each bucket holds per-channel ring and answer counts plus a histogram of
+ * ring-to-answer latency, all in flat primitive arrays. A range query merges the coarsest
+ * buckets that fit inside it and finer ones only at the edges, so its cost depends on the
+ * number of buckets touched, not on the number of calls. Times are local wall-clock millis
+ * (UTC millis plus the zone offset), so day buckets start at local midnight.
+ *
+ * Pure Java and not thread-safe; CallStats owns and synchronizes it.
+ */
+final class CallRollups {
+
+    static final String[] CHANNELS = {
+        CallJournal.CHANNEL_CELLULAR, CallJournal.CHANNEL_WHATSAPP, CallJournal.CHANNEL_WHATSAPP_BUSINESS,
+        CallJournal.CHANNEL_TELEGRAM, CallJournal.CHANNEL_SIGNAL, "other"
+    };
+    static final int ALL_CHANNELS = (1 << CHANNELS.length) - 1;
+
+    static final int LEVEL_MINUTE = 0;
+    static final int LEVEL_HOUR = 1;
+    static final int LEVEL_DAY = 2;
+    static final long[] LEVEL_WIDTH_MS = {60_000L, 3_600_000L, 86_400_000L};
+    private static final int[] LEVEL_SLOTS = {24 * 60, 62 * 24, 2 * 366};
+
+    // Upper bin edges in ms; the last bin is open-ended
+    static final int[] LATENCY_BOUNDS_MS = {
+        250, 500, 750, 1000, 1500, 2000, 3000, 4000, 5000, 6000, 8000, 10000, 15000, 20000, 30000, 60000
+    };
+    static final int LATENCY_BINS = LATENCY_BOUNDS_MS.length + 1;
+    // An answer further than this from the channel's last ring is not paired with it
+    private static final long MAX_ANSWER_DELAY_MS = 120_000;
+
+    private static final int FILE_MAGIC = 0x524f4c31; // "ROL1"
+
+    private static final int CHANNEL_COUNT = CHANNELS.length;
+
+    private final long[][] slotBucket = new long[3][];
+    private final int[][] rings = new int[3][];
+    private final int[][] answers = new int[3][];
+    private final int[][] latency = new int[3][];
+    private final long[] newestBucket = new long[3];
+    // Pairs answers with rings during ingestion
+    private final long[] lastRingAt = new long[CHANNEL_COUNT];
+    private final boolean[] lastRingAnswered = new boolean[CHANNEL_COUNT];
+
+    /** Totals for one query; latency percentiles are interpolated from the merged histogram. */
+    static final class Summary {
+        int rings;
+        int answers;
+        final int[] latency = new int[LATENCY_BINS];
+
+        double answerRate() {
+            return rings > 0 ? Math.min(1.0, answers / (double) rings) : 0;
+        }
+
+        /** Latency in ms at fraction p (0..1) of answered calls, or -1 without samples. */
+        long latencyPercentile(double p) {
+            int total = 0;
+            for (int count : latency) total += count;
+            if (total == 0) return -1;
+            double target = p * total;
+            int cumulative = 0;
+            for (int bin = 0; bin < LATENCY_BINS; bin++) {
+                int count = latency[bin];
+                if (count > 0 && cumulative + count >= target) {
+                    long lower = bin == 0 ? 0 : LATENCY_BOUNDS_MS[bin - 1];
+                    long upper = bin < LATENCY_BOUNDS_MS.length ? LATENCY_BOUNDS_MS[bin] : lower * 2;
+                    return lower + Math.round((upper - lower) * ((target - cumulative) / count));
+                }
+                cumulative += count;
+            }
+            return LATENCY_BOUNDS_MS[LATENCY_BOUNDS_MS.length - 1] * 2L;
+        }
+    }
+
+    CallRollups() {
+        for (int level = 0; level < 3; level++) {
+            int slots = LEVEL_SLOTS[level];
+            slotBucket[level] = new long[slots];
+            rings[level] = new int[slots * CHANNEL_COUNT];
+            answers[level] = new int[slots * CHANNEL_COUNT];
+            latency[level] = new int[slots * CHANNEL_COUNT * LATENCY_BINS];
+        }
+        clear();
+    }
+
+    void clear() {
+        for (int level = 0; level < 3; level++) {
+            Arrays.fill(slotBucket[level], Long.MIN_VALUE);
+            Arrays.fill(rings[level], 0);
+            Arrays.fill(answers[level], 0);
+            Arrays.fill(latency[level], 0);
+            newestBucket[level] = Long.MIN_VALUE;
+        }
+        Arrays.fill(lastRingAt, Long.MIN_VALUE);
+        Arrays.fill(lastRingAnswered, false);
+    }
+
+    static int channelIndex(String channel) {
+        for (int i = 0; i < CHANNEL_COUNT - 1; i++) {
+            if (CHANNELS[i].equals(channel)) return i;
+        }
+        return CHANNEL_COUNT - 1;
+    }
+
+    static int channelMask(String channel) {
+        return 1 << channelIndex(channel);
+    }
+
+    void addRing(long wallMs, int channel) {
+        add(wallMs, channel, 1, 0, -1);
+        if (wallMs >= lastRingAt[channel] || lastRingAt[channel] == Long.MIN_VALUE) {
+            lastRingAt[channel] = wallMs;
+            lastRingAnswered[channel] = false;
+        }
+    }
+
+    /** Counts an answer against the channel's last ring, with its latency, if it is recent. */
+    void addAnswer(long wallMs, int channel) {
+        long ringAt = lastRingAt[channel];
+        if (ringAt != Long.MIN_VALUE && !lastRingAnswered[channel]
+                && wallMs >= ringAt && wallMs - ringAt <= MAX_ANSWER_DELAY_MS) {
+            lastRingAnswered[channel] = true;
+            // Filed under the ring's bucket so answer rates line up with ring counts
+            add(ringAt, channel, 0, 1, wallMs - ringAt);
+        } else {
+            add(wallMs, channel, 0, 1, -1);
+        }
+    }
+
+    /** Merges all buckets in [fromMs, toMs) for the channels in channelMask. */
+    Summary query(long fromMs, long toMs, int channelMask) {
+        Summary summary = new Summary();
+        long t = fromMs;
+        while (t < toMs) {
+            int level = -1;
+            for (int candidate = LEVEL_DAY; candidate >= LEVEL_MINUTE; candidate--) {
+                long width = LEVEL_WIDTH_MS[candidate];
+                if (Math.floorMod(t, width) == 0 && t + width <= toMs && retained(candidate, t)) {
+                    level = candidate;
+                    break;
+                }
+            }
+            if (level < 0) {
+                // Range edge: finest level still holding t; coarser ones overshoot slightly
+                for (int candidate = LEVEL_MINUTE; candidate <= LEVEL_DAY && level < 0; candidate++) {
+                    if (retained(candidate, t)) level = candidate;
+                }
+            }
+            if (level < 0) {
+                // Older than every level; jump to the next day
+                t = (Math.floorDiv(t, LEVEL_WIDTH_MS[LEVEL_DAY]) + 1) * LEVEL_WIDTH_MS[LEVEL_DAY];
+                continue;
+            }
+            long bucket = Math.floorDiv(t, LEVEL_WIDTH_MS[level]);
+            accumulate(level, bucket, channelMask, summary);
+            t = (bucket + 1) * LEVEL_WIDTH_MS[level];
+        }
+        return summary;
+    }
+
+    /**
+     * Per-bucket ring and answer counts for count consecutive buckets of level starting with the
+     * one holding fromMs. Buckets outside retention read as zero.
+     */
+    void series(int level, long fromMs, int count, int channelMask, int[] ringsOut, int[] answersOut) {
+        long first = Math.floorDiv(fromMs, LEVEL_WIDTH_MS[level]);
+        for (int i = 0; i < count; i++) {
+            int slot = slotOf(level, first + i);
+            int ringSum = 0;
+            int answerSum = 0;
+            if (slotBucket[level][slot] == first + i) {
+                int base = slot * CHANNEL_COUNT;
+                for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+                    if ((channelMask & (1 << channel)) == 0) continue;
+                    ringSum += rings[level][base + channel];
+                    answerSum += answers[level][base + channel];
+                }
+            }
+            ringsOut[i] = ringSum;
+            answersOut[i] = answerSum;
+        }
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(CHANNEL_COUNT);
+        out.writeInt(LATENCY_BINS);
+        for (int level = 0; level < 3; level++) {
+            out.writeInt(LEVEL_SLOTS[level]);
+            out.writeLong(newestBucket[level]);
+            writeLongs(out, slotBucket[level]);
+            writeInts(out, rings[level]);
+            writeInts(out, answers[level]);
+            writeInts(out, latency[level]);
+        }
+        writeLongs(out, lastRingAt);
+        for (boolean answered : lastRingAnswered) out.writeBoolean(answered);
+    }
+
+    /** Restores a snapshot; throws if it was written with a different layout. */
+    void readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FILE_MAGIC || in.readInt() != CHANNEL_COUNT || in.readInt() != LATENCY_BINS) {
+            throw new IOException("Incompatible rollup snapshot");
+        }
+        for (int level = 0; level < 3; level++) {
+            if (in.readInt() != LEVEL_SLOTS[level]) throw new IOException("Incompatible rollup snapshot");
+            newestBucket[level] = in.readLong();
+            readLongs(in, slotBucket[level]);
+            readInts(in, rings[level]);
+            readInts(in, answers[level]);
+            readInts(in, latency[level]);
+        }
+        readLongs(in, lastRingAt);
+        for (int i = 0; i < CHANNEL_COUNT; i++) lastRingAnswered[i] = in.readBoolean();
+    }
+
+    private void add(long wallMs, int channel, int ringDelta, int answerDelta, long latencyMs) {
+        int bin = latencyMs >= 0 ? latencyBin(latencyMs) : -1;
+        for (int level = 0; level < 3; level++) {
+            long bucket = Math.floorDiv(wallMs, LEVEL_WIDTH_MS[level]);
+            int slot = slotOf(level, bucket);
+            long held = slotBucket[level][slot];
+            if (held != bucket) {
+                // Slot holds a newer bucket: this one has already aged out of the level
+                if (held != Long.MIN_VALUE && held > bucket) continue;
+                clearSlot(level, slot);
+                slotBucket[level][slot] = bucket;
+            }
+            if (bucket > newestBucket[level]) newestBucket[level] = bucket;
+            int cell = slot * CHANNEL_COUNT + channel;
+            rings[level][cell] += ringDelta;
+            answers[level][cell] += answerDelta;
+            if (bin >= 0) latency[level][cell * LATENCY_BINS + bin]++;
+        }
+    }
+
+    private void accumulate(int level, long bucket, int channelMask, Summary summary) {
+        int slot = slotOf(level, bucket);
+        if (slotBucket[level][slot] != bucket) return;
+        int base = slot * CHANNEL_COUNT;
+        for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+            if ((channelMask & (1 << channel)) == 0) continue;
+            int cell = base + channel;
+            summary.rings += rings[level][cell];
+            summary.answers += answers[level][cell];
+            int histogram = cell * LATENCY_BINS;
+            for (int bin = 0; bin < LATENCY_BINS; bin++) {
+                summary.latency[bin] += latency[level][histogram + bin];
+            }
+        }
+    }
+
+    // True if the level still covers the bucket holding t (an empty bucket counts as zero calls)
+    private boolean retained(int level, long t) {
+        long newest = newestBucket[level];
+        if (newest == Long.MIN_VALUE) return false;
+        long bucket = Math.floorDiv(t, LEVEL_WIDTH_MS[level]);
+        return bucket > newest - LEVEL_SLOTS[level];
+    }
+
+    private void clearSlot(int level, int slot) {
+        int base = slot * CHANNEL_COUNT;
+        Arrays.fill(rings[level], base, base + CHANNEL_COUNT, 0);
+        Arrays.fill(answers[level], base, base + CHANNEL_COUNT, 0);
+        Arrays.fill(latency[level], base * LATENCY_BINS, (base + CHANNEL_COUNT) * LATENCY_BINS, 0);
+    }
+
+    private static int slotOf(int level, long bucket) {
+        return (int) Math.floorMod(bucket, (long) LEVEL_SLOTS[level]);
+    }
+
+    private static int latencyBin(long latencyMs) {
+        for (int bin = 0; bin < LATENCY_BOUNDS_MS.length; bin++) {
+            if (latencyMs < LATENCY_BOUNDS_MS[bin]) return bin;
+        }
+        return LATENCY_BOUNDS_MS.length;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) out.writeInt(value);
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        for (long value : values) out.writeLong(value);
+    }
+
+    private static void readInts(DataInputStream in, int[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) values[i] = in.readInt();
+    }
+
+    private static void readLongs(DataInputStream in, long[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) values[i] = in.readLong();
+    }
+}
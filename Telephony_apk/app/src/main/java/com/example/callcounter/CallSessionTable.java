@@ -0,0 +1,198 @@
+package com.example.callcounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calls currently ringing or up, keyed by call identity (the notification key for VoIP calls,
+ * one id per ring for cellular), so a second ringing call or a WhatsApp call during a cellular
+ * one gets its own state, strategy progress and timers. State moves only by compare-and-set,
+ * so two entry points racing on the same call (an OFFHOOK broadcast and a timeout, say) can't
+ * both win a transition.
+ *
+ * Which rings may run an answer cascade is decided by the RingPolicy through answer slots: a
+ * session must claim its slot before answering and keeps it until it ends.
+ */
+final class CallSessionTable {
+
+    /** How rings that overlap another call are treated. */
+    enum RingPolicy {
+        /** Only one call at a time is auto-answered; later rings are left to the user. */
+        ANSWER_FIRST,
+        /** One call per channel, e.g. a WhatsApp call is answered during a cellular one. */
+        PER_CHANNEL,
+        /** Every ring is answered; call-waiting rings put the current call on hold. */
+        ANSWER_ALL;
+
+        static RingPolicy parse(String value) {
+            for (RingPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(value)) return policy;
+            }
+            throw new IllegalArgumentException("Unknown ring policy " + value);
+        }
+    }
+
+    static final int STATE_RINGING = 0;
+    static final int STATE_ANSWERING = 1;
+    static final int STATE_CONNECTED = 2;
+    static final int STATE_ENDED = 3;
+
+    static final class CallSession {
+        final String id;
+        final String channel;
+        final long ringAt;
+        // False for calls only seen on screen, which get no end-of-call signal
+        final boolean endSignalled;
+        private final AtomicInteger state = new AtomicInteger(STATE_RINGING);
+        // Set once the session holds an answer slot
+        private volatile String slot;
+
+        // Answer strategy progress, guarded by the owner (AnswerConfirmationDetector). Timings
+        // come from the config at the first attempt and stay fixed if it is reloaded meanwhile
+        DetectionConfig config;
+        Runnable retry;
+        int retries;
+        int lastTimerSeconds = -1;
+        long answerStartedAt;
+        boolean policySkipped;
+        // Last answer strategy that ran, for per-strategy metrics
+        volatile String strategy;
+
+        CallSession(String id, String channel, long ringAt, boolean endSignalled) {
+            this.id = id;
+            this.channel = channel;
+            this.ringAt = ringAt;
+            this.endSignalled = endSignalled;
+        }
+
+        int state() {
+            return state.get();
+        }
+
+        boolean transition(int from, int to) {
+            return state.compareAndSet(from, to);
+        }
+
+        boolean isEnded() {
+            return state.get() == STATE_ENDED;
+        }
+
+        @Override
+        public String toString() {
+            return id + "[" + channel + ", " + STATE_NAMES[state.get()] + "]";
+        }
+    }
+
+    private static final String[] STATE_NAMES = {"ringing", "answering", "connected", "ended"};
+
+    private final ConcurrentHashMap<String, CallSession> sessions = new ConcurrentHashMap<>();
+    // Slot key (from the policy) -> the session allowed to answer under it
+    private final ConcurrentHashMap<String, CallSession> answerSlots = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a new ringing session for id. Returns null if id is already ringing or up, so
+     * a repost of the same ringing notification isn't taken for a second call.
+     */
+    CallSession ring(String id, String channel, long now, boolean endSignalled) {
+        CallSession fresh = new CallSession(id, channel, now, endSignalled);
+        while (true) {
+            CallSession existing = sessions.putIfAbsent(id, fresh);
+            if (existing == null) return fresh;
+            if (!existing.isEnded()) return null;
+            // Ended but not yet removed: replace it, unless someone else just did
+            if (sessions.replace(id, existing, fresh)) return fresh;
+        }
+    }
+
+    CallSession get(String id) {
+        CallSession session = id != null ? sessions.get(id) : null;
+        return session != null && !session.isEnded() ? session : null;
+    }
+
+    /** Newest session on channel whose state is in stateMask (1 << STATE_x), or null. */
+    CallSession newest(String channel, int stateMask) {
+        CallSession newest = null;
+        for (CallSession session : sessions.values()) {
+            if (!session.channel.equals(channel) || (stateMask & (1 << session.state())) == 0) continue;
+            if (newest == null || session.ringAt > newest.ringAt) newest = session;
+        }
+        return newest;
+    }
+
+    /** Sessions still ringing or being answered that rang before cutoff; a ring can't last that long. */
+    List<CallSession> staleRinging(long cutoff) {
+        List<CallSession> result = new ArrayList<>();
+        for (CallSession session : sessions.values()) {
+            int state = session.state();
+            if ((state == STATE_RINGING || state == STATE_ANSWERING) && session.ringAt < cutoff) result.add(session);
+        }
+        return result;
+    }
+
+    List<CallSession> onChannel(String channel) {
+        List<CallSession> result = new ArrayList<>();
+        for (CallSession session : sessions.values()) {
+            if (session.channel.equals(channel) && !session.isEnded()) result.add(session);
+        }
+        return result;
+    }
+
+    /**
+     * Claims the right to answer session under policy and moves it to answering. Returns false
+     * if another live call holds the slot, or the session is already connected or ended.
+     */
+    boolean claimAnswer(CallSession session, RingPolicy policy) {
+        if (session.slot == null) {
+            String key = slotKey(session, policy);
+            while (true) {
+                CallSession holder = answerSlots.putIfAbsent(key, session);
+                if (holder == null || holder == session) break;
+                if (!holder.isEnded()) return false;
+                // Holder ended without releasing (it raced with us); take over
+                if (answerSlots.replace(key, holder, session)) break;
+            }
+            session.slot = key;
+            // Ended while we were claiming: give the slot back
+            if (session.isEnded()) {
+                answerSlots.remove(key, session);
+                return false;
+            }
+        }
+        return session.transition(STATE_RINGING, STATE_ANSWERING) || session.state() == STATE_ANSWERING;
+    }
+
+    /**
+     * Frees session's answer slot while it stays connected. For calls with no end signal, which
+     * would otherwise hold the slot for good.
+     */
+    void releaseSlot(CallSession session) {
+        String slot = session.slot;
+        if (slot != null) answerSlots.remove(slot, session);
+    }
+
+    /** Ends session and frees its slot. Returns false if it had already ended. */
+    boolean end(CallSession session) {
+        if (session.state.getAndSet(STATE_ENDED) == STATE_ENDED) return false;
+        sessions.remove(session.id, session);
+        String slot = session.slot;
+        if (slot != null) answerSlots.remove(slot, session);
+        return true;
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    private static String slotKey(CallSession session, RingPolicy policy) {
+        switch (policy) {
+            case PER_CHANNEL:
+                return session.channel;
+            case ANSWER_ALL:
+                return session.id;
+            default:
+                return "*";
+        }
+    }
+}
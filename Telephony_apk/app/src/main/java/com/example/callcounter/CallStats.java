@@ -0,0 +1,156 @@
+package com.example.callcounter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Answer-rate, latency and volume statistics over the call journal, backed by CallRollups.
+ * New journal rows are folded in incrementally by id cursor on a background thread, and the
+ * rollups plus cursor are snapshotted to files/call_rollups.bin, so opening the app never
+ * rescans the history. Queries only merge buckets and are cheap enough for the UI thread.
+ */
+public class CallStats {
+
+    private static final String TAG = "CallCounter";
+    private static final String SNAPSHOT_FILE = "call_rollups.bin";
+    private static final int JOURNAL_BATCH = 1000;
+
+    private static CallStats instance;
+
+    private final Context appContext;
+    private final File snapshotFile;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Guarded by this
+    private final CallRollups rollups = new CallRollups();
+    private long journalCursor;
+
+    public static synchronized CallStats getInstance(Context context) {
+        if (instance == null) {
+            instance = new CallStats(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CallStats(Context appContext) {
+        this.appContext = appContext;
+        this.snapshotFile = new File(appContext.getFilesDir(), SNAPSHOT_FILE);
+        worker.execute(this::loadSnapshot);
+    }
+
+    /** Folds in journal rows added since the last refresh; onUpdated (may be null) then runs on the main thread. */
+    public void refresh(Runnable onUpdated) {
+        worker.execute(() -> {
+            try {
+                if (ingestNewEvents() > 0) saveSnapshot();
+            } catch (Exception e) {
+                Log.e(TAG, "Call stats refresh failed: " + e.getMessage());
+            }
+            if (onUpdated != null) mainHandler.post(onUpdated);
+        });
+    }
+
+    /** Totals for calls that rang in [fromMs, toMs) on channel, or on every channel if null. */
+    public synchronized CallRollups.Summary query(long fromMs, long toMs, String channel) {
+        return rollups.query(toWall(fromMs), toWall(toMs),
+                channel != null ? CallRollups.channelMask(channel) : CallRollups.ALL_CHANNELS);
+    }
+
+    /** Rings per hour for the last hours hours, oldest first, ending with the current hour. */
+    public synchronized int[] hourlyRings(int hours, String channel) {
+        int[] rings = new int[hours];
+        int[] answers = new int[hours];
+        long now = toWall(System.currentTimeMillis());
+        rollups.series(CallRollups.LEVEL_HOUR, now - (hours - 1) * CallRollups.LEVEL_WIDTH_MS[CallRollups.LEVEL_HOUR],
+                hours, channel != null ? CallRollups.channelMask(channel) : CallRollups.ALL_CHANNELS, rings, answers);
+        return rings;
+    }
+
+    /** Start of the local day containing timeMs, in UTC millis. */
+    public static long startOfDay(long timeMs) {
+        long day = CallRollups.LEVEL_WIDTH_MS[CallRollups.LEVEL_DAY];
+        long wall = toWall(timeMs);
+        return timeMs - (wall - Math.floorDiv(wall, day) * day);
+    }
+
+    private static long toWall(long utcMs) {
+        return utcMs + TimeZone.getDefault().getOffset(utcMs);
+    }
+
+    private int ingestNewEvents() {
+        CallJournal journal = CallJournal.getInstance(appContext);
+        int total = 0;
+        while (true) {
+            int count = 0;
+            try (Cursor cursor = journal.queryEventsAfter(journalCursor, JOURNAL_BATCH)) {
+                synchronized (this) {
+                    while (cursor.moveToNext()) {
+                        long wall = toWall(cursor.getLong(1));
+                        int channel = CallRollups.channelIndex(cursor.getString(2));
+                        String event = cursor.getString(3);
+                        if (CallJournal.EVENT_RINGING.equals(event)) {
+                            rollups.addRing(wall, channel);
+                        } else if (CallJournal.EVENT_ANSWERED.equals(event)) {
+                            rollups.addAnswer(wall, channel);
+                        }
+                        journalCursor = cursor.getLong(0);
+                        count++;
+                    }
+                }
+            }
+            total += count;
+            if (count < JOURNAL_BATCH) return total;
+        }
+    }
+
+    private void loadSnapshot() {
+        if (!snapshotFile.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            synchronized (this) {
+                journalCursor = in.readLong();
+                rollups.readFrom(in);
+            }
+        } catch (IOException e) {
+            // Layout changed or file damaged: rebuild from the journal
+            Log.w(TAG, "Discarding call stats snapshot: " + e.getMessage());
+            synchronized (this) {
+                journalCursor = 0;
+                rollups.clear();
+            }
+        }
+    }
+
+    private void saveSnapshot() throws IOException {
+        // Serialize under the lock into memory, write the file without it so queries don't wait on disk
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(2 * 1024 * 1024);
+        synchronized (this) {
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeLong(journalCursor);
+            rollups.writeTo(out);
+            out.flush();
+        }
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp)) {
+            buffer.writeTo(fileOut);
+            fileOut.getFD().sync();
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            throw new IOException("Could not rename " + tmp.getName());
+        }
+    }
+}
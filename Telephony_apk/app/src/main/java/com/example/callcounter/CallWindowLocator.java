@@ -0,0 +1,166 @@
+package com.example.callcounter;
+
+import android.accessibilityservice.AccessibilityService;
+import android.util.Log;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityWindowInfo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the window holding a VoIP app's call UI out of getWindows() (available because the
+ * service sets flagRetrieveInteractiveWindows), so scans walk only that window's tree. An
+ * overlay or unfocused call window is found even when another window is active, and a chat
+ * screen underneath is not scanned. Windows are ranked by type, title, the event's window and
+ * layer, and only the best candidates' roots are fetched. A winning window whose title marks it
+ * as a call screen is cached per app and reused while it keeps that title, unless an event
+ * comes from a different window, which is ranked afresh. Falls back to getRootInActiveWindow() when
+ * window retrieval is unavailable. Main thread only.
+ */
+final class CallWindowLocator {
+
+    private static final String TAG = "WhatsAppAccessibility";
+    // Upper bound on windows considered per lookup; real screens have a handful
+    private static final int MAX_CANDIDATES = 16;
+
+    private final AccessibilityService service;
+    private final Map<String, Integer> cachedWindowIds = new HashMap<>();
+    private final int[] candidateIndexes = new int[MAX_CANDIDATES];
+    private final int[] candidateScores = new int[MAX_CANDIDATES];
+
+    private long lookups;
+    private long cacheHits;
+    private long fallbacks;
+
+    CallWindowLocator(AccessibilityService service) {
+        this.service = service;
+    }
+
+    long getLookups() {
+        return lookups;
+    }
+
+    long getCacheHits() {
+        return cacheHits;
+    }
+
+    long getFallbacks() {
+        return fallbacks;
+    }
+
+    /**
+     * Returns the root of profile's call window, owned by arena, or null if the app has no window
+     * on screen. eventWindowId is the window of the triggering event, or -1.
+     */
+    AccessibilityNodeInfo findCallRoot(NodeArena arena, VoipAppProfile profile, int eventWindowId) {
+        lookups++;
+        List<AccessibilityWindowInfo> windows = null;
+        try {
+            windows = service.getWindows();
+        } catch (Exception e) {
+            Log.w(TAG, "getWindows failed: " + e.getMessage());
+        }
+        if (windows == null || windows.isEmpty()) {
+            fallbacks++;
+            return arena.root(service);
+        }
+        try {
+            AccessibilityNodeInfo root = cachedRoot(arena, profile, windows, eventWindowId);
+            if (root != null) {
+                cacheHits++;
+                return root;
+            }
+            return rankedRoot(arena, profile, windows, eventWindowId);
+        } finally {
+            for (AccessibilityWindowInfo window : windows) {
+                window.recycle();
+            }
+        }
+    }
+
+    private AccessibilityNodeInfo cachedRoot(NodeArena arena, VoipAppProfile profile,
+                                             List<AccessibilityWindowInfo> windows, int eventWindowId) {
+        Integer cachedId = cachedWindowIds.get(profile.packageName);
+        if (cachedId == null) return null;
+        // Another window changed, maybe a new call overlay; let ranking decide
+        if (eventWindowId >= 0 && eventWindowId != cachedId) return null;
+        for (AccessibilityWindowInfo window : windows) {
+            if (window.getId() == cachedId) {
+                if (!profile.isCallWindowTitle(window.getTitle())) break;
+                AccessibilityNodeInfo root = rootIfOwnedBy(arena, window, profile);
+                if (root != null) return root;
+                break;
+            }
+        }
+        // Window closed, is no longer a call screen or now shows another app
+        cachedWindowIds.remove(profile.packageName);
+        return null;
+    }
+
+    private AccessibilityNodeInfo rankedRoot(NodeArena arena, VoipAppProfile profile,
+                                             List<AccessibilityWindowInfo> windows, int eventWindowId) {
+        int count = 0;
+        for (int i = 0; i < windows.size() && count < MAX_CANDIDATES; i++) {
+            int score = score(windows.get(i), profile, eventWindowId);
+            if (score >= 0) {
+                candidateIndexes[count] = i;
+                candidateScores[count] = score;
+                count++;
+            }
+        }
+        // Fetch roots best-first and stop at the first window that belongs to the app
+        while (count > 0) {
+            int best = 0;
+            for (int c = 1; c < count; c++) {
+                if (candidateScores[c] > candidateScores[best]) best = c;
+            }
+            AccessibilityWindowInfo window = windows.get(candidateIndexes[best]);
+            AccessibilityNodeInfo root = rootIfOwnedBy(arena, window, profile);
+            if (root != null) {
+                // A chat screen that won only on focus must not shadow a call overlay later
+                if (profile.isCallWindowTitle(window.getTitle())) {
+                    cachedWindowIds.put(profile.packageName, window.getId());
+                } else {
+                    cachedWindowIds.remove(profile.packageName);
+                }
+                Log.d(TAG, "Using " + profile.label + " window " + window.getId() + " ('" + window.getTitle()
+                        + "', layer " + window.getLayer() + ") of " + windows.size());
+                return root;
+            }
+            count--;
+            candidateIndexes[best] = candidateIndexes[count];
+            candidateScores[best] = candidateScores[count];
+        }
+        return null;
+    }
+
+    private static AccessibilityNodeInfo rootIfOwnedBy(NodeArena arena, AccessibilityWindowInfo window,
+                                                       VoipAppProfile profile) {
+        AccessibilityNodeInfo root = arena.track(window.getRoot());
+        if (root == null) return null;
+        CharSequence packageName = root.getPackageName();
+        if (packageName != null && profile.packageName.contentEquals(packageName)) {
+            return root;
+        }
+        arena.release(root);
+        return null;
+    }
+
+    // Negative for windows that can't hold a call UI. Title beats focus, so an unfocused call
+    // overlay wins over the chat screen the user is looking at; layer breaks ties
+    private static int score(AccessibilityWindowInfo window, VoipAppProfile profile, int eventWindowId) {
+        int type = window.getType();
+        if (type != AccessibilityWindowInfo.TYPE_APPLICATION && type != AccessibilityWindowInfo.TYPE_SYSTEM) {
+            return -1;
+        }
+        int score = 0;
+        if (profile.isCallWindowTitle(window.getTitle())) score += 8;
+        if (window.getId() == eventWindowId) score += 4;
+        if (type == AccessibilityWindowInfo.TYPE_APPLICATION) score += 2;
+        if (window.isActive()) score += 1;
+        // Layers are small non-negative ints; keep them below the other signals
+        return (score << 8) + Math.min(Math.max(window.getLayer(), 0), 255);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.callcounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One allow/deny line from the caller rules file:
+ *
+ * <pre>
+ * # action  kind    value          [channel=..] [time=HH:MM-HH:MM]
+ * deny      prefix  +1900
+ * allow     exact   +15550102030
+ * deny      name    "Unknown Caller" channel=whatsapp
+ * allow     any     -              time=09:00-18:00
+ * </pre>
+ */
+public final class CallerRule {
+
+    public enum Action { ALLOW, DENY }
+
+    public enum Kind { PREFIX, EXACT, NAME, ANY }
+
+    public final Action action;
+    public final Kind kind;
+    public final String value;
+    // null matches every channel
+    public final String channel;
+    // Minutes since midnight; -1 means all day. endMinute may be lower than startMinute (wraps midnight)
+    public final int startMinute;
+    public final int endMinute;
+
+    public CallerRule(Action action, Kind kind, String value, String channel, int startMinute, int endMinute) {
+        this.action = action;
+        this.kind = kind;
+        this.value = value;
+        this.channel = channel;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+    }
+
+    static CallerRule parse(String line) {
+        List<String> tokens = tokenize(line);
+        if (tokens.size() < 2) {
+            throw new IllegalArgumentException("Expected '<action> <kind> [value] [options]': " + line);
+        }
+        Action action = Action.valueOf(tokens.get(0).toUpperCase(Locale.ROOT));
+        Kind kind = Kind.valueOf(tokens.get(1).toUpperCase(Locale.ROOT));
+
+        int optionStart = 2;
+        String value = null;
+        if (kind != Kind.ANY) {
+            if (tokens.size() < 3) {
+                throw new IllegalArgumentException("Missing value: " + line);
+            }
+            // Numbers keep their '+' so the compiler can tell a country code from a trunk prefix
+            value = kind == Kind.NAME ? tokens.get(2).toLowerCase(Locale.ROOT) : tokens.get(2);
+            if (kind == Kind.NAME ? value.isEmpty() : PhoneNumbers.normalize(value).isEmpty()) {
+                throw new IllegalArgumentException("Empty value: " + line);
+            }
+            optionStart = 3;
+        } else if (tokens.size() > 2 && "-".equals(tokens.get(2))) {
+            optionStart = 3;
+        }
+
+        String channel = null;
+        int start = -1;
+        int end = -1;
+        for (int i = optionStart; i < tokens.size(); i++) {
+            String option = tokens.get(i);
+            if (option.startsWith("channel=")) {
+                channel = option.substring("channel=".length());
+            } else if (option.startsWith("time=")) {
+                String[] range = option.substring("time=".length()).split("-");
+                if (range.length != 2) {
+                    throw new IllegalArgumentException("Bad time window: " + option);
+                }
+                start = parseMinute(range[0]);
+                end = parseMinute(range[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        return new CallerRule(action, kind, value, channel, start, end);
+    }
+
+    private static int parseMinute(String hhmm) {
+        String[] parts = hhmm.split(":");
+        int hours = Integer.parseInt(parts[0]);
+        int minutes = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+        if (hours < 0 || hours > 24 || minutes < 0 || minutes > 59 || hours * 60 + minutes > 1440) {
+            throw new IllegalArgumentException("Bad time: " + hhmm);
+        }
+        return hours * 60 + minutes;
+    }
+
+    // Splits on whitespace; double quotes group a value that contains spaces
+    private static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean hasToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                hasToken = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (hasToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    hasToken = false;
+                }
+            } else {
+                current.append(c);
+                hasToken = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote: " + line);
+        }
+        if (hasToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+}
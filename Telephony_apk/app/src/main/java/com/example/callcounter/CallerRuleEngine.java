@@ -0,0 +1,126 @@
+package com.example.callcounter;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.FileObserver;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decides whether an incoming call may be auto-answered. Rules are read from
+ * files/caller_rules.txt (format in CallerRule), compiled off-thread and published with a
+ * single atomic swap, so the ring path only ever sees a complete rule set and never blocks.
+ * Editing the file (e.g. via adb push) reloads it.
+ */
+public class CallerRuleEngine {
+
+    private static final String TAG = "CallCounter";
+    static final String RULES_FILE_NAME = "caller_rules.txt";
+
+    private static CallerRuleEngine instance;
+
+    private final AtomicReference<CompiledCallerRules> rules = new AtomicReference<>(CompiledCallerRules.EMPTY);
+    private final ExecutorService compiler = Executors.newSingleThreadExecutor();
+    private final File rulesFile;
+    private final FileObserver rulesObserver;
+    // TimeZone.getDefault() returns a clone each call; refreshed on ACTION_TIMEZONE_CHANGED
+    private volatile TimeZone timeZone = TimeZone.getDefault();
+
+    public static synchronized CallerRuleEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new CallerRuleEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CallerRuleEngine(Context appContext) {
+        File dir = appContext.getFilesDir();
+        rulesFile = new File(dir, RULES_FILE_NAME);
+        rulesObserver = new FileObserver(dir.getPath(), FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.DELETE) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (RULES_FILE_NAME.equals(path)) {
+                    reload();
+                }
+            }
+        };
+        rulesObserver.startWatching();
+        try {
+            appContext.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    timeZone = TimeZone.getDefault();
+                }
+            }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to watch time zone changes: " + e.getMessage());
+        }
+        reload();
+    }
+
+    /** Allocation-free; number and displayName may be raw (formatted, any case) or null. */
+    public CallerRule.Action evaluate(String channel, String number, String displayName) {
+        long now = System.currentTimeMillis();
+        long local = now + timeZone.getOffset(now);
+        int minuteOfDay = (int) ((local / 60000) % 1440);
+        if (minuteOfDay < 0) minuteOfDay += 1440;
+        return rules.get().evaluate(channel, number, displayName, minuteOfDay);
+    }
+
+    // Publishes an already-built rule list, e.g. from a future settings UI
+    public void replaceRules(List<CallerRule> newRules) {
+        compiler.execute(() -> publish(CompiledCallerRules.compile(newRules)));
+    }
+
+    public void reload() {
+        compiler.execute(() -> {
+            try {
+                publish(CompiledCallerRules.compile(readRules(rulesFile)));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read caller rules, keeping previous set: " + e.getMessage());
+            }
+        });
+    }
+
+    private void publish(CompiledCallerRules compiled) {
+        rules.set(compiled);
+        Log.d(TAG, "Caller rules published: " + compiled.ruleCount + " rules");
+    }
+
+    private static List<CallerRule> readRules(File file) throws IOException {
+        List<CallerRule> result = new ArrayList<>();
+        if (!file.exists()) {
+            return result;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                try {
+                    result.add(CallerRule.parse(line));
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Skipping caller rule on line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+}
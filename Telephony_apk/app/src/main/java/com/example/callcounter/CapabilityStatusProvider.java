@@ -0,0 +1,237 @@
+package com.example.callcounter;
+
+import android.Manifest;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.provider.Settings;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Caches the app's capability status (runtime permissions, notification access,
+ * accessibility service, battery optimization) so callers don't re-query the system
+ * on every resume. Settings.Secure changes are pushed in through ContentObservers;
+ * permissions and battery optimization can't be observed and are re-read only after
+ * invalidate().
+ */
+public class CapabilityStatusProvider {
+
+    private static final String TAG = "CallCounter";
+    private static final String ENABLED_NOTIFICATION_LISTENERS = "enabled_notification_listeners";
+
+    static final String[] REQUIRED_PERMISSIONS = {
+        Manifest.permission.READ_PHONE_STATE,
+        Manifest.permission.READ_CALL_LOG,
+        Manifest.permission.ANSWER_PHONE_CALLS,
+        Manifest.permission.READ_CONTACTS,
+        // Call audio (greeting, recording, Live bridge) captures the microphone
+        Manifest.permission.RECORD_AUDIO,
+        Manifest.permission.POST_NOTIFICATIONS
+    };
+
+    public interface Listener {
+        void onCapabilityStatusChanged(CapabilityStatus status);
+    }
+
+    public static final class CapabilityStatus {
+        public final boolean permissionsGranted;
+        public final boolean notificationListenerEnabled;
+        public final boolean accessibilityServiceEnabled;
+        public final boolean ignoringBatteryOptimizations;
+        public final int version;
+
+        CapabilityStatus(boolean permissionsGranted, boolean notificationListenerEnabled,
+                         boolean accessibilityServiceEnabled, boolean ignoringBatteryOptimizations,
+                         int version) {
+            this.permissionsGranted = permissionsGranted;
+            this.notificationListenerEnabled = notificationListenerEnabled;
+            this.accessibilityServiceEnabled = accessibilityServiceEnabled;
+            this.ignoringBatteryOptimizations = ignoringBatteryOptimizations;
+            this.version = version;
+        }
+
+        // Same gate as MainActivity used before: accessibility is optional for the foreground service
+        public boolean isReadyForService() {
+            return permissionsGranted && notificationListenerEnabled && ignoringBatteryOptimizations;
+        }
+
+        boolean sameAs(boolean permissions, boolean notifications, boolean accessibility, boolean battery) {
+            return permissionsGranted == permissions
+                    && notificationListenerEnabled == notifications
+                    && accessibilityServiceEnabled == accessibility
+                    && ignoringBatteryOptimizations == battery;
+        }
+    }
+
+    private static CapabilityStatusProvider instance;
+
+    private final Context appContext;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile CapabilityStatus status;
+    private volatile boolean permissionsDirty = true;
+    private volatile boolean batteryDirty = true;
+
+    private boolean permissionsGranted;
+    private boolean notificationListenerEnabled;
+    private boolean accessibilityServiceEnabled;
+    private boolean ignoringBatteryOptimizations;
+
+    public static synchronized CapabilityStatusProvider getInstance(Context context) {
+        if (instance == null) {
+            instance = new CapabilityStatusProvider(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CapabilityStatusProvider(Context appContext) {
+        this.appContext = appContext;
+        notificationListenerEnabled = readNotificationListenerEnabled();
+        accessibilityServiceEnabled = readAccessibilityServiceEnabled();
+        registerSettingsObservers();
+        recompute();
+    }
+
+    private void registerSettingsObservers() {
+        try {
+            ContentObserver notificationObserver = new ContentObserver(mainHandler) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    notificationListenerEnabled = readNotificationListenerEnabled();
+                    recompute();
+                }
+            };
+            ContentObserver accessibilityObserver = new ContentObserver(mainHandler) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    accessibilityServiceEnabled = readAccessibilityServiceEnabled();
+                    recompute();
+                }
+            };
+            Uri notificationUri = Settings.Secure.getUriFor(ENABLED_NOTIFICATION_LISTENERS);
+            Uri accessibilityUri = Settings.Secure.getUriFor(Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES);
+            appContext.getContentResolver().registerContentObserver(notificationUri, false, notificationObserver);
+            appContext.getContentResolver().registerContentObserver(accessibilityUri, false, accessibilityObserver);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register capability observers: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the cached status. Only re-reads permissions / battery optimization if they
+     * were invalidated since the last call.
+     */
+    public CapabilityStatus getStatus() {
+        if (permissionsDirty || batteryDirty) {
+            recompute();
+        }
+        return status;
+    }
+
+    // Call after a permission result or when the user comes back from a settings screen
+    public void invalidate() {
+        permissionsDirty = true;
+        batteryDirty = true;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private synchronized void recompute() {
+        if (permissionsDirty) {
+            permissionsDirty = false;
+            permissionsGranted = readPermissionsGranted();
+        }
+        if (batteryDirty) {
+            batteryDirty = false;
+            ignoringBatteryOptimizations = readIgnoringBatteryOptimizations();
+        }
+
+        CapabilityStatus previous = status;
+        if (previous != null && previous.sameAs(permissionsGranted, notificationListenerEnabled,
+                accessibilityServiceEnabled, ignoringBatteryOptimizations)) {
+            return;
+        }
+        CapabilityStatus updated = new CapabilityStatus(permissionsGranted, notificationListenerEnabled,
+                accessibilityServiceEnabled, ignoringBatteryOptimizations,
+                previous != null ? previous.version + 1 : 0);
+        status = updated;
+        Log.d(TAG, "Capability status changed: permissions=" + updated.permissionsGranted
+                + " notifications=" + updated.notificationListenerEnabled
+                + " accessibility=" + updated.accessibilityServiceEnabled
+                + " battery=" + updated.ignoringBatteryOptimizations);
+
+        if (previous != null) {
+            mainHandler.post(() -> {
+                for (Listener listener : listeners) {
+                    try {
+                        listener.onCapabilityStatusChanged(updated);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Capability listener failed: " + e.getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean readPermissionsGranted() {
+        for (String permission : REQUIRED_PERMISSIONS) {
+            if (ContextCompat.checkSelfPermission(appContext, permission) != PackageManager.PERMISSION_GRANTED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean readIgnoringBatteryOptimizations() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return true;
+        try {
+            PowerManager pm = (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+            return pm == null || pm.isIgnoringBatteryOptimizations(appContext.getPackageName());
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading battery optimization state: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean readNotificationListenerEnabled() {
+        String flat = Settings.Secure.getString(appContext.getContentResolver(), ENABLED_NOTIFICATION_LISTENERS);
+        return containsComponent(flat, appContext.getPackageName(), null);
+    }
+
+    private boolean readAccessibilityServiceEnabled() {
+        String flat = Settings.Secure.getString(appContext.getContentResolver(),
+                Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES);
+        return containsComponent(flat, appContext.getPackageName(), WhatsAppAccessibilityService.class.getName());
+    }
+
+    // Settings store enabled components as a ':'-separated list of flattened ComponentNames
+    private static boolean containsComponent(String flat, String packageName, String className) {
+        if (TextUtils.isEmpty(flat)) return false;
+        for (String name : flat.split(":")) {
+            ComponentName cn = ComponentName.unflattenFromString(name);
+            if (cn == null || !TextUtils.equals(packageName, cn.getPackageName())) continue;
+            if (className == null || className.equals(cn.getClassName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.callcounter;
+
+/**
+ * In-place downmix of interleaved 16-bit PCM to mono, run before StreamingResampler without
+ * allocating. PromptCache uses it for clips recorded in stereo; capture and playback are
+ * opened in mono and never need it.
+ */
+public final class ChannelMixer {
+
+    private ChannelMixer() {
+    }
+
+    /**
+     * Averages interleaved L/R pairs in samples[offset .. offset + 2 * frames) into mono frames
+     * at samples[offset .. offset + frames). Returns the mono frame count.
+     */
+    public static int stereoToMono(short[] samples, int offset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            int left = samples[offset + 2 * i];
+            int right = samples[offset + 2 * i + 1];
+            samples[offset + i] = (short) ((left + right) / 2);
+        }
+        return frames;
+    }
+
+    /**
+     * Downmixes interleaved PCM with any channel count to mono in place. Returns the frame count.
+     */
+    public static int downmix(short[] samples, int offset, int frames, int channels) {
+        if (channels == 1) return frames;
+        if (channels == 2) return stereoToMono(samples, offset, frames);
+        for (int i = 0; i < frames; i++) {
+            int sum = 0;
+            int base = offset + i * channels;
+            for (int c = 0; c < channels; c++) {
+                sum += samples[base + c];
+            }
+            samples[offset + i] = (short) (sum / channels);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,404 @@
+package com.example.callcounter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable, compiled form of a caller rule list. Number rules live in a digit trie stored as
+ * flat first-child / next-sibling arrays, name rules in an open-addressing table, and "any"
+ * rules are expanded into per-channel minute-of-day tables, so evaluate() does no allocation
+ * and a couple of trie walks at most.
+ *
+ * Numbers are keyed the way PhoneNumbers keys contacts: exact rules on matchKey(), prefix
+ * rules on the national significant number. A rule written with a country code ("+1 900",
+ * "+44") is also keyed on that code and its national number under a '+' node, and a caller
+ * whose number carries a country code is only matched against it there, so "+1 900" doesn't
+ * cover +44 900. Callers in national format have no country to check and match such rules on
+ * the national number alone, as they match rules written without a country code.
+ *
+ * Precedence: exact number, then contact name, then the longest matching national prefix (a
+ * bare country code counting as none), then "any" rules, then ALLOW. Within one level a
+ * matching DENY wins over ALLOW.
+ */
+final class CompiledCallerRules {
+
+    private static final int MINUTES_PER_DAY = 1440;
+    private static final byte NO_MATCH = 0;
+    private static final byte MATCH_ALLOW = 1;
+    private static final byte MATCH_DENY = 2;
+    // Trie digit for the '+' that starts country-code keys
+    private static final byte DIGIT_PLUS = 10;
+
+    static final CompiledCallerRules EMPTY = compile(Collections.<CallerRule>emptyList());
+
+    // Per rule, indexed by rule id
+    private final byte[] ruleActions;
+    private final byte[] ruleKinds;
+    private final int[] ruleChannels;
+    private final short[] ruleStarts;
+    private final short[] ruleEnds;
+    // Rules written with a country code, which international callers only match under '+'
+    private final boolean[] ruleCountries;
+
+    // Digit trie; node 0 is the root
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final byte[] nodeDigit;
+    private final int[] nodeRuleOffsets;
+    private final int[] nodeRules;
+    // Child of the root holding country-code prefixes, 0 if there are none
+    private final int countryRoot;
+
+    // Open-addressing table: lower-case name -> rule ids, probed without allocating
+    private final String[] nameKeys;
+    private final int[][] nameRuleIds;
+    private final Map<String, Integer> channelIndexes;
+    // [0] = rules without a channel, [i + 1] = rules for channel i plus those without one
+    private final byte[][] anyTables;
+
+    final int ruleCount;
+
+    private CompiledCallerRules(byte[] ruleActions, byte[] ruleKinds, int[] ruleChannels, short[] ruleStarts,
+                                short[] ruleEnds, boolean[] ruleCountries, int[] firstChild, int[] nextSibling, byte[] nodeDigit,
+                                int[] nodeRuleOffsets, int[] nodeRules, String[] nameKeys, int[][] nameRuleIds,
+                                Map<String, Integer> channelIndexes, byte[][] anyTables) {
+        this.ruleActions = ruleActions;
+        this.ruleKinds = ruleKinds;
+        this.ruleChannels = ruleChannels;
+        this.ruleStarts = ruleStarts;
+        this.ruleEnds = ruleEnds;
+        this.ruleCountries = ruleCountries;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.nodeDigit = nodeDigit;
+        this.nodeRuleOffsets = nodeRuleOffsets;
+        this.nodeRules = nodeRules;
+        this.nameKeys = nameKeys;
+        this.nameRuleIds = nameRuleIds;
+        this.channelIndexes = channelIndexes;
+        this.anyTables = anyTables;
+        this.ruleCount = ruleActions.length;
+        int plus = firstChild[0];
+        while (plus != 0 && nodeDigit[plus] != DIGIT_PLUS) {
+            plus = nextSibling[plus];
+        }
+        this.countryRoot = plus;
+    }
+
+    /**
+     * @param number      caller number as received (formatting and a leading '+' are fine), or null
+     * @param name        display name in any case, surrounding whitespace ignored, or null
+     * @param minuteOfDay local minutes since midnight
+     */
+    CallerRule.Action evaluate(String channel, CharSequence number, String name, int minuteOfDay) {
+        Integer boxed = channel != null ? channelIndexes.get(channel) : null;
+        // Channels no rule mentions only match channel-less rules
+        int channelIndex = boxed != null ? boxed : -2;
+
+        byte prefixMatch = NO_MATCH;
+        if (number != null) {
+            int digits = PhoneNumbers.digitCount(number);
+            int national = Math.min(PhoneNumbers.nationalStart(number), digits);
+            int countryCode = PhoneNumbers.countryCodeStart(number);
+            // A caller with a known country only meets country rules under '+'
+            boolean international = countryCode >= 0;
+            byte exact = NO_MATCH;
+            int prefix = NO_MATCH;
+            if (digits > national) {
+                int exactFrom = Math.max(national, digits - PhoneNumbers.MATCH_DIGITS);
+                exact = (byte) walk(number, exactFrom, 0, 0, CallerRule.Kind.EXACT, true, international,
+                        channelIndex, minuteOfDay);
+                prefix = walk(number, national, 1, 0, CallerRule.Kind.PREFIX, false, international,
+                        channelIndex, minuteOfDay);
+            }
+            if (international && countryRoot != 0 && national > countryCode) {
+                int countryLength = national - countryCode;
+                if (digits > national) {
+                    exact = merge(exact, (byte) walk(number, countryCode, 0, countryRoot, CallerRule.Kind.EXACT,
+                            true, false, channelIndex, minuteOfDay));
+                }
+                // The whole country code, so "+35" doesn't cover +351; depths become national digits
+                int country = walk(number, countryCode, countryLength, countryRoot, CallerRule.Kind.PREFIX, false,
+                        false, channelIndex, minuteOfDay);
+                if ((country & 3) != NO_MATCH) {
+                    int countryDepth = (country >> 2) - countryLength;
+                    int depth = prefix >> 2;
+                    if ((prefix & 3) == NO_MATCH || countryDepth > depth) {
+                        prefix = country;
+                    } else if (countryDepth == depth) {
+                        prefix = merge((byte) (prefix & 3), (byte) (country & 3));
+                    }
+                }
+            }
+            if (exact != NO_MATCH) return toAction(exact);
+            prefixMatch = (byte) (prefix & 3);
+        }
+
+        if (name != null) {
+            int[] rules = nameRules(name);
+            if (rules != null) {
+                byte match = matchRules(rules, 0, rules.length, -1, false, channelIndex, minuteOfDay);
+                if (match != NO_MATCH) return toAction(match);
+            }
+        }
+
+        if (prefixMatch != NO_MATCH) return toAction(prefixMatch);
+
+        byte any = anyTables[channelIndex >= 0 ? channelIndex + 1 : 0][minuteOfDay];
+        if (any != NO_MATCH) return toAction(any);
+
+        return CallerRule.Action.ALLOW;
+    }
+
+    /**
+     * Walks the trie down from root over number's digits, starting at digit index from. If
+     * atEnd, returns the kind's match on the node reached once every digit is consumed. Else
+     * returns the deepest match at least minDepth digits down, packed as depth << 2 | match.
+     * skipCountryRules leaves out rules written with a country code.
+     */
+    private int walk(CharSequence number, int from, int minDepth, int root, CallerRule.Kind kind, boolean atEnd,
+                     boolean skipCountryRules, int channelIndex, int minuteOfDay) {
+        int result = NO_MATCH;
+        int node = root;
+        int seen = 0;
+        int consumed = 0;
+        for (int i = 0; i < number.length(); i++) {
+            int digit = number.charAt(i) - '0';
+            if (digit < 0 || digit > 9) continue;
+            if (seen++ < from) continue;
+            int child = firstChild[node];
+            while (child != 0 && nodeDigit[child] != digit) {
+                child = nextSibling[child];
+            }
+            if (child == 0) return atEnd ? NO_MATCH : result;
+            node = child;
+            consumed++;
+            if (!atEnd && consumed >= minDepth) {
+                byte match = matchNode(node, kind, skipCountryRules, channelIndex, minuteOfDay);
+                if (match != NO_MATCH) result = consumed << 2 | match;
+            }
+        }
+        if (atEnd) return consumed > 0 ? matchNode(node, kind, skipCountryRules, channelIndex, minuteOfDay) : NO_MATCH;
+        return result;
+    }
+
+    private static byte merge(byte a, byte b) {
+        return a == MATCH_DENY || b == MATCH_DENY ? MATCH_DENY : (byte) Math.max(a, b);
+    }
+
+    private int[] nameRules(String name) {
+        if (nameKeys.length == 0) return null;
+        int start = 0;
+        int end = name.length();
+        // Same bounds as String.trim()
+        while (start < end && name.charAt(start) <= ' ') start++;
+        while (end > start && name.charAt(end - 1) <= ' ') end--;
+        if (start == end) return null;
+        int mask = nameKeys.length - 1;
+        for (int slot = nameHash(name, start, end) & mask; nameKeys[slot] != null; slot = (slot + 1) & mask) {
+            String key = nameKeys[slot];
+            if (key.length() == end - start && key.regionMatches(true, 0, name, start, end - start)) {
+                return nameRuleIds[slot];
+            }
+        }
+        return null;
+    }
+
+    private static int nameHash(String name, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + Character.toLowerCase(name.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private byte matchNode(int node, CallerRule.Kind kind, boolean skipCountryRules, int channelIndex, int minuteOfDay) {
+        return matchRules(nodeRules, nodeRuleOffsets[node], nodeRuleOffsets[node + 1], kind.ordinal(),
+                skipCountryRules, channelIndex, minuteOfDay);
+    }
+
+    private byte matchRules(int[] rules, int from, int to, int kind, boolean skipCountryRules, int channelIndex,
+                            int minuteOfDay) {
+        byte result = NO_MATCH;
+        for (int i = from; i < to; i++) {
+            int rule = rules[i];
+            if (kind >= 0 && ruleKinds[rule] != kind) continue;
+            if (skipCountryRules && ruleCountries[rule]) continue;
+            if (ruleChannels[rule] >= 0 && ruleChannels[rule] != channelIndex) continue;
+            if (!inWindow(ruleStarts[rule], ruleEnds[rule], minuteOfDay)) continue;
+            if (ruleActions[rule] == MATCH_DENY) return MATCH_DENY;
+            result = MATCH_ALLOW;
+        }
+        return result;
+    }
+
+    private static boolean inWindow(int start, int end, int minute) {
+        if (start < 0) return true;
+        if (start <= end) return minute >= start && minute < end;
+        return minute >= start || minute < end;
+    }
+
+    private static CallerRule.Action toAction(byte match) {
+        return match == MATCH_DENY ? CallerRule.Action.DENY : CallerRule.Action.ALLOW;
+    }
+
+    static CompiledCallerRules compile(List<CallerRule> rules) {
+        int count = rules.size();
+        byte[] actions = new byte[count];
+        byte[] kinds = new byte[count];
+        int[] channels = new int[count];
+        short[] starts = new short[count];
+        short[] ends = new short[count];
+        boolean[] countries = new boolean[count];
+        Map<String, Integer> channelIndexes = new HashMap<>();
+
+        TrieBuilder trie = new TrieBuilder();
+        int[] ruleNodes = new int[count];
+        // Second node for country rules: their national key, for callers in national format
+        int[] ruleNationalNodes = new int[count];
+        Map<String, int[]> nameRules = new HashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            CallerRule rule = rules.get(i);
+            actions[i] = rule.action == CallerRule.Action.DENY ? MATCH_DENY : MATCH_ALLOW;
+            kinds[i] = (byte) rule.kind.ordinal();
+            starts[i] = (short) rule.startMinute;
+            ends[i] = (short) rule.endMinute;
+            if (rule.channel == null) {
+                channels[i] = -1;
+            } else {
+                Integer index = channelIndexes.get(rule.channel);
+                if (index == null) {
+                    index = channelIndexes.size();
+                    channelIndexes.put(rule.channel, index);
+                }
+                channels[i] = index;
+            }
+
+            ruleNodes[i] = -1;
+            ruleNationalNodes[i] = -1;
+            if (rule.kind == CallerRule.Kind.EXACT || rule.kind == CallerRule.Kind.PREFIX) {
+                boolean exact = rule.kind == CallerRule.Kind.EXACT;
+                String key = exact ? PhoneNumbers.matchKey(rule.value) : PhoneNumbers.nationalNumber(rule.value);
+                int countryCode = PhoneNumbers.countryCodeStart(rule.value);
+                if (countryCode >= 0) {
+                    // '+', the country code and the national number
+                    String digits = PhoneNumbers.normalize(rule.value);
+                    int national = Math.min(PhoneNumbers.nationalStart(rule.value), digits.length());
+                    if (national > countryCode && (!exact || !key.isEmpty())) {
+                        countries[i] = true;
+                        ruleNodes[i] = trie.insert("+" + digits.substring(countryCode));
+                        if (!key.isEmpty()) ruleNationalNodes[i] = trie.insert(key);
+                    }
+                } else if (!key.isEmpty()) {
+                    ruleNodes[i] = trie.insert(key);
+                }
+            } else if (rule.kind == CallerRule.Kind.NAME) {
+                String key = rule.value.trim().toLowerCase(Locale.ROOT);
+                int[] existing = nameRules.get(key);
+                int[] updated = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+                updated[updated.length - 1] = i;
+                nameRules.put(key, updated);
+            }
+        }
+
+        // Group rule ids by trie node (CSR layout)
+        int nodeCount = trie.size;
+        int[] offsets = new int[nodeCount + 1];
+        for (int i = 0; i < count; i++) {
+            if (ruleNodes[i] >= 0) offsets[ruleNodes[i] + 1]++;
+            if (ruleNationalNodes[i] >= 0) offsets[ruleNationalNodes[i] + 1]++;
+        }
+        for (int n = 0; n < nodeCount; n++) {
+            offsets[n + 1] += offsets[n];
+        }
+        int[] nodeRules = new int[offsets[nodeCount]];
+        int[] fill = Arrays.copyOf(offsets, nodeCount);
+        for (int i = 0; i < count; i++) {
+            if (ruleNodes[i] >= 0) {
+                nodeRules[fill[ruleNodes[i]]++] = i;
+            }
+            if (ruleNationalNodes[i] >= 0) {
+                nodeRules[fill[ruleNationalNodes[i]]++] = i;
+            }
+        }
+
+        // Expand "any" rules into minute tables per channel
+        byte[][] anyTables = new byte[channelIndexes.size() + 1][MINUTES_PER_DAY];
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] != CallerRule.Kind.ANY.ordinal()) continue;
+            for (int table = 0; table < anyTables.length; table++) {
+                if (channels[i] >= 0 && channels[i] + 1 != table) continue;
+                byte[] minutes = anyTables[table];
+                for (int m = 0; m < MINUTES_PER_DAY; m++) {
+                    if (inWindow(starts[i], ends[i], m) && minutes[m] != MATCH_DENY) {
+                        minutes[m] = actions[i];
+                    }
+                }
+            }
+        }
+
+        // Name table at most half full, so probes stay short
+        int capacity = 0;
+        if (!nameRules.isEmpty()) {
+            capacity = Integer.highestOneBit(nameRules.size() * 2 - 1) << 1;
+        }
+        String[] nameKeys = new String[capacity];
+        int[][] nameRuleIds = new int[capacity][];
+        for (Map.Entry<String, int[]> entry : nameRules.entrySet()) {
+            String key = entry.getKey();
+            int slot = nameHash(key, 0, key.length()) & (capacity - 1);
+            while (nameKeys[slot] != null) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            nameKeys[slot] = key;
+            nameRuleIds[slot] = entry.getValue();
+        }
+
+        return new CompiledCallerRules(actions, kinds, channels, starts, ends, countries,
+                Arrays.copyOf(trie.firstChild, nodeCount), Arrays.copyOf(trie.nextSibling, nodeCount),
+                Arrays.copyOf(trie.digit, nodeCount), offsets, nodeRules, nameKeys, nameRuleIds,
+                channelIndexes, anyTables);
+    }
+
+    private static final class TrieBuilder {
+        int[] firstChild = new int[64];
+        int[] nextSibling = new int[64];
+        byte[] digit = new byte[64];
+        int size = 1;
+
+        int insert(String digits) {
+            int node = 0;
+            for (int i = 0; i < digits.length(); i++) {
+                char c = digits.charAt(i);
+                byte d = c == '+' ? DIGIT_PLUS : (byte) (c - '0');
+                int child = firstChild[node];
+                while (child != 0 && digit[child] != d) {
+                    child = nextSibling[child];
+                }
+                if (child == 0) {
+                    child = newNode(d);
+                    nextSibling[child] = firstChild[node];
+                    firstChild[node] = child;
+                }
+                node = child;
+            }
+            return node;
+        }
+
+        private int newNode(byte d) {
+            if (size == firstChild.length) {
+                int capacity = size * 2;
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                digit = Arrays.copyOf(digit, capacity);
+            }
+            digit[size] = d;
+            return size++;
+        }
+    }
+}
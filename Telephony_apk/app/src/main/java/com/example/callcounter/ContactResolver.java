@@ -0,0 +1,278 @@
+package com.example.callcounter;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Maps phone numbers and display names (WhatsApp only gives us the latter) to contacts
+ * without querying the contacts provider on the ring path. Lookups check a Bloom filter
+ * built during background warm-up, then a bounded LRU; a miss returns null immediately and
+ * resolves in the background for the next ring. A contacts ContentObserver drops
+ * everything and re-warms; a warm-up or lookup that started before the change is discarded
+ * rather than published.
+ */
+public class ContactResolver {
+
+    private static final String TAG = "CallCounter";
+    private static final int CACHE_SIZE = 256;
+    private static final long INVALIDATE_DEBOUNCE_MS = 5000;
+
+    private static final String[] PHONE_PROJECTION = {
+        ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
+        ContactsContract.CommonDataKinds.Phone.NUMBER,
+        ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME
+    };
+
+    public static final class Contact {
+        public final long contactId;
+        public final String displayName;
+        public final String number;
+
+        Contact(long contactId, String displayName, String number) {
+            this.contactId = contactId;
+            this.displayName = displayName;
+            this.number = number;
+        }
+    }
+
+    private static ContactResolver instance;
+
+    private final Context appContext;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Runnable warmUpRunnable = this::requestWarmUp;
+
+    private final Map<String, Contact> byNumber = new LruMap<>(CACHE_SIZE);
+    private final Map<String, Contact> byName = new LruMap<>(CACHE_SIZE);
+    private final Set<String> pendingLookups = Collections.synchronizedSet(new HashSet<String>());
+
+    // null until the first warm-up finished; until then every lookup counts as "maybe known"
+    private volatile BloomFilter numberFilter;
+    private volatile BloomFilter nameFilter;
+    // Bumped on every contacts change; results read under an older generation are stale
+    private int generation;
+
+    public static synchronized ContactResolver getInstance(Context context) {
+        if (instance == null) {
+            instance = new ContactResolver(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ContactResolver(Context appContext) {
+        this.appContext = appContext;
+        try {
+            appContext.getContentResolver().registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true,
+                    new ContentObserver(mainHandler) {
+                        @Override
+                        public void onChange(boolean selfChange) {
+                            invalidate();
+                            mainHandler.removeCallbacks(warmUpRunnable);
+                            mainHandler.postDelayed(warmUpRunnable, INVALIDATE_DEBOUNCE_MS);
+                        }
+                    });
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register contacts observer: " + e.getMessage());
+        }
+        requestWarmUp();
+    }
+
+    /**
+     * Never blocks. Returns null for unknown numbers and for known numbers that aren't
+     * cached yet (those are resolved in the background).
+     */
+    public Contact lookupByNumber(String number) {
+        String key = PhoneNumbers.matchKey(number);
+        if (key.isEmpty()) return null;
+        BloomFilter filter = numberFilter;
+        if (filter != null && !filter.mightContain(key)) return null;
+        Contact contact;
+        synchronized (byNumber) {
+            contact = byNumber.get(key);
+        }
+        if (contact == null) {
+            resolveLater("n:" + key, () -> queryByNumber(number, key));
+        }
+        return contact;
+    }
+
+    public Contact lookupByName(String displayName) {
+        if (displayName == null) return null;
+        String key = displayName.trim().toLowerCase(Locale.ROOT);
+        if (key.isEmpty()) return null;
+        BloomFilter filter = nameFilter;
+        if (filter != null && !filter.mightContain(key)) return null;
+        Contact contact;
+        synchronized (byName) {
+            contact = byName.get(key);
+        }
+        if (contact == null) {
+            resolveLater("d:" + key, () -> queryByName(displayName.trim(), key));
+        }
+        return contact;
+    }
+
+    // Stop trusting the filters and cached names right away; new contacts would read as unknown
+    // and renamed or deleted ones would keep their old entries
+    private synchronized void invalidate() {
+        generation++;
+        numberFilter = null;
+        nameFilter = null;
+        synchronized (byNumber) {
+            byNumber.clear();
+        }
+        synchronized (byName) {
+            byName.clear();
+        }
+    }
+
+    private synchronized int generation() {
+        return generation;
+    }
+
+    public void requestWarmUp() {
+        worker.execute(this::warmUp);
+    }
+
+    private boolean hasPermission() {
+        return ContextCompat.checkSelfPermission(appContext, Manifest.permission.READ_CONTACTS)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private void resolveLater(String lookupKey, Runnable query) {
+        if (!hasPermission() || !pendingLookups.add(lookupKey)) return;
+        worker.execute(() -> {
+            try {
+                query.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Contact lookup failed: " + e.getMessage());
+            } finally {
+                pendingLookups.remove(lookupKey);
+            }
+        });
+    }
+
+    private void warmUp() {
+        if (!hasPermission()) {
+            Log.d(TAG, "READ_CONTACTS not granted, contact warm-up skipped");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int startGeneration = generation();
+        try (Cursor cursor = appContext.getContentResolver().query(
+                ContactsContract.CommonDataKinds.Phone.CONTENT_URI, PHONE_PROJECTION, null, null, null)) {
+            if (cursor == null) return;
+            int rows = cursor.getCount();
+            BloomFilter numbers = new BloomFilter(rows);
+            BloomFilter names = new BloomFilter(rows);
+            Map<String, Contact> warmNumbers = new LinkedHashMap<>();
+            Map<String, Contact> warmNames = new LinkedHashMap<>();
+
+            while (cursor.moveToNext()) {
+                Contact contact = new Contact(cursor.getLong(0), cursor.getString(2), cursor.getString(1));
+                String numberKey = PhoneNumbers.matchKey(contact.number);
+                if (!numberKey.isEmpty()) {
+                    numbers.add(numberKey);
+                    if (warmNumbers.size() < CACHE_SIZE) warmNumbers.put(numberKey, contact);
+                }
+                if (contact.displayName != null) {
+                    String nameKey = contact.displayName.trim().toLowerCase(Locale.ROOT);
+                    names.add(nameKey);
+                    if (warmNames.size() < CACHE_SIZE) warmNames.put(nameKey, contact);
+                }
+            }
+
+            synchronized (this) {
+                if (generation != startGeneration) {
+                    // Contacts changed while we read them; the debounced warm-up will redo it
+                    Log.d(TAG, "Contacts changed during warm-up, discarding it");
+                    return;
+                }
+                synchronized (byNumber) {
+                    byNumber.clear();
+                    byNumber.putAll(warmNumbers);
+                }
+                synchronized (byName) {
+                    byName.clear();
+                    byName.putAll(warmNames);
+                }
+                numberFilter = numbers;
+                nameFilter = names;
+            }
+            Log.d(TAG, "Contacts warmed up: " + rows + " numbers in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            Log.e(TAG, "Contact warm-up failed: " + e.getMessage());
+        }
+    }
+
+    private void queryByNumber(String number, String key) {
+        int startGeneration = generation();
+        Uri uri = Uri.withAppendedPath(ContactsContract.PhoneLookup.CONTENT_FILTER_URI, Uri.encode(number));
+        String[] projection = {ContactsContract.PhoneLookup._ID, ContactsContract.PhoneLookup.DISPLAY_NAME};
+        try (Cursor cursor = appContext.getContentResolver().query(uri, projection, null, null, null)) {
+            if (cursor != null && cursor.moveToNext()) {
+                Contact contact = new Contact(cursor.getLong(0), cursor.getString(1), number);
+                synchronized (this) {
+                    if (generation != startGeneration) return;
+                    synchronized (byNumber) {
+                        byNumber.put(key, contact);
+                    }
+                }
+            }
+        }
+    }
+
+    private void queryByName(String displayName, String key) {
+        int startGeneration = generation();
+        try (Cursor cursor = appContext.getContentResolver().query(
+                ContactsContract.CommonDataKinds.Phone.CONTENT_URI, PHONE_PROJECTION,
+                ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " = ? COLLATE NOCASE",
+                new String[]{displayName}, null)) {
+            if (cursor != null && cursor.moveToNext()) {
+                Contact contact = new Contact(cursor.getLong(0), cursor.getString(2), cursor.getString(1));
+                synchronized (this) {
+                    if (generation != startGeneration) return;
+                    synchronized (byName) {
+                        byName.put(key, contact);
+                    }
+                }
+            }
+        }
+    }
+
+    // Access-ordered map that drops its least recently used entry past maxEntries
+    static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        LruMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.callcounter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of everything that decides how calls are detected and answered: the
+ * per-app VoipAppProfiles (keywords, locators, screen fractions, follow-up delays) plus the
+ * answer-confirmation timings and the policy for overlapping rings, plus where fleet telemetry
+ * is uploaded. DetectionConfigStore
+ * builds one from files/detection_config.json and publishes it whole; anything the file
+ * leaves out keeps the compiled-in default, so a config only needs to carry what changed.
+ *
+ * <pre>
+ * {"schema": 1, "version": 12, "confirm_timeout_ms": 6000, "concurrent_ring_policy": "per_channel",
+ *  "telemetry_endpoint": "https://telemetry.example.com/v1/ingest",
+ *  "apps": [{"package": "com.whatsapp", "answer_button_texts": ["answer", "accept"],
+ *            "answer_tap_fractions": [[0.5, 0.85]], "event_scan_delay_ms": 600}]}
+ * </pre>
+ *
+ * A package not in the default registry is added as a new app and must name its "channel".
+ */
+public final class DetectionConfig {
+
+    /** Highest "schema" this build understands; newer files are rejected, not half-applied. */
+    public static final int SCHEMA_VERSION = 1;
+
+    private static final long MAX_DELAY_MS = 60000;
+
+    public static final DetectionConfig DEFAULT = new DetectionConfig(0, VoipAppRegistry.getDefault(),
+            6000, 2, 5, 3000, 500, CallSessionTable.RingPolicy.ANSWER_FIRST, null);
+
+    /** Operator-assigned revision from the file; 0 for the built-in defaults. */
+    public final int version;
+    public final VoipAppRegistry registry;
+
+    // Answer confirmation
+    public final long confirmTimeoutMs;
+    public final int maxAnswerRetries;
+    public final int maxTimerStepSeconds;
+    public final long ringingRemovedGraceMs;
+
+    // Bounds one answer-button search on deep or huge view trees
+    public final int maxScanNodes;
+
+    // Which of several simultaneous rings get auto-answered
+    final CallSessionTable.RingPolicy ringPolicy;
+
+    // Telemetry upload URL; "" turns uploads off, null leaves the stored endpoint alone
+    public final String telemetryEndpoint;
+
+    private DetectionConfig(int version, VoipAppRegistry registry, long confirmTimeoutMs, int maxAnswerRetries,
+                            int maxTimerStepSeconds, long ringingRemovedGraceMs, int maxScanNodes,
+                            CallSessionTable.RingPolicy ringPolicy, String telemetryEndpoint) {
+        this.version = version;
+        this.registry = registry;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.maxAnswerRetries = maxAnswerRetries;
+        this.maxTimerStepSeconds = maxTimerStepSeconds;
+        this.ringingRemovedGraceMs = ringingRemovedGraceMs;
+        this.maxScanNodes = maxScanNodes;
+        this.ringPolicy = ringPolicy;
+        this.telemetryEndpoint = telemetryEndpoint;
+    }
+
+    /**
+     * Parses and validates a config file on top of DEFAULT. Throws on any error, so a bad edit
+     * never replaces a working config.
+     */
+    static DetectionConfig parse(String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        int schema = root.optInt("schema", 1);
+        if (schema > SCHEMA_VERSION) {
+            throw new IllegalArgumentException("schema " + schema + " is newer than " + SCHEMA_VERSION);
+        }
+
+        Map<String, VoipAppProfile> profiles = new LinkedHashMap<>();
+        for (VoipAppProfile profile : DEFAULT.registry.profiles()) {
+            profiles.put(profile.packageName, profile);
+        }
+        JSONArray apps = root.optJSONArray("apps");
+        if (apps != null) {
+            for (int i = 0; i < apps.length(); i++) {
+                VoipAppProfile profile = parseProfile(apps.getJSONObject(i), profiles);
+                profiles.put(profile.packageName, profile);
+            }
+        }
+
+        return new DetectionConfig(
+                root.optInt("version", 0),
+                new VoipAppRegistry(profiles.values().toArray(new VoipAppProfile[0])),
+                delay(root, "confirm_timeout_ms", DEFAULT.confirmTimeoutMs),
+                range(root, "max_answer_retries", DEFAULT.maxAnswerRetries, 0, 10),
+                range(root, "max_timer_step_seconds", DEFAULT.maxTimerStepSeconds, 1, 60),
+                delay(root, "ringing_removed_grace_ms", DEFAULT.ringingRemovedGraceMs),
+                range(root, "max_scan_nodes", DEFAULT.maxScanNodes, 50, 5000),
+                root.has("concurrent_ring_policy")
+                        ? CallSessionTable.RingPolicy.parse(root.getString("concurrent_ring_policy"))
+                        : DEFAULT.ringPolicy,
+                root.has("telemetry_endpoint") ? endpoint(root.getString("telemetry_endpoint")) : null);
+    }
+
+    private static VoipAppProfile parseProfile(JSONObject app, Map<String, VoipAppProfile> known)
+            throws JSONException {
+        String packageName = app.getString("package");
+        VoipAppProfile base = known.get(packageName);
+        VoipAppProfile.Builder builder;
+        if (base != null) {
+            builder = new VoipAppProfile.Builder(base);
+        } else {
+            builder = new VoipAppProfile.Builder(packageName, app.getString("channel"));
+        }
+        if (app.has("label")) builder.label(app.getString("label"));
+        if (app.has("require_call_signature")) builder.requireCallSignature(app.getBoolean("require_call_signature"));
+
+        String[] texts;
+        if ((texts = strings(app, "call_keywords")) != null) builder.callKeywords(texts);
+        if ((texts = strings(app, "call_phrases")) != null) builder.callPhrases(texts);
+        if ((texts = strings(app, "answer_action_keywords")) != null) builder.answerActionKeywords(texts);
+        if ((texts = strings(app, "ongoing_call_keywords")) != null) builder.ongoingCallKeywords(texts);
+        if ((texts = strings(app, "call_screen_texts")) != null) builder.callScreenTexts(texts);
+        if ((texts = strings(app, "call_screen_class_hints")) != null) builder.callScreenClassHints(texts);
+        if ((texts = strings(app, "call_window_titles")) != null) builder.callWindowTitles(texts);
+        if ((texts = strings(app, "answer_button_texts")) != null) builder.answerButtonTexts(texts);
+
+        if (app.has("answer_button_min_y_fraction")) {
+            builder.answerButtonMinYFraction(fraction(app.getDouble("answer_button_min_y_fraction")));
+        }
+        JSONArray taps = app.optJSONArray("answer_tap_fractions");
+        if (taps != null) {
+            float[][] fractions = new float[taps.length()][];
+            for (int i = 0; i < taps.length(); i++) {
+                JSONArray point = taps.getJSONArray(i);
+                fractions[i] = new float[] {fraction(point.getDouble(0)), fraction(point.getDouble(1))};
+            }
+            builder.answerTapFractions(fractions);
+        }
+
+        if (app.has("content_intent_follow_up_delay_ms")) {
+            builder.contentIntentFollowUpDelayMs(delay(app, "content_intent_follow_up_delay_ms", 0));
+        }
+        if (app.has("launch_follow_up_delay_ms")) {
+            builder.launchFollowUpDelayMs(delay(app, "launch_follow_up_delay_ms", 0));
+        }
+        if (app.has("answer_broadcast_delay_ms")) {
+            builder.answerBroadcastDelayMs(delay(app, "answer_broadcast_delay_ms", 0));
+        }
+        if (app.has("event_scan_delay_ms")) {
+            builder.eventScanDelayMs(delay(app, "event_scan_delay_ms", 0));
+        }
+        if (app.has("gesture_tap_interval_ms")) {
+            builder.gestureTapIntervalMs(delay(app, "gesture_tap_interval_ms", 0));
+        }
+        return builder.build();
+    }
+
+    // Null when absent; an empty list would silently disable detection, so it is an error
+    private static String[] strings(JSONObject object, String name) throws JSONException {
+        JSONArray array = object.optJSONArray(name);
+        if (array == null) return null;
+        List<String> values = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            String value = array.getString(i).trim();
+            if (!value.isEmpty()) values.add(value);
+        }
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException(name + " must not be empty");
+        }
+        return values.toArray(new String[0]);
+    }
+
+    private static float fraction(double value) {
+        if (!(value >= 0 && value <= 1)) {
+            throw new IllegalArgumentException("screen fraction " + value + " outside 0..1");
+        }
+        return (float) value;
+    }
+
+    private static String endpoint(String value) {
+        String url = value.trim();
+        if (url.isEmpty()) return url;
+        try {
+            URI uri = new URI(url);
+            String scheme = uri.getScheme();
+            if (("https".equalsIgnoreCase(scheme) || "http".equalsIgnoreCase(scheme)) && uri.getHost() != null) {
+                return url;
+            }
+        } catch (URISyntaxException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("telemetry_endpoint " + value + " is not an http(s) URL");
+    }
+
+    private static long delay(JSONObject object, String name, long fallback) {
+        long value = object.optLong(name, fallback);
+        if (value < 0 || value > MAX_DELAY_MS) {
+            throw new IllegalArgumentException(name + " = " + value + " outside 0.." + MAX_DELAY_MS);
+        }
+        return value;
+    }
+
+    private static int range(JSONObject object, String name, int fallback, int min, int max) {
+        int value = object.optInt(name, fallback);
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(name + " = " + value + " outside " + min + ".." + max);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.callcounter;
+
+import android.content.Context;
+import android.os.FileObserver;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the live DetectionConfig. files/detection_config.json (format in DetectionConfig) is
+ * parsed and validated off-thread whenever it changes and published with a single atomic swap,
+ * so notification and accessibility callbacks read a complete config without locking. A file
+ * that fails to parse keeps the previous config; deleting it restores the defaults. Callers
+ * should read get() once per event and use that snapshot throughout.
+ */
+public class DetectionConfigStore {
+
+    /** Notified on the compiler thread after a new config is published. */
+    public interface Listener {
+        void onConfigChanged(DetectionConfig config);
+    }
+
+    private static final String TAG = "CallCounter";
+    static final String CONFIG_FILE_NAME = "detection_config.json";
+    private static final int MAX_CONFIG_BYTES = 256 * 1024;
+
+    private static DetectionConfigStore instance;
+
+    private final AtomicReference<DetectionConfig> config = new AtomicReference<>(DetectionConfig.DEFAULT);
+    private final ExecutorService compiler = Executors.newSingleThreadExecutor();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final File configFile;
+    private final FileObserver configObserver;
+
+    public static synchronized DetectionConfigStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new DetectionConfigStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DetectionConfigStore(Context appContext) {
+        File dir = appContext.getFilesDir();
+        configFile = new File(dir, CONFIG_FILE_NAME);
+        configObserver = new FileObserver(dir.getPath(), FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.DELETE) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (CONFIG_FILE_NAME.equals(path)) {
+                    reload();
+                }
+            }
+        };
+        configObserver.startWatching();
+        reload();
+    }
+
+    public DetectionConfig get() {
+        return config.get();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void reload() {
+        compiler.execute(() -> {
+            try {
+                publish(configFile.exists() ? DetectionConfig.parse(readFile(configFile)) : DetectionConfig.DEFAULT);
+            } catch (Exception e) {
+                Log.e(TAG, "Invalid " + CONFIG_FILE_NAME + ", keeping config version "
+                        + config.get().version + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void publish(DetectionConfig compiled) {
+        DetectionConfig previous = config.getAndSet(compiled);
+        if (previous == compiled) return;
+        Log.d(TAG, "Detection config version " + compiled.version + " published for "
+                + compiled.registry.profiles().size() + " apps");
+        for (Listener listener : listeners) {
+            try {
+                listener.onConfigChanged(compiled);
+            } catch (Exception e) {
+                Log.e(TAG, "Detection config listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        if (file.length() > MAX_CONFIG_BYTES) {
+            throw new IOException("file is larger than " + MAX_CONFIG_BYTES + " bytes");
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+}
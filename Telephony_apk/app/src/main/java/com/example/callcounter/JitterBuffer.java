@@ -0,0 +1,251 @@
+package com.example.callcounter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Adaptive playout buffer for streamed model audio, between the network receiver (producer)
+ * and the playback thread (consumer). Arrival jitter is tracked with the RFC 3550 estimator
+ * against the media clock of the samples received, and sets a target depth. Playback starts
+ * once the target is buffered; while running, depth is steered toward the target only inside
+ * pauses, by inserting silence (stretch) or skipping silent samples (compress), so speech is
+ * never cut. flush() drops everything queued before it, for interruptions.
+ *
+ * One producer thread calls offer()/endOfStream(), one consumer thread calls read();
+ * flush() and the getters may be called from any thread. Nothing allocates after construction.
+ */
+public class JitterBuffer {
+
+    private static final int MIN_TARGET_MS = 40;
+    private static final int INITIAL_TARGET_MS = 80;
+    // Target depth covers this many mean deviations of arrival jitter
+    private static final int JITTER_MULTIPLIER = 3;
+    private static final int HYSTERESIS_MS = 20;
+    // Peak amplitude below which audio counts as a pause (about -36 dBFS)
+    private static final int SILENCE_PEAK = 500;
+    // A longer arrival gap starts a new talk spurt with a fresh media clock
+    private static final long SPURT_GAP_NS = 500_000_000L;
+
+    private final int sampleRate;
+    private final int maxDepthMs;
+    private final PcmRingBuffer ring;
+    private final short[] scratch;
+    private final int silenceCheckFrames;
+    // MIN_TARGET_MS on top of one consumer read, which must be buffered in full
+    private final int targetFloorMs;
+
+    // --- producer state ---
+    private long spurtStartNs;
+    private long spurtSamples;
+    private double previousTransitNs;
+    private boolean hasTransit;
+    private double jitterNs;
+
+    // --- consumer state ---
+    private boolean playing;
+    private boolean lastOutputSilent = true;
+
+    // --- shared ---
+    private volatile int targetMs;
+    private volatile int jitterMs;
+    private volatile long lastArrivalNs;
+    private volatile boolean endOfStream;
+    private volatile boolean spurtReset = true;
+    private volatile long flushMark;
+
+    // Each counter is written by a single thread
+    private volatile long underruns;
+    private volatile long playedFrames;
+    private volatile long stretchedFrames;
+    private volatile long compressedFrames;
+    private volatile long flushedFrames;
+    private volatile long overflowDroppedFrames;
+
+    public JitterBuffer(int sampleRate, int maxDepthMs, int maxReadFrames) {
+        this.sampleRate = sampleRate;
+        this.maxDepthMs = maxDepthMs;
+        this.ring = new PcmRingBuffer(framesForMs(maxDepthMs) * 2);
+        this.scratch = new short[maxReadFrames];
+        this.silenceCheckFrames = Math.max(1, sampleRate / 100);
+        this.targetFloorMs = MIN_TARGET_MS + (int) (maxReadFrames * 1000L / sampleRate);
+        this.jitterNs = (INITIAL_TARGET_MS - MIN_TARGET_MS) * 1_000_000.0 / JITTER_MULTIPLIER;
+        this.targetMs = targetFloorMs + INITIAL_TARGET_MS - MIN_TARGET_MS;
+    }
+
+    // --- producer side ---
+
+    public int offer(ByteBuffer src) {
+        return offer(src, System.nanoTime());
+    }
+
+    /** Queues 16-bit mono PCM that arrived at nowNs. Returns bytes accepted; the rest is dropped. */
+    public int offer(ByteBuffer src, long nowNs) {
+        int bytes = src.remaining() & ~1;
+        if (bytes == 0) return 0;
+
+        long previousArrival = lastArrivalNs;
+        if (spurtReset || previousArrival == 0 || nowNs - previousArrival > SPURT_GAP_NS) {
+            spurtReset = false;
+            spurtStartNs = nowNs;
+            spurtSamples = 0;
+            hasTransit = false;
+        }
+        // Transit relative to the spurt's media clock; its variation is the arrival jitter
+        double transitNs = (nowNs - spurtStartNs) - spurtSamples * 1e9 / sampleRate;
+        if (hasTransit) {
+            double deviation = Math.abs(transitNs - previousTransitNs);
+            jitterNs += (deviation - jitterNs) / 16.0;
+            jitterMs = (int) (jitterNs / 1_000_000.0);
+            int target = targetFloorMs + (int) (JITTER_MULTIPLIER * jitterNs / 1_000_000.0);
+            targetMs = Math.max(targetFloorMs, Math.min(target, maxDepthMs / 2));
+        }
+        previousTransitNs = transitNs;
+        hasTransit = true;
+        spurtSamples += bytes >> 1;
+
+        int written = ring.write(src);
+        if (written < bytes) {
+            overflowDroppedFrames += (bytes - written) >> 1;
+            src.position(src.limit());
+        }
+        endOfStream = false;
+        lastArrivalNs = nowNs;
+        return written;
+    }
+
+    /** The current turn is complete; play out what's left without waiting or counting underruns. */
+    public void endOfStream() {
+        endOfStream = true;
+    }
+
+    /**
+     * Drops everything offered before this call, e.g. when the user barges in. Audio offered
+     * concurrently from the producer thread may land on either side of the cut.
+     */
+    public void flush() {
+        flushMark = ring.writtenBytes();
+        spurtReset = true;
+    }
+
+    // --- consumer side ---
+
+    public int read(short[] dst, int offset, int frames) {
+        return read(dst, offset, frames, System.nanoTime());
+    }
+
+    /**
+     * Fills exactly frames samples of dst for playback at nowNs, padding with silence.
+     * Returns how many of them came from the stream.
+     */
+    public int read(short[] dst, int offset, int frames, long nowNs) {
+        long mark = flushMark;
+        long consumed = ring.consumedBytes();
+        if (mark > consumed) {
+            flushedFrames += ring.skip((int) Math.min(mark - consumed, Integer.MAX_VALUE)) >> 1;
+            playing = false;
+            lastOutputSilent = true;
+        }
+
+        int available = ring.availableBytes() >> 1;
+        int target = framesForMs(targetMs);
+        int hysteresis = framesForMs(HYSTERESIS_MS);
+        boolean producerIdle = nowNs - lastArrivalNs > targetMs * 1_000_000L;
+        boolean draining = endOfStream || producerIdle;
+
+        if (!playing) {
+            if (available >= target || (available > 0 && draining)) {
+                playing = true;
+            } else {
+                fillSilence(dst, offset, frames);
+                return 0;
+            }
+        }
+
+        int position = 0;
+        if (lastOutputSilent && !draining && available < target - hysteresis) {
+            // Running low inside a pause: widen the pause instead of heading into an underrun
+            position = Math.min(frames / 2, target - available);
+            fillSilence(dst, offset, position);
+            stretchedFrames += position;
+        } else if (lastOutputSilent && available > target + hysteresis) {
+            // Too much delay: skip ahead if the next stretch of audio is still pause
+            int peeked = ring.peek(scratch, 0, Math.min(Math.min(available - target, frames), scratch.length));
+            if (peeked > 0 && isSilent(scratch, 0, peeked)) {
+                ring.skip(peeked << 1);
+                compressedFrames += peeked;
+            }
+        }
+
+        int got = ring.read(dst, offset + position, frames - position);
+        if (position + got < frames) {
+            fillSilence(dst, offset + position + got, frames - position - got);
+            if (!draining) underruns++;
+            // Rebuffer up to the target before resuming
+            playing = false;
+        }
+        playedFrames += got;
+
+        int tail = Math.min(silenceCheckFrames, position + got);
+        lastOutputSilent = tail == 0 || isSilent(dst, offset + position + got - tail, tail);
+        return got;
+    }
+
+    // --- metrics ---
+
+    public int getBufferedMs() {
+        return (int) ((ring.availableBytes() >> 1) * 1000L / sampleRate);
+    }
+
+    public int getBufferedBytes() {
+        return ring.availableBytes();
+    }
+
+    public int getTargetDelayMs() {
+        return targetMs;
+    }
+
+    public int getJitterMs() {
+        return jitterMs;
+    }
+
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    public long getPlayedFrames() {
+        return playedFrames;
+    }
+
+    public long getStretchedFrames() {
+        return stretchedFrames;
+    }
+
+    public long getCompressedFrames() {
+        return compressedFrames;
+    }
+
+    public long getFlushedFrames() {
+        return flushedFrames;
+    }
+
+    public long getOverflowDroppedFrames() {
+        return overflowDroppedFrames;
+    }
+
+    private int framesForMs(int ms) {
+        return (int) ((long) ms * sampleRate / 1000);
+    }
+
+    private static boolean isSilent(short[] samples, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            int value = samples[i];
+            if (value > SILENCE_PEAK || value < -SILENCE_PEAK) return false;
+        }
+        return true;
+    }
+
+    private static void fillSilence(short[] samples, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            samples[i] = 0;
+        }
+    }
+}
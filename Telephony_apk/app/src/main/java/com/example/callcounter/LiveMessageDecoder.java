@@ -0,0 +1,386 @@
+package com.example.callcounter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Incremental decoder for the Live API server stream. Bytes can be fed in fragments of any
+ * size (split mid-key, mid-base64, mid-message); a small JSON state machine tracks just enough
+ * of the key path to find serverContent.modelTurn.parts[].inlineData.data and base64-decodes
+ * it straight into a reusable PCM buffer, without building strings or a JSON tree. Also
+ * reports setupComplete, serverContent.turnComplete and serverContent.interrupted.
+ * Everything else is skipped. Not thread-safe; feed it from the receiving thread.
+ */
+public class LiveMessageDecoder {
+
+    /** Called on the feeding thread. The pcm buffer is only valid during the call. */
+    public interface Listener {
+        void onSetupComplete();
+        void onAudio(ByteBuffer pcm);
+        void onTurnComplete();
+        void onInterrupted();
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_DEPTH = 32;
+    private static final int MAX_KEY_BYTES = 32;
+    // Multiple of 6 so mid-string flushes always hand out whole 16-bit samples
+    private static final int AUDIO_BUFFER_BYTES = 16380;
+
+    private static final int KEY_OTHER = 0;
+    private static final int KEY_SERVER_CONTENT = 1;
+    private static final int KEY_MODEL_TURN = 2;
+    private static final int KEY_PARTS = 3;
+    private static final int KEY_INLINE_DATA = 4;
+    private static final int KEY_DATA = 5;
+    private static final int KEY_MIME_TYPE = 6;
+    private static final int KEY_TURN_COMPLETE = 7;
+    private static final int KEY_INTERRUPTED = 8;
+    private static final int KEY_SETUP_COMPLETE = 9;
+    private static final byte[][] KEY_NAMES = {
+        null,
+        "serverContent".getBytes(UTF_8),
+        "modelTurn".getBytes(UTF_8),
+        "parts".getBytes(UTF_8),
+        "inlineData".getBytes(UTF_8),
+        "data".getBytes(UTF_8),
+        "mimeType".getBytes(UTF_8),
+        "turnComplete".getBytes(UTF_8),
+        "interrupted".getBytes(UTF_8),
+        "setupComplete".getBytes(UTF_8)
+    };
+    private static final byte[] AUDIO_MIME_PREFIX = "audio/".getBytes(UTF_8);
+
+    private static final int[] BASE64_VALUES = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) BASE64_VALUES[i] = -1;
+        byte[] alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(UTF_8);
+        for (int i = 0; i < alphabet.length; i++) BASE64_VALUES[alphabet[i]] = i;
+        // URL-safe alphabet too, in case a proxy re-encodes
+        BASE64_VALUES['-'] = 62;
+        BASE64_VALUES['_'] = 63;
+    }
+
+    private final Listener listener;
+    private final byte[] audioBytes = new byte[AUDIO_BUFFER_BYTES];
+    private final ByteBuffer audio = ByteBuffer.wrap(audioBytes);
+    private int audioLength;
+
+    // Key that opened each container; array elements inherit their array's key
+    private final int[] containerKeys = new int[MAX_DEPTH];
+    private final boolean[] containerIsObject = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean expectKey;
+    private int valueKey = KEY_OTHER;
+    private boolean inLiteral;
+
+    private boolean inString;
+    private boolean stringIsKey;
+    private boolean escape;
+    private final byte[] keyBytes = new byte[MAX_KEY_BYTES];
+    private int keyLength;
+
+    private boolean decodingAudio;
+    private boolean capturingMime;
+    private int mimeMatched; // prefix bytes matched so far, -1 once it can't match
+    private boolean inlineIsAudio = true;
+    private int quad;
+    private int quadCount;
+
+    private long messages;
+    private long decodedBytes;
+
+    public LiveMessageDecoder(Listener listener) {
+        this.listener = listener;
+    }
+
+    public long getMessageCount() {
+        return messages;
+    }
+
+    public long getDecodedBytes() {
+        return decodedBytes;
+    }
+
+    /** Drops any partial message, e.g. after the connection was reset. */
+    public void reset() {
+        depth = 0;
+        expectKey = false;
+        valueKey = KEY_OTHER;
+        inLiteral = false;
+        inString = false;
+        escape = false;
+        decodingAudio = false;
+        capturingMime = false;
+        inlineIsAudio = true;
+        quad = 0;
+        quadCount = 0;
+        audioLength = 0;
+    }
+
+    /** Consumes all of src's remaining bytes. */
+    public void feed(ByteBuffer src) {
+        if (src.hasArray()) {
+            feed(src.array(), src.arrayOffset() + src.position(), src.remaining());
+            src.position(src.limit());
+            return;
+        }
+        int end = src.limit();
+        for (int i = src.position(); i < end; i++) {
+            if (decodingAudio && !escape) {
+                // Hot path: base64 payload up to the closing quote or an escape
+                int b = src.get(i) & 0xFF;
+                while (b != '"' && b != '\\') {
+                    decodeBase64(b);
+                    if (++i == end) {
+                        src.position(end);
+                        return;
+                    }
+                    b = src.get(i) & 0xFF;
+                }
+            }
+            step(src.get(i) & 0xFF);
+        }
+        src.position(end);
+    }
+
+    public void feed(byte[] src, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (decodingAudio && !escape) {
+                i = decodeRun(src, i, end);
+                if (i == end) return;
+            }
+            step(src[i] & 0xFF);
+        }
+    }
+
+    private void step(int b) {
+        if (inString) {
+            stringByte(b);
+            return;
+        }
+        switch (b) {
+            case '"':
+                inLiteral = false;
+                inString = true;
+                stringIsKey = expectKey && depth > 0 && containerIsObject[depth - 1];
+                if (stringIsKey) {
+                    keyLength = 0;
+                } else {
+                    startValueString();
+                }
+                break;
+            case ':':
+                inLiteral = false;
+                expectKey = false;
+                break;
+            case ',':
+                inLiteral = false;
+                if (depth > 0 && containerIsObject[depth - 1]) {
+                    expectKey = true;
+                    valueKey = KEY_OTHER;
+                }
+                break;
+            case '{':
+            case '[':
+                inLiteral = false;
+                open(b == '{');
+                break;
+            case '}':
+            case ']':
+                inLiteral = false;
+                close();
+                break;
+            case ' ':
+            case '\t':
+            case '\r':
+            case '\n':
+                inLiteral = false;
+                break;
+            default:
+                if (!inLiteral) {
+                    inLiteral = true;
+                    if (b == 't' && depth > 0 && containerKeys[depth - 1] == KEY_SERVER_CONTENT) {
+                        if (valueKey == KEY_TURN_COMPLETE) {
+                            listener.onTurnComplete();
+                        } else if (valueKey == KEY_INTERRUPTED) {
+                            listener.onInterrupted();
+                        }
+                    }
+                }
+                break;
+        }
+    }
+
+    private void open(boolean object) {
+        if (depth == MAX_DEPTH) {
+            reset();
+            throw new IllegalStateException("Live API message nested deeper than " + MAX_DEPTH);
+        }
+        int key;
+        if (depth == 0) {
+            key = KEY_OTHER;
+        } else if (containerIsObject[depth - 1]) {
+            key = valueKey;
+        } else {
+            key = containerKeys[depth - 1];
+        }
+        containerKeys[depth] = key;
+        containerIsObject[depth] = object;
+        depth++;
+        expectKey = object;
+        valueKey = KEY_OTHER;
+
+        if (key == KEY_INLINE_DATA && object) {
+            inlineIsAudio = true;
+        } else if (key == KEY_SETUP_COMPLETE && depth == 2) {
+            listener.onSetupComplete();
+        }
+    }
+
+    private void close() {
+        if (depth == 0) return;
+        depth--;
+        expectKey = false;
+        // The container we just closed was the value of its parent's current key
+        valueKey = depth > 0 && containerIsObject[depth - 1] ? containerKeys[depth] : KEY_OTHER;
+        if (depth == 0) {
+            messages++;
+            valueKey = KEY_OTHER;
+        }
+    }
+
+    private void startValueString() {
+        int container = depth > 0 ? containerKeys[depth - 1] : KEY_OTHER;
+        if (container == KEY_INLINE_DATA) {
+            decodingAudio = valueKey == KEY_DATA && inlineIsAudio;
+            capturingMime = valueKey == KEY_MIME_TYPE;
+            mimeMatched = 0;
+            quad = 0;
+            quadCount = 0;
+        }
+    }
+
+    private void stringByte(int b) {
+        if (escape) {
+            escape = false;
+            // Encoders may write '/' as "\/"; other escapes can't occur in base64 or our keys
+            if (b == '/') stringChar('/');
+            return;
+        }
+        if (b == '\\') {
+            escape = true;
+            return;
+        }
+        if (b == '"') {
+            inString = false;
+            if (stringIsKey) {
+                valueKey = lookupKey();
+            } else if (decodingAudio) {
+                decodingAudio = false;
+                finishBase64();
+                flushAudio();
+            } else if (capturingMime) {
+                capturingMime = false;
+                inlineIsAudio = mimeMatched == AUDIO_MIME_PREFIX.length;
+            }
+            return;
+        }
+        stringChar(b);
+    }
+
+    private void stringChar(int b) {
+        if (stringIsKey) {
+            if (keyLength < MAX_KEY_BYTES) keyBytes[keyLength] = (byte) b;
+            keyLength++;
+        } else if (decodingAudio) {
+            decodeBase64(b);
+        } else if (capturingMime && mimeMatched >= 0 && mimeMatched < AUDIO_MIME_PREFIX.length) {
+            mimeMatched = AUDIO_MIME_PREFIX[mimeMatched] == b ? mimeMatched + 1 : -1;
+        }
+    }
+
+    private int lookupKey() {
+        if (keyLength > MAX_KEY_BYTES) return KEY_OTHER;
+        for (int k = 1; k < KEY_NAMES.length; k++) {
+            byte[] name = KEY_NAMES[k];
+            if (name.length != keyLength) continue;
+            int i = 0;
+            while (i < keyLength && name[i] == keyBytes[i]) i++;
+            if (i == keyLength) return k;
+        }
+        return KEY_OTHER;
+    }
+
+    // Decodes base64 until a quote or backslash; returns its index, or end. Keeps state in locals
+    private int decodeRun(byte[] src, int i, int end) {
+        int[] values = BASE64_VALUES;
+        byte[] out = audioBytes;
+        int q = quad;
+        int count = quadCount;
+        int n = audioLength;
+        for (; i < end; i++) {
+            int b = src[i] & 0xFF;
+            if (b == '"' || b == '\\') break;
+            int value = values[b];
+            if (value < 0) continue;
+            q = (q << 6) | value;
+            if (++count == 4) {
+                if (n > AUDIO_BUFFER_BYTES - 3) {
+                    audioLength = n;
+                    flushAudio();
+                    n = 0;
+                }
+                out[n] = (byte) (q >> 16);
+                out[n + 1] = (byte) (q >> 8);
+                out[n + 2] = (byte) q;
+                n += 3;
+                q = 0;
+                count = 0;
+            }
+        }
+        quad = q;
+        quadCount = count;
+        audioLength = n;
+        return i;
+    }
+
+    private void decodeBase64(int b) {
+        int value = BASE64_VALUES[b];
+        if (value < 0) return; // padding, whitespace
+        quad = (quad << 6) | value;
+        if (++quadCount == 4) {
+            if (audioLength > AUDIO_BUFFER_BYTES - 3) flushAudio();
+            byte[] out = audioBytes;
+            int n = audioLength;
+            out[n] = (byte) (quad >> 16);
+            out[n + 1] = (byte) (quad >> 8);
+            out[n + 2] = (byte) quad;
+            audioLength = n + 3;
+            quad = 0;
+            quadCount = 0;
+        }
+    }
+
+    private void finishBase64() {
+        if (audioLength > AUDIO_BUFFER_BYTES - 2) flushAudio();
+        if (quadCount == 2) {
+            audioBytes[audioLength++] = (byte) (quad >> 4);
+        } else if (quadCount == 3) {
+            audioBytes[audioLength++] = (byte) (quad >> 10);
+            audioBytes[audioLength++] = (byte) (quad >> 2);
+        }
+        quad = 0;
+        quadCount = 0;
+    }
+
+    private void flushAudio() {
+        if (audioLength == 0) return;
+        audio.limit(audioLength).position(0);
+        decodedBytes += audioLength;
+        audioLength = 0;
+        listener.onAudio(audio);
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.callcounter;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes Live API client messages straight into a caller-owned ByteBuffer: the fixed JSON
+ * around each message is precomputed, PCM is base64-encoded in place and text is UTF-8 and
+ * JSON-escaped as it is copied. No JSONObject, String or byte[] per message, so sending
+ * 16 audio chunks a second per call creates no garbage. Not thread-safe; give each sender
+ * its own instance.
+ *
+ *   {"realtimeInput":{"mediaChunks":[{"mimeType":"audio/pcm;rate=16000","data":"<base64>"}]}}
+ *   {"clientContent":{"turns":[{"role":"user","parts":[{"text":"<text>"}]}],"turnComplete":true}}
+ */
+public class LiveMessageEncoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(UTF_8);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(UTF_8);
+
+    private static final byte[] TEXT_PREFIX =
+            "{\"clientContent\":{\"turns\":[{\"role\":\"user\",\"parts\":[{\"text\":\"".getBytes(UTF_8);
+    private static final byte[] TEXT_SUFFIX_COMPLETE = "\"}]}],\"turnComplete\":true}}".getBytes(UTF_8);
+    private static final byte[] TEXT_SUFFIX_OPEN = "\"}]}],\"turnComplete\":false}}".getBytes(UTF_8);
+
+    private final byte[] audioPrefix;
+    private final byte[] audioSuffix = "\"}]}}".getBytes(UTF_8);
+
+    public LiveMessageEncoder(int sampleRate) {
+        audioPrefix = ("{\"realtimeInput\":{\"mediaChunks\":[{\"mimeType\":\"audio/pcm;rate=" + sampleRate
+                + "\",\"data\":\"").getBytes(UTF_8);
+    }
+
+    /** Space needed in dst for an audio message carrying pcmBytes of PCM. */
+    public int maxAudioMessageBytes(int pcmBytes) {
+        return audioPrefix.length + (pcmBytes + 2) / 3 * 4 + audioSuffix.length;
+    }
+
+    /** Space needed in dst for a text message of the given length, worst case. */
+    public static int maxTextMessageBytes(int textLength) {
+        // \\u00XX escapes are 6 bytes; no char encodes to more than 3 UTF-8 bytes on its own
+        return TEXT_PREFIX.length + textLength * 6 + TEXT_SUFFIX_OPEN.length;
+    }
+
+    /**
+     * Encodes pcm's remaining bytes as a realtimeInput message at dst's position. Consumes pcm
+     * and advances dst. Returns the message length.
+     *
+     * @throws java.nio.BufferOverflowException if dst has less than maxAudioMessageBytes() left
+     */
+    public int encodeAudio(ByteBuffer pcm, ByteBuffer dst) {
+        int start = dst.position();
+        dst.put(audioPrefix);
+        if (pcm.hasArray() && dst.hasArray()) {
+            encodeBase64Arrays(pcm, dst);
+        } else {
+            encodeBase64(pcm, dst);
+        }
+        dst.put(audioSuffix);
+        return dst.position() - start;
+    }
+
+    /** Encodes a user text turn at dst's position. Returns the message length. */
+    public int encodeText(CharSequence text, boolean turnComplete, ByteBuffer dst) {
+        int start = dst.position();
+        dst.put(TEXT_PREFIX);
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                dst.put((byte) '\\').put((byte) c);
+            } else if (c < 0x20) {
+                dst.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                        .put(HEX[c >> 4]).put(HEX[c & 0xF]);
+            } else if (c < 0x80) {
+                dst.put((byte) c);
+            } else if (c < 0x800) {
+                dst.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                dst.put((byte) (0xF0 | (cp >> 18))).put((byte) (0x80 | ((cp >> 12) & 0x3F)))
+                        .put((byte) (0x80 | ((cp >> 6) & 0x3F))).put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                dst.put((byte) (0xE0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3F)))
+                        .put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        dst.put(turnComplete ? TEXT_SUFFIX_COMPLETE : TEXT_SUFFIX_OPEN);
+        return dst.position() - start;
+    }
+
+    private static void encodeBase64Arrays(ByteBuffer pcm, ByteBuffer dst) {
+        byte[] in = pcm.array();
+        int ip = pcm.arrayOffset() + pcm.position();
+        int end = ip + pcm.remaining();
+        int outLength = (pcm.remaining() + 2) / 3 * 4;
+        if (dst.remaining() < outLength) throw new BufferOverflowException();
+        byte[] out = dst.array();
+        int op = dst.arrayOffset() + dst.position();
+
+        int whole = end - (end - ip) % 3;
+        while (ip < whole) {
+            int bits = (in[ip] & 0xFF) << 16 | (in[ip + 1] & 0xFF) << 8 | (in[ip + 2] & 0xFF);
+            ip += 3;
+            out[op] = BASE64[bits >>> 18];
+            out[op + 1] = BASE64[(bits >>> 12) & 0x3F];
+            out[op + 2] = BASE64[(bits >>> 6) & 0x3F];
+            out[op + 3] = BASE64[bits & 0x3F];
+            op += 4;
+        }
+        op = encodeTail(in, ip, end - ip, out, op);
+        pcm.position(pcm.limit());
+        dst.position(op - dst.arrayOffset());
+    }
+
+    private static int encodeTail(byte[] in, int ip, int left, byte[] out, int op) {
+        if (left == 0) return op;
+        int bits = (in[ip] & 0xFF) << 16 | (left == 2 ? (in[ip + 1] & 0xFF) << 8 : 0);
+        out[op] = BASE64[bits >>> 18];
+        out[op + 1] = BASE64[(bits >>> 12) & 0x3F];
+        out[op + 2] = left == 2 ? BASE64[(bits >>> 6) & 0x3F] : (byte) '=';
+        out[op + 3] = (byte) '=';
+        return op + 4;
+    }
+
+    // Direct buffers (e.g. straight from the uplink ring) go through absolute get/put
+    private static void encodeBase64(ByteBuffer pcm, ByteBuffer dst) {
+        int ip = pcm.position();
+        int end = pcm.limit();
+        int whole = end - (end - ip) % 3;
+        while (ip < whole) {
+            int bits = (pcm.get(ip) & 0xFF) << 16 | (pcm.get(ip + 1) & 0xFF) << 8 | (pcm.get(ip + 2) & 0xFF);
+            ip += 3;
+            dst.put(BASE64[bits >>> 18]);
+            dst.put(BASE64[(bits >>> 12) & 0x3F]);
+            dst.put(BASE64[(bits >>> 6) & 0x3F]);
+            dst.put(BASE64[bits & 0x3F]);
+        }
+        int left = end - ip;
+        if (left > 0) {
+            int bits = (pcm.get(ip) & 0xFF) << 16 | (left == 2 ? (pcm.get(ip + 1) & 0xFF) << 8 : 0);
+            dst.put(BASE64[bits >>> 18]);
+            dst.put(BASE64[(bits >>> 12) & 0x3F]);
+            dst.put(left == 2 ? BASE64[(bits >>> 6) & 0x3F] : (byte) '=');
+            dst.put((byte) '=');
+        }
+        pcm.position(end);
+    }
+}
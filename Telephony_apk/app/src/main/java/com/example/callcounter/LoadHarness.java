@@ -0,0 +1,420 @@
+package com.example.callcounter;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+import android.view.accessibility.AccessibilityEvent;
+
+import androidx.core.app.NotificationCompat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Debug-build soak harness. Replays a SoakScenario on the main thread through the real entry
+ * points (the connected WhatsAppCallDetector's onNotificationPosted/onNotificationRemoved, the
+ * connected accessibility service's onAccessibilityEvent and CallReceiver.onReceive), so the
+ * detectors, caller rules, journal and confirmation logic all run as they do for real calls.
+ * While a run is active the answer strategies call interceptAnswer() instead of touching the
+ * phone or the VoIP app, and the harness plays the connect signal (OFFHOOK or an in-call
+ * notification) itself. Journal rows and counters are real, so run it on a test device.
+ *
+ * Started with
+ * {@code adb shell am broadcast -a com.example.callcounter.SOAK_TEST --ei duration_s 120 --ei chat_per_min 600}
+ * (or {@code --es script soak.txt} for a script in files/). Reports detection latency
+ * percentiles, missed calls, duplicate answers, entry-point cost, main-thread lag and queue
+ * depths to logcat and files/soak-report.txt.
+ */
+final class LoadHarness {
+
+    static final String ACTION_SOAK_TEST = "com.example.callcounter.SOAK_TEST";
+
+    private static final String TAG = "CallCounter";
+    private static final String REPORT_FILE = "soak-report.txt";
+    private static final String SOAK_NOTIFICATION_CHANNEL = "soak";
+    private static final long PROBE_INTERVAL_MS = 50;
+    // Lets answers, retries and end-of-call handling drain before the report
+    private static final long SETTLE_MS = 3000;
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    private static volatile LoadHarness running;
+    private static boolean triggerRegistered;
+
+    private final Context appContext;
+    private final SoakScenario scenario;
+    private final double speed;
+    private final long connectDelayMs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PendingIntent noOpIntent;
+
+    // Main thread only
+    private long startedAt;
+    private int nextStep;
+    private final long[] ringAt;
+    private final int[] answers;
+    private final String[] callChannels;
+    private final Map<String, Integer> activeCalls = new HashMap<>();
+    private final Samples detectionLatency = new Samples();
+    private final Samples[] entryCost = {new Samples(), new Samples(), new Samples(), new Samples(), new Samples()};
+    private final Samples mainThreadLag = new Samples();
+    private final int[] injected = new int[5];
+    private int missed;
+    private int duplicates;
+    private int strayAnswers;
+    private int skippedSteps;
+    private int maxJournalQueue;
+    private long maxTelemetryPending;
+    private long confirmedBefore;
+    private long falseSuccessesBefore;
+
+    private LoadHarness(Context appContext, SoakScenario scenario, double speed, long connectDelayMs) {
+        this.appContext = appContext;
+        this.scenario = scenario;
+        this.speed = speed;
+        this.connectDelayMs = connectDelayMs;
+        ringAt = new long[scenario.callCount];
+        answers = new int[scenario.callCount];
+        callChannels = new String[scenario.callCount];
+        noOpIntent = PendingIntent.getBroadcast(appContext, 0, new Intent(ACTION_SOAK_TEST + ".NOOP"),
+                PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    /** Registers the adb trigger; does nothing unless the app is debuggable. */
+    static synchronized void registerDebugTrigger(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (triggerRegistered || (appContext.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) return;
+        triggerRegistered = true;
+        BroadcastReceiver trigger = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                start(appContext, intent);
+            }
+        };
+        IntentFilter filter = new IntentFilter(ACTION_SOAK_TEST);
+        // adb broadcasts come from the shell, so the receiver has to be exported
+        if (Build.VERSION.SDK_INT >= 33) {
+            appContext.registerReceiver(trigger, filter, Context.RECEIVER_EXPORTED);
+        } else {
+            appContext.registerReceiver(trigger, filter);
+        }
+    }
+
+    static boolean isRunning() {
+        return running != null;
+    }
+
+    /**
+     * Called by each answer strategy right before it would act. During a soak run the answer is
+     * recorded instead and true is returned, so the caller must skip the real action.
+     */
+    static boolean interceptAnswer(String channel) {
+        LoadHarness harness = running;
+        if (harness == null) return false;
+        long now = SystemClock.uptimeMillis();
+        harness.handler.post(() -> harness.onAnswer(channel, now));
+        return true;
+    }
+
+    private static void start(Context appContext, Intent intent) {
+        if (running != null) {
+            Log.w(TAG, "Soak run already in progress");
+            return;
+        }
+        SoakScenario scenario;
+        try {
+            String script = intent.getStringExtra("script");
+            if (script != null) {
+                try (FileReader reader = new FileReader(new File(appContext.getFilesDir(), script))) {
+                    scenario = SoakScenario.parse(reader);
+                }
+            } else {
+                scenario = SoakScenario.storm(
+                        stringExtra(intent, "package", VoipAppRegistry.PACKAGE_WHATSAPP),
+                        intent.getIntExtra("duration_s", 60) * 1000L,
+                        intent.getIntExtra("chat_per_min", 300),
+                        intent.getIntExtra("voip_every_s", 15) * 1000L,
+                        intent.getIntExtra("cellular_every_s", 0) * 1000L,
+                        intent.getIntExtra("call_s", 8) * 1000L,
+                        intent.getLongExtra("seed", 1));
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Soak run not started: " + e.getMessage());
+            return;
+        }
+        double speed = Math.max(0.1, intent.getFloatExtra("speed", 1f));
+        LoadHarness harness = new LoadHarness(appContext, scenario, speed, intent.getIntExtra("connect_ms", 700));
+        running = harness;
+        harness.handler.post(harness::begin);
+    }
+
+    private static String stringExtra(Intent intent, String name, String fallback) {
+        String value = intent.getStringExtra(name);
+        return value != null ? value : fallback;
+    }
+
+    private void begin() {
+        AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(appContext);
+        confirmedBefore = detector.getConfirmedCount();
+        falseSuccessesBefore = detector.getFalseSuccesses();
+        Log.i(TAG, "Soak run: " + scenario.steps.size() + " steps, " + scenario.callCount + " calls over "
+                + scenario.durationMs / 1000 + " s at " + speed + "x");
+        startedAt = SystemClock.uptimeMillis();
+        scheduleNextStep();
+        probe(startedAt + PROBE_INTERVAL_MS);
+        handler.postAtTime(this::finish, this, startedAt + (long) (scenario.durationMs / speed) + SETTLE_MS);
+    }
+
+    private void scheduleNextStep() {
+        if (nextStep >= scenario.steps.size()) return;
+        SoakScenario.Step step = scenario.steps.get(nextStep);
+        handler.postAtTime(this::runDueSteps, this, startedAt + (long) (step.atMs / speed));
+    }
+
+    // Runs every step whose time has come; a backed-up main thread replays them in a burst
+    private void runDueSteps() {
+        long now = SystemClock.uptimeMillis();
+        while (nextStep < scenario.steps.size()) {
+            SoakScenario.Step step = scenario.steps.get(nextStep);
+            if (startedAt + (long) (step.atMs / speed) > now) break;
+            nextStep++;
+            long begin = System.nanoTime();
+            try {
+                if (!inject(step)) skippedSteps++;
+            } catch (Exception e) {
+                skippedSteps++;
+                Log.e(TAG, "Soak step at " + step.atMs + " ms failed: " + e);
+            }
+            entryCost[step.kind].add((System.nanoTime() - begin) / 1000);
+            injected[step.kind]++;
+        }
+        scheduleNextStep();
+    }
+
+    private boolean inject(SoakScenario.Step step) {
+        switch (step.kind) {
+            case SoakScenario.KIND_CHAT: {
+                int split = step.text.indexOf('|');
+                return postNotification(step.packageName, 10_000 + injected[step.kind],
+                        split >= 0 ? step.text.substring(0, split) : step.packageName,
+                        split >= 0 ? step.text.substring(split + 1) : step.text, false, false);
+            }
+            case SoakScenario.KIND_RING: {
+                VoipAppProfile profile = DetectionConfigStore.getInstance(appContext).get().registry.get(step.packageName);
+                if (profile == null) return false;
+                beginCall(step.callId, profile.channel);
+                return postNotification(step.packageName, step.callId, step.text, "Incoming voice call", true, false);
+            }
+            case SoakScenario.KIND_PHONE:
+                beginCall(step.callId, CallJournal.CHANNEL_CELLULAR);
+                return phoneState(TelephonyManager.EXTRA_STATE_RINGING, step.text);
+            case SoakScenario.KIND_SCREEN: {
+                WhatsAppAccessibilityService service = WhatsAppAccessibilityService.connected;
+                if (service == null) return false;
+                AccessibilityEvent event = AccessibilityEvent.obtain(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+                event.setPackageName(step.packageName);
+                event.getText().add(step.text);
+                service.onAccessibilityEvent(event);
+                return true;
+            }
+            case SoakScenario.KIND_END:
+                return endCall(step);
+            default:
+                return false;
+        }
+    }
+
+    private void beginCall(int callId, String channel) {
+        ringAt[callId] = SystemClock.uptimeMillis();
+        callChannels[callId] = channel;
+        activeCalls.put(channel, callId);
+    }
+
+    private boolean endCall(SoakScenario.Step step) {
+        String channel = callChannels[step.callId];
+        if (channel == null) return false;
+        if (answers[step.callId] == 0) missed++;
+        Integer active = activeCalls.get(channel);
+        if (active != null && active == step.callId) activeCalls.remove(channel);
+        if (step.packageName == null) {
+            return phoneState(TelephonyManager.EXTRA_STATE_IDLE, null);
+        }
+        WhatsAppCallDetector detector = WhatsAppCallDetector.connected;
+        if (detector == null) return false;
+        boolean answered = answers[step.callId] > 0;
+        detector.onNotificationRemoved(statusBarNotification(step.packageName, step.callId,
+                buildNotification("Caller", answered ? "Ongoing voice call" : "Incoming voice call", !answered, answered)));
+        return true;
+    }
+
+    private void onAnswer(String channel, long at) {
+        Integer callId = activeCalls.get(channel);
+        if (callId == null) {
+            // Answer for a call that already ended, or for a chat message taken for a call
+            strayAnswers++;
+            return;
+        }
+        if (++answers[callId] > 1) {
+            duplicates++;
+            return;
+        }
+        detectionLatency.add(at - ringAt[callId]);
+        final int id = callId;
+        // Play the connect signal the real app or modem would produce
+        handler.postAtTime(() -> {
+            Integer active = activeCalls.get(channel);
+            if (active == null || active != id) return;
+            if (CallJournal.CHANNEL_CELLULAR.equals(channel)) {
+                phoneState(TelephonyManager.EXTRA_STATE_OFFHOOK, null);
+            } else {
+                String packageName = packageFor(channel);
+                if (packageName != null) {
+                    postNotification(packageName, id, "Caller", "Ongoing voice call", false, true);
+                }
+            }
+        }, this, SystemClock.uptimeMillis() + connectDelayMs);
+    }
+
+    private String packageFor(String channel) {
+        for (VoipAppProfile profile : DetectionConfigStore.getInstance(appContext).get().registry.profiles()) {
+            if (profile.channel.equals(channel)) return profile.packageName;
+        }
+        return null;
+    }
+
+    private boolean postNotification(String packageName, int id, String title, String text,
+                                     boolean ringing, boolean ongoing) {
+        WhatsAppCallDetector detector = WhatsAppCallDetector.connected;
+        if (detector == null) return false;
+        detector.onNotificationPosted(statusBarNotification(packageName, id,
+                buildNotification(title, text, ringing, ongoing)));
+        return true;
+    }
+
+    private Notification buildNotification(String title, String text, boolean ringing, boolean ongoing) {
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(appContext, SOAK_NOTIFICATION_CHANNEL)
+                .setContentTitle(title)
+                .setContentText(text)
+                .setSmallIcon(R.drawable.ic_launcher_foreground);
+        if (ringing) {
+            builder.setCategory(Notification.CATEGORY_CALL)
+                    .addAction(0, "Decline", noOpIntent)
+                    .addAction(0, "Answer", noOpIntent);
+        }
+        if (ongoing) {
+            builder.setCategory(Notification.CATEGORY_CALL).setOngoing(true).setUsesChronometer(true);
+        }
+        return builder.build();
+    }
+
+    private static StatusBarNotification statusBarNotification(String packageName, int id, Notification notification) {
+        return new StatusBarNotification(packageName, packageName, id, "soak", Process.myUid(), Process.myPid(),
+                0, notification, Process.myUserHandle(), System.currentTimeMillis());
+    }
+
+    private boolean phoneState(String state, String number) {
+        Intent intent = new Intent(TelephonyManager.ACTION_PHONE_STATE_CHANGED);
+        intent.putExtra(TelephonyManager.EXTRA_STATE, state);
+        if (number != null) intent.putExtra(TelephonyManager.EXTRA_INCOMING_NUMBER, number);
+        new CallReceiver().onReceive(appContext, intent);
+        return true;
+    }
+
+    // Main-thread lag: how late a runnable posted for a known time actually runs
+    private void probe(long expectedAt) {
+        if (running != this) return;
+        handler.postAtTime(() -> {
+            mainThreadLag.add(SystemClock.uptimeMillis() - expectedAt);
+            maxJournalQueue = Math.max(maxJournalQueue, CallJournal.getInstance(appContext).pendingTasks());
+            maxTelemetryPending = Math.max(maxTelemetryPending,
+                    Telemetry.getInstance(appContext).getUploader().getPendingBytes());
+            probe(expectedAt + PROBE_INTERVAL_MS);
+        }, this, expectedAt);
+    }
+
+    private void finish() {
+        running = null;
+        handler.removeCallbacksAndMessages(this);
+        AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(appContext);
+        long elapsed = SystemClock.uptimeMillis() - startedAt;
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "Soak run: %d steps in %.1f s (%.1fx), %.1f events/s%n",
+                nextStep, elapsed / 1000.0, speed, nextStep * 1000.0 / Math.max(1, elapsed)));
+        report.append(String.format(Locale.US, "Injected: chat=%d ring=%d phone=%d screen=%d end=%d skipped=%d%n",
+                injected[0], injected[1], injected[2], injected[3], injected[4], skippedSteps));
+        report.append(String.format(Locale.US, "Calls: %d, answered=%d, missed=%d, duplicate answers=%d, stray answers=%d%n",
+                scenario.callCount, detectionLatency.size(), missed, duplicates, strayAnswers));
+        report.append(String.format(Locale.US, "Confirmed=%d, false successes=%d, open call sessions=%d%n",
+                detector.getConfirmedCount() - confirmedBefore, detector.getFalseSuccesses() - falseSuccessesBefore,
+                detector.getOpenSessions()));
+        report.append("Detection latency ms: ").append(detectionLatency.summary()).append('\n');
+        String[] names = {"chat", "ring", "phone", "screen", "end"};
+        for (int kind = 0; kind < names.length; kind++) {
+            if (entryCost[kind].size() == 0) continue;
+            report.append("Entry cost us (").append(names[kind]).append("): ").append(entryCost[kind].summary()).append('\n');
+        }
+        report.append("Main thread lag ms: ").append(mainThreadLag.summary()).append('\n');
+        report.append(String.format(Locale.US, "Max journal queue=%d tasks, max telemetry spool=%d bytes%n",
+                maxJournalQueue, maxTelemetryPending));
+        if (WhatsAppCallDetector.connected == null) report.append("Notification listener not connected; notification steps skipped\n");
+        if (WhatsAppAccessibilityService.connected == null) report.append("Accessibility service not connected; screen steps skipped\n");
+
+        for (String line : report.toString().split("\n")) {
+            Log.i(TAG, line);
+        }
+        File file = new File(appContext.getFilesDir(), REPORT_FILE);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(report.toString());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write " + REPORT_FILE + ": " + e.getMessage());
+        }
+    }
+
+    // Growable long samples with percentile summaries
+    private static final class Samples {
+        private long[] values = new long[256];
+        private int count;
+
+        void add(long value) {
+            if (count == values.length) {
+                if (count == MAX_SAMPLES) return;
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = value;
+        }
+
+        int size() {
+            return count;
+        }
+
+        String summary() {
+            if (count == 0) return "n=0";
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return String.format(Locale.US, "n=%d p50=%d p90=%d p99=%d max=%d", count,
+                    sorted[(int) (count * 0.50)], sorted[(int) (count * 0.90)],
+                    sorted[Math.min(count - 1, (int) (count * 0.99))], sorted[count - 1]);
+        }
+    }
+}
@@ -1,12 +1,12 @@
 package com.example.callcounter;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SwitchCompat;
 import androidx.core.app.ActivityCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import android.Manifest;
 import android.app.AlertDialog;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
@@ -18,26 +18,23 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.PowerManager;
 import android.provider.Settings;
-import android.text.TextUtils;
 import android.util.Log;
 import android.widget.TextView;
 import android.widget.Button;
 import android.widget.Toast;
 import android.os.Build;
 import android.view.View;
-import android.accessibilityservice.AccessibilityServiceInfo;
-import android.view.accessibility.AccessibilityManager;
-import androidx.core.view.accessibility.AccessibilityManagerCompat;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
 
     private TextView normalCallCountTextView;
     private TextView whatsappCallCountTextView;
+    private TextView callStatsTextView;
     private Button enableAccessibilityButton;
     private int normalCallCount = 0;
     private int whatsappCallCount = 0;
@@ -53,6 +50,7 @@ public class MainActivity extends AppCompatActivity {
                 whatsappCallCount = intent.getIntExtra("whatsapp_call_count", 0);
                 whatsappCallCountTextView.setText("WhatsApp Calls: " + whatsappCallCount);
             }
+            CallStats.getInstance(MainActivity.this).refresh(MainActivity.this::renderCallStats);
         }
     };
 
@@ -61,14 +59,20 @@ public class MainActivity extends AppCompatActivity {
     private static final String KEY_AUTOSTART_ADDRESSED = "autostart_addressed";
     private static final String KEY_BATTERY_OPTIMIZATION_ADDRESSED = "battery_optimization_addressed";
     private static final int PERMISSION_REQUEST_CODE = 1;
-    private static final String[] REQUIRED_PERMISSIONS = {
-        Manifest.permission.READ_PHONE_STATE,
-        Manifest.permission.READ_CALL_LOG,
-        Manifest.permission.ANSWER_PHONE_CALLS,
-        Manifest.permission.POST_NOTIFICATIONS
-    };
+    private static final String[] REQUIRED_PERMISSIONS = CapabilityStatusProvider.REQUIRED_PERMISSIONS;
 
     private int currentPermissionStep = 0; // 0: basic permissions, 1: notification access, 2: battery optimization, 3: autostart, 4: final steps
+    private CapabilityStatusProvider capabilityStatusProvider;
+    private int lastWalkedStatusVersion = -1;
+    // Set when we send the user to a settings screen, whose changes the status observers can't see
+    private boolean returningFromSettings;
+
+    private final CapabilityStatusProvider.Listener capabilityListener = new CapabilityStatusProvider.Listener() {
+        @Override
+        public void onCapabilityStatusChanged(CapabilityStatusProvider.CapabilityStatus status) {
+            updateAccessibilityButton(status);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -77,6 +81,9 @@ public class MainActivity extends AppCompatActivity {
 
         Log.d("CallCounter", "MainActivity onCreate started");
 
+        capabilityStatusProvider = CapabilityStatusProvider.getInstance(this);
+        capabilityStatusProvider.addListener(capabilityListener);
+
         normalCallCountTextView = findViewById(R.id.normal_call_count);
         if (normalCallCountTextView == null) {
             Log.e("CallCounter", "normalCallCountTextView is null! Check activity_main.xml for correct ID.");
@@ -86,6 +93,8 @@ public class MainActivity extends AppCompatActivity {
             Log.e("CallCounter", "whatsappCallCountTextView is null! Check activity_main.xml for correct ID.");
         }
 
+        callStatsTextView = findViewById(R.id.call_stats);
+
         enableAccessibilityButton = findViewById(R.id.enableAccessibilityButton);
         if (enableAccessibilityButton == null) {
             Log.e("CallCounter", "enableAccessibilityButton is null! Check activity_main.xml for correct ID.");
@@ -98,6 +107,8 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        setUpRecordingSwitches();
+
         try {
             LocalBroadcastManager.getInstance(this).registerReceiver(uiUpdateReceiver, new IntentFilter("UPDATE_UI"));
         } catch (Exception e) {
@@ -131,68 +142,124 @@ public class MainActivity extends AppCompatActivity {
             whatsappCallCountTextView = findViewById(R.id.whatsapp_call_count);
         }
 
-        // Continue setup if needed
-        requestNextPermissionOrSetting();
-        checkAccessibilityServiceStatus();
+        // Permissions and battery optimization can't be observed. Revoking a permission kills the
+        // process, so only a settings screen we opened can have changed them behind our back
+        if (returningFromSettings) {
+            returningFromSettings = false;
+            capabilityStatusProvider.invalidate();
+        }
+        CapabilityStatusProvider.CapabilityStatus status = capabilityStatusProvider.getStatus();
+
+        // Setup is finished and nothing changed since the last walk, so there is nothing to re-check
+        if (currentPermissionStep < 5 || status.version != lastWalkedStatusVersion) {
+            lastWalkedStatusVersion = status.version;
+            requestNextPermissionOrSetting();
+        } else {
+            // The service may have been stopped from its notification since the last resume
+            startCallCounterServiceIfReady();
+        }
+        checkAccessibilityServiceStatus(status);
+
+        // Show the stored rollups right away, then again once new journal rows are folded in
+        renderCallStats();
+        CallStats.getInstance(this).refresh(this::renderCallStats);
+    }
+
+    private void renderCallStats() {
+        if (callStatsTextView == null || isFinishing()) return;
+        CallStats stats = CallStats.getInstance(this);
+        long now = System.currentTimeMillis();
+        long today = CallStats.startOfDay(now);
+        long day = 24 * 60 * 60 * 1000L;
+        StringBuilder text = new StringBuilder();
+        appendStatsLine(text, "Today", stats.query(today, now + 1, null));
+        appendStatsLine(text, "7 days", stats.query(today - 6 * day, now + 1, null));
+        appendStatsLine(text, "30 days", stats.query(today - 29 * day, now + 1, null));
+        for (String channel : CallRollups.CHANNELS) {
+            CallRollups.Summary summary = stats.query(today - 29 * day, now + 1, channel);
+            if (summary.rings > 0) appendStatsLine(text, "  " + channel, summary);
+        }
+        int[] hourly = stats.hourlyRings(24, null);
+        text.append("Last 24 h:");
+        for (int rings : hourly) text.append(' ').append(rings);
+        callStatsTextView.setText(text);
+    }
+
+    private static void appendStatsLine(StringBuilder text, String label, CallRollups.Summary summary) {
+        text.append(label).append(": ").append(summary.rings).append(" calls");
+        if (summary.rings > 0) {
+            text.append(", ").append(Math.round(summary.answerRate() * 100)).append("% answered");
+        }
+        long p50 = summary.latencyPercentile(0.5);
+        if (p50 >= 0) {
+            text.append(String.format(Locale.US, ", p50 %.1f s, p95 %.1f s",
+                    p50 / 1000.0, summary.latencyPercentile(0.95) / 1000.0));
+        }
+        text.append('\n');
     }
 
     protected void onDestroy() {
         super.onDestroy();
+        capabilityStatusProvider.removeListener(capabilityListener);
         LocalBroadcastManager.getInstance(this).unregisterReceiver(uiUpdateReceiver);
     }
 
+    // Recording is opt-in; CallAudioSession reads these when the next call is answered
+    private void setUpRecordingSwitches() {
+        SwitchCompat recordSwitch = findViewById(R.id.recordCallsSwitch);
+        SwitchCompat adpcmSwitch = findViewById(R.id.recordAdpcmSwitch);
+        if (recordSwitch == null || adpcmSwitch == null) {
+            Log.e("CallCounter", "Recording switches missing from activity_main.xml");
+            return;
+        }
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        boolean recording = prefs.getBoolean(CallAudioSession.KEY_RECORD_CALLS, false);
+        recordSwitch.setChecked(recording);
+        adpcmSwitch.setChecked(prefs.getBoolean(CallAudioSession.KEY_RECORD_ADPCM, false));
+        adpcmSwitch.setEnabled(recording);
+        recordSwitch.setOnCheckedChangeListener((button, checked) -> {
+            prefs.edit().putBoolean(CallAudioSession.KEY_RECORD_CALLS, checked).apply();
+            adpcmSwitch.setEnabled(checked);
+            if (checked) {
+                Toast.makeText(this, "Calls will be recorded. Make sure callers have consented.",
+                        Toast.LENGTH_LONG).show();
+            }
+        });
+        adpcmSwitch.setOnCheckedChangeListener((button, checked) ->
+                prefs.edit().putBoolean(CallAudioSession.KEY_RECORD_ADPCM, checked).apply());
+    }
+
     private void openAccessibilitySettings() {
-        Intent intent = new Intent(Settings.ACTION_ACCESSIBILITY_SETTINGS);
+        startSettingsActivity(new Intent(Settings.ACTION_ACCESSIBILITY_SETTINGS));
+    }
+
+    private void startSettingsActivity(Intent intent) {
         startActivity(intent);
+        returningFromSettings = true;
     }
 
-    private void checkAccessibilityServiceStatus() {
-        if (isAccessibilityServiceEnabled(this, WhatsAppAccessibilityService.class)) {
-            enableAccessibilityButton.setText("Accessibility Service Enabled");
-            enableAccessibilityButton.setEnabled(false);
+    private void checkAccessibilityServiceStatus(CapabilityStatusProvider.CapabilityStatus status) {
+        updateAccessibilityButton(status);
+        if (status.accessibilityServiceEnabled) {
             Toast.makeText(this, "WhatsApp Auto Answer service is enabled.", Toast.LENGTH_SHORT).show();
         } else {
-            enableAccessibilityButton.setText("Enable Accessibility Service");
-            enableAccessibilityButton.setEnabled(true);
             Toast.makeText(this, "Please enable WhatsApp Auto Answer service.", Toast.LENGTH_LONG).show();
         }
     }
 
-    public static boolean isAccessibilityServiceEnabled(Context context, Class<?> serviceClass) {
-        String serviceId = context.getPackageName() + "/" + serviceClass.getCanonicalName();
-        android.provider.Settings.Secure.getString(context.getContentResolver(),
-                android.provider.Settings.Secure.ENABLED_ACCESSIBILITY_SERVICES);
-        
-        try {
-            AccessibilityManager am = (AccessibilityManager) context.getSystemService(Context.ACCESSIBILITY_SERVICE);
-            List<AccessibilityServiceInfo> enabledServices = AccessibilityManagerCompat.getEnabledAccessibilityServiceList(am, AccessibilityServiceInfo.FEEDBACK_ALL_MASK);
-            for (AccessibilityServiceInfo service : enabledServices) {
-                if (serviceId.equals(service.getId())) {
-                    return true;
-                }
-            }
-        } catch (Exception e) {
-            Log.e("CallCounter", "Error checking accessibility service status: " + e.getMessage());
+    private void updateAccessibilityButton(CapabilityStatusProvider.CapabilityStatus status) {
+        if (enableAccessibilityButton == null) return;
+        if (status.accessibilityServiceEnabled) {
+            enableAccessibilityButton.setText("Accessibility Service Enabled");
+            enableAccessibilityButton.setEnabled(false);
+        } else {
+            enableAccessibilityButton.setText("Enable Accessibility Service");
+            enableAccessibilityButton.setEnabled(true);
         }
-        return false;
     }
 
     private boolean isNotificationServiceEnabled() {
-        String pkgName = getPackageName();
-        final String flat = Settings.Secure.getString(getContentResolver(),
-                "enabled_notification_listeners");
-        if (!TextUtils.isEmpty(flat)) {
-            final String[] names = flat.split(":");
-            for (String name : names) {
-                final ComponentName cn = ComponentName.unflattenFromString(name);
-                if (cn != null) {
-                    if (TextUtils.equals(pkgName, cn.getPackageName())) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return capabilityStatusProvider.getStatus().notificationListenerEnabled;
     }
 
     private void showFirstRunChecklist() {
@@ -226,6 +293,11 @@ public class MainActivity extends AppCompatActivity {
         switch (currentPermissionStep) {
             case 0:
                 // 1. Check basic permissions
+                if (capabilityStatusProvider.getStatus().permissionsGranted) {
+                    currentPermissionStep++;
+                    requestNextPermissionOrSetting(); // Move to next step
+                    break;
+                }
                 List<String> missingPermissions = new ArrayList<>();
                 for (String perm : REQUIRED_PERMISSIONS) {
                     if (ActivityCompat.checkSelfPermission(this, perm) != PackageManager.PERMISSION_GRANTED) {
@@ -251,7 +323,7 @@ public class MainActivity extends AppCompatActivity {
                         .setPositiveButton("Go to Settings", new DialogInterface.OnClickListener() {
                             @Override
                             public void onClick(DialogInterface dialog, int which) {
-                                startActivity(new Intent("android.settings.ACTION_NOTIFICATION_LISTENER_SETTINGS"));
+                                startSettingsActivity(new Intent("android.settings.ACTION_NOTIFICATION_LISTENER_SETTINGS"));
                             }
                         })
                         .show();
@@ -263,11 +335,10 @@ public class MainActivity extends AppCompatActivity {
             case 2:
                 // 3. Battery Optimization (API 23+)
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    PowerManager pm = (PowerManager) getSystemService(POWER_SERVICE);
                     SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
                     boolean batteryOptimizationAddressed = prefs.getBoolean(KEY_BATTERY_OPTIMIZATION_ADDRESSED, false);
 
-                    if (pm != null && !pm.isIgnoringBatteryOptimizations(getPackageName())) {
+                    if (!capabilityStatusProvider.getStatus().ignoringBatteryOptimizations) {
                         if (!batteryOptimizationAddressed) {
                             Log.d("CallCounter", "Requesting to disable Battery Optimization");
                             new AlertDialog.Builder(this)
@@ -279,7 +350,7 @@ public class MainActivity extends AppCompatActivity {
                                     public void onClick(DialogInterface dialog, int which) {
                                         Intent intent = new Intent(Settings.ACTION_REQUEST_IGNORE_BATTERY_OPTIMIZATIONS);
                                         intent.setData(Uri.parse("package:" + getPackageName()));
-                                        startActivity(intent);
+                                        startSettingsActivity(intent);
                                         prefs.edit().putBoolean(KEY_BATTERY_OPTIMIZATION_ADDRESSED, true).apply();
                                     }
                                 })
@@ -330,17 +401,7 @@ public class MainActivity extends AppCompatActivity {
                 break;
             case 5:
                 // All permissions and settings are granted, start the service
-                if (areAllPermissionsGranted()) {
-                    try {
-                        Intent serviceIntent = new Intent(this, CallCounterService.class);
-                        startService(serviceIntent);
-                        Log.d("CallCounter", "CallCounterService started successfully");
-                    } catch (Exception e) {
-                        Log.e("CallCounter", "Failed to start CallCounterService: " + e.getMessage());
-                    }
-                } else {
-                    Log.d("CallCounter", "Waiting for all permissions before starting service");
-                }
+                startCallCounterServiceIfReady();
                 break;
             default:
                 Log.d("CallCounter", "All permission steps completed or unknown step.");
@@ -348,6 +409,20 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void startCallCounterServiceIfReady() {
+        if (areAllPermissionsGranted()) {
+            try {
+                Intent serviceIntent = new Intent(this, CallCounterService.class);
+                startService(serviceIntent);
+                Log.d("CallCounter", "CallCounterService started successfully");
+            } catch (Exception e) {
+                Log.e("CallCounter", "Failed to start CallCounterService: " + e.getMessage());
+            }
+        } else {
+            Log.d("CallCounter", "Waiting for all permissions before starting service");
+        }
+    }
+
     private void showAutostartDialogIfNeeded() {
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         boolean autostartAddressed = prefs.getBoolean(KEY_AUTOSTART_ADDRESSED, false);
@@ -366,7 +441,7 @@ public class MainActivity extends AppCompatActivity {
                     try {
                         Intent intent = new Intent();
                         intent.setComponent(new ComponentName("com.miui.securitycenter", "com.miui.permcenter.autostart.AutoStartManagementActivity"));
-                        startActivity(intent);
+                        startSettingsActivity(intent);
                     } catch (Exception e) {
                         Log.w("CallCounter", "Autostart settings not found: " + e.getMessage());
                     }
@@ -383,27 +458,8 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private boolean areAllPermissionsGranted() {
-        // Check basic permissions
-        for (String permission : REQUIRED_PERMISSIONS) {
-            if (ActivityCompat.checkSelfPermission(this, permission) != PackageManager.PERMISSION_GRANTED) {
-                return false;
-            }
-        }
-        
-        // Check notification access
-        if (!isNotificationServiceEnabled()) {
-            return false;
-        }
-        
-        // Check battery optimization (API 23+)
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            PowerManager pm = (PowerManager) getSystemService(POWER_SERVICE);
-            if (pm != null && !pm.isIgnoringBatteryOptimizations(getPackageName())) {
-                return false;
-            }
-        }
-        
-        return true;
+        // Permissions, notification access and battery optimization (API 23+) from the cached status
+        return capabilityStatusProvider.getStatus().isReadyForService();
     }
 
     private void continueSetup() {
@@ -416,6 +472,7 @@ public class MainActivity extends AppCompatActivity {
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == PERMISSION_REQUEST_CODE) {
+            capabilityStatusProvider.invalidate();
             boolean allPermissionsGranted = true;
             for (int result : grantResults) {
                 if (result != PackageManager.PERMISSION_GRANTED) {
@@ -443,6 +500,7 @@ public class MainActivity extends AppCompatActivity {
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         // After returning from any settings activity, re-check the current step
+        capabilityStatusProvider.invalidate();
         requestNextPermissionOrSetting();
     }
 }
@@ -0,0 +1,255 @@
+package com.example.callcounter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide counters, gauges and histograms, rendered in Prometheus text format by
+ * MetricsServer. Recording is a LongAdder increment (plus a map lookup for labelled series),
+ * so detection threads never wait on a lock or on a scrape; a scrape only sums the adders.
+ * Gauges are suppliers read at scrape time and must be cheap and non-blocking too.
+ */
+final class Metrics {
+
+    private static final List<Family> families = new CopyOnWriteArrayList<>();
+
+    // Scan and strategy work on the main thread: sub-millisecond to a second
+    private static final double[] SCAN_BUCKETS_S = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1};
+    // Answer started -> connect signal
+    private static final double[] CONFIRM_BUCKETS_S = {0.25, 0.5, 1, 2, 3, 5, 8, 13, 21, 30};
+
+    static final Counter CALLS_SEEN = counter("callcounter_calls_seen_total",
+            "Calls seen ringing", "channel");
+    static final Counter CALLS_ANSWERED = counter("callcounter_calls_answered_total",
+            "Calls that connected, by who answered (auto or user)", "channel", "by");
+    static final Counter CALLS_SKIPPED = counter("callcounter_calls_skipped_total",
+            "Rings not auto-answered, by reason (rules, ring_policy)", "channel", "reason");
+    static final Counter STRATEGY_RUNS = counter("callcounter_answer_strategy_runs_total",
+            "Answer strategy runs, by whether the strategy itself reported success", "strategy", "result");
+    static final Counter STRATEGY_CONFIRMED = counter("callcounter_answer_strategy_confirmed_total",
+            "Auto-answers confirmed by a connect signal, by the last strategy that ran", "channel", "strategy");
+    static final Counter ANSWERS_UNCONFIRMED = counter("callcounter_answers_unconfirmed_total",
+            "Answer attempts with no connect signal in time, by outcome (retried, abandoned)", "channel", "outcome");
+    static final Counter A11Y_EVENTS = counter("callcounter_accessibility_events_total",
+            "Accessibility events, by stage (received, processed, scanned)", "stage");
+    static final Counter NOTIFICATIONS = counter("callcounter_notifications_total",
+            "Notifications posted by watched apps, by kind (ringing, ongoing, other)", "kind");
+    static final Counter WATCHDOG_DOWNTIME_MS = counter("callcounter_component_downtime_ms_total",
+            "Time a detection component (or the whole process) was down while enabled", "component");
+    static final Counter WATCHDOG_ACTIONS = counter("callcounter_watchdog_actions_total",
+            "Repairs the watchdog attempted, by component and action (rebind, reactivate)", "component", "action");
+    static final Histogram SCAN_SECONDS = histogram("callcounter_scan_seconds",
+            "Accessibility tree work per pass, by scan (detect, answer)", SCAN_BUCKETS_S, "scan");
+    static final Histogram CONFIRM_SECONDS = histogram("callcounter_answer_confirm_seconds",
+            "Time from the first answer attempt to its connect signal", CONFIRM_BUCKETS_S, "channel");
+
+    private Metrics() {
+    }
+
+    static Counter counter(String name, String help, String... labelNames) {
+        Counter counter = new Counter(name, help, labelNames);
+        families.add(counter);
+        return counter;
+    }
+
+    static Histogram histogram(String name, String help, double[] bounds, String... labelNames) {
+        Histogram histogram = new Histogram(name, help, bounds, labelNames);
+        families.add(histogram);
+        return histogram;
+    }
+
+    /** Registers a gauge read at scrape time; re-registering a name replaces the supplier. */
+    static void gauge(String name, String help, LongSupplier supplier) {
+        for (Family family : families) {
+            if (family.name.equals(name)) families.remove(family);
+        }
+        families.add(new Gauge(name, help, supplier));
+    }
+
+    /** All families in Prometheus text exposition format (version 0.0.4). */
+    static void render(StringBuilder out) {
+        for (Family family : families) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            family.render(out);
+        }
+    }
+
+    private abstract static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final String[] labelNames;
+
+        Family(String name, String help, String type, String[] labelNames) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames;
+        }
+
+        // Label values joined with \u0000, which never appears in a value
+        String key(String[] labelValues) {
+            if (labelValues.length != labelNames.length) {
+                throw new IllegalArgumentException(name + " takes " + labelNames.length + " labels");
+            }
+            if (labelValues.length == 1) return String.valueOf(labelValues[0]);
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < labelValues.length; i++) {
+                if (i > 0) key.append('\u0000');
+                key.append(labelValues[i]);
+            }
+            return key.toString();
+        }
+
+        // {a="x",b="y"} for a series key, plus an optional extra label (le for histograms)
+        void appendLabels(StringBuilder out, String key, String extraName, String extraValue) {
+            if (labelNames.length == 0 && extraName == null) return;
+            out.append('{');
+            String[] values = labelNames.length == 1 ? new String[]{key} : key.split("\u0000", -1);
+            for (int i = 0; i < labelNames.length; i++) {
+                if (i > 0) out.append(',');
+                appendLabel(out, labelNames[i], values[i]);
+            }
+            if (extraName != null) {
+                if (labelNames.length > 0) out.append(',');
+                appendLabel(out, extraName, extraValue);
+            }
+            out.append('}');
+        }
+
+        abstract void render(StringBuilder out);
+    }
+
+    static final class Counter extends Family {
+        private final ConcurrentHashMap<String, LongAdder> series = new ConcurrentHashMap<>();
+
+        Counter(String name, String help, String[] labelNames) {
+            super(name, help, "counter", labelNames);
+        }
+
+        void inc(String... labelValues) {
+            add(1, labelValues);
+        }
+
+        void add(long delta, String... labelValues) {
+            String key = key(labelValues);
+            LongAdder adder = series.get(key);
+            if (adder == null) {
+                LongAdder fresh = new LongAdder();
+                adder = series.putIfAbsent(key, fresh);
+                if (adder == null) adder = fresh;
+            }
+            adder.add(delta);
+        }
+
+        @Override
+        void render(StringBuilder out) {
+            for (Map.Entry<String, LongAdder> entry : series.entrySet()) {
+                out.append(name);
+                appendLabels(out, entry.getKey(), null, null);
+                out.append(' ').append(entry.getValue().sum()).append('\n');
+            }
+        }
+    }
+
+    static final class Histogram extends Family {
+        private final double[] bounds;
+        private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+
+        private static final class Series {
+            // One adder per bucket (non-cumulative), the last for values above every bound
+            final LongAdder[] buckets;
+            final DoubleAdder sum = new DoubleAdder();
+
+            Series(int size) {
+                buckets = new LongAdder[size];
+                for (int i = 0; i < size; i++) buckets[i] = new LongAdder();
+            }
+        }
+
+        Histogram(String name, String help, double[] bounds, String[] labelNames) {
+            super(name, help, "histogram", labelNames);
+            this.bounds = bounds;
+        }
+
+        void observe(double value, String... labelValues) {
+            String key = key(labelValues);
+            Series s = series.get(key);
+            if (s == null) {
+                Series fresh = new Series(bounds.length + 1);
+                s = series.putIfAbsent(key, fresh);
+                if (s == null) s = fresh;
+            }
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) bucket++;
+            s.buckets[bucket].increment();
+            s.sum.add(value);
+        }
+
+        /** Records the time since startNanos (from System.nanoTime()) in seconds. */
+        void observeSince(long startNanos, String... labelValues) {
+            observe((System.nanoTime() - startNanos) / 1e9, labelValues);
+        }
+
+        @Override
+        void render(StringBuilder out) {
+            for (Map.Entry<String, Series> entry : series.entrySet()) {
+                Series s = entry.getValue();
+                // _count is the sum of the buckets as read, so buckets and count always agree
+                long cumulative = 0;
+                for (int i = 0; i <= bounds.length; i++) {
+                    cumulative += s.buckets[i].sum();
+                    out.append(name).append("_bucket");
+                    appendLabels(out, entry.getKey(), "le", i < bounds.length ? formatDouble(bounds[i]) : "+Inf");
+                    out.append(' ').append(cumulative).append('\n');
+                }
+                out.append(name).append("_sum");
+                appendLabels(out, entry.getKey(), null, null);
+                out.append(' ').append(formatDouble(s.sum.sum())).append('\n');
+                out.append(name).append("_count");
+                appendLabels(out, entry.getKey(), null, null);
+                out.append(' ').append(cumulative).append('\n');
+            }
+        }
+    }
+
+    private static final class Gauge extends Family {
+        private final LongSupplier supplier;
+
+        Gauge(String name, String help, LongSupplier supplier) {
+            super(name, help, "gauge", new String[0]);
+            this.supplier = supplier;
+        }
+
+        @Override
+        void render(StringBuilder out) {
+            out.append(name).append(' ').append(supplier.getAsLong()).append('\n');
+        }
+    }
+
+    private static void appendLabel(StringBuilder out, String name, String value) {
+        out.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static String formatDouble(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.callcounter;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+/**
+ * Serves Metrics at http://127.0.0.1:PORT/metrics in Prometheus text format. Bound to
+ * loopback only; from a workstation use {@code adb forward tcp:9464 tcp:9464} and scrape
+ * localhost:9464. Requests are handled one at a time on the server's own thread, which is the
+ * only thread a scrape ever costs.
+ */
+final class MetricsServer {
+
+    static final int PORT = 9464;
+
+    private static final int MAX_REQUEST_BYTES = 8 * 1024;
+    private static final int SOCKET_TIMEOUT_MS = 2000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int port;
+    private volatile ServerSocket server;
+    private Thread thread;
+    private volatile String lastError;
+    private volatile long scrapes;
+
+    MetricsServer(int port) {
+        this.port = port;
+    }
+
+    synchronized void start() {
+        if (server != null) return;
+        try {
+            ServerSocket socket = new ServerSocket();
+            socket.setReuseAddress(true);
+            socket.bind(new InetSocketAddress("127.0.0.1", port), 4);
+            server = socket;
+        } catch (IOException e) {
+            lastError = "bind " + port + ": " + e.getMessage();
+            return;
+        }
+        thread = new Thread(this::serve, "metrics-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        ServerSocket socket = server;
+        server = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    int getPort() {
+        ServerSocket socket = server;
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+
+    long getScrapes() {
+        return scrapes;
+    }
+
+    String getLastError() {
+        return lastError;
+    }
+
+    private void serve() {
+        ServerSocket socket;
+        while ((socket = server) != null) {
+            try (Socket client = socket.accept()) {
+                client.setSoTimeout(SOCKET_TIMEOUT_MS);
+                handle(client);
+            } catch (IOException e) {
+                if (server != null) lastError = e.getMessage();
+            }
+        }
+    }
+
+    private void handle(Socket client) throws IOException {
+        String requestLine = readRequestHead(new BufferedInputStream(client.getInputStream(), 1024));
+        OutputStream out = client.getOutputStream();
+        if (requestLine == null) {
+            respond(out, "400 Bad Request", "text/plain", "bad request\n");
+            return;
+        }
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2 || !"GET".equals(parts[0])) {
+            respond(out, "405 Method Not Allowed", "text/plain", "GET only\n");
+            return;
+        }
+        String path = parts[1];
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        if (!"/metrics".equals(path)) {
+            respond(out, "404 Not Found", "text/plain", "try /metrics\n");
+            return;
+        }
+        StringBuilder body = new StringBuilder(16 * 1024);
+        Metrics.render(body);
+        scrapes++;
+        respond(out, "200 OK", "text/plain; version=0.0.4; charset=utf-8", body.toString());
+    }
+
+    // Reads through the blank line ending the headers and returns the request line, or null
+    private static String readRequestHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        int total = 0;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (++total > MAX_REQUEST_BYTES) return null;
+            head.append((char) c);
+            int length = head.length();
+            if (length >= 4 && head.charAt(length - 1) == '\n' && head.charAt(length - 2) == '\r'
+                    && head.charAt(length - 3) == '\n' && head.charAt(length - 4) == '\r') {
+                break;
+            }
+            if (length >= 2 && head.charAt(length - 1) == '\n' && head.charAt(length - 2) == '\n') break;
+        }
+        int end = head.indexOf("\n");
+        if (end <= 0) return null;
+        return head.substring(0, end).trim();
+    }
+
+    private static void respond(OutputStream out, String status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        String headers = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + bytes.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(headers.getBytes(UTF_8));
+        out.write(bytes);
+        out.flush();
+    }
+}
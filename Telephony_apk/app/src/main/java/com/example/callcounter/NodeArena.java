@@ -0,0 +1,138 @@
+package com.example.callcounter;
+
+import android.accessibilityservice.AccessibilityService;
+import android.util.Log;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns every AccessibilityNodeInfo obtained during one scan and recycles them all in close(),
+ * so early returns and breaks can no longer leak nodes. Traversals can release() a node as soon
+ * as they are done with it to keep their live set small. Keeps process-wide live and peak node
+ * counts; with leak tracking on (debuggable builds) each arena remembers where it was opened and
+ * checkQuiescent() logs, counts and reclaims nodes still live after a scan.
+ *
+ * Main thread only, like the accessibility callbacks that use it.
+ */
+final class NodeArena implements AutoCloseable {
+
+    private static final String TAG = "CallCounter";
+
+    private static boolean trackLeaks;
+    private static int liveNodes;
+    private static volatile int peakLiveNodes;
+    private static volatile long leakedNodes;
+    private static final List<NodeArena> openArenas = new ArrayList<>();
+
+    private final ArrayList<AccessibilityNodeInfo> nodes = new ArrayList<>(32);
+    private final Throwable origin;
+    private boolean closed;
+
+    NodeArena() {
+        if (trackLeaks) {
+            origin = new Throwable("NodeArena opened here");
+            openArenas.add(this);
+        } else {
+            origin = null;
+        }
+    }
+
+    static void setLeakTracking(boolean enabled) {
+        trackLeaks = enabled;
+    }
+
+    static int getLiveNodes() {
+        return liveNodes;
+    }
+
+    static int getPeakLiveNodes() {
+        return peakLiveNodes;
+    }
+
+    static long getLeakedNodes() {
+        return leakedNodes;
+    }
+
+    /** Takes ownership of node (may be null) and returns it. */
+    AccessibilityNodeInfo track(AccessibilityNodeInfo node) {
+        if (node != null) {
+            nodes.add(node);
+            if (++liveNodes > peakLiveNodes) {
+                peakLiveNodes = liveNodes;
+            }
+        }
+        return node;
+    }
+
+    /** Takes ownership of every node in list (may be null) and returns it. */
+    List<AccessibilityNodeInfo> trackAll(List<AccessibilityNodeInfo> list) {
+        if (list != null) {
+            for (AccessibilityNodeInfo node : list) {
+                track(node);
+            }
+        }
+        return list;
+    }
+
+    AccessibilityNodeInfo root(AccessibilityService service) {
+        return track(service.getRootInActiveWindow());
+    }
+
+    AccessibilityNodeInfo child(AccessibilityNodeInfo parent, int index) {
+        return track(parent.getChild(index));
+    }
+
+    /** Recycles one tracked node early. Cheapest for the most recently tracked node. */
+    void release(AccessibilityNodeInfo node) {
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            if (nodes.get(i) == node) {
+                nodes.remove(i);
+                recycle(node);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            recycle(nodes.get(i));
+        }
+        nodes.clear();
+        if (origin != null) {
+            openArenas.remove(this);
+        }
+    }
+
+    private static void recycle(AccessibilityNodeInfo node) {
+        liveNodes--;
+        try {
+            node.recycle();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Accessibility node was recycled outside its arena");
+        }
+    }
+
+    /**
+     * Call when a top-level scan has finished and no arena should be open. Returns the number of
+     * nodes found still live; they are counted as leaked and, when tracking, reclaimed.
+     */
+    static int checkQuiescent(String where) {
+        int leaked = liveNodes;
+        if (leaked == 0) return 0;
+        leakedNodes += leaked;
+        Log.w(TAG, where + ": " + leaked + " accessibility nodes still live after scan");
+        if (trackLeaks) {
+            for (NodeArena arena : new ArrayList<>(openArenas)) {
+                Log.w(TAG, "Unclosed NodeArena holding " + arena.nodes.size() + " nodes", arena.origin);
+                arena.close();
+            }
+        }
+        liveNodes = 0;
+        return leaked;
+    }
+}
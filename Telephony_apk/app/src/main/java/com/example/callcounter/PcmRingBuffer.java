@@ -0,0 +1,152 @@
+package com.example.callcounter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer / single-consumer lock-free ring of 16-bit little-endian PCM, backed by one
+ * preallocated direct ByteBuffer. Exactly one thread may write and exactly one may read;
+ * neither side allocates or blocks. Positions are running byte counters published with
+ * lazySet, so each side only pays for a volatile read of the other's position.
+ */
+final class PcmRingBuffer {
+
+    private final ByteBuffer producerView;
+    private final ByteBuffer consumerView;
+    private final int capacity;
+    private final int mask;
+
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+
+    // capacityBytes is rounded up to a power of two
+    PcmRingBuffer(int capacityBytes) {
+        int size = Integer.highestOneBit(Math.max(capacityBytes, 2) - 1) << 1;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        producerView = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        consumerView = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        capacity = size;
+        mask = size - 1;
+    }
+
+    int capacityBytes() {
+        return capacity;
+    }
+
+    int availableBytes() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    int freeBytes() {
+        return capacity - availableBytes();
+    }
+
+    // Running totals; the difference of two snapshots is the data between them
+    long writtenBytes() {
+        return writePosition.get();
+    }
+
+    long consumedBytes() {
+        return readPosition.get();
+    }
+
+    // --- producer side ---
+
+    /** Copies as many whole samples from src as fit; advances src.position. Returns bytes written. */
+    int write(ByteBuffer src) {
+        long write = writePosition.get();
+        int free = capacity - (int) (write - readPosition.get());
+        int count = Math.min(src.remaining(), free) & ~1;
+        if (count == 0) return 0;
+
+        int index = (int) (write & mask);
+        int first = Math.min(count, capacity - index);
+        copyIn(src, index, first);
+        if (first < count) {
+            copyIn(src, 0, count - first);
+        }
+        writePosition.lazySet(write + count);
+        return count;
+    }
+
+    /** Returns samples written. */
+    int write(short[] src, int offset, int samples) {
+        long write = writePosition.get();
+        int free = capacity - (int) (write - readPosition.get());
+        int count = Math.min(samples, free >> 1);
+        for (int i = 0; i < count; i++) {
+            producerView.putShort((int) ((write + (i << 1)) & mask), src[offset + i]);
+        }
+        writePosition.lazySet(write + ((long) count << 1));
+        return count;
+    }
+
+    private void copyIn(ByteBuffer src, int index, int length) {
+        producerView.limit(index + length).position(index);
+        int oldLimit = src.limit();
+        src.limit(src.position() + length);
+        producerView.put(src);
+        src.limit(oldLimit);
+    }
+
+    // --- consumer side ---
+
+    /** Copies up to dst.remaining() bytes (whole samples) into dst. Returns bytes read. */
+    int read(ByteBuffer dst) {
+        long read = readPosition.get();
+        int available = (int) (writePosition.get() - read);
+        int count = Math.min(dst.remaining(), available) & ~1;
+        if (count == 0) return 0;
+
+        int index = (int) (read & mask);
+        int first = Math.min(count, capacity - index);
+        copyOut(dst, index, first);
+        if (first < count) {
+            copyOut(dst, 0, count - first);
+        }
+        readPosition.lazySet(read + count);
+        return count;
+    }
+
+    /** Returns samples read. */
+    int read(short[] dst, int offset, int samples) {
+        long read = readPosition.get();
+        int available = (int) (writePosition.get() - read);
+        int count = Math.min(samples, available >> 1);
+        for (int i = 0; i < count; i++) {
+            dst[offset + i] = consumerView.getShort((int) ((read + (i << 1)) & mask));
+        }
+        readPosition.lazySet(read + ((long) count << 1));
+        return count;
+    }
+
+    /** Copies up to the given number of samples without consuming them. Returns samples copied. */
+    int peek(short[] dst, int offset, int samples) {
+        long read = readPosition.get();
+        int available = (int) (writePosition.get() - read);
+        int count = Math.min(samples, available >> 1);
+        for (int i = 0; i < count; i++) {
+            dst[offset + i] = consumerView.getShort((int) ((read + (i << 1)) & mask));
+        }
+        return count;
+    }
+
+    private void copyOut(ByteBuffer dst, int index, int length) {
+        consumerView.limit(index + length).position(index);
+        dst.put(consumerView);
+    }
+
+    /** Drops up to the given number of bytes from the head. Returns bytes dropped. */
+    int skip(int bytes) {
+        long read = readPosition.get();
+        int count = Math.min(bytes, (int) (writePosition.get() - read)) & ~1;
+        readPosition.lazySet(read + count);
+        return count;
+    }
+
+    /** Drops everything currently buffered (consumer side, e.g. on interruption). */
+    int clear() {
+        return skip(Integer.MAX_VALUE);
+    }
+}
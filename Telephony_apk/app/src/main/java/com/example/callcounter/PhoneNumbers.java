@@ -0,0 +1,116 @@
+package com.example.callcounter;
+
+/**
+ * Phone number helpers shared by the rule engine and contact resolution.
+ *
+ * Numbers are compared by their national significant number (NSN): the digits left after the
+ * country code of an international number (+CC or 00CC), or after the trunk prefix of a
+ * national one ("0", or the "1" in front of a ten-digit NANP number). That way "+1 555 010
+ * 2030", "1 555 010 2030" and "555 010 2030" all reduce to the same digits, for rules and
+ * contacts alike. The helpers walk the CharSequence in place so the ring path doesn't allocate.
+ */
+final class PhoneNumbers {
+
+    static final int MATCH_DIGITS = 10;
+
+    private PhoneNumbers() {
+    }
+
+    // Keeps digits only, so "+1 (555) 010-2030" and "15550102030" compare equal
+    static String normalize(CharSequence number) {
+        if (number == null) return "";
+        StringBuilder digits = new StringBuilder(number.length());
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    /**
+     * Trailing NSN digits, used to match numbers with and without country / trunk prefixes.
+     * Exact caller rules and the contact cache are keyed on this.
+     */
+    static String matchKey(CharSequence number) {
+        if (number == null) return "";
+        String digits = normalize(number);
+        int start = Math.max(nationalStart(number), digits.length() - MATCH_DIGITS);
+        return digits.substring(Math.min(start, digits.length()));
+    }
+
+    /** NSN digits, e.g. "5550102030" for "+1 555 010 2030"; prefix caller rules are keyed on this. */
+    static String nationalNumber(CharSequence number) {
+        if (number == null) return "";
+        String digits = normalize(number);
+        return digits.substring(Math.min(nationalStart(number), digits.length()));
+    }
+
+    static int digitCount(CharSequence number) {
+        int count = 0;
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') count++;
+        }
+        return count;
+    }
+
+    /** Digit index of the country code: 0 after a leading '+', 2 after "00", -1 if national. */
+    static int countryCodeStart(CharSequence number) {
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c == '+') return 0;
+            if (c >= '0' && c <= '9') {
+                return c == '0' && digit(number, 1) == 0 ? 2 : -1;
+            }
+        }
+        return -1;
+    }
+
+    /** Digit index where the NSN starts; may equal digitCount() for a bare country code. */
+    static int nationalStart(CharSequence number) {
+        int countryCode = countryCodeStart(number);
+        if (countryCode >= 0) {
+            int first = digit(number, countryCode);
+            if (first < 0) return countryCode;
+            return countryCode + countryCodeLength(first, digit(number, countryCode + 1));
+        }
+        int first = digit(number, 0);
+        if (first == 0) return 1;
+        if (first == 1 && digitCount(number) == 11) return 1;
+        return 0;
+    }
+
+    // ITU country codes are prefix-free: 1 and 7 are the only one-digit codes, the two-digit
+    // ones are listed here, and everything else is three digits
+    static int countryCodeLength(int first, int second) {
+        if (first == 1 || first == 7) return 1;
+        if (second < 0) return 3;
+        switch (first * 10 + second) {
+            case 20: case 27:
+            case 30: case 31: case 32: case 33: case 34: case 36: case 39:
+            case 40: case 41: case 43: case 44: case 45: case 46: case 47: case 48: case 49:
+            case 51: case 52: case 53: case 54: case 55: case 56: case 57: case 58:
+            case 60: case 61: case 62: case 63: case 64: case 65: case 66:
+            case 81: case 82: case 84: case 86:
+            case 90: case 91: case 92: case 93: case 94: case 95: case 98:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    // Value of the index-th digit of number (formatting skipped), or -1 past the end
+    static int digit(CharSequence number, int index) {
+        int seen = 0;
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (seen == index) return c - '0';
+                seen++;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,433 @@
+package com.example.callcounter;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pre-rendered PCM prompts (greeting, hold, fallback) so the caller hears something the
+ * moment a call is answered instead of silence until the model's first response. Clips are
+ * 16-bit mono at the playback rate (stereo or other-rate sources are converted on put),
+ * stored back to back in one data file that is memory-mapped read-only; get() returns a
+ * view of the mapping, which AudioTrack plays without a copy. A small index file holds each clip's offset, length, SHA-256 and last use. Hashes are
+ * checked off-thread after load (or on first use, whichever comes first) and corrupt clips
+ * are dropped. Adding a clip over the size/count limit evicts the least recently used ones and
+ * rewrites the data file; readers still holding the old mapping keep working.
+ *
+ * Clips ship as 16-bit PCM WAV assets, assets/prompts/&lt;name&gt;.wav; any prompt missing
+ * from the cache is filled from its asset off-thread at startup.
+ */
+public class PromptCache {
+
+    private static final String TAG = "CallCounter";
+
+    public static final String PROMPT_GREETING = "greeting";
+    public static final String PROMPT_HOLD = "hold";
+    public static final String PROMPT_FALLBACK = "fallback";
+
+    private static final String DIR_NAME = "prompts";
+    private static final String ASSET_DIR = "prompts";
+    private static final String[] BUNDLED_PROMPTS = {PROMPT_GREETING, PROMPT_HOLD, PROMPT_FALLBACK};
+    private static final String DATA_FILE = "prompts.bin";
+    private static final String INDEX_FILE = "prompts.idx";
+    private static final int INDEX_MAGIC = 0x50524D31; // "PRM1"
+    static final long MAX_TOTAL_BYTES = 8L * 1024 * 1024;
+    static final int MAX_CLIPS = 32;
+    private static final int HASH_BYTES = 32;
+
+    /** 16-bit PCM samples of a WAV file, as found in it. */
+    static final class Wav {
+        final ByteBuffer pcm;
+        final int sampleRate;
+        final int channels;
+
+        Wav(ByteBuffer pcm, int sampleRate, int channels) {
+            this.pcm = pcm;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+        }
+    }
+
+    private static final class Clip {
+        final String name;
+        final long offset;
+        final int length;
+        final byte[] sha256;
+        long lastUsed;
+        volatile boolean verified;
+
+        Clip(String name, long offset, int length, byte[] sha256, long lastUsed) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.sha256 = sha256;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private static PromptCache instance;
+
+    private final File dir;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    // Access order, so iteration starts at the least recently used clip
+    private final LinkedHashMap<String, Clip> clips = new LinkedHashMap<>(16, 0.75f, true);
+    private MappedByteBuffer mapping;
+    private boolean indexDirty;
+
+    public static synchronized PromptCache getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            PromptCache cache = new PromptCache(new File(appContext.getFilesDir(), DIR_NAME));
+            AssetManager assets = appContext.getAssets();
+            cache.worker.execute(() -> cache.fillFromAssets(assets));
+            instance = cache;
+        }
+        return instance;
+    }
+
+    PromptCache(File dir) {
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "Could not create prompt cache directory");
+        }
+        synchronized (this) {
+            load();
+        }
+        worker.execute(this::verifyAll);
+    }
+
+    /**
+     * Returns a read-only view of the clip's PCM inside the mapping, positioned at its start,
+     * or null if it's missing or failed its hash check. Each call returns a fresh view.
+     */
+    public synchronized ByteBuffer get(String name) {
+        Clip clip = clips.get(name);
+        if (clip == null || mapping == null) return null;
+        if (!clip.verified && !verify(clip)) {
+            remove(clip);
+            return null;
+        }
+        clip.lastUsed = System.currentTimeMillis();
+        if (!indexDirty) {
+            indexDirty = true;
+            // Persist recency off the answer path
+            worker.execute(this::writeIndexIfDirty);
+        }
+        return view(clip);
+    }
+
+    public synchronized boolean contains(String name) {
+        return clips.containsKey(name);
+    }
+
+    /**
+     * Stores a clip of interleaved 16-bit PCM, downmixing it to mono and resampling it to the
+     * playback rate if needed. Does file I/O; call it off the main thread. Returns false if
+     * the clip is too large or the write failed.
+     */
+    public boolean put(String name, ByteBuffer pcm, int sampleRate, int channels) {
+        ByteBuffer data = toPlaybackFormat(pcm.duplicate().order(ByteOrder.LITTLE_ENDIAN), sampleRate, channels);
+        if (data.remaining() > MAX_TOTAL_BYTES) {
+            Log.w(TAG, "Prompt '" + name + "' exceeds cache limit: " + data.remaining() + " bytes");
+            return false;
+        }
+        byte[] hash = sha256(data.duplicate());
+        if (hash == null) return false;
+
+        synchronized (this) {
+            Clip old = clips.remove(name);
+            // Evict least recently used clips until the new one fits
+            long total = data.remaining();
+            for (Clip clip : clips.values()) total += clip.length;
+            Iterator<Clip> lru = clips.values().iterator();
+            while (lru.hasNext() && (total > MAX_TOTAL_BYTES || clips.size() >= MAX_CLIPS)) {
+                Clip evicted = lru.next();
+                total -= evicted.length;
+                lru.remove();
+                Log.d(TAG, "Evicting prompt '" + evicted.name + "'");
+            }
+            try {
+                rewrite(name, data, hash);
+                Log.d(TAG, "Cached prompt '" + name + "': " + data.limit() + " bytes");
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write prompt cache: " + e.getMessage());
+                if (old != null) clips.put(name, old);
+                return false;
+            }
+        }
+    }
+
+    // Bundled clips are only read once; after that they are served from the mapping
+    private void fillFromAssets(AssetManager assets) {
+        for (String name : BUNDLED_PROMPTS) {
+            if (contains(name)) continue;
+            try (InputStream in = assets.open(ASSET_DIR + "/" + name + ".wav")) {
+                Wav wav = parseWav(ByteBuffer.wrap(readAll(in)));
+                if (wav == null) {
+                    Log.w(TAG, "Prompt asset '" + name + "' is not a 16-bit PCM WAV");
+                    continue;
+                }
+                put(name, wav.pcm, wav.sampleRate, wav.channels);
+            } catch (FileNotFoundException e) {
+                Log.d(TAG, "No bundled prompt '" + name + "'");
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to load prompt asset '" + name + "': " + e.getMessage());
+            }
+        }
+    }
+
+    private void load() {
+        File indexFile = new File(dir, INDEX_FILE);
+        File dataFile = new File(dir, DATA_FILE);
+        if (!indexFile.exists() || !dataFile.exists()) return;
+
+        List<Clip> loaded = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                Log.w(TAG, "Prompt index has wrong format, ignoring it");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long offset = in.readLong();
+                int length = in.readInt();
+                long lastUsed = in.readLong();
+                byte[] hash = new byte[HASH_BYTES];
+                in.readFully(hash);
+                loaded.add(new Clip(name, offset, length, hash, lastUsed));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read prompt index: " + e.getMessage());
+            return;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(dataFile, "r")) {
+            long size = file.length();
+            mapping = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            // Oldest use first so the access-ordered map starts out in LRU order
+            Collections.sort(loaded, (a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+            for (Clip clip : loaded) {
+                if (clip.offset < 0 || clip.length < 0 || clip.offset + clip.length > size) {
+                    Log.w(TAG, "Prompt '" + clip.name + "' lies outside the data file, dropping it");
+                    continue;
+                }
+                clips.put(clip.name, clip);
+            }
+            Log.d(TAG, "Prompt cache loaded: " + clips.size() + " clips, " + size + " bytes mapped");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to map prompt data: " + e.getMessage());
+            mapping = null;
+            clips.clear();
+        }
+    }
+
+    private void verifyAll() {
+        List<Clip> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(clips.values());
+        }
+        for (Clip clip : pending) {
+            if (clip.verified) continue;
+            synchronized (this) {
+                if (clips.get(clip.name) != clip) continue;
+                if (!verify(clip)) remove(clip);
+            }
+        }
+    }
+
+    private boolean verify(Clip clip) {
+        byte[] actual = sha256(view(clip));
+        if (actual == null || !Arrays.equals(actual, clip.sha256)) {
+            Log.w(TAG, "Prompt '" + clip.name + "' failed its hash check");
+            return false;
+        }
+        clip.verified = true;
+        return true;
+    }
+
+    private void remove(Clip clip) {
+        clips.remove(clip.name);
+        indexDirty = true;
+        worker.execute(this::writeIndexIfDirty);
+    }
+
+    private ByteBuffer view(Clip clip) {
+        ByteBuffer view = mapping.duplicate();
+        view.limit((int) (clip.offset + clip.length)).position((int) clip.offset);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Copies the surviving clips plus the new one into a fresh data file, then swaps it in
+    private void rewrite(String name, ByteBuffer data, byte[] hash) throws IOException {
+        File tmpData = new File(dir, DATA_FILE + ".tmp");
+        LinkedHashMap<String, Clip> rewritten = new LinkedHashMap<>(16, 0.75f, true);
+        try (FileOutputStream out = new FileOutputStream(tmpData)) {
+            FileChannel channel = out.getChannel();
+            long offset = 0;
+            for (Clip clip : clips.values()) {
+                ByteBuffer src = view(clip);
+                while (src.hasRemaining()) channel.write(src);
+                Clip moved = new Clip(clip.name, offset, clip.length, clip.sha256, clip.lastUsed);
+                moved.verified = clip.verified;
+                rewritten.put(moved.name, moved);
+                offset += clip.length;
+            }
+            ByteBuffer src = data.duplicate();
+            while (src.hasRemaining()) channel.write(src);
+            Clip added = new Clip(name, offset, data.remaining(), hash, System.currentTimeMillis());
+            added.verified = true;
+            rewritten.put(name, added);
+            out.getFD().sync();
+        }
+
+        File dataFile = new File(dir, DATA_FILE);
+        if (!tmpData.renameTo(dataFile)) {
+            throw new IOException("Could not replace " + dataFile);
+        }
+        clips.clear();
+        clips.putAll(rewritten);
+        try (RandomAccessFile file = new RandomAccessFile(dataFile, "r")) {
+            mapping = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        writeIndex();
+    }
+
+    private void writeIndexIfDirty() {
+        synchronized (this) {
+            if (!indexDirty) return;
+            try {
+                writeIndex();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write prompt index: " + e.getMessage());
+            }
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        File tmpIndex = new File(dir, INDEX_FILE + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmpIndex);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(clips.size());
+            for (Map.Entry<String, Clip> entry : clips.entrySet()) {
+                Clip clip = entry.getValue();
+                out.writeUTF(clip.name);
+                out.writeLong(clip.offset);
+                out.writeInt(clip.length);
+                out.writeLong(clip.lastUsed);
+                out.write(clip.sha256);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tmpIndex.renameTo(new File(dir, INDEX_FILE))) {
+            throw new IOException("Could not replace prompt index");
+        }
+        indexDirty = false;
+    }
+
+    // Mono at the playback rate; clips already in that format are returned as they are
+    static ByteBuffer toPlaybackFormat(ByteBuffer pcm, int sampleRate, int channels) {
+        if (channels < 1) throw new IllegalArgumentException("channels " + channels);
+        if (channels == 1 && sampleRate == CallAudioPipeline.RECEIVE_SAMPLE_RATE) return pcm;
+        int frames = pcm.remaining() / (2 * channels);
+        short[] samples = new short[frames * channels];
+        pcm.asShortBuffer().get(samples);
+        frames = ChannelMixer.downmix(samples, 0, frames, channels);
+        short[] output = samples;
+        int produced = frames;
+        if (sampleRate != CallAudioPipeline.RECEIVE_SAMPLE_RATE) {
+            StreamingResampler resampler = new StreamingResampler(sampleRate,
+                    CallAudioPipeline.RECEIVE_SAMPLE_RATE, Math.max(frames, 1));
+            output = new short[resampler.maxOutputFrames(frames)];
+            produced = resampler.process(samples, 0, frames, output, 0);
+        }
+        ByteBuffer result = ByteBuffer.allocate(produced * 2).order(ByteOrder.LITTLE_ENDIAN);
+        result.asShortBuffer().put(output, 0, produced);
+        return result;
+    }
+
+    /**
+     * Finds the fmt and data chunks of a RIFF/WAVE file. Returns null unless it is 16-bit
+     * integer PCM; a data chunk cut short is read up to the end of the file.
+     */
+    static Wav parseWav(ByteBuffer file) {
+        ByteBuffer src = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (src.remaining() < 12 || src.getInt(0) != 0x46464952 || src.getInt(8) != 0x45564157) {
+            return null; // not "RIFF" ... "WAVE"
+        }
+        int sampleRate = 0;
+        int channels = 0;
+        int position = 12;
+        while (position + 8 <= src.limit()) {
+            int id = src.getInt(position);
+            long size = src.getInt(position + 4) & 0xFFFFFFFFL;
+            int body = position + 8;
+            if (id == 0x20746D66) { // "fmt "
+                if (size < 16 || body + 16 > src.limit()) return null;
+                int format = src.getShort(body) & 0xFFFF;
+                int bits = src.getShort(body + 14) & 0xFFFF;
+                if (format != 1 || bits != 16) return null;
+                channels = src.getShort(body + 2) & 0xFFFF;
+                sampleRate = src.getInt(body + 4);
+            } else if (id == 0x61746164) { // "data"
+                if (channels == 0 || sampleRate <= 0) return null;
+                int end = (int) Math.min(src.limit(), body + size);
+                end -= (end - body) % (2 * channels);
+                src.limit(end).position(body);
+                return new Wav(src.slice().order(ByteOrder.LITTLE_ENDIAN), sampleRate, channels);
+            }
+            // Chunks are padded to an even length
+            position = (int) Math.min(Integer.MAX_VALUE, body + size + (size & 1));
+        }
+        return null;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    private static byte[] sha256(ByteBuffer data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data);
+            return digest.digest();
+        } catch (Exception e) {
+            Log.e(TAG, "SHA-256 unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.callcounter;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.service.notification.NotificationListenerService;
+import android.util.Log;
+
+/**
+ * Heartbeat run by CallCounterService that keeps the detection components bound and active.
+ * Every HEARTBEAT_MS it checks that the notification listener is connected and answering
+ * (asking the system to rebind it if not) and that the accessibility service hasn't been left
+ * inactive by onInterrupt() (reactivating it if so). Time a component spends down while it is
+ * enabled is added to Metrics and reported to Telemetry when it recovers, and the gap since
+ * the last heartbeat of a previous process is recorded as process downtime.
+ */
+final class ServiceWatchdog {
+
+    private static final String TAG = "CallCounter";
+    private static final String PREFS_NAME = "CallCounterPrefs";
+    private static final String KEY_LAST_HEARTBEAT = "watchdog_last_heartbeat";
+
+    static final long HEARTBEAT_MS = 30000;
+    // Give the system a moment to bind the services after the process starts
+    private static final long FIRST_CHECK_MS = 5000;
+
+    static final String COMPONENT_LISTENER = "notification_listener";
+    static final String COMPONENT_ACCESSIBILITY = "accessibility";
+    static final String COMPONENT_PROCESS = "process";
+
+    // Down time bookkeeping for one component, on the elapsedRealtime() clock; main thread only
+    static final class Health {
+        final String component;
+        private long downSince;
+        private long accountedUntil;
+
+        Health(String component) {
+            this.component = component;
+        }
+
+        boolean isDown() {
+            return downSince != 0;
+        }
+
+        /** Starts an outage at now; returns false if one was already running. */
+        boolean down(long now) {
+            if (downSince != 0) return false;
+            downSince = now;
+            accountedUntil = now;
+            return true;
+        }
+
+        /** Outage time not yet added to the downtime counter, which is now accounted. */
+        long account(long now) {
+            if (downSince == 0) return 0;
+            long slice = now - accountedUntil;
+            accountedUntil = now;
+            return slice;
+        }
+
+        /** Ends the outage and returns its length, or -1 if the component wasn't down. */
+        long up(long now) {
+            if (downSince == 0) return -1;
+            long downMs = now - downSince;
+            downSince = 0;
+            return downMs;
+        }
+
+        /** Forgets an outage without counting the rest of it, e.g. when the user disabled the component. */
+        void clear() {
+            downSince = 0;
+        }
+    }
+
+    private final Context appContext;
+    private final SharedPreferences prefs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Health listener = new Health(COMPONENT_LISTENER);
+    private final Health accessibility = new Health(COMPONENT_ACCESSIBILITY);
+    private boolean running;
+
+    ServiceWatchdog(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    void start() {
+        if (running) return;
+        running = true;
+        recordProcessGap();
+        handler.postDelayed(this::heartbeat, FIRST_CHECK_MS);
+    }
+
+    /** Stops the heartbeat; a deliberate stop isn't counted as downtime at the next start. */
+    void stop() {
+        running = false;
+        handler.removeCallbacksAndMessages(null);
+        prefs.edit().remove(KEY_LAST_HEARTBEAT).apply();
+    }
+
+    private void heartbeat() {
+        if (!running) return;
+        try {
+            CapabilityStatusProvider.CapabilityStatus status = CapabilityStatusProvider.getInstance(appContext).getStatus();
+            checkListener(status.notificationListenerEnabled);
+            checkAccessibility(status.accessibilityServiceEnabled);
+        } catch (Exception e) {
+            Log.e(TAG, "Watchdog check failed: " + e.getMessage());
+        }
+        prefs.edit().putLong(KEY_LAST_HEARTBEAT, System.currentTimeMillis()).apply();
+        handler.postDelayed(this::heartbeat, HEARTBEAT_MS);
+    }
+
+    private void checkListener(boolean enabled) {
+        if (!enabled) {
+            // Switched off by the user: nothing to repair, and not downtime
+            listener.clear();
+            return;
+        }
+        if (isListenerAlive()) {
+            markUp(listener);
+            return;
+        }
+        markDown(listener);
+        try {
+            NotificationListenerService.requestRebind(new ComponentName(appContext, WhatsAppCallDetector.class));
+            Metrics.WATCHDOG_ACTIONS.inc(COMPONENT_LISTENER, "rebind");
+            Log.w(TAG, "Notification listener not connected; requested rebind");
+        } catch (Exception e) {
+            Log.e(TAG, "Notification listener rebind failed: " + e.getMessage());
+        }
+    }
+
+    // Connected and still able to talk to the notification manager
+    private static boolean isListenerAlive() {
+        WhatsAppCallDetector detector = WhatsAppCallDetector.connected;
+        if (detector == null) return false;
+        try {
+            detector.getActiveNotifications();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void checkAccessibility(boolean enabled) {
+        WhatsAppAccessibilityService service = WhatsAppAccessibilityService.connected;
+        if (!enabled) {
+            accessibility.clear();
+            return;
+        }
+        if (service == null) {
+            // Enabled but unbound: only the system can bind it again, so just account for it
+            markDown(accessibility);
+            return;
+        }
+        if (service.isActive()) {
+            markUp(accessibility);
+            return;
+        }
+        markDown(accessibility);
+        service.reactivate();
+        Metrics.WATCHDOG_ACTIONS.inc(COMPONENT_ACCESSIBILITY, "reactivate");
+    }
+
+    private void markDown(Health health) {
+        long now = SystemClock.elapsedRealtime();
+        if (health.down(now)) {
+            Log.w(TAG, "Watchdog: " + health.component + " is down");
+            Telemetry.getInstance(appContext).record("component_down", null, "component", health.component);
+            return;
+        }
+        // Accounted each beat so a long outage shows up before it ends
+        Metrics.WATCHDOG_DOWNTIME_MS.add(health.account(now), health.component);
+    }
+
+    private void markUp(Health health) {
+        if (!health.isDown()) return;
+        long now = SystemClock.elapsedRealtime();
+        Metrics.WATCHDOG_DOWNTIME_MS.add(health.account(now), health.component);
+        long downMs = health.up(now);
+        Log.i(TAG, "Watchdog: " + health.component + " recovered after " + downMs + " ms");
+        Telemetry.getInstance(appContext).record("component_recovered", null,
+                "component", health.component, "down_ms", downMs);
+    }
+
+    private void recordProcessGap() {
+        long gapMs = processGapMs(prefs.getLong(KEY_LAST_HEARTBEAT, 0), System.currentTimeMillis());
+        if (gapMs <= 0) return;
+        Metrics.WATCHDOG_DOWNTIME_MS.add(gapMs, COMPONENT_PROCESS);
+        Log.w(TAG, "Watchdog: process was down for about " + gapMs / 1000 + " s");
+        Telemetry.getInstance(appContext).record("component_recovered", null,
+                "component", COMPONENT_PROCESS, "down_ms", gapMs);
+    }
+
+    /**
+     * Process downtime given the last heartbeat of a previous process (0 if it stopped cleanly or
+     * never ran): anything beyond one interval since then is time nothing was watching for calls.
+     */
+    static long processGapMs(long lastHeartbeat, long now) {
+        if (lastHeartbeat <= 0) return 0;
+        return Math.max(0, now - lastHeartbeat - HEARTBEAT_MS);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.callcounter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A timeline of synthetic inputs for LoadHarness: chat notifications, VoIP and cellular rings
+ * (each with an end step after its duration) and accessibility screen text. Either generated
+ * by storm() or read from a script with one step per line:
+ *
+ * <pre>
+ * # at_ms kind   arguments
+ * 0      chat   com.whatsapp Family|Bob: are you coming?
+ * 1500   ring   com.whatsapp 8000 Alice
+ * 4000   phone  6000 +15551234567
+ * 4200   screen com.whatsapp 0:03
+ * </pre>
+ *
+ * Chat text is "title|text". Steps are kept sorted by time. Pure Java, no Android types.
+ */
+final class SoakScenario {
+
+    static final int KIND_CHAT = 0;
+    static final int KIND_RING = 1;
+    static final int KIND_PHONE = 2;
+    static final int KIND_SCREEN = 3;
+    static final int KIND_END = 4;
+
+    static final class Step {
+        final long atMs;
+        final int kind;
+        final String packageName; // null for cellular steps
+        final String text;
+        final int callId;         // ring, phone and end steps; -1 otherwise
+
+        Step(long atMs, int kind, String packageName, String text, int callId) {
+            this.atMs = atMs;
+            this.kind = kind;
+            this.packageName = packageName;
+            this.text = text;
+            this.callId = callId;
+        }
+    }
+
+    final List<Step> steps;
+    final int callCount;
+    final long durationMs;
+
+    private SoakScenario(List<Step> steps, int callCount) {
+        Collections.sort(steps, (a, b) -> Long.compare(a.atMs, b.atMs));
+        this.steps = Collections.unmodifiableList(steps);
+        this.callCount = callCount;
+        this.durationMs = steps.isEmpty() ? 0 : steps.get(steps.size() - 1).atMs;
+    }
+
+    /**
+     * A group-chat flood on packageName at chatPerMinute (Poisson arrivals), with a VoIP ring
+     * every voipIntervalMs and a cellular ring every cellularIntervalMs (0 disables either).
+     * Each call rings, and is expected to be answered, within callDurationMs.
+     */
+    static SoakScenario storm(String packageName, long durationMs, int chatPerMinute, long voipIntervalMs,
+                              long cellularIntervalMs, long callDurationMs, long seed) {
+        Random random = new Random(seed);
+        List<Step> steps = new ArrayList<>();
+        if (chatPerMinute > 0) {
+            double meanGapMs = 60000.0 / chatPerMinute;
+            int message = 0;
+            for (double t = 0; t < durationMs; t += -Math.log(1 - random.nextDouble()) * meanGapMs) {
+                message++;
+                steps.add(new Step((long) t, KIND_CHAT, packageName,
+                        "Group " + (message % 7) + "|Member " + random.nextInt(40) + ": message " + message, -1));
+            }
+        }
+        int calls = 0;
+        if (voipIntervalMs > 0) {
+            for (long t = voipIntervalMs / 2; t + callDurationMs < durationMs; t += voipIntervalMs) {
+                calls = addCall(steps, t, KIND_RING, packageName, "Caller " + calls, callDurationMs, calls);
+            }
+        }
+        if (cellularIntervalMs > 0) {
+            for (long t = cellularIntervalMs / 3; t + callDurationMs < durationMs; t += cellularIntervalMs) {
+                calls = addCall(steps, t, KIND_PHONE, null, "+1555" + (1000000 + calls), callDurationMs, calls);
+            }
+        }
+        return new SoakScenario(steps, calls);
+    }
+
+    static SoakScenario parse(Reader source) throws IOException {
+        List<Step> steps = new ArrayList<>();
+        int calls = 0;
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+", 5);
+            try {
+                long at = Long.parseLong(parts[0]);
+                switch (parts[1]) {
+                    case "chat":
+                        steps.add(new Step(at, KIND_CHAT, parts[2], rest(parts, 3), -1));
+                        break;
+                    case "screen":
+                        steps.add(new Step(at, KIND_SCREEN, parts[2], rest(parts, 3), -1));
+                        break;
+                    case "ring":
+                        calls = addCall(steps, at, KIND_RING, parts[2], rest(parts, 4), Long.parseLong(parts[3]), calls);
+                        break;
+                    case "phone":
+                        String number = parts.length > 3 ? parts[3] + (parts.length > 4 ? " " + parts[4] : "") : "";
+                        calls = addCall(steps, at, KIND_PHONE, null, number, Long.parseLong(parts[2]), calls);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown kind " + parts[1]);
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Soak script line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return new SoakScenario(steps, calls);
+    }
+
+    private static int addCall(List<Step> steps, long at, int kind, String packageName, String caller,
+                               long durationMs, int callId) {
+        steps.add(new Step(at, kind, packageName, caller, callId));
+        steps.add(new Step(at + durationMs, KIND_END, packageName, null, callId));
+        return callId + 1;
+    }
+
+    private static String rest(String[] parts, int from) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < parts.length; i++) {
+            if (text.length() > 0) text.append(' ');
+            text.append(parts[i]);
+        }
+        return text.toString();
+    }
+}
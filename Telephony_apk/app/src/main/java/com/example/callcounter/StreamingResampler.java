@@ -0,0 +1,156 @@
+package com.example.callcounter;
+
+/**
+ * Rational-ratio (L/M) polyphase FIR resampler for mono 16-bit PCM that keeps its filter
+ * history and phase between chunks, so a stream cut into chunks resamples exactly like the
+ * whole stream (no per-chunk edge artifacts as with an FFT resample). The Kaiser-windowed
+ * sinc prototype is designed once in the constructor; process() does no allocation.
+ *
+ * Typical ratios: 48000 -> 16000 (1/3), 44100 -> 16000 (160/441), 24000 -> 48000 (2/1).
+ */
+public final class StreamingResampler {
+
+    private static final int DEFAULT_TAPS_PER_PHASE = 32;
+    private static final double KAISER_BETA = 8.0;
+    // Passband edge as a fraction of the lower Nyquist frequency
+    private static final double ROLLOFF = 0.92;
+
+    public final int inputRate;
+    public final int outputRate;
+
+    private final int up;
+    private final int down;
+    private final int taps;
+    private final float[] coefficients; // phase-major: [phase * taps + k]
+    private final float[] work;          // taps - 1 history samples followed by the current chunk
+    private final int maxInputFrames;
+
+    // Index in work of the newest input sample for the next output, and its filter phase
+    private int inputIndex;
+    private int phase;
+
+    public StreamingResampler(int inputRate, int outputRate, int maxInputFrames) {
+        this(inputRate, outputRate, maxInputFrames, DEFAULT_TAPS_PER_PHASE);
+    }
+
+    public StreamingResampler(int inputRate, int outputRate, int maxInputFrames, int tapsPerPhase) {
+        if (inputRate <= 0 || outputRate <= 0 || maxInputFrames <= 0 || tapsPerPhase <= 0) {
+            throw new IllegalArgumentException("Rates, chunk size and taps must be positive");
+        }
+        int gcd = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+        this.taps = tapsPerPhase;
+        this.maxInputFrames = maxInputFrames;
+        this.coefficients = designFilter(up, down, tapsPerPhase);
+        this.work = new float[tapsPerPhase - 1 + maxInputFrames];
+        reset();
+    }
+
+    /** Clears filter history, e.g. when a new call starts. */
+    public void reset() {
+        for (int i = 0; i < taps - 1; i++) {
+            work[i] = 0f;
+        }
+        inputIndex = taps - 1;
+        phase = 0;
+    }
+
+    /** Upper bound on the frames process() returns for the given input frame count. */
+    public int maxOutputFrames(int inputFrames) {
+        return (int) (((long) inputFrames * up + down - 1) / down) + 1;
+    }
+
+    /**
+     * Resamples inputFrames samples from input[inputOffset..] into output[outputOffset..].
+     * output must have room for maxOutputFrames(inputFrames).
+     *
+     * @return number of output samples written
+     */
+    public int process(short[] input, int inputOffset, int inputFrames, short[] output, int outputOffset) {
+        if (inputFrames > maxInputFrames) {
+            throw new IllegalArgumentException("Chunk of " + inputFrames + " exceeds " + maxInputFrames + " frames");
+        }
+        final int history = taps - 1;
+        final float[] w = work;
+        final float[] c = coefficients;
+        for (int i = 0; i < inputFrames; i++) {
+            w[history + i] = input[inputOffset + i];
+        }
+
+        int end = history + inputFrames;
+        int index = inputIndex;
+        int ph = phase;
+        int written = 0;
+        while (index < end) {
+            int base = ph * taps;
+            float acc = 0f;
+            for (int k = 0; k < taps; k++) {
+                acc += c[base + k] * w[index - k];
+            }
+            output[outputOffset + written++] = clamp(acc);
+
+            ph += down;
+            index += ph / up;
+            ph %= up;
+        }
+
+        // Keep the last taps - 1 samples as history for the next chunk
+        System.arraycopy(w, inputFrames, w, 0, history);
+        inputIndex = index - inputFrames;
+        phase = ph;
+        return written;
+    }
+
+    private static short clamp(float value) {
+        int rounded = Math.round(value);
+        if (rounded > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (rounded < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) rounded;
+    }
+
+    private static float[] designFilter(int up, int down, int tapsPerPhase) {
+        int length = up * tapsPerPhase;
+        // Cutoff relative to the upsampled rate (inputRate * up)
+        double cutoff = 0.5 * ROLLOFF / Math.max(up, down);
+        double center = (length - 1) / 2.0;
+        double i0Beta = besselI0(KAISER_BETA);
+
+        float[] polyphase = new float[length];
+        for (int n = 0; n < length; n++) {
+            double x = n - center;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double ratio = 2.0 * n / (length - 1) - 1.0;
+            double window = besselI0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - ratio * ratio))) / i0Beta;
+            // Gain of `up` makes up for the zeros inserted by upsampling
+            double h = sinc * window * up;
+            int phase = n % up;
+            int k = n / up;
+            polyphase[phase * tapsPerPhase + k] = (float) h;
+        }
+        return polyphase;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        double halfX = x / 2.0;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < 1e-12 * sum) break;
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
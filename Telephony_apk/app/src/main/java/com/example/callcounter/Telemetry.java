@@ -0,0 +1,164 @@
+package com.example.callcounter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Feeds the fleet telemetry uploader: every journaled call event (without phone numbers) plus
+ * per-call stats from the audio session and answer detector. Journal rows are pulled by id
+ * cursor on the uploader thread, so nothing is lost while the endpoint is unreachable and the
+ * call path never waits on disk or network. Uploads go to the "telemetry_endpoint" preference,
+ * which the detection config's telemetry_endpoint overwrites whenever it is published; while
+ * it is empty records only spool locally.
+ */
+public class Telemetry {
+
+    private static final String TAG = "CallCounter";
+    private static final String PREFS_NAME = "CallCounterPrefs";
+    private static final String KEY_ENDPOINT = "telemetry_endpoint";
+    private static final String KEY_DEVICE_ID = "telemetry_device_id";
+    private static final String KEY_JOURNAL_CURSOR = "telemetry_journal_cursor";
+    private static final String SPOOL_DIR = "telemetry";
+    private static final long MAX_SPOOL_BYTES = 4 * 1024 * 1024;
+    private static final int JOURNAL_BATCH = 500;
+
+    private static Telemetry instance;
+
+    private final Context appContext;
+    private final SharedPreferences prefs;
+    private final TelemetryUploader uploader;
+    // Uploader thread only
+    private long journalCursor;
+    private long savedJournalCursor;
+    private String lastLoggedError;
+
+    public static synchronized Telemetry getInstance(Context context) {
+        if (instance == null) {
+            instance = new Telemetry(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private Telemetry(Context appContext) {
+        this.appContext = appContext;
+        this.prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String deviceId = prefs.getString(KEY_DEVICE_ID, null);
+        if (deviceId == null) {
+            deviceId = UUID.randomUUID().toString();
+            prefs.edit().putString(KEY_DEVICE_ID, deviceId).apply();
+        }
+        journalCursor = prefs.getLong(KEY_JOURNAL_CURSOR, 0);
+        savedJournalCursor = journalCursor;
+
+        uploader = new TelemetryUploader(new File(appContext.getFilesDir(), SPOOL_DIR), MAX_SPOOL_BYTES, deviceId);
+        uploader.setEndpoint(prefs.getString(KEY_ENDPOINT, ""));
+        uploader.addSource(this::collectJournalEvents);
+        uploader.start();
+
+        DetectionConfigStore configStore = DetectionConfigStore.getInstance(appContext);
+        configStore.addListener(this::applyConfig);
+        applyConfig(configStore.get());
+    }
+
+    // Runs on the config compiler thread; a config without telemetry_endpoint keeps the preference
+    private void applyConfig(DetectionConfig config) {
+        String endpoint = config.telemetryEndpoint;
+        if (endpoint == null || endpoint.equals(prefs.getString(KEY_ENDPOINT, ""))) return;
+        prefs.edit().putString(KEY_ENDPOINT, endpoint).apply();
+        reloadEndpoint();
+        Log.d(TAG, endpoint.isEmpty() ? "Telemetry uploads disabled by config"
+                : "Telemetry endpoint set by config version " + config.version);
+    }
+
+    /** Re-reads the endpoint preference, e.g. after the user edits it. */
+    public void reloadEndpoint() {
+        uploader.setEndpoint(prefs.getString(KEY_ENDPOINT, ""));
+    }
+
+    public void flush() {
+        uploader.flush();
+    }
+
+    public TelemetryUploader getUploader() {
+        return uploader;
+    }
+
+    /** Queues a stats record; keyValues alternate names and values (String, Number or Boolean). */
+    public void record(String type, String channel, Object... keyValues) {
+        StringBuilder json = startRecord(System.currentTimeMillis(), type, channel);
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            appendField(json, String.valueOf(keyValues[i]), keyValues[i + 1]);
+        }
+        uploader.record(json.append('}').toString());
+    }
+
+    private void collectJournalEvents(List<String> records) {
+        // Rows from the previous call are in the spool by now, so their cursor can be persisted;
+        // a crash in between resends them rather than losing them
+        if (journalCursor != savedJournalCursor) {
+            prefs.edit().putLong(KEY_JOURNAL_CURSOR, journalCursor).apply();
+            savedJournalCursor = journalCursor;
+        }
+        try (Cursor cursor = CallJournal.getInstance(appContext).queryEventsAfter(journalCursor, JOURNAL_BATCH)) {
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                StringBuilder json = startRecord(cursor.getLong(1), "call_event", cursor.getString(2));
+                appendField(json, "id", id);
+                appendField(json, "event", cursor.getString(3));
+                appendField(json, "source", cursor.getString(4));
+                if (!cursor.isNull(5)) appendField(json, "call_type", cursor.getInt(5));
+                if (!cursor.isNull(6)) appendField(json, "duration", cursor.getLong(6));
+                records.add(json.append('}').toString());
+                journalCursor = id;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Telemetry journal read failed: " + e.getMessage());
+        }
+        String error = uploader.getLastError();
+        if (error != null && !error.equals(lastLoggedError)) {
+            Log.w(TAG, error);
+            lastLoggedError = error;
+        }
+    }
+
+    private static StringBuilder startRecord(long timestamp, String type, String channel) {
+        StringBuilder json = new StringBuilder(160).append("{\"ts\":").append(timestamp);
+        appendField(json, "type", type);
+        if (channel != null) appendField(json, "channel", channel);
+        return json;
+    }
+
+    private static void appendField(StringBuilder json, String name, Object value) {
+        json.append(',');
+        appendString(json, name);
+        json.append(':');
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else {
+            appendString(json, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.callcounter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Disk-bounded, append-only spool of newline-terminated telemetry records. Positions are
+ * absolute byte offsets that only grow, so the committed (uploaded) offset survives restarts
+ * and compaction and can double as an idempotency key for the server. The data lives in
+ * spool-&lt;base&gt;.ndjson, where base is the absolute offset of its first byte; compaction
+ * copies the uncommitted tail into a file with a higher base and deletes the old one. When
+ * the spool would exceed its byte limit the oldest uncommitted records are dropped and
+ * counted. Not thread-safe; TelemetryUploader drives it from its own thread.
+ */
+final class TelemetrySpool {
+
+    private static final String PREFIX = "spool-";
+    private static final String SUFFIX = ".ndjson";
+    private static final String STATE_FILE = "spool.state";
+
+    private final File dir;
+    private final long maxBytes;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long base;      // absolute offset of the first byte in the file
+    private long committed; // absolute offset everything before which is uploaded or dropped
+    private long droppedBytes;
+
+    TelemetrySpool(File dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        open();
+    }
+
+    /** Absolute offset up to which records have been uploaded (or dropped). */
+    long committedOffset() {
+        return committed;
+    }
+
+    long pendingBytes() throws IOException {
+        return base + channel.size() - committed;
+    }
+
+    long droppedBytes() {
+        return droppedBytes;
+    }
+
+    /** Appends one record; record must end with '\n' and be smaller than the spool limit. */
+    void append(byte[] record, int length) throws IOException {
+        long size = channel.size();
+        if (size + length > maxBytes) {
+            compact();
+            size = channel.size();
+            if (size + length > maxBytes) {
+                // Still full of unsent data: drop the oldest quarter (at least enough for this record)
+                dropOldest(Math.max(size + length - maxBytes, maxBytes / 4));
+            }
+        }
+        ByteBuffer src = ByteBuffer.wrap(record, 0, length);
+        long position = channel.size();
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    /**
+     * Reads whole records starting at the committed offset into dst, at most dst.length bytes.
+     * Returns the byte count (0 when nothing is pending).
+     */
+    int read(byte[] dst) throws IOException {
+        long start = committed - base;
+        int wanted = (int) Math.min(dst.length, channel.size() - start);
+        if (wanted <= 0) return 0;
+        ByteBuffer buffer = ByteBuffer.wrap(dst, 0, wanted);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) break;
+        }
+        // Cut after the last complete record
+        int end = buffer.position();
+        while (end > 0 && dst[end - 1] != '\n') end--;
+        return end;
+    }
+
+    /** Marks the bytes returned by read() as uploaded. */
+    void commit(int bytes) throws IOException {
+        committed += bytes;
+        writeState();
+        // Reclaim the uploaded prefix once it dominates the file
+        long uploaded = committed - base;
+        if (uploaded > maxBytes / 2 && uploaded * 2 > channel.size()) {
+            compact();
+        }
+    }
+
+    void close() {
+        try {
+            if (file != null) file.close();
+        } catch (IOException e) {
+            // Nothing buffered; positional writes are already in the file
+        }
+        file = null;
+        channel = null;
+    }
+
+    private void open() throws IOException {
+        committed = readState();
+        File current = null;
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files != null) {
+            for (File candidate : files) {
+                long candidateBase = parseBase(candidate.getName());
+                if (candidateBase < 0) continue;
+                if (current == null || candidateBase > base) {
+                    // A crash mid-compaction can leave the older file behind
+                    if (current != null && !current.delete()) current.deleteOnExit();
+                    current = candidate;
+                    base = candidateBase;
+                } else if (!candidate.delete()) {
+                    candidate.deleteOnExit();
+                }
+            }
+        }
+        if (current == null) {
+            base = committed;
+            current = new File(dir, PREFIX + base + SUFFIX);
+        }
+        file = new RandomAccessFile(current, "rw");
+        channel = file.getChannel();
+        long end = base + channel.size();
+        if (committed < base || committed > end) {
+            // State and data disagree (state lost or from another spool); resend from the start
+            committed = base;
+            writeState();
+        } else {
+            skipPartialRecord();
+        }
+    }
+
+    // A crash mid-append can leave a record without its newline; cut it off
+    private void skipPartialRecord() throws IOException {
+        long size = channel.size();
+        if (size == 0) return;
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        if (last.get(0) == '\n') return;
+        byte[] tail = new byte[(int) Math.min(size, 64 * 1024)];
+        ByteBuffer buffer = ByteBuffer.wrap(tail);
+        channel.read(buffer, size - tail.length);
+        int cut = tail.length;
+        while (cut > 0 && tail[cut - 1] != '\n') cut--;
+        long newSize = Math.max(size - tail.length + cut, committed - base);
+        channel.truncate(newSize);
+    }
+
+    private void compact() throws IOException {
+        long start = committed - base;
+        if (start == 0) return;
+        long newBase = committed;
+        File target = new File(dir, PREFIX + newBase + SUFFIX);
+        File tmp = new File(dir, target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            FileChannel outChannel = out.getChannel();
+            long size = channel.size();
+            long position = start;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, outChannel);
+            }
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(target)) {
+            throw new IOException("Could not rename " + tmp.getName());
+        }
+        File old = new File(dir, PREFIX + base + SUFFIX);
+        close();
+        if (!old.delete()) old.deleteOnExit();
+        base = newBase;
+        file = new RandomAccessFile(target, "rw");
+        channel = file.getChannel();
+    }
+
+    private void dropOldest(long bytes) throws IOException {
+        long size = channel.size();
+        long start = committed - base;
+        long cut = Math.min(size, start + bytes);
+        // Advance to the end of the record containing the cut point
+        ByteBuffer one = ByteBuffer.allocate(1);
+        while (cut < size) {
+            one.clear();
+            channel.read(one, cut - 1);
+            if (one.get(0) == '\n') break;
+            cut++;
+        }
+        droppedBytes += cut - start;
+        committed = base + cut;
+        writeState();
+        compact();
+    }
+
+    private long readState() {
+        File state = new File(dir, STATE_FILE);
+        if (!state.exists()) return 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(state))) {
+            return in.readLong();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void writeState() throws IOException {
+        File tmp = new File(dir, STATE_FILE + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(fileOut)) {
+            out.writeLong(committed);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(dir, STATE_FILE))) {
+            throw new IOException("Could not rename " + tmp.getName());
+        }
+    }
+
+    private static long parseBase(String name) {
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
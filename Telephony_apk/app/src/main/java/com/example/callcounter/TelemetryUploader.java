@@ -0,0 +1,313 @@
+package com.example.callcounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Ships newline-delimited JSON telemetry records to an HTTP endpoint in compressed batches.
+ * Records go into a disk-bounded TelemetrySpool first. A batch is only sent once enough has
+ * piled up (MIN_BATCH_BYTES) or the oldest pending record is MAX_BATCH_AGE_MS old; then
+ * everything pending goes out back to back, so the radio wakes rarely and briefly. Each batch
+ * is zlib-compressed with a preset dictionary of the record vocabulary (the receiver inflates
+ * with the same DICTIONARY, version in X-Telemetry-Dictionary) and carries its absolute spool
+ * offset in X-Batch-Offset so the server can drop replays. The committed offset only advances
+ * after a 2xx, so uploads resume where they stopped across restarts. Failures back off
+ * exponentially with jitter. Like BridgeClient this class has no android.* dependencies, so it
+ * runs on a plain JVM against a stub server; owners log getLastError().
+ */
+public class TelemetryUploader {
+
+    /** Supplies records (e.g. journal rows) on the uploader thread before each batching check. */
+    public interface Source {
+        void collect(List<String> records);
+    }
+
+    public static final int DICTIONARY_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Deflate favours matches near the end of the dictionary, so the most common strings go last
+    static final byte[] DICTIONARY = ("\"underruns\":0,\"barge_ins\":0,\"uplink_dropped\":0,\"recorded_ms\":"
+            + "\"type\":\"audio_session\",\"type\":\"answer_unconfirmed\",\"retry\":1,"
+            + "\"type\":\"answer_confirmed\",\"signal\":\"offhook\",\"signal\":\"ongoing_notification\","
+            + "\"signal\":\"call_timer\",\"ms\":,\"call_type\":1,\"call_type\":3,\"duration\":0,"
+            + "\"source\":\"call_log\",\"source\":\"live\",\"event\":\"answered\",\"event\":\"ringing\","
+            + "\"channel\":\"telegram\",\"channel\":\"signal\",\"channel\":\"whatsapp_business\","
+            + "\"channel\":\"whatsapp\",\"channel\":\"cellular\",\"type\":\"call_event\",\"id\":1,"
+            + "}\n{\"ts\":17").getBytes(UTF_8);
+
+    private static final int MAX_BATCH_BYTES = 64 * 1024;
+    private static final long MIN_BATCH_BYTES = 16 * 1024;
+    private static final long MAX_BATCH_AGE_MS = 10 * 60 * 1000L;
+    private static final long CHECK_INTERVAL_MS = 60 * 1000L;
+    private static final long BACKOFF_BASE_MS = 30 * 1000L;
+    private static final long BACKOFF_MAX_MS = 30 * 60 * 1000L;
+    private static final int MAX_RECORD_BYTES = 4096;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private final File dir;
+    private final long maxSpoolBytes;
+    private final String deviceId;
+    private final List<Source> sources = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+    private final Random jitter = new Random();
+
+    // Worker thread only
+    private TelemetrySpool spool;
+    private final byte[] raw = new byte[MAX_BATCH_BYTES];
+    private byte[] compressed = new byte[MAX_BATCH_BYTES + 1024];
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final List<String> collected = new ArrayList<>();
+    private long firstPendingAt;
+    private long nextAttemptAt;
+    private int failures;
+
+    private volatile String endpoint;
+    private volatile boolean started;
+    private volatile long uploadedBatches;
+    private volatile long uploadedBytes;
+    private volatile long compressedBytes;
+    private volatile long rejectedBatches;
+    private volatile long failedAttempts;
+    private volatile long droppedBytes;
+    private volatile long pendingBytes;
+    private volatile String lastError;
+
+    public TelemetryUploader(File dir, long maxSpoolBytes, String deviceId) {
+        this.dir = dir;
+        this.maxSpoolBytes = maxSpoolBytes;
+        this.deviceId = deviceId;
+    }
+
+    /** Null or empty disables uploading; records keep spooling up to the disk bound. */
+    public void setEndpoint(String url) {
+        endpoint = url == null || url.isEmpty() ? null : url;
+    }
+
+    public void addSource(Source source) {
+        sources.add(source);
+    }
+
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        worker.execute(this::openSpool);
+        worker.scheduleWithFixedDelay(() -> tick(false), CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (!started) return;
+        started = false;
+        worker.shutdown();
+        try {
+            worker.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (spool != null) spool.close();
+    }
+
+    /** Queues one JSON object (no trailing newline). Safe from any thread; never blocks on I/O. */
+    public void record(String json) {
+        if (!started) return;
+        worker.execute(() -> append(json));
+    }
+
+    /** Uploads whatever is pending now, ignoring the batching thresholds (not the backoff). */
+    public void flush() {
+        if (!started) return;
+        worker.execute(() -> tick(true));
+    }
+
+    public long getUploadedBatches() {
+        return uploadedBatches;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public long getRejectedBatches() {
+        return rejectedBatches;
+    }
+
+    public long getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    private void openSpool() {
+        try {
+            spool = new TelemetrySpool(dir, maxSpoolBytes);
+            pendingBytes = spool.pendingBytes();
+        } catch (IOException e) {
+            lastError = "Telemetry spool unavailable: " + e.getMessage();
+        }
+    }
+
+    private void append(String json) {
+        if (spool == null) return;
+        byte[] bytes = (json + "\n").getBytes(UTF_8);
+        if (bytes.length > MAX_RECORD_BYTES) {
+            lastError = "Dropped oversized telemetry record (" + bytes.length + " bytes)";
+            return;
+        }
+        try {
+            spool.append(bytes, bytes.length);
+            droppedBytes = spool.droppedBytes();
+            if (firstPendingAt == 0) firstPendingAt = System.currentTimeMillis();
+        } catch (IOException e) {
+            lastError = "Telemetry spool write failed: " + e.getMessage();
+        }
+    }
+
+    private void tick(boolean force) {
+        try {
+            if (spool == null) return;
+            collected.clear();
+            for (Source source : sources) {
+                source.collect(collected);
+            }
+            for (int i = 0; i < collected.size(); i++) {
+                append(collected.get(i));
+            }
+            collected.clear();
+
+            long pending = spool.pendingBytes();
+            pendingBytes = pending;
+            if (pending == 0) {
+                firstPendingAt = 0;
+                return;
+            }
+            long now = System.currentTimeMillis();
+            // Pending data from a previous run counts as old
+            if (firstPendingAt == 0) firstPendingAt = now - MAX_BATCH_AGE_MS;
+            boolean due = force || pending >= MIN_BATCH_BYTES || now - firstPendingAt >= MAX_BATCH_AGE_MS;
+            String url = endpoint;
+            if (!due || url == null || now < nextAttemptAt) return;
+
+            // Send everything while the radio is up
+            int length;
+            while ((length = spool.read(raw)) > 0) {
+                long offset = spool.committedOffset();
+                int status = post(url, offset, length);
+                if (status >= 200 && status < 300) {
+                    uploadedBatches++;
+                    uploadedBytes += length;
+                } else if (status >= 400 && status < 500 && status != 408 && status != 429) {
+                    // The server will never take this batch; skip it rather than block the spool
+                    rejectedBatches++;
+                    lastError = "Telemetry batch at " + offset + " rejected with HTTP " + status;
+                } else {
+                    backOff("HTTP " + status);
+                    break;
+                }
+                spool.commit(length);
+                failures = 0;
+                nextAttemptAt = 0;
+            }
+            pending = spool.pendingBytes();
+            pendingBytes = pending;
+            if (pending == 0) firstPendingAt = 0;
+        } catch (IOException e) {
+            backOff(e.getMessage());
+        } catch (RuntimeException e) {
+            lastError = "Telemetry tick failed: " + e;
+        }
+    }
+
+    private int post(String url, long offset, int length) throws IOException {
+        int size = compress(length);
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setFixedLengthStreamingMode(size);
+            connection.setRequestProperty("Content-Type", "application/x-ndjson");
+            connection.setRequestProperty("Content-Encoding", "deflate");
+            connection.setRequestProperty("X-Telemetry-Dictionary", String.valueOf(DICTIONARY_VERSION));
+            connection.setRequestProperty("X-Device-Id", deviceId);
+            connection.setRequestProperty("X-Batch-Offset", String.valueOf(offset));
+            connection.setRequestProperty("X-Batch-Bytes", String.valueOf(length));
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(compressed, 0, size);
+            }
+            int status = connection.getResponseCode();
+            drainQuietly(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            compressedBytes += size;
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // zlib stream (FDICT set) of raw[0..length) into compressed; returns its size
+    private int compress(int length) {
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(raw, 0, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == compressed.length) {
+                byte[] larger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, larger, 0, size);
+                compressed = larger;
+            }
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        return size;
+    }
+
+    private void backOff(String reason) {
+        failedAttempts++;
+        failures++;
+        long delay = Math.min(BACKOFF_BASE_MS << Math.min(failures - 1, 10), BACKOFF_MAX_MS);
+        // +-20% so a rack of handsets doesn't retry in lockstep
+        delay += (long) (delay * 0.4 * (jitter.nextDouble() - 0.5));
+        nextAttemptAt = System.currentTimeMillis() + delay;
+        lastError = "Telemetry upload failed (" + reason + "), retrying in " + delay / 1000 + " s";
+    }
+
+    private static void drainQuietly(InputStream in) {
+        if (in == null) return;
+        byte[] skip = new byte[512];
+        try {
+            while (in.read(skip) >= 0) {
+                // Reading to the end lets the connection be reused for the next batch
+            }
+            in.close();
+        } catch (IOException e) {
+            // Status is all we need
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.callcounter;
+
+/**
+ * Frame-level voice activity detector for 16-bit mono PCM. Each 20 ms frame is classified
+ * from three features: energy above an adaptive noise floor, zero-crossing rate, and
+ * spectral flatness of the 300-4000 Hz band (voiced speech is harmonic, so its spectrum is
+ * far from flat; fans, hiss and line noise are not). Speech start needs a few consecutive
+ * speech frames and speech end a longer hangover, so single clicks and short pauses between
+ * words don't toggle the state. All buffers, the FFT window and twiddles are built in the
+ * constructor; process() never allocates. Not thread-safe: feed it from the capture thread.
+ */
+public class VoiceActivityDetector {
+
+    public interface Listener {
+        void onSpeechStart(long frameIndex);
+        void onSpeechEnd(long frameIndex);
+    }
+
+    public static final int FRAME_MS = 20;
+
+    private static final double MIN_ENERGY_DB = -55.0;
+    private static final double SNR_THRESHOLD_DB = 10.0;
+    private static final double MAX_FLATNESS = 0.45;
+    private static final double MAX_ZERO_CROSSING_RATE = 0.40;
+    private static final int START_FRAMES = 3;   // 60 ms
+    private static final int HANGOVER_FRAMES = 15; // 300 ms
+    private static final double BAND_LOW_HZ = 300.0;
+    private static final double BAND_HIGH_HZ = 4000.0;
+
+    private final int frameSize;
+    private final short[] frame;
+    private int framePosition;
+
+    private final int fftSize;
+    private final float[] window;
+    private final float[] real;
+    private final float[] imag;
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] bitReverse;
+    private final int bandStart;
+    private final int bandEnd;
+
+    private Listener listener;
+    private double noiseFloorDb = MIN_ENERGY_DB - SNR_THRESHOLD_DB;
+    private boolean speaking;
+    private int speechRun;
+    private int silenceRun;
+    private long frameIndex;
+
+    // Features of the last frame, for tuning and metrics
+    private double lastEnergyDb;
+    private double lastZeroCrossingRate;
+    private double lastFlatness;
+
+    public VoiceActivityDetector(int sampleRate) {
+        frameSize = sampleRate * FRAME_MS / 1000;
+        frame = new short[frameSize];
+
+        int size = 1;
+        while (size < frameSize) size <<= 1;
+        fftSize = size;
+        window = new float[frameSize];
+        for (int i = 0; i < frameSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (frameSize - 1)));
+        }
+        real = new float[fftSize];
+        imag = new float[fftSize];
+        cos = new float[fftSize / 2];
+        sin = new float[fftSize / 2];
+        for (int i = 0; i < fftSize / 2; i++) {
+            cos[i] = (float) Math.cos(2 * Math.PI * i / fftSize);
+            sin[i] = (float) -Math.sin(2 * Math.PI * i / fftSize);
+        }
+        bitReverse = new int[fftSize];
+        int bits = Integer.numberOfTrailingZeros(fftSize);
+        for (int i = 0; i < fftSize; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        bandStart = Math.max(1, (int) (BAND_LOW_HZ * fftSize / sampleRate));
+        bandEnd = Math.min(fftSize / 2, (int) (BAND_HIGH_HZ * fftSize / sampleRate));
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public boolean isSpeaking() {
+        return speaking;
+    }
+
+    public double getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+
+    public double getLastEnergyDb() {
+        return lastEnergyDb;
+    }
+
+    public double getLastZeroCrossingRate() {
+        return lastZeroCrossingRate;
+    }
+
+    public double getLastFlatness() {
+        return lastFlatness;
+    }
+
+    /** Feeds samples of any length; complete frames are classified as they fill up. */
+    public void process(short[] samples, int offset, int count) {
+        int end = offset + count;
+        int i = offset;
+        while (i < end) {
+            int n = Math.min(frameSize - framePosition, end - i);
+            System.arraycopy(samples, i, frame, framePosition, n);
+            framePosition += n;
+            i += n;
+            if (framePosition == frameSize) {
+                framePosition = 0;
+                onFrame(classify());
+            }
+        }
+    }
+
+    public void reset() {
+        framePosition = 0;
+        noiseFloorDb = MIN_ENERGY_DB - SNR_THRESHOLD_DB;
+        speaking = false;
+        speechRun = 0;
+        silenceRun = 0;
+    }
+
+    private void onFrame(boolean speech) {
+        long index = frameIndex++;
+        if (speech) {
+            silenceRun = 0;
+            if (!speaking && ++speechRun >= START_FRAMES) {
+                speaking = true;
+                if (listener != null) listener.onSpeechStart(index - START_FRAMES + 1);
+            }
+        } else {
+            speechRun = 0;
+            if (speaking && ++silenceRun >= HANGOVER_FRAMES) {
+                speaking = false;
+                silenceRun = 0;
+                if (listener != null) listener.onSpeechEnd(index - HANGOVER_FRAMES + 1);
+            }
+        }
+    }
+
+    private boolean classify() {
+        long energy = 0;
+        int crossings = 0;
+        short previous = frame[0];
+        for (int i = 0; i < frameSize; i++) {
+            short s = frame[i];
+            energy += s * s;
+            if ((s ^ previous) < 0) crossings++;
+            previous = s;
+        }
+        double meanPower = (double) energy / frameSize / (32768.0 * 32768.0);
+        double energyDb = 10 * Math.log10(meanPower + 1e-12);
+        double zcr = (double) crossings / frameSize;
+
+        lastEnergyDb = energyDb;
+        lastZeroCrossingRate = zcr;
+
+        boolean loudEnough = energyDb > MIN_ENERGY_DB && energyDb > noiseFloorDb + SNR_THRESHOLD_DB;
+        // The FFT is the expensive part; skip it for frames that can't be speech anyway
+        double flatness = loudEnough ? spectralFlatness() : 1.0;
+        lastFlatness = flatness;
+
+        boolean speech = loudEnough && flatness < MAX_FLATNESS && zcr < MAX_ZERO_CROSSING_RATE;
+        if (!speech) {
+            // Track the floor down quickly and up slowly so speech doesn't drag it up
+            double rate = energyDb < noiseFloorDb ? 0.3 : 0.05;
+            noiseFloorDb += (energyDb - noiseFloorDb) * rate;
+        }
+        return speech;
+    }
+
+    private double spectralFlatness() {
+        for (int i = 0; i < frameSize; i++) {
+            int j = bitReverse[i];
+            real[j] = frame[i] * window[i];
+        }
+        for (int i = frameSize; i < fftSize; i++) {
+            real[bitReverse[i]] = 0f;
+        }
+        for (int i = 0; i < fftSize; i++) {
+            imag[i] = 0f;
+        }
+        fft();
+
+        double logSum = 0;
+        double sum = 0;
+        for (int k = bandStart; k < bandEnd; k++) {
+            double power = (double) real[k] * real[k] + (double) imag[k] * imag[k] + 1e-3;
+            logSum += Math.log(power);
+            sum += power;
+        }
+        int bins = bandEnd - bandStart;
+        return Math.exp(logSum / bins) / (sum / bins);
+    }
+
+    // In-place iterative radix-2 on data already in bit-reversed order
+    private void fft() {
+        for (int half = 1; half < fftSize; half <<= 1) {
+            int step = fftSize / (half << 1);
+            for (int start = 0; start < fftSize; start += half << 1) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cos[k * step];
+                    float wi = sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    float tr = real[b] * wr - imag[b] * wi;
+                    float ti = real[b] * wi + imag[b] * wr;
+                    real[b] = real[a] - tr;
+                    imag[b] = imag[a] - ti;
+                    real[a] += tr;
+                    imag[a] += ti;
+                }
+            }
+        }
+    }
+}
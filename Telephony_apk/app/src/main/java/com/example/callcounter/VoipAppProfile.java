@@ -0,0 +1,209 @@
+package com.example.callcounter;
+
+import java.util.Locale;
+
+/**
+ * Detection rules for one VoIP app: how its incoming-call notification looks, which
+ * notification action answers it, where the answer button sits on its call screen and
+ * how long to wait between fallback steps.
+ */
+public final class VoipAppProfile {
+
+    private static final String[] DEFAULT_CALL_KEYWORDS = {
+        "incoming", "call", "llamada", "appel", "anruf", "chiamata", "来电", "전화"
+    };
+    private static final String[] DEFAULT_CALL_PHRASES = {
+        "voice call", "video call", "calling", "ringing"
+    };
+    private static final String[] DEFAULT_ONGOING_CALL_KEYWORDS = {
+        "ongoing", "en curso", "em andamento", "en cours", "laufend", "in corso", "通话中", "통화 중"
+    };
+    private static final String[] DEFAULT_ANSWER_KEYWORDS = {
+        "answer", "responder", "atender", "accept", "acceptar",
+        "décrocher", "antworten", "rispondere", "接听", "응답"
+    };
+    private static final String[] DEFAULT_ANSWER_BUTTON_TEXTS = {
+        "answer", "accept", "pick up", "responder", "atender", "acceptar",
+        "décrocher", "accepter", "antworten", "annehmen", "rispondere", "accettare",
+        "接听", "接受", "응답", "수락", "받기", "उत्तर", "जवाब"
+    };
+    private static final String[] DEFAULT_CALL_SCREEN_TEXTS = {
+        "Incoming", "voice call", "video call", "calling", "incoming call", "रही है"
+    };
+    private static final String[] DEFAULT_CALL_SCREEN_CLASS_HINTS = {
+        "Call", "Voice", "Video"
+    };
+    private static final String[] DEFAULT_CALL_WINDOW_TITLES = {
+        "call", "voip", "voice", "video"
+    };
+
+    public final String packageName;
+    public final String channel;
+    public final String label;
+
+    // Notification signature
+    public final String[] callKeywords;
+    public final String[] callPhrases;
+    public final String[] answerActionKeywords;
+    public final String[] ongoingCallKeywords;
+    // Also require CATEGORY_CALL or an answer action, not just matching text
+    public final boolean requireCallSignature;
+
+    // Call-screen locators
+    public final String[] callScreenTexts;
+    public final String[] callScreenClassHints;
+    public final String[] callWindowTitles;
+    public final String[] answerButtonTexts;
+    public final float answerButtonMinYFraction;
+    public final float[][] answerTapFractions;
+
+    // Timing profile (ms)
+    public final long contentIntentFollowUpDelayMs;
+    public final long launchFollowUpDelayMs;
+    public final long answerBroadcastDelayMs;
+    public final long eventScanDelayMs;
+    public final long gestureTapIntervalMs;
+
+    private VoipAppProfile(Builder builder) {
+        packageName = builder.packageName;
+        channel = builder.channel;
+        label = builder.label;
+        callKeywords = lowerCase(builder.callKeywords);
+        callPhrases = lowerCase(builder.callPhrases);
+        answerActionKeywords = lowerCase(builder.answerActionKeywords);
+        ongoingCallKeywords = lowerCase(builder.ongoingCallKeywords);
+        requireCallSignature = builder.requireCallSignature;
+        callScreenTexts = builder.callScreenTexts;
+        callScreenClassHints = builder.callScreenClassHints;
+        callWindowTitles = lowerCase(builder.callWindowTitles);
+        answerButtonTexts = builder.answerButtonTexts;
+        answerButtonMinYFraction = builder.answerButtonMinYFraction;
+        answerTapFractions = builder.answerTapFractions;
+        contentIntentFollowUpDelayMs = builder.contentIntentFollowUpDelayMs;
+        launchFollowUpDelayMs = builder.launchFollowUpDelayMs;
+        answerBroadcastDelayMs = builder.answerBroadcastDelayMs;
+        eventScanDelayMs = builder.eventScanDelayMs;
+        gestureTapIntervalMs = builder.gestureTapIntervalMs;
+    }
+
+    // notificationText is expected to be lower-case already
+    public boolean isIncomingCallText(String notificationText) {
+        if (notificationText == null || notificationText.isEmpty()) return false;
+        return containsAny(notificationText, callKeywords) || containsAny(notificationText, callPhrases);
+    }
+
+    /**
+     * Whether a notification is a ringing call. Profiles that requireCallSignature also need it
+     * to be CATEGORY_CALL or carry an answer action, so a chat message that merely mentions a
+     * call isn't taken for one. notificationText is expected to be lower-case already.
+     */
+    public boolean isIncomingCallNotification(String notificationText, boolean callCategory, boolean hasAnswerAction) {
+        if (requireCallSignature && !callCategory && !hasAnswerAction) return false;
+        return isIncomingCallText(notificationText);
+    }
+
+    // notificationText is expected to be lower-case already
+    public boolean isOngoingCallText(String notificationText) {
+        return notificationText != null && containsAny(notificationText, ongoingCallKeywords);
+    }
+
+    public boolean isAnswerActionTitle(String actionTitle) {
+        return actionTitle != null && containsAny(actionTitle.toLowerCase(Locale.ROOT), answerActionKeywords);
+    }
+
+    // Window titles of the call UI, as reported by AccessibilityWindowInfo.getTitle()
+    public boolean isCallWindowTitle(CharSequence title) {
+        return title != null && containsAny(title.toString().toLowerCase(Locale.ROOT), callWindowTitles);
+    }
+
+    private static boolean containsAny(String text, String[] needles) {
+        for (String needle : needles) {
+            if (text.contains(needle)) return true;
+        }
+        return false;
+    }
+
+    private static String[] lowerCase(String[] values) {
+        String[] result = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i].toLowerCase(Locale.ROOT);
+        }
+        return result;
+    }
+
+    public static final class Builder {
+        private final String packageName;
+        private final String channel;
+        private String label;
+        private String[] callKeywords = DEFAULT_CALL_KEYWORDS;
+        private String[] callPhrases = DEFAULT_CALL_PHRASES;
+        private String[] answerActionKeywords = DEFAULT_ANSWER_KEYWORDS;
+        private String[] ongoingCallKeywords = DEFAULT_ONGOING_CALL_KEYWORDS;
+        private boolean requireCallSignature;
+        private String[] callScreenTexts = DEFAULT_CALL_SCREEN_TEXTS;
+        private String[] callScreenClassHints = DEFAULT_CALL_SCREEN_CLASS_HINTS;
+        private String[] callWindowTitles = DEFAULT_CALL_WINDOW_TITLES;
+        private String[] answerButtonTexts = DEFAULT_ANSWER_BUTTON_TEXTS;
+        private float answerButtonMinYFraction = 0.6f;
+        private float[][] answerTapFractions = {
+            {0.5f, 0.85f},  // Bottom center
+            {0.25f, 0.80f}, // Bottom left
+            {0.75f, 0.80f}  // Bottom right
+        };
+        private long contentIntentFollowUpDelayMs = 2000;
+        private long launchFollowUpDelayMs = 3000;
+        private long answerBroadcastDelayMs = 1500;
+        private long eventScanDelayMs = 800;
+        private long gestureTapIntervalMs = 800;
+
+        public Builder(String packageName, String channel) {
+            this.packageName = packageName;
+            this.channel = channel;
+            this.label = packageName;
+        }
+
+        // Starts from an existing profile, e.g. to apply a config override
+        public Builder(VoipAppProfile base) {
+            this(base.packageName, base.channel);
+            label = base.label;
+            callKeywords = base.callKeywords;
+            callPhrases = base.callPhrases;
+            answerActionKeywords = base.answerActionKeywords;
+            ongoingCallKeywords = base.ongoingCallKeywords;
+            requireCallSignature = base.requireCallSignature;
+            callScreenTexts = base.callScreenTexts;
+            callScreenClassHints = base.callScreenClassHints;
+            callWindowTitles = base.callWindowTitles;
+            answerButtonTexts = base.answerButtonTexts;
+            answerButtonMinYFraction = base.answerButtonMinYFraction;
+            answerTapFractions = base.answerTapFractions;
+            contentIntentFollowUpDelayMs = base.contentIntentFollowUpDelayMs;
+            launchFollowUpDelayMs = base.launchFollowUpDelayMs;
+            answerBroadcastDelayMs = base.answerBroadcastDelayMs;
+            eventScanDelayMs = base.eventScanDelayMs;
+            gestureTapIntervalMs = base.gestureTapIntervalMs;
+        }
+
+        public Builder label(String label) { this.label = label; return this; }
+        public Builder callKeywords(String... keywords) { this.callKeywords = keywords; return this; }
+        public Builder callPhrases(String... phrases) { this.callPhrases = phrases; return this; }
+        public Builder answerActionKeywords(String... keywords) { this.answerActionKeywords = keywords; return this; }
+        public Builder ongoingCallKeywords(String... keywords) { this.ongoingCallKeywords = keywords; return this; }
+        public Builder requireCallSignature(boolean require) { this.requireCallSignature = require; return this; }
+        public Builder callScreenTexts(String... texts) { this.callScreenTexts = texts; return this; }
+        public Builder callScreenClassHints(String... hints) { this.callScreenClassHints = hints; return this; }
+        public Builder callWindowTitles(String... titles) { this.callWindowTitles = titles; return this; }
+        public Builder answerButtonTexts(String... texts) { this.answerButtonTexts = texts; return this; }
+        public Builder answerButtonMinYFraction(float fraction) { this.answerButtonMinYFraction = fraction; return this; }
+        public Builder answerTapFractions(float[][] fractions) { this.answerTapFractions = fractions; return this; }
+        public Builder contentIntentFollowUpDelayMs(long ms) { this.contentIntentFollowUpDelayMs = ms; return this; }
+        public Builder launchFollowUpDelayMs(long ms) { this.launchFollowUpDelayMs = ms; return this; }
+        public Builder answerBroadcastDelayMs(long ms) { this.answerBroadcastDelayMs = ms; return this; }
+        public Builder eventScanDelayMs(long ms) { this.eventScanDelayMs = ms; return this; }
+        public Builder gestureTapIntervalMs(long ms) { this.gestureTapIntervalMs = ms; return this; }
+
+        public VoipAppProfile build() {
+            return new VoipAppProfile(this);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.callcounter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps package names to VoipAppProfiles. Notification and accessibility entry points do a
+ * single get() per event instead of comparing against hard-coded package strings, and the
+ * accessibility service's package filter is built from packageNames().
+ */
+public final class VoipAppRegistry {
+
+    public static final String PACKAGE_WHATSAPP = "com.whatsapp";
+    public static final String PACKAGE_WHATSAPP_BUSINESS = "com.whatsapp.w4b";
+    public static final String PACKAGE_TELEGRAM = "org.telegram.messenger";
+    public static final String PACKAGE_SIGNAL = "org.thoughtcrime.securesms";
+
+    private static final VoipAppRegistry DEFAULT = new VoipAppRegistry(
+        new VoipAppProfile.Builder(PACKAGE_WHATSAPP, CallJournal.CHANNEL_WHATSAPP)
+            .label("WhatsApp")
+            .build(),
+        new VoipAppProfile.Builder(PACKAGE_WHATSAPP_BUSINESS, CallJournal.CHANNEL_WHATSAPP_BUSINESS)
+            .label("WhatsApp Business")
+            .build(),
+        new VoipAppProfile.Builder(PACKAGE_TELEGRAM, CallJournal.CHANNEL_TELEGRAM)
+            .label("Telegram")
+            // Telegram chats are full of "call"; only its own ringing texts, on a call notification
+            .callKeywords("incoming call", "incoming video call", "telegram call", "telegram video call")
+            .callPhrases()
+            .requireCallSignature(true)
+            .callScreenTexts("Incoming", "Telegram Call", "Telegram Video Call", "ringing", "incoming call")
+            .build(),
+        new VoipAppProfile.Builder(PACKAGE_SIGNAL, CallJournal.CHANNEL_SIGNAL)
+            .label("Signal")
+            .callKeywords("incoming call", "incoming voice call", "incoming video call",
+                    "signal voice call", "signal video call")
+            .callPhrases()
+            .requireCallSignature(true)
+            .callScreenTexts("Incoming", "Signal voice call", "Signal video call", "incoming call", "ringing")
+            .build()
+    );
+
+    private final Map<String, VoipAppProfile> profilesByPackage;
+    private final String[] packageNames;
+
+    public VoipAppRegistry(VoipAppProfile... profiles) {
+        Map<String, VoipAppProfile> map = new HashMap<>(profiles.length * 2);
+        for (VoipAppProfile profile : profiles) {
+            map.put(profile.packageName, profile);
+        }
+        profilesByPackage = Collections.unmodifiableMap(map);
+        packageNames = map.keySet().toArray(new String[0]);
+    }
+
+    public static VoipAppRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    // Returns null for packages we don't handle
+    public VoipAppProfile get(CharSequence packageName) {
+        return packageName != null ? profilesByPackage.get(packageName.toString()) : null;
+    }
+
+    public String[] packageNames() {
+        return packageNames.clone();
+    }
+
+    public Collection<VoipAppProfile> profiles() {
+        return profilesByPackage.values();
+    }
+}
@@ -1,11 +1,13 @@
 package com.example.callcounter;
 
 import android.accessibilityservice.AccessibilityService;
+import android.accessibilityservice.AccessibilityServiceInfo;
 import android.accessibilityservice.GestureDescription;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
 import android.graphics.Path;
 import android.graphics.Rect;
 import android.os.Build;
@@ -16,21 +18,31 @@ import android.util.Log;
 import android.view.WindowManager;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
+import java.util.ArrayDeque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class WhatsAppAccessibilityService extends AccessibilityService {
 
     private static final String TAG = "WhatsAppAccessibility";
+    // How often a connected screen-only call checks that its app is still on screen
+    private static final long CALL_SCREEN_PROBE_MS = 5000;
     private BroadcastReceiver autoAnswerReceiver;
     private Handler handler;
-    private boolean isServiceActive = false;
-
-    // Keywords for answer button in different languages
-    private static final String[] ANSWER_BUTTON_TEXTS = {
-        "answer", "accept", "pick up", "responder", "atender", "acceptar",
-        "décrocher", "accepter", "antworten", "annehmen", "rispondere", "accettare",
-        "接听", "接受", "응답", "수락", "받기", "उत्तर", "जवाब"
+    // Written on the main thread, read by ServiceWatchdog
+    private volatile boolean isServiceActive = false;
+    private DetectionConfigStore configStore;
+    // Re-applies the package filter when a config reload changes the app set
+    private final DetectionConfigStore.Listener configListener = config -> {
+        Handler h = handler;
+        if (h != null) h.post(this::applyPackageFilter);
     };
+    private CallWindowLocator windowLocator;
+    // Channels with a call screen probe scheduled; main thread only
+    private final Set<String> probedChannels = new HashSet<>();
+    // The connected instance, for LoadHarness
+    static volatile WhatsAppAccessibilityService connected;
 
     @Override
     protected void onServiceConnected() {
@@ -44,10 +56,20 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
                 handler = new Handler(Looper.getMainLooper());
             }
             
+            configStore = DetectionConfigStore.getInstance(this);
+            configStore.addListener(configListener);
+
             // Register broadcast receiver with try-catch
             registerAutoAnswerReceiver();
+
+            applyPackageFilter();
+            windowLocator = new CallWindowLocator(this);
+
+            // Leak tracking keeps a stack trace per scan, so only in debuggable builds
+            NodeArena.setLeakTracking((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
             
             isServiceActive = true;
+            connected = this;
             Log.d(TAG, "WhatsApp Accessibility Service connected successfully");
             
         } catch (Exception e) {
@@ -56,6 +78,19 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
         }
     }
 
+    // Only receive events from the apps in the registry
+    private void applyPackageFilter() {
+        try {
+            AccessibilityServiceInfo info = getServiceInfo();
+            if (info != null) {
+                info.packageNames = configStore.get().registry.packageNames();
+                setServiceInfo(info);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to apply package filter: " + e.getMessage());
+        }
+    }
+
     private void registerAutoAnswerReceiver() {
         try {
             if (autoAnswerReceiver == null) {
@@ -63,17 +98,34 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
                     @Override
                     public void onReceive(Context context, Intent intent) {
                         try {
-                            if ("WHATSAPP_AUTO_ANSWER".equals(intent.getAction())) {
-                                Log.d(TAG, "Received auto-answer broadcast");
+                            if (WhatsAppCallDetector.ACTION_AUTO_ANSWER.equals(intent.getAction())) {
+                                VoipAppRegistry registry = configStore.get().registry;
+                                VoipAppProfile profile = registry.get(intent.getStringExtra(WhatsAppCallDetector.EXTRA_PACKAGE_NAME));
+                                if (profile == null) {
+                                    profile = registry.get(VoipAppRegistry.PACKAGE_WHATSAPP);
+                                }
+                                Log.d(TAG, "Received auto-answer broadcast for " + profile.label);
                                 
-                                if (handler != null && isServiceActive) {
-                                    handler.postDelayed(() -> {
+                                AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(context);
+                                String sessionId = intent.getStringExtra(WhatsAppCallDetector.EXTRA_SESSION_ID);
+                                CallSessionTable.CallSession session = sessionId != null
+                                        ? detector.getSession(sessionId) : detector.screenSession(profile.channel);
+                                if (session == null) {
+                                    Log.d(TAG, "Call for auto-answer broadcast already ended");
+                                    return;
+                                }
+                                // Scheduled under the call's session so a confirmed connect cancels it
+                                if (isServiceActive && detector.beginAttempt(session, null)) {
+                                    final VoipAppProfile target = profile;
+                                    detector.schedule(session, () -> {
                                         try {
-                                            attemptToAnswerCall();
+                                            attemptToAnswerCall(target, session, -1);
                                         } catch (Exception e) {
                                             Log.e(TAG, "Error in delayed answer attempt: " + e.getMessage());
+                                        } finally {
+                                            NodeArena.checkQuiescent("attemptToAnswerCall");
                                         }
-                                    }, 1500); // Increased delay for MIUI
+                                    }, profile.answerBroadcastDelayMs);
                                 }
                             }
                         } catch (Exception e) {
@@ -82,7 +134,7 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
                     }
                 };
                 
-                IntentFilter filter = new IntentFilter("WHATSAPP_AUTO_ANSWER");
+                IntentFilter filter = new IntentFilter(WhatsAppCallDetector.ACTION_AUTO_ANSWER);
                 registerReceiver(autoAnswerReceiver, filter);
                 Log.d(TAG, "Broadcast receiver registered successfully");
             }
@@ -93,18 +145,38 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
+        Metrics.A11Y_EVENTS.inc("received");
         if (!isServiceActive) return;
         
         try {
-            // Only process WhatsApp events
-            if (event.getPackageName() == null || 
-                !event.getPackageName().toString().equals("com.whatsapp")) {
+            // Only process events from registered VoIP apps
+            VoipAppProfile profile = configStore.get().registry.get(event.getPackageName());
+            if (profile == null) {
                 return;
             }
+            Metrics.A11Y_EVENTS.inc("processed");
             
-            Log.d(TAG, "WhatsApp accessibility event: " + event.getEventType() + 
+            Log.d(TAG, profile.label + " accessibility event: " + event.getEventType() + 
                        " Class: " + event.getClassName());
             
+            AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(this);
+            if (detector.isPending(profile.channel)) {
+                detector.onScreenText(profile.channel, event.getText());
+            }
+            // Nothing else will say when a call we only saw on screen is over
+            if (detector.hasScreenCall(profile.channel)) {
+                if (event.getEventType() == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+                        && isNonCallActivity(profile, event.getClassName())) {
+                    detector.onCallScreenGone(profile.channel);
+                } else {
+                    probeCallScreenLater(profile);
+                }
+            }
+            // Nothing left to click once the call is up; the bottom-area search would hit hang-up
+            if (detector.isConfirmed(profile.channel)) {
+                return;
+            }
+
             // Check for call-related events
             if (event.getEventType() == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED ||
                 event.getEventType() == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED ||
@@ -112,13 +184,16 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
                 
                 // Use handler to avoid blocking the accessibility event
                 if (handler != null) {
+                    final int windowId = event.getWindowId();
                     handler.postDelayed(() -> {
                         try {
-                            checkForIncomingCall();
+                            checkForIncomingCall(profile, windowId);
                         } catch (Exception e) {
                             Log.e(TAG, "Error checking for incoming call: " + e.getMessage());
+                        } finally {
+                            NodeArena.checkQuiescent("checkForIncomingCall");
                         }
-                    }, 800);
+                    }, profile.eventScanDelayMs);
                 }
             }
             
@@ -128,63 +203,91 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
         }
     }
 
-    private void checkForIncomingCall() {
+    private void checkForIncomingCall(VoipAppProfile profile, int windowId) {
         if (!isServiceActive) return;
+        Metrics.A11Y_EVENTS.inc("scanned");
         
-        AccessibilityNodeInfo rootNode = null;
-        try {
-            rootNode = getRootInActiveWindow();
+        long scanStart = System.nanoTime();
+        boolean incoming = false;
+        try (NodeArena arena = new NodeArena()) {
+            AccessibilityNodeInfo rootNode = windowLocator.findCallRoot(arena, profile, windowId);
             if (rootNode == null) {
-                Log.d(TAG, "No root node available");
+                Log.d(TAG, "No " + profile.label + " window available");
                 return;
             }
 
             // Look for incoming call indicators
-            if (isIncomingCallScreen(rootNode)) {
-                Log.d(TAG, "Detected incoming call screen, attempting to answer");
-                attemptToAnswerCall();
-            }
-            
+            incoming = isIncomingCallScreen(arena, rootNode, profile);
         } catch (Exception e) {
             Log.e(TAG, "Error in checkForIncomingCall: " + e.getMessage());
-        } finally {
-            if (rootNode != null) {
-                try {
-                    rootNode.recycle();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error recycling root node: " + e.getMessage());
-                }
-            }
+        }
+        Metrics.SCAN_SECONDS.observeSince(scanStart, "detect");
+
+        // Answer with a fresh tree; the one we scanned is already released
+        if (incoming) {
+            Log.d(TAG, "Detected incoming " + profile.label + " call screen, attempting to answer");
+            CallSessionTable.CallSession session = AnswerConfirmationDetector.getInstance(this)
+                    .screenSession(profile.channel);
+            attemptToAnswerCall(profile, session, windowId);
         }
     }
 
-    private boolean isIncomingCallScreen(AccessibilityNodeInfo rootNode) {
-        try {
-            // Method 1: Check for "Incoming" text
-            List<AccessibilityNodeInfo> incomingNodes = rootNode.findAccessibilityNodeInfosByText("Incoming");
-            if (incomingNodes != null && !incomingNodes.isEmpty()) {
-                for (AccessibilityNodeInfo node : incomingNodes) {
-                    if (node != null) node.recycle();
-                }
-                return true;
-            }
+    // An activity of the app itself (not a dialog or view) that isn't a call screen
+    private static boolean isNonCallActivity(VoipAppProfile profile, CharSequence className) {
+        if (className == null) return false;
+        String name = className.toString();
+        if (!name.startsWith(profile.packageName + ".")) return false;
+        for (String hint : profile.callScreenClassHints) {
+            if (name.contains(hint)) return false;
+        }
+        return true;
+    }
+
+    private void probeCallScreenLater(VoipAppProfile profile) {
+        if (handler == null || !probedChannels.add(profile.channel)) return;
+        handler.postDelayed(() -> {
+            probedChannels.remove(profile.channel);
+            probeCallScreen(profile);
+        }, CALL_SCREEN_PROBE_MS);
+    }
 
-            // Method 2: Check for call-related text
-            String[] callIndicators = {"voice call", "video call", "calling", "incoming call", "रही है"};
-            for (String indicator : callIndicators) {
-                List<AccessibilityNodeInfo> nodes = rootNode.findAccessibilityNodeInfosByText(indicator);
+    // Ends the channel's screen-only call once the app has no window on screen; the app may not
+    // send an event of its own when the call screen closes
+    private void probeCallScreen(VoipAppProfile profile) {
+        AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(this);
+        if (!isServiceActive || !detector.hasScreenCall(profile.channel)) return;
+        boolean shown = false;
+        try (NodeArena arena = new NodeArena()) {
+            AccessibilityNodeInfo root = windowLocator.findCallRoot(arena, profile, -1);
+            CharSequence packageName = root != null ? root.getPackageName() : null;
+            shown = packageName != null && profile.packageName.contentEquals(packageName);
+        } catch (Exception e) {
+            Log.e(TAG, "Error probing call screen: " + e.getMessage());
+            shown = true;
+        }
+        if (shown) {
+            probeCallScreenLater(profile);
+        } else {
+            detector.onCallScreenGone(profile.channel);
+        }
+    }
+
+    private boolean isIncomingCallScreen(NodeArena arena, AccessibilityNodeInfo rootNode, VoipAppProfile profile) {
+        try {
+            // Method 1 + 2: Check for "Incoming" and other call-related text
+            for (String indicator : profile.callScreenTexts) {
+                List<AccessibilityNodeInfo> nodes = arena.trackAll(rootNode.findAccessibilityNodeInfosByText(indicator));
                 if (nodes != null && !nodes.isEmpty()) {
-                    for (AccessibilityNodeInfo node : nodes) {
-                        if (node != null) node.recycle();
-                    }
                     return true;
                 }
             }
 
             // Method 3: Check class names for call activity
             String className = rootNode.getClassName() != null ? rootNode.getClassName().toString() : "";
-            if (className.contains("Call") || className.contains("Voice") || className.contains("Video")) {
-                return true;
+            for (String hint : profile.callScreenClassHints) {
+                if (className.contains(hint)) {
+                    return true;
+                }
             }
 
         } catch (Exception e) {
@@ -194,25 +297,31 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
         return false;
     }
 
-    private void attemptToAnswerCall() {
+    private void attemptToAnswerCall(VoipAppProfile profile, CallSessionTable.CallSession session, int windowId) {
         if (!isServiceActive) return;
+        if (!AnswerConfirmationDetector.getInstance(this)
+                .beginAttempt(session, () -> attemptToAnswerCall(profile, session, -1))) {
+            Log.d(TAG, profile.label + " call already connected or left to the user, skipping answer attempt");
+            return;
+        }
+        if (LoadHarness.interceptAnswer(profile.channel)) return;
         
-        AccessibilityNodeInfo rootNode = null;
-        try {
-            rootNode = getRootInActiveWindow();
+        AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(this);
+        long scanStart = System.nanoTime();
+        boolean answered = false;
+        try (NodeArena arena = new NodeArena()) {
+            AccessibilityNodeInfo rootNode = windowLocator.findCallRoot(arena, profile, windowId);
             if (rootNode == null) {
-                Log.w(TAG, "No root node available for answering");
+                Log.w(TAG, "No " + profile.label + " window available for answering");
                 return;
             }
 
-            boolean answered = false;
-
             // Method 1: Try to find answer button by text
-            for (String answerText : ANSWER_BUTTON_TEXTS) {
+            for (String answerText : profile.answerButtonTexts) {
                 if (answered) break;
                 
                 try {
-                    List<AccessibilityNodeInfo> answerNodes = rootNode.findAccessibilityNodeInfosByText(answerText);
+                    List<AccessibilityNodeInfo> answerNodes = arena.trackAll(rootNode.findAccessibilityNodeInfosByText(answerText));
                     if (answerNodes != null) {
                         for (AccessibilityNodeInfo answerNode : answerNodes) {
                             if (answerNode != null && answerNode.isClickable()) {
@@ -221,10 +330,10 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
                                 Log.d(TAG, "Click result: " + clicked);
                                 if (clicked) {
                                     answered = true;
+                                    detector.onStrategy(session, "accessibility_text", true);
                                     break;
                                 }
                             }
-                            if (answerNode != null) answerNode.recycle();
                         }
                     }
                 } catch (Exception e) {
@@ -234,74 +343,73 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
 
             // Method 2: Try to find clickable elements in the bottom area
             if (!answered) {
-                answered = findAndClickBottomButtons(rootNode);
-            }
-
-            // Method 3: Try gesture-based approach (only on API 24+)
-            if (!answered && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                Log.d(TAG, "Trying gesture-based answer approach");
-                performAnswerGesture();
+                answered = findAndClickBottomButtons(arena, rootNode, profile);
+                detector.onStrategy(session, "accessibility_scan", answered);
             }
 
         } catch (Exception e) {
             Log.e(TAG, "Error in attemptToAnswerCall: " + e.getMessage());
-        } finally {
-            if (rootNode != null) {
-                try {
-                    rootNode.recycle();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error recycling root node in attemptToAnswerCall: " + e.getMessage());
-                }
-            }
+        }
+        Metrics.SCAN_SECONDS.observeSince(scanStart, "answer");
+
+        if (!answered && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // Method 3: Try gesture-based approach (only on API 24+), without holding any nodes
+            Log.d(TAG, "Trying gesture-based answer approach");
+            detector.onStrategy(session, "gesture", true);
+            performAnswerGesture(profile, session);
         }
     }
 
-    private boolean findAndClickBottomButtons(AccessibilityNodeInfo rootNode) {
+    private boolean findAndClickBottomButtons(NodeArena arena, AccessibilityNodeInfo rootNode, VoipAppProfile profile) {
         try {
-            return searchForClickableElements(rootNode);
+            return searchForClickableElements(arena, rootNode, profile);
         } catch (Exception e) {
             Log.e(TAG, "Error in findAndClickBottomButtons: " + e.getMessage());
             return false;
         }
     }
 
-    private boolean searchForClickableElements(AccessibilityNodeInfo node) {
-        try {
-            // Check if this node is a likely answer button
-            if (node.isClickable() && isLikelyAnswerButton(node)) {
-                Log.d(TAG, "Found likely answer button, attempting click");
-                return node.performAction(AccessibilityNodeInfo.ACTION_CLICK);
+    // Pre-order walk with an explicit stack instead of recursion: each node is released once its
+    // children are queued, so only the unvisited frontier stays live, not the whole parent chain
+    private boolean searchForClickableElements(NodeArena arena, AccessibilityNodeInfo rootNode, VoipAppProfile profile) {
+        ArrayDeque<AccessibilityNodeInfo> pending = new ArrayDeque<>();
+        pending.push(rootNode);
+        int maxNodes = configStore.get().maxScanNodes;
+        int visited = 0;
+        while (!pending.isEmpty()) {
+            AccessibilityNodeInfo node = pending.pop();
+            if (++visited > maxNodes) {
+                Log.w(TAG, "Stopped answer button search after " + maxNodes + " nodes");
+                return false;
             }
+            try {
+                // Check if this node is a likely answer button
+                if (node.isClickable() && isLikelyAnswerButton(node, profile)) {
+                    Log.d(TAG, "Found likely answer button, attempting click");
+                    return node.performAction(AccessibilityNodeInfo.ACTION_CLICK);
+                }
 
-            // Recursively search children
-            for (int i = 0; i < node.getChildCount(); i++) {
-                AccessibilityNodeInfo child = null;
-                try {
-                    child = node.getChild(i);
-                    if (child != null) {
-                        boolean result = searchForClickableElements(child);
-                        if (result) return true;
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error accessing child node: " + e.getMessage());
-                } finally {
-                    if (child != null) {
-                        try {
-                            child.recycle();
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error recycling child node: " + e.getMessage());
-                        }
+                // Push in reverse so children are visited in order
+                for (int i = node.getChildCount() - 1; i >= 0; i--) {
+                    try {
+                        AccessibilityNodeInfo child = arena.child(node, i);
+                        if (child != null) pending.push(child);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error accessing child node: " + e.getMessage());
                     }
                 }
+            } catch (Exception e) {
+                Log.e(TAG, "Error in searchForClickableElements: " + e.getMessage());
+            }
+            if (node != rootNode) {
+                arena.release(node);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error in searchForClickableElements: " + e.getMessage());
         }
 
         return false;
     }
 
-    private boolean isLikelyAnswerButton(AccessibilityNodeInfo node) {
+    private boolean isLikelyAnswerButton(AccessibilityNodeInfo node, VoipAppProfile profile) {
         try {
             String className = node.getClassName() != null ? node.getClassName().toString() : "";
             String contentDesc = node.getContentDescription() != null ? 
@@ -316,7 +424,7 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
                 node.getBoundsInScreen(bounds);
                 
                 int screenHeight = getScreenHeight();
-                if (screenHeight > 0 && bounds.centerY() > screenHeight * 0.6) {
+                if (screenHeight > 0 && bounds.centerY() > screenHeight * profile.answerButtonMinYFraction) {
                     Log.d(TAG, "Found button in lower screen area: " + className);
                     return true;
                 }
@@ -328,7 +436,7 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
         return false;
     }
 
-    private void performAnswerGesture() {
+    private void performAnswerGesture(VoipAppProfile profile, CallSessionTable.CallSession session) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
             Log.w(TAG, "Gestures not supported on this API level");
             return;
@@ -343,24 +451,18 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
                 return;
             }
             
-            // Common positions for answer buttons
-            int[][] tapPositions = {
-                {screenWidth / 2, (int)(screenHeight * 0.85)}, // Bottom center
-                {screenWidth / 4, (int)(screenHeight * 0.80)}, // Bottom left
-                {(int)(screenWidth * 0.75), (int)(screenHeight * 0.80)} // Bottom right
-            };
-            
-            for (int[] position : tapPositions) {
-                performTapGesture(position[0], position[1]);
-                
-                // Add delay between taps
-                try {
-                    Thread.sleep(800);
-                } catch (InterruptedException e) {
-                    Log.e(TAG, "Sleep interrupted: " + e.getMessage());
-                    Thread.currentThread().interrupt();
+            // Common positions for answer buttons, as fractions of the screen. Each tap is
+            // scheduled under the call's session, so the rest are cancelled once it connects
+            AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(this);
+            long delay = 0;
+            for (float[] fraction : profile.answerTapFractions) {
+                final int x = (int) (screenWidth * fraction[0]);
+                final int y = (int) (screenHeight * fraction[1]);
+                if (!detector.schedule(session, () -> performTapGesture(x, y), delay)) {
+                    Log.d(TAG, "No pending " + profile.label + " answer attempt, skipping taps");
                     break;
                 }
+                delay += profile.gestureTapIntervalMs;
             }
         } catch (Exception e) {
             Log.e(TAG, "Error in performAnswerGesture: " + e.getMessage());
@@ -426,6 +528,22 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
         return 0;
     }
 
+    boolean isActive() {
+        return isServiceActive;
+    }
+
+    /** Resumes handling events after onInterrupt(); the binding itself is still good. */
+    void reactivate() {
+        Handler h = handler;
+        if (h == null) return;
+        h.post(() -> {
+            if (connected == this && !isServiceActive) {
+                isServiceActive = true;
+                Log.i(TAG, "Accessibility service reactivated after interrupt");
+            }
+        });
+    }
+
     @Override
     public void onInterrupt() {
         Log.d(TAG, "Accessibility service interrupted");
@@ -436,6 +554,10 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
     public void onDestroy() {
         try {
             isServiceActive = false;
+            connected = null;
+            if (configStore != null) {
+                configStore.removeListener(configListener);
+            }
             
             if (autoAnswerReceiver != null) {
                 try {
@@ -450,8 +572,12 @@ public class WhatsAppAccessibilityService extends AccessibilityService {
                 handler.removeCallbacksAndMessages(null);
                 handler = null;
             }
+            probedChannels.clear();
             
-            Log.d(TAG, "WhatsApp Accessibility Service destroyed");
+            Log.d(TAG, "WhatsApp Accessibility Service destroyed; peak live nodes="
+                    + NodeArena.getPeakLiveNodes() + ", leaked=" + NodeArena.getLeakedNodes()
+                    + (windowLocator != null ? ", window lookups=" + windowLocator.getLookups()
+                    + " cached=" + windowLocator.getCacheHits() + " fallbacks=" + windowLocator.getFallbacks() : ""));
         } catch (Exception e) {
             Log.e(TAG, "Error in onDestroy: " + e.getMessage());
         } finally {
@@ -7,49 +7,200 @@ import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import android.util.Log;
-import android.os.Handler;
-import android.os.Looper;
 import android.content.ComponentName;
 import android.content.pm.PackageManager;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class WhatsAppCallDetector extends NotificationListenerService {
 
+    static final String ACTION_AUTO_ANSWER = "WHATSAPP_AUTO_ANSWER";
+    static final String EXTRA_PACKAGE_NAME = "package_name";
+    static final String EXTRA_SESSION_ID = "session_id";
+
     private static int whatsAppCallCount = 0;
-    // Define keywords for the "Answer" action in multiple languages
-    private static final String[] ANSWER_KEYWORDS = {
-        "answer", "responder", "atender", "accept", "acceptar", 
-        "décrocher", "antworten", "rispondere", "接听", "응답"
-    };
-    
-    // Keywords to detect incoming calls
-    private static final String[] CALL_KEYWORDS = {
-        "incoming", "call", "llamada", "appel", "anruf", "chiamata", "来电", "전화"
-    };
+    // The connected listener, for LoadHarness
+    static volatile WhatsAppCallDetector connected;
+
+    @Override
+    public void onListenerConnected() {
+        super.onListenerConnected();
+        connected = this;
+        catchUpActiveNotifications();
+    }
+
+    /** What catch-up reads from an active notification, kept free of android types for tests. */
+    static final class ActiveNotification {
+        final StatusBarNotification sbn;
+        final String packageName;
+        final boolean callCategory;
+        final CharSequence[] actionTitles;
+        final boolean ongoing;
+        final boolean chronometer;
+        final long postTime;
+
+        ActiveNotification(StatusBarNotification sbn, String packageName, boolean callCategory,
+                           CharSequence[] actionTitles, boolean ongoing, boolean chronometer, long postTime) {
+            this.sbn = sbn;
+            this.packageName = packageName;
+            this.callCategory = callCategory;
+            this.actionTitles = actionTitles;
+            this.ongoing = ongoing;
+            this.chronometer = chronometer;
+            this.postTime = postTime;
+        }
+
+        static ActiveNotification from(StatusBarNotification sbn) {
+            Notification notification = sbn.getNotification();
+            if (notification == null) return null;
+            CharSequence[] titles = new CharSequence[notification.actions != null ? notification.actions.length : 0];
+            for (int i = 0; i < titles.length; i++) titles[i] = notification.actions[i].title;
+            return new ActiveNotification(sbn, sbn.getPackageName(),
+                    Notification.CATEGORY_CALL.equals(notification.category), titles,
+                    (notification.flags & Notification.FLAG_ONGOING_EVENT) != 0,
+                    notification.extras != null && notification.extras.getBoolean(Notification.EXTRA_SHOW_CHRONOMETER),
+                    sbn.getPostTime());
+        }
+    }
+
+    // A call already ringing when we (re)bind never gets an onNotificationPosted; replay the
+    // ones still ringing. Sessions ignore calls they already track, so a quick rebind is harmless
+    private void catchUpActiveNotifications() {
+        StatusBarNotification[] active;
+        try {
+            active = getActiveNotifications();
+        } catch (Exception e) {
+            Log.e("CallCounter", "Could not read active notifications: " + e.getMessage());
+            return;
+        }
+        if (active == null) return;
+        List<ActiveNotification> candidates = new ArrayList<>(active.length);
+        for (StatusBarNotification sbn : active) {
+            ActiveNotification candidate = ActiveNotification.from(sbn);
+            if (candidate != null) candidates.add(candidate);
+        }
+        List<ActiveNotification> rings = selectCatchUpRings(candidates,
+                DetectionConfigStore.getInstance(this).get().registry, System.currentTimeMillis());
+        int replayed = 0;
+        for (ActiveNotification ring : rings) {
+            try {
+                onNotificationPosted(ring.sbn);
+                replayed++;
+            } catch (Exception e) {
+                Log.e("CallCounter", "Catch-up of " + ring.sbn.getKey() + " failed: " + e.getMessage());
+            }
+        }
+        Log.d("CallCounter", "Listener connected; replayed " + replayed + " of " + active.length + " active notifications");
+        if (replayed > 0) {
+            Telemetry.getInstance(this).record("listener_catch_up", null, "replayed", replayed);
+        }
+    }
+
+    /** The active notifications of watched apps that are calls still ringing, in order. */
+    static List<ActiveNotification> selectCatchUpRings(List<ActiveNotification> active, VoipAppRegistry registry,
+                                                       long now) {
+        List<ActiveNotification> rings = new ArrayList<>();
+        for (ActiveNotification candidate : active) {
+            VoipAppProfile profile = registry.get(candidate.packageName);
+            if (profile == null) continue;
+            boolean answerAction = false;
+            for (CharSequence title : candidate.actionTitles) {
+                if (title != null && profile.isAnswerActionTitle(title.toString())) {
+                    answerAction = true;
+                    break;
+                }
+            }
+            if (isCatchUpRing(candidate.callCategory, answerAction, candidate.ongoing && candidate.chronometer,
+                    candidate.postTime, now)) {
+                rings.add(candidate);
+            }
+        }
+        return rings;
+    }
+
+    /**
+     * Whether a notification found at catch-up is a call still ringing: a call notification with
+     * an Answer action, not an in-call one (ongoing with a running chronometer), posted no longer
+     * ago than a ring can last. Text matching alone isn't trusted here, since a missed-call or
+     * chat notification left in the shade would otherwise be answered minutes later.
+     */
+    static boolean isCatchUpRing(boolean callCategory, boolean answerAction, boolean inCall,
+                                 long postTime, long now) {
+        return callCategory && answerAction && !inCall
+                && now - postTime <= AnswerConfirmationDetector.MAX_RING_MS;
+    }
+
+    @Override
+    public void onListenerDisconnected() {
+        connected = null;
+        super.onListenerDisconnected();
+    }
 
     @Override
     public void onNotificationPosted(StatusBarNotification sbn) {
         String packageName = sbn.getPackageName();
         Log.d("CallCounter", "WhatsAppCallDetector onNotificationPosted: package=" + packageName);
-        
-        if (packageName.equals("com.whatsapp")) {
+
+        VoipAppProfile profile = DetectionConfigStore.getInstance(this).get().registry.get(packageName);
+        if (profile != null) {
             Notification notification = sbn.getNotification();
             if (notification == null) return;
 
             String notificationText = extractNotificationText(notification);
-            Log.d("CallCounter", "WhatsApp notification text: " + notificationText);
+            Log.d("CallCounter", profile.label + " notification text: " + notificationText);
+
+            AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(this);
+            // The in-call notification replacing the ringing one proves the answer connected
+            if (isOngoingCallNotification(profile, notification, notificationText)) {
+                Metrics.NOTIFICATIONS.inc("ongoing");
+                CallSessionTable.CallSession session = detector.getSession(sbn.getKey());
+                if (session != null) {
+                    detector.confirm(session, AnswerConfirmationDetector.SIGNAL_ONGOING_NOTIFICATION);
+                } else {
+                    // Posted under a different key than the ringing one
+                    detector.confirm(profile.channel, AnswerConfirmationDetector.SIGNAL_ONGOING_NOTIFICATION);
+                }
+                return;
+            }
             
-            if (isIncomingCall(notificationText)) {
+            if (isRingingNotification(profile, notification, notificationText)) {
+                Metrics.NOTIFICATIONS.inc("ringing");
+                // One session per call; the ringing notification is reposted while it rings
+                CallSessionTable.CallSession session = detector.onRingingNotification(sbn.getKey(), profile.channel);
+                if (session == null) {
+                    Log.d("CallCounter", profile.label + " call already handled, ignoring repost");
+                    return;
+                }
+
                 // --- EXISTING LOGIC ---
                 whatsAppCallCount++;
-                Log.d("CallCounter", "Incremented whatsAppCallCount: " + whatsAppCallCount);
+                Log.d("CallCounter", "Incremented whatsAppCallCount: " + whatsAppCallCount + " (" + profile.label + ")");
                 
                 // Send a broadcast to update the UI
                 Intent uiIntent = new Intent("UPDATE_UI");
                 uiIntent.putExtra("whatsapp_call_count", whatsAppCallCount);
                 LocalBroadcastManager.getInstance(this).sendBroadcast(uiIntent);
+                CallJournal.getInstance(this).recordLiveEvent(profile.channel,
+                        CallJournal.EVENT_RINGING, null);
 
                 // --- ENHANCED AUTO-ANSWER LOGIC ---
-                attemptWhatsAppAutoAnswer(notification, sbn);
+                // VoIP callers only show up as the notification title (contact display name)
+                CharSequence title = notification.extras != null
+                        ? notification.extras.getCharSequence(Notification.EXTRA_TITLE) : null;
+                String callerName = title != null ? title.toString() : null;
+                // Map the display name to a saved contact so number rules apply too
+                ContactResolver.Contact contact = ContactResolver.getInstance(this).lookupByName(callerName);
+                CallerRule.Action decision = CallerRuleEngine.getInstance(this)
+                        .evaluate(profile.channel, contact != null ? contact.number : null, callerName);
+                if (decision == CallerRule.Action.DENY) {
+                    Log.d("CallCounter", "Caller rules deny auto-answer for this " + profile.label + " call.");
+                    Metrics.CALLS_SKIPPED.inc(profile.channel, "rules");
+                    return;
+                }
+                attemptWhatsAppAutoAnswer(profile, session, notification);
+            } else {
+                Metrics.NOTIFICATIONS.inc("other");
             }
         }
     }
@@ -73,63 +224,73 @@ public class WhatsAppCallDetector extends NotificationListenerService {
         return text.toString().toLowerCase();
     }
 
-    private boolean isIncomingCall(String notificationText) {
-        if (notificationText == null || notificationText.isEmpty()) return false;
-        
-        // Check for call-related keywords
-        boolean hasCallKeyword = false;
-        for (String keyword : CALL_KEYWORDS) {
-            if (notificationText.contains(keyword.toLowerCase())) {
-                hasCallKeyword = true;
-                break;
-            }
+    private static boolean isRingingNotification(VoipAppProfile profile, Notification notification, String notificationText) {
+        return profile.isIncomingCallNotification(notificationText,
+                Notification.CATEGORY_CALL.equals(notification.category), hasAnswerAction(profile, notification));
+    }
+
+    private static boolean hasAnswerAction(VoipAppProfile profile, Notification notification) {
+        if (notification.actions == null) return false;
+        for (Notification.Action action : notification.actions) {
+            if (action.title != null && profile.isAnswerActionTitle(action.title.toString())) return true;
         }
-        
-        // Additional checks for WhatsApp call patterns
-        return hasCallKeyword || 
-               notificationText.contains("voice call") ||
-               notificationText.contains("video call") ||
-               notificationText.contains("calling") ||
-               notificationText.contains("ringing");
+        return false;
+    }
+
+    // In-call notification: no Answer action, and a running chronometer or an "ongoing" label
+    private boolean isOngoingCallNotification(VoipAppProfile profile, Notification notification, String notificationText) {
+        if (hasAnswerAction(profile, notification)) return false;
+        boolean chronometer = notification.extras != null
+                && notification.extras.getBoolean(Notification.EXTRA_SHOW_CHRONOMETER);
+        return chronometer || profile.isOngoingCallText(notificationText);
     }
 
-    private void attemptWhatsAppAutoAnswer(Notification notification, StatusBarNotification sbn) {
+    private void attemptWhatsAppAutoAnswer(VoipAppProfile profile, CallSessionTable.CallSession session,
+                                           Notification notification) {
+        // Falls back to the accessibility click if nothing proves the call connected
+        if (!AnswerConfirmationDetector.getInstance(this)
+                .beginAttempt(session, () -> sendAccessibilityBroadcast(profile, session))) {
+            Log.d("CallCounter", profile.label + " call already connected or left to the user, not answering");
+            return;
+        }
+        if (LoadHarness.interceptAnswer(profile.channel)) return;
+
         // Method 1: Try notification actions (existing approach, but improved)
-        boolean actionSuccess = tryNotificationAction(notification);
+        boolean actionSuccess = tryNotificationAction(profile, session, notification);
         
         if (!actionSuccess) {
-            // Method 2: Try to launch WhatsApp directly with delay
-            tryDirectWhatsAppLaunch();
+            // Method 2: Try to launch the app directly with delay
+            tryDirectAppLaunch(profile, session);
             
             // Method 3: Send broadcast to accessibility service (if implemented)
-            sendAccessibilityBroadcast();
+            sendAccessibilityBroadcast(profile, session);
         }
     }
 
-    private boolean tryNotificationAction(Notification notification) {
+    private boolean tryNotificationAction(VoipAppProfile profile, CallSessionTable.CallSession session,
+                                          Notification notification) {
         if (notification.actions == null || notification.actions.length == 0) {
-            Log.w("CallCounter", "WhatsApp notification has no actions.");
+            Log.w("CallCounter", profile.label + " notification has no actions.");
             return false;
         }
 
         for (Notification.Action action : notification.actions) {
             if (action.title == null) continue;
             
-            String actionTitle = action.title.toString().toLowerCase();
-            Log.d("CallCounter", "Checking action: " + actionTitle);
+            Log.d("CallCounter", "Checking action: " + action.title);
             
-            for (String keyword : ANSWER_KEYWORDS) {
-                if (actionTitle.contains(keyword)) {
-                    Log.d("CallCounter", "Found WhatsApp 'Answer' action: " + action.title);
-                    try {
-                        if (action.actionIntent != null) {
-                            action.actionIntent.send();
-                            Log.d("CallCounter", "Successfully triggered WhatsApp 'Answer' PendingIntent.");
-                            return true;
-                        }
-                    } catch (PendingIntent.CanceledException e) {
-                        Log.e("CallCounter", "Could not send PendingIntent for WhatsApp: " + e.getMessage());
+            if (profile.isAnswerActionTitle(action.title.toString())) {
+                Log.d("CallCounter", "Found " + profile.label + " 'Answer' action: " + action.title);
+                try {
+                    if (action.actionIntent != null) {
+                        action.actionIntent.send();
+                        Log.d("CallCounter", "Successfully triggered " + profile.label + " 'Answer' PendingIntent.");
+                        AnswerConfirmationDetector.getInstance(this).onStrategy(session, "notification_action", true);
+                        return true;
                     }
+                } catch (PendingIntent.CanceledException e) {
+                    Log.e("CallCounter", "Could not send PendingIntent for " + profile.label + ": " + e.getMessage());
+                    AnswerConfirmationDetector.getInstance(this).onStrategy(session, "notification_action", false);
                 }
             }
         }
@@ -138,57 +299,81 @@ public class WhatsAppCallDetector extends NotificationListenerService {
         try {
             if (notification.contentIntent != null) {
                 notification.contentIntent.send();
-                Log.d("CallCounter", "Triggered WhatsApp notification contentIntent as fallback.");
+                Log.d("CallCounter", "Triggered " + profile.label + " notification contentIntent as fallback.");
+                AnswerConfirmationDetector.getInstance(this).onStrategy(session, "content_intent", true);
                 
-                // Add delay then try to find answer button via accessibility
-                new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                    sendAccessibilityBroadcast();
-                }, 2000); // 2 second delay
+                // Opening the app is no proof of an answer: follow up via accessibility unless
+                // the call connects first
+                AnswerConfirmationDetector.getInstance(this).schedule(session,
+                        () -> sendAccessibilityBroadcast(profile, session), profile.contentIntentFollowUpDelayMs);
                 
                 return true;
             }
         } catch (PendingIntent.CanceledException e) {
             Log.e("CallCounter", "Could not send contentIntent: " + e.getMessage());
+            AnswerConfirmationDetector.getInstance(this).onStrategy(session, "content_intent", false);
         }
         
         return false;
     }
 
-    private void tryDirectWhatsAppLaunch() {
+    private void tryDirectAppLaunch(VoipAppProfile profile, CallSessionTable.CallSession session) {
         try {
-            // Launch WhatsApp directly
+            // Launch the calling app directly
             PackageManager pm = getPackageManager();
-            Intent launchIntent = pm.getLaunchIntentForPackage("com.whatsapp");
+            Intent launchIntent = pm.getLaunchIntentForPackage(profile.packageName);
             
             if (launchIntent != null) {
                 launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
                 startActivity(launchIntent);
-                Log.d("CallCounter", "Launched WhatsApp directly");
+                Log.d("CallCounter", "Launched " + profile.label + " directly");
+                AnswerConfirmationDetector.getInstance(this).onStrategy(session, "app_launch", true);
                 
-                // Send accessibility broadcast after delay
-                new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                    sendAccessibilityBroadcast();
-                }, 3000); // 3 second delay to let WhatsApp load
+                // Send accessibility broadcast after delay to let the app load
+                AnswerConfirmationDetector.getInstance(this).schedule(session,
+                        () -> sendAccessibilityBroadcast(profile, session), profile.launchFollowUpDelayMs);
             } else {
-                Log.w("CallCounter", "WhatsApp launch intent is null.");
+                Log.w("CallCounter", profile.label + " launch intent is null.");
             }
         } catch (Exception e) {
-            Log.e("CallCounter", "Failed to launch WhatsApp: " + e.getMessage());
+            Log.e("CallCounter", "Failed to launch " + profile.label + ": " + e.getMessage());
+            AnswerConfirmationDetector.getInstance(this).onStrategy(session, "app_launch", false);
         }
     }
 
-    private void sendAccessibilityBroadcast() {
+    private void sendAccessibilityBroadcast(VoipAppProfile profile, CallSessionTable.CallSession session) {
         // Send broadcast to accessibility service to try clicking answer button
-        Intent accessibilityIntent = new Intent("WHATSAPP_AUTO_ANSWER");
+        Intent accessibilityIntent = new Intent(ACTION_AUTO_ANSWER);
+        accessibilityIntent.putExtra(EXTRA_PACKAGE_NAME, profile.packageName);
+        accessibilityIntent.putExtra(EXTRA_SESSION_ID, session.id);
         sendBroadcast(accessibilityIntent);
-        Log.d("CallCounter", "Sent accessibility broadcast for WhatsApp auto-answer");
+        Log.d("CallCounter", "Sent accessibility broadcast for " + profile.label + " auto-answer");
     }
 
     // Additional method to handle notification removal (call ended)
     @Override
     public void onNotificationRemoved(StatusBarNotification sbn) {
-        if (sbn.getPackageName().equals("com.whatsapp")) {
-            Log.d("CallCounter", "WhatsApp notification removed - call may have ended");
+        DetectionConfig config = DetectionConfigStore.getInstance(this).get();
+        VoipAppProfile profile = config.registry.get(sbn.getPackageName());
+        if (profile != null) {
+            Log.d("CallCounter", profile.label + " notification removed - call may have ended");
+            AnswerConfirmationDetector detector = AnswerConfirmationDetector.getInstance(this);
+            detector.onNotificationRemoved(sbn.getKey());
+            Notification notification = sbn.getNotification();
+            if (notification == null) return;
+            String notificationText = extractNotificationText(notification);
+            CallSessionTable.CallSession session = detector.getSession(sbn.getKey());
+            if (isOngoingCallNotification(profile, notification, notificationText)) {
+                if (session != null) {
+                    detector.onCallEnded(session);
+                } else {
+                    detector.onCallEnded(profile.channel);
+                }
+            } else if (session != null && isRingingNotification(profile, notification, notificationText)) {
+                // Ringing stopped: either answered (the in-call notification follows shortly and
+                // cancels this) or missed, in which case stop retrying
+                detector.endUnlessConnected(session, config.ringingRemovedGraceMs);
+            }
         }
     }
 }
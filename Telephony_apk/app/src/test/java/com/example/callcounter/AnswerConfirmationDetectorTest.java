@@ -0,0 +1,70 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AnswerConfirmationDetectorTest {
+
+    private static final int MAX_STEP = DetectionConfig.DEFAULT.maxTimerStepSeconds;
+
+    private static int parse(CharSequence... texts) {
+        return AnswerConfirmationDetector.parseCallTimer(Arrays.asList(texts));
+    }
+
+    @Test
+    public void parsesMinuteAndHourTimers() {
+        assertEquals(7, parse("0:07"));
+        assertEquals(3600 + 2 * 60 + 33, parse("1:02:33"));
+        assertEquals(12 * 60 + 5, parse(" 12:05 "));
+        assertEquals(99 * 3600 + 59 * 60 + 59, parse("99:59:59"));
+    }
+
+    @Test
+    public void firstTimerAmongOtherTextsWins() {
+        assertEquals(65, parse("WhatsApp call", null, "Call 1:05 ago", "1:05", "0:09"));
+    }
+
+    @Test
+    public void rejectsOutOfRangeAndNonTimerText() {
+        assertEquals(-1, parse("0:60"));
+        assertEquals(-1, parse("1:60:00"));
+        assertEquals(-1, parse("100:00:00"));
+        assertEquals(-1, parse("0:7"));
+        assertEquals(-1, parse("Ringing 0:07"));
+        assertEquals(-1, parse("12:05 PM"));
+        assertEquals(-1, parse(""));
+        assertEquals(-1, AnswerConfirmationDetector.parseCallTimer(Collections.<CharSequence>emptyList()));
+        assertEquals(-1, AnswerConfirmationDetector.parseCallTimer(null));
+    }
+
+    @Test
+    public void timerThatTicksForwardConfirms() {
+        assertTrue(AnswerConfirmationDetector.timerAdvanced(7, 8, MAX_STEP));
+        assertTrue(AnswerConfirmationDetector.timerAdvanced(7, 7 + MAX_STEP, MAX_STEP));
+    }
+
+    @Test
+    public void firstReadingConfirmsNothing() {
+        assertFalse(AnswerConfirmationDetector.timerAdvanced(-1, 0, MAX_STEP));
+        assertFalse(AnswerConfirmationDetector.timerAdvanced(-1, 7, MAX_STEP));
+    }
+
+    @Test
+    public void timerThatDoesNotAdvanceConfirmsNothing() {
+        assertFalse(AnswerConfirmationDetector.timerAdvanced(7, 7, MAX_STEP));
+        assertFalse(AnswerConfirmationDetector.timerAdvanced(7, 3, MAX_STEP));
+    }
+
+    @Test
+    public void timerThatJumpsPastTheMaxStepConfirmsNothing() {
+        assertFalse(AnswerConfirmationDetector.timerAdvanced(7, 8 + MAX_STEP, MAX_STEP));
+        // A previous call's duration replaced by the new call's timer
+        assertFalse(AnswerConfirmationDetector.timerAdvanced(5, 3600 + 2 * 60 + 33, MAX_STEP));
+    }
+}
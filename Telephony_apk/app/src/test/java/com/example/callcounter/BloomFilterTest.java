@@ -0,0 +1,54 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    private static String number(int i) {
+        return String.valueOf(5550000000L + i * 7919L);
+    }
+
+    @Test
+    public void addedValuesAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(1000);
+        for (int i = 0; i < 1000; i++) filter.add(number(i));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(number(i), filter.mightContain(number(i)));
+        }
+    }
+
+    @Test
+    public void falsePositivesStayNearOnePercentAtCapacity() {
+        BloomFilter filter = new BloomFilter(2000);
+        for (int i = 0; i < 2000; i++) filter.add(number(i));
+        int positives = 0;
+        int probes = 100000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(number(1_000_000 + i))) positives++;
+        }
+        assertTrue("false positive rate " + positives * 100.0 / probes + "%", positives < probes * 0.02);
+    }
+
+    @Test
+    public void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(0);
+        assertFalse(filter.mightContain("5550102030"));
+        assertFalse(filter.mightContain(""));
+    }
+
+    @Test
+    public void tinyExpectedSizeStillHoldsItsEntries() {
+        // Sized for at least 16 entries whatever the caller expects
+        BloomFilter filter = new BloomFilter(1);
+        for (int i = 0; i < 16; i++) filter.add("name " + i);
+        for (int i = 0; i < 16; i++) assertTrue(filter.mightContain("name " + i));
+        int positives = 0;
+        for (int i = 16; i < 1016; i++) {
+            if (filter.mightContain("name " + i)) positives++;
+        }
+        assertTrue(positives < 50);
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.callcounter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BridgeClientTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private static final class RecordingListener implements BridgeClient.Listener {
+        final ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        final AtomicInteger connects = new AtomicInteger();
+        final AtomicInteger disconnects = new AtomicInteger();
+        volatile int lastControl = -1;
+
+        @Override
+        public void onConnected() {
+            connects.incrementAndGet();
+        }
+
+        @Override
+        public void onDisconnected() {
+            disconnects.incrementAndGet();
+        }
+
+        @Override
+        public void onAudio(ByteBuffer pcm) {
+            byte[] bytes = new byte[pcm.remaining()];
+            pcm.get(bytes);
+            synchronized (audio) {
+                audio.write(bytes, 0, bytes.length);
+            }
+        }
+
+        @Override
+        public void onCallEvent(String channel, String event, String number) {
+        }
+
+        @Override
+        public void onControl(int code, ByteBuffer args) {
+            lastControl = code;
+        }
+
+        int audioBytes() {
+            synchronized (audio) {
+                return audio.size();
+            }
+        }
+
+        byte[] audioBytesCopy() {
+            synchronized (audio) {
+                return audio.toByteArray();
+            }
+        }
+    }
+
+    private BridgeLoopbackPeer peer;
+    private BridgeClient client;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        peer = new BridgeLoopbackPeer(0);
+        peer.start();
+        client = new BridgeClient("127.0.0.1", peer.getPort(), BridgeClient.DropPolicy.DROP_OLDEST);
+        listener = new RecordingListener();
+        client.setListener(listener);
+        client.start();
+        // The client can see its connect before the peer's accept thread has picked it up
+        awaitTrue("connect", () -> client.isConnected() && peer.isClientConnected());
+    }
+
+    @After
+    public void tearDown() {
+        client.stop();
+        peer.stop();
+    }
+
+    @Test
+    public void uplinkAudioIsEchoedBackIntact() {
+        byte[] pcm = new byte[64 * 1024 + 6];
+        for (int i = 0; i < pcm.length; i++) pcm[i] = (byte) (i * 31 + (i >> 8));
+
+        assertTrue(client.sendAudio(ByteBuffer.wrap(pcm)));
+        awaitTrue("echo", () -> listener.audioBytes() == pcm.length);
+
+        assertArrayEquals(pcm, listener.audioBytesCopy());
+        assertEquals(pcm.length, peer.getAudioBytes());
+        assertEquals(0, peer.getSequenceGaps());
+        assertEquals(0, client.getDroppedFrames());
+    }
+
+    @Test
+    public void callEventsReachThePeer() {
+        assertTrue(client.sendCallEvent("whatsapp", "ringing", "+15550102030"));
+        awaitTrue("call event", () -> peer.getCallEvents() == 1);
+        assertEquals("whatsapp|ringing|+15550102030", peer.getLastCallEvent());
+    }
+
+    @Test
+    public void pingsAreAnsweredBothWays() {
+        assertTrue(client.sendControl(BridgeProtocol.CONTROL_PING, null));
+        awaitTrue("pong from peer", () -> listener.lastControl == BridgeProtocol.CONTROL_PONG);
+
+        assertTrue(peer.sendControl(BridgeProtocol.CONTROL_PING));
+        awaitTrue("pong from client", () -> peer.getLastControlCode() == BridgeProtocol.CONTROL_PONG);
+    }
+
+    @Test
+    public void reconnectsAfterTheConnectionDrops() {
+        peer.dropConnection();
+        awaitTrue("disconnect", () -> listener.disconnects.get() == 1);
+        awaitTrue("reconnect", () -> listener.connects.get() == 2 && client.isConnected());
+        assertEquals(1, client.getReconnects());
+
+        byte[] pcm = new byte[2048];
+        pcm[0] = 7;
+        client.sendAudio(ByteBuffer.wrap(pcm));
+        awaitTrue("echo after reconnect", () -> listener.audioBytes() == pcm.length);
+    }
+
+    @Test
+    public void attachedPipelineLoopsUplinkIntoDownlink() {
+        // Constant non-silent capture, so the echo survives the jitter buffer's pause handling
+        CallAudioPipeline.PcmSource source = new CallAudioPipeline.PcmSource() {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public int read(ByteBuffer dst, int bytes) {
+                sleep(CallAudioPipeline.CHUNK_FRAMES * 1000L / CallAudioPipeline.SEND_SAMPLE_RATE);
+                for (int i = 0; i < bytes; i += 2) dst.putShort(i, (short) 3000);
+                return bytes;
+            }
+
+            @Override
+            public void stop() {
+            }
+        };
+        AtomicInteger loud = new AtomicInteger();
+        CallAudioPipeline.PcmSink sink = new CallAudioPipeline.PcmSink() {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public int write(ByteBuffer src, int bytes) {
+                for (int i = 0; i < bytes; i += 2) {
+                    if (src.getShort(src.position() + i) != 0) loud.incrementAndGet();
+                }
+                src.position(src.position() + bytes);
+                sleep(1);
+                return bytes;
+            }
+
+            @Override
+            public void stop() {
+            }
+        };
+        CallAudioPipeline pipeline = new CallAudioPipeline(source, sink);
+        client.attachPipeline(pipeline, null);
+        pipeline.start();
+        try {
+            awaitTrue("downlink playback", () -> loud.get() >= CallAudioPipeline.CHUNK_FRAMES * 4);
+            assertTrue(peer.getAudioFrames() > 0);
+        } finally {
+            client.detachPipeline();
+            pipeline.stop();
+        }
+    }
+
+    private static void awaitTrue(String what, BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("timed out waiting for " + what);
+            sleep(5);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.callcounter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CallAudioPipelineTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    /** Capture device producing a running 16-bit counter, chunk after chunk, up to a limit. */
+    private static final class RampSource implements CallAudioPipeline.PcmSource {
+        final int totalSamples;
+        volatile int produced;
+        volatile boolean stopped;
+
+        RampSource(int totalSamples) {
+            this.totalSamples = totalSamples;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int read(ByteBuffer dst, int bytes) {
+            int samples = Math.min(bytes / 2, totalSamples - produced);
+            if (samples == 0) {
+                sleep(1);
+                return 0;
+            }
+            for (int i = 0; i < samples; i++) dst.putShort(i * 2, (short) (produced + i));
+            produced += samples;
+            return samples * 2;
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+
+    /** Playback device that keeps everything written, paced so the loop doesn't spin. */
+    private static final class CollectingSink implements CallAudioPipeline.PcmSink {
+        private short[] samples = new short[1 << 16];
+        private int count;
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int write(ByteBuffer src, int bytes) {
+            synchronized (this) {
+                for (int i = 0; i < bytes / 2; i++) {
+                    if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+                    samples[count++] = src.order(ByteOrder.LITTLE_ENDIAN).getShort(src.position() + i * 2);
+                }
+            }
+            src.position(src.position() + bytes);
+            sleep(1);
+            return bytes;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        synchronized short[] snapshot() {
+            return Arrays.copyOf(samples, count);
+        }
+    }
+
+    private CallAudioPipeline pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) pipeline.stop();
+    }
+
+    @Test
+    public void uplinkDeliversCapturedPcmInOrder() throws Exception {
+        RampSource source = new RampSource(CallAudioPipeline.CHUNK_FRAMES * 10);
+        pipeline = new CallAudioPipeline(source, new CollectingSink());
+        pipeline.start();
+
+        ByteBuffer received = ByteBuffer.allocate(source.totalSamples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (received.hasRemaining() && System.currentTimeMillis() < deadline) {
+            if (pipeline.readUplink(received) == 0) sleep(1);
+        }
+        assertEquals(0, received.remaining());
+        received.flip();
+        for (int i = 0; i < source.totalSamples; i++) {
+            assertEquals((short) i, received.getShort());
+        }
+        assertEquals(0, pipeline.getUplinkDroppedBytes());
+
+        pipeline.stop();
+        assertTrue(source.stopped);
+    }
+
+    @Test
+    public void uplinkDropsNewestAudioWhenSenderStalls() {
+        // Twice the uplink ring, never drained
+        RampSource source = new RampSource(CallAudioPipeline.CHUNK_FRAMES * 64);
+        pipeline = new CallAudioPipeline(source, new CollectingSink());
+        pipeline.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (source.produced < source.totalSamples && System.currentTimeMillis() < deadline) sleep(1);
+        pipeline.stop();
+
+        int buffered = pipeline.uplinkAvailableBytes();
+        assertEquals((long) source.totalSamples * 2, buffered + pipeline.getUplinkDroppedBytes());
+        ByteBuffer head = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        pipeline.readUplink(head);
+        assertEquals(0, head.getShort(0));
+        assertEquals(1, head.getShort(2));
+    }
+
+    @Test
+    public void downlinkPlaysModelAudioUnchanged() {
+        CollectingSink sink = new CollectingSink();
+        pipeline = new CallAudioPipeline(new RampSource(0), sink);
+        pipeline.start();
+
+        short[] tone = tone(CallAudioPipeline.RECEIVE_SAMPLE_RATE / 5, 8000);
+        pipeline.writeDownlink(toBytes(tone));
+        pipeline.endDownlinkTurn();
+
+        short[] played = waitForSamples(sink, tone);
+        assertArrayEquals(tone, played);
+        assertEquals(0, pipeline.getDownlinkDroppedBytes());
+    }
+
+    @Test
+    public void promptPlaysBeforeModelAudio() {
+        CollectingSink sink = new CollectingSink();
+        pipeline = new CallAudioPipeline(new RampSource(0), sink);
+        short[] clip = new short[CallAudioPipeline.CHUNK_FRAMES * 3];
+        Arrays.fill(clip, (short) 1000);
+        pipeline.playPrompt(toBytes(clip));
+        pipeline.start();
+
+        short[] played = waitForSamples(sink, clip);
+        assertArrayEquals(clip, played);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (pipeline.isPromptPlaying() && System.currentTimeMillis() < deadline) sleep(1);
+        assertTrue(!pipeline.isPromptPlaying());
+    }
+
+    // Waits for expected to show up in the sink and returns that stretch of output
+    private static short[] waitForSamples(CollectingSink sink, short[] expected) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            short[] output = sink.snapshot();
+            int start = 0;
+            while (start < output.length && output[start] == 0) start++;
+            if (output.length - start >= expected.length) {
+                return Arrays.copyOfRange(output, start, start + expected.length);
+            }
+            sleep(5);
+        }
+        throw new AssertionError("sink never received " + expected.length + " samples");
+    }
+
+    // Non-zero from the first sample so the start of the audio is easy to find
+    private static short[] tone(int samples, int amplitude) {
+        short[] tone = new short[samples];
+        for (int i = 0; i < samples; i++) {
+            tone[i] = (short) (amplitude * Math.cos(2 * Math.PI * 440 * i / CallAudioPipeline.RECEIVE_SAMPLE_RATE));
+            if (tone[i] == 0) tone[i] = 1;
+        }
+        return tone;
+    }
+
+    private static ByteBuffer toBytes(short[] samples) {
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (short sample : samples) buffer.putShort(sample);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
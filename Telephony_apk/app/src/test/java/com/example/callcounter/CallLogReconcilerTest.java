@@ -0,0 +1,295 @@
+package com.example.callcounter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the reconciler's real CallLog selection and the journal's real merge statements against
+ * in-memory SQLite databases.
+ */
+public class CallLogReconcilerTest {
+
+    private static final int INCOMING = 1;
+    private static final int OUTGOING = 2;
+    private static final int MISSED = 3;
+    private static final int VOICEMAIL = 4;
+
+    /** CallLog provider stand-in: rows get increasing _IDs in insert order, whatever their DATE. */
+    private static final class SqliteCallLog implements CallLogReconciler.EntrySource {
+        final Connection db;
+        int queries;
+
+        SqliteCallLog(Connection db) throws SQLException {
+            this.db = db;
+            try (Statement statement = db.createStatement()) {
+                statement.execute("CREATE TABLE calls (_id INTEGER PRIMARY KEY AUTOINCREMENT, date INTEGER,"
+                        + " number TEXT, type INTEGER, duration INTEGER)");
+            }
+        }
+
+        long insert(long date, int type) {
+            try (PreparedStatement statement = db.prepareStatement(
+                    "INSERT INTO calls (date, number, type, duration) VALUES (?, ?, ?, 30)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                statement.setLong(1, date);
+                statement.setString(2, "+1555000" + date);
+                statement.setInt(3, type);
+                statement.executeUpdate();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    keys.next();
+                    return keys.getLong(1);
+                }
+            } catch (SQLException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public List<CallLogReconciler.Entry> page(long afterId, int limit) {
+            queries++;
+            String sql = "SELECT " + String.join(", ", CallLogReconciler.PROJECTION) + " FROM calls WHERE "
+                    + CallLogReconciler.SELECTION + " ORDER BY " + CallLogReconciler.SORT_ORDER + " LIMIT " + limit;
+            List<CallLogReconciler.Entry> page = new ArrayList<>();
+            try (PreparedStatement statement = db.prepareStatement(sql)) {
+                statement.setString(1, String.valueOf(afterId));
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        page.add(new CallLogReconciler.Entry(rows.getLong(1), rows.getLong(2), rows.getString(3),
+                                rows.getInt(4), rows.getLong(5)));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new AssertionError(e);
+            }
+            return page;
+        }
+    }
+
+    /** The journal's merge statements on a JDBC connection, with the journal's own schema. */
+    private static final class SqliteJournal implements CallLogReconciler.EntrySink, CallJournal.Statements {
+        final Connection db;
+        final List<Long> savedWatermarks = new ArrayList<>();
+        long failOnId = -1;
+
+        SqliteJournal(Connection db) throws SQLException {
+            this.db = db;
+            try (Statement statement = db.createStatement()) {
+                statement.execute(CallJournal.CREATE_EVENTS_SQL);
+                statement.execute(CallJournal.CREATE_EVENTS_INDEX_SQL);
+            }
+        }
+
+        @Override
+        public boolean merge(CallLogReconciler.Entry entry) {
+            if (entry.id == failOnId) throw new IllegalStateException("crash");
+            return CallJournal.mergeCallLogEntry(this, entry.id, entry.date, entry.number, entry.type, entry.duration);
+        }
+
+        @Override
+        public void pageDone(long watermarkId) {
+            savedWatermarks.add(watermarkId);
+        }
+
+        @Override
+        public int update(String sql, String[] args) {
+            try (PreparedStatement statement = bind(sql, args)) {
+                return statement.executeUpdate();
+            } catch (SQLException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public long insert(String sql, String[] args) {
+            try (PreparedStatement statement = bind(sql, args)) {
+                return statement.executeUpdate() > 0 ? 1 : -1;
+            } catch (SQLException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        private PreparedStatement bind(String sql, String[] args) throws SQLException {
+            PreparedStatement statement = db.prepareStatement(sql);
+            for (int i = 0; i < args.length; i++) {
+                statement.setString(i + 1, args[i]);
+            }
+            return statement;
+        }
+
+        void recordLiveRing(long timestamp) throws SQLException {
+            try (PreparedStatement statement = db.prepareStatement("INSERT INTO " + CallJournal.TABLE_EVENTS
+                    + " (timestamp, channel, event, source) VALUES (?, ?, ?, ?)")) {
+                statement.setLong(1, timestamp);
+                statement.setString(2, CallJournal.CHANNEL_CELLULAR);
+                statement.setString(3, CallJournal.EVENT_RINGING);
+                statement.setString(4, CallJournal.SOURCE_LIVE);
+                statement.executeUpdate();
+            }
+        }
+
+        long count(String where) throws SQLException {
+            try (Statement statement = db.createStatement();
+                 ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM " + CallJournal.TABLE_EVENTS
+                         + (where != null ? " WHERE " + where : ""))) {
+                rows.next();
+                return rows.getLong(1);
+            }
+        }
+
+        long lastSaved() {
+            return savedWatermarks.isEmpty() ? 0 : savedWatermarks.get(savedWatermarks.size() - 1);
+        }
+    }
+
+    private Connection callLogDb;
+    private Connection journalDb;
+    private SqliteCallLog callLog;
+    private SqliteJournal journal;
+
+    @Before
+    public void setUp() throws SQLException {
+        callLogDb = DriverManager.getConnection("jdbc:sqlite::memory:");
+        journalDb = DriverManager.getConnection("jdbc:sqlite::memory:");
+        callLog = new SqliteCallLog(callLogDb);
+        journal = new SqliteJournal(journalDb);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        callLogDb.close();
+        journalDb.close();
+    }
+
+    @Test
+    public void callWaitingRowWithEarlierDateIsNotSkipped() throws SQLException {
+        // Short second call ends first and is logged first
+        long shortCall = callLog.insert(2_000_000, INCOMING);
+        CallLogReconciler.Result first = CallLogReconciler.drain(callLog, 0, 100, journal);
+        assertEquals(1, first.added);
+        assertEquals(shortCall, first.watermarkId);
+
+        // The longer first call is logged afterwards with an earlier start time
+        long longCall = callLog.insert(1_000_000, INCOMING);
+        CallLogReconciler.Result second = CallLogReconciler.drain(callLog, first.watermarkId, 100, journal);
+        assertEquals(1, second.added);
+        assertEquals(longCall, second.watermarkId);
+        assertEquals(1, journal.count("source_key = 'calllog:" + longCall + ":1000000'"));
+    }
+
+    @Test
+    public void pagesThroughBacklogAndPersistsEachPage() throws SQLException {
+        for (int i = 0; i < 250; i++) callLog.insert(10_000_000 + i * 60_000L, INCOMING);
+
+        CallLogReconciler.Result result = CallLogReconciler.drain(callLog, 0, 100, journal);
+
+        assertEquals(250, result.scanned);
+        assertEquals(250, result.added);
+        assertEquals(250, result.watermarkId);
+        assertEquals(3, callLog.queries);
+        assertEquals(100L, (long) journal.savedWatermarks.get(0));
+        assertEquals(200L, (long) journal.savedWatermarks.get(1));
+        assertEquals(250L, (long) journal.savedWatermarks.get(2));
+        assertEquals(250, journal.count(null));
+    }
+
+    @Test
+    public void fullPageEndingTheLogCostsOneEmptyQuery() {
+        for (int i = 0; i < 100; i++) callLog.insert(i * 60_000L, INCOMING);
+
+        CallLogReconciler.Result result = CallLogReconciler.drain(callLog, 0, 100, journal);
+
+        assertEquals(100, result.added);
+        assertEquals(2, callLog.queries);
+        assertEquals(1, journal.savedWatermarks.size());
+    }
+
+    @Test
+    public void selectionSkipsOutgoingAndVoicemailRows() throws SQLException {
+        callLog.insert(1_000_000, INCOMING);
+        callLog.insert(2_000_000, OUTGOING);
+        callLog.insert(3_000_000, VOICEMAIL);
+        long last = callLog.insert(4_000_000, MISSED);
+
+        CallLogReconciler.Result result = CallLogReconciler.drain(callLog, 0, 100, journal);
+
+        assertEquals(2, result.scanned);
+        assertEquals(2, result.added);
+        assertEquals(last, result.watermarkId);
+        assertEquals(0, journal.count("call_type IN (" + OUTGOING + ", " + VOICEMAIL + ")"));
+    }
+
+    @Test
+    public void mergingTheSameRowTwiceAddsItOnce() throws SQLException {
+        long id = callLog.insert(5_000_000, INCOMING);
+        CallLogReconciler.Entry entry = callLog.page(0, 10).get(0);
+
+        assertTrue(journal.merge(entry));
+        assertFalse(journal.merge(entry));
+        assertEquals(1, journal.count("source_key = 'calllog:" + id + ":5000000'"));
+        assertEquals(1, journal.count(null));
+    }
+
+    @Test
+    public void rowIsLinkedToTheLiveRingInsteadOfAdded() throws SQLException {
+        journal.recordLiveRing(5_000_000 + 3_000);
+        // Too far from the row to be the same call
+        journal.recordLiveRing(5_000_000 - CallJournal.LIVE_MATCH_WINDOW_MS - 1);
+        long id = callLog.insert(5_000_000, INCOMING);
+        CallLogReconciler.Entry entry = callLog.page(0, 10).get(0);
+
+        assertFalse(journal.merge(entry));
+        assertEquals(2, journal.count(null));
+        assertEquals(1, journal.count("source = 'live' AND source_key = 'calllog:" + id + ":5000000'"
+                + " AND timestamp = 5003000 AND call_type = " + INCOMING));
+
+        // A second merge neither re-links the other live ring nor inserts
+        assertFalse(journal.merge(entry));
+        assertEquals(2, journal.count(null));
+        assertEquals(1, journal.count("source_key IS NULL"));
+    }
+
+    @Test
+    public void resumesFromLastPersistedPageAfterCrash() throws SQLException {
+        for (int i = 0; i < 250; i++) callLog.insert(i * 60_000L, INCOMING);
+        journal.failOnId = 150;
+        try {
+            CallLogReconciler.drain(callLog, 0, 100, journal);
+            fail("expected the merge to throw");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(100, journal.lastSaved());
+
+        // Rows 101..149 were merged before the crash; re-merging them adds nothing
+        journal.failOnId = -1;
+        CallLogReconciler.Result result = CallLogReconciler.drain(callLog, journal.lastSaved(), 100, journal);
+        assertEquals(150, result.scanned);
+        assertEquals(101, result.added);
+        assertEquals(250, journal.count(null));
+    }
+
+    @Test
+    public void nothingNewLeavesWatermarkAlone() {
+        callLog.insert(1, INCOMING);
+
+        CallLogReconciler.Result result = CallLogReconciler.drain(callLog, 1, 100, journal);
+
+        assertEquals(0, result.scanned);
+        assertEquals(1, result.watermarkId);
+        assertTrue(journal.savedWatermarks.isEmpty());
+    }
+}
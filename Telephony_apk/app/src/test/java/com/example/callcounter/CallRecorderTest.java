@@ -0,0 +1,211 @@
+package com.example.callcounter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CallRecorderTest {
+
+    private static final int RATE = CallAudioPipeline.SEND_SAMPLE_RATE;
+    private static final int DATA_OFFSET = 4096;
+
+    private static final int[] STEPS = {
+        7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+        50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+        337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+        2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+        15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+    private static final int[] INDEX_STEPS = {-1, -1, -1, -1, 2, 4, 6, 8};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Two tones and a decaying burst, so the step size has to both grow and shrink
+    private static short[] speechLike(int frames) {
+        short[] samples = new short[frames];
+        for (int i = 0; i < frames; i++) {
+            double t = (double) i / RATE;
+            double burst = 12000 * Math.exp(-8 * (t % 0.5)) * Math.sin(2 * Math.PI * 900 * t);
+            samples[i] = (short) Math.round(5000 * Math.sin(2 * Math.PI * 220 * t) + burst);
+        }
+        return samples;
+    }
+
+    private File record(String name, short[] samples, boolean adpcm) {
+        File target = new File(folder.getRoot(), name + CallRecorder.EXTENSION);
+        CallRecorder recorder = new CallRecorder(target, RATE, adpcm);
+        assertTrue(recorder.start());
+        ByteBuffer pcm = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.asShortBuffer().put(samples);
+        assertEquals(pcm.remaining(), recorder.offer(pcm, pcm.remaining()));
+        recorder.stop();
+        assertNull(recorder.getLastError());
+        assertTrue(target.isFile());
+        return target;
+    }
+
+    private static ByteBuffer read(File file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Reference IMA-ADPCM decoder for mono blocks
+    private static short[] decodeAdpcm(ByteBuffer data, int blockAlign, int samplesPerBlock, int samples) {
+        short[] decoded = new short[samples];
+        int n = 0;
+        for (int base = 0; base + blockAlign <= data.limit() && n < samples; base += blockAlign) {
+            int predictor = data.getShort(base);
+            int index = data.get(base + 2);
+            decoded[n++] = (short) predictor;
+            for (int i = 1; i < samplesPerBlock && n < samples; i++) {
+                int b = data.get(base + 4 + (i - 1) / 2) & 0xFF;
+                int nibble = (i & 1) == 1 ? b & 0x0F : b >> 4;
+                int step = STEPS[index];
+                int diff = step >> 3;
+                if ((nibble & 4) != 0) diff += step;
+                if ((nibble & 2) != 0) diff += step >> 1;
+                if ((nibble & 1) != 0) diff += step >> 2;
+                predictor += (nibble & 8) != 0 ? -diff : diff;
+                predictor = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+                index = Math.max(0, Math.min(88, index + INDEX_STEPS[nibble & 7]));
+                decoded[n++] = (short) predictor;
+            }
+        }
+        return decoded;
+    }
+
+    private static ByteBuffer dataChunk(ByteBuffer wav) {
+        assertEquals(0x61746164, wav.getInt(DATA_OFFSET - 8)); // "data"
+        ByteBuffer data = wav.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        data.position(DATA_OFFSET).limit(DATA_OFFSET + wav.getInt(DATA_OFFSET - 4));
+        return data.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void pcmRecordingHoldsTheSamplesUnchanged() throws IOException {
+        short[] samples = speechLike(RATE);
+        ByteBuffer wav = read(record("pcm", samples, false));
+
+        assertEquals(1, wav.getShort(20));
+        assertEquals(RATE, wav.getInt(24));
+        assertEquals(wav.limit() - 8, wav.getInt(4));
+        short[] recorded = new short[samples.length];
+        dataChunk(wav).asShortBuffer().get(recorded);
+        assertArrayEquals(samples, recorded);
+    }
+
+    @Test
+    public void adpcmRecordingDecodesCloseToTheInput() throws IOException {
+        short[] samples = speechLike(RATE + 123);
+        ByteBuffer wav = read(record("adpcm", samples, true));
+
+        assertEquals(0x11, wav.getShort(20));
+        assertEquals(1, wav.getShort(22));
+        int blockAlign = wav.getShort(32);
+        int samplesPerBlock = wav.getShort(38);
+        assertEquals(4, wav.getShort(34));
+        assertEquals(512, blockAlign);
+        assertEquals((blockAlign - 4) * 2 + 1, samplesPerBlock);
+        assertEquals(samples.length, wav.getInt(48)); // fact chunk sample count
+        ByteBuffer data = dataChunk(wav);
+        int blocks = (samples.length + samplesPerBlock - 1) / samplesPerBlock;
+        assertEquals(blocks * blockAlign, data.remaining());
+        // About 4x smaller than the PCM
+        assertTrue(data.remaining() * 3.9 < samples.length * 2);
+
+        short[] decoded = decodeAdpcm(data, blockAlign, samplesPerBlock, samples.length);
+        double signal = 0;
+        double noise = 0;
+        for (int i = 0; i < samples.length; i++) {
+            signal += (double) samples[i] * samples[i];
+            noise += (double) (samples[i] - decoded[i]) * (samples[i] - decoded[i]);
+        }
+        double snrDb = 10 * Math.log10(signal / noise);
+        assertTrue("SNR " + snrDb + " dB", snrDb > 20);
+        // Each block header carries its first sample verbatim
+        for (int b = 0; b < blocks; b++) {
+            assertEquals(samples[b * samplesPerBlock], data.getShort(b * blockAlign));
+        }
+    }
+
+    // What a kill leaves behind: a .part whose header still claims less data, plus a torn tail
+    private File crashed(File wav, int tornBytes) throws IOException {
+        File part = new File(wav.getPath() + ".part");
+        assertTrue(wav.renameTo(part));
+        try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+            file.seek(file.length());
+            file.write(new byte[tornBytes]);
+            file.seek(4);
+            file.writeInt(0);
+            file.seek(DATA_OFFSET - 4);
+            file.writeInt(0);
+        }
+        return part;
+    }
+
+    @Test
+    public void repairTrimsTornFramesAndRestoresHeaderLengths() throws IOException {
+        short[] samples = speechLike(4000);
+        File wav = record("call-caller", samples, false);
+        File part = crashed(wav, 3);
+
+        assertEquals(1, CallRecorder.repairAll(folder.getRoot()));
+
+        assertFalse(part.exists());
+        ByteBuffer repaired = read(wav);
+        assertEquals(DATA_OFFSET + samples.length * 2 + 2, repaired.limit());
+        assertEquals(samples.length * 2 + 2, repaired.getInt(DATA_OFFSET - 4));
+        assertEquals(repaired.limit() - 8, repaired.getInt(4));
+        short[] recorded = new short[samples.length];
+        dataChunk(repaired).asShortBuffer().get(recorded);
+        assertArrayEquals(samples, recorded);
+    }
+
+    @Test
+    public void repairKeepsOnlyWholeAdpcmBlocks() throws IOException {
+        short[] samples = speechLike(3000);
+        File wav = record("call-agent", samples, true);
+        File part = crashed(wav, 300);
+
+        assertEquals(1, CallRecorder.repairAll(folder.getRoot()));
+
+        assertFalse(part.exists());
+        ByteBuffer repaired = read(wav);
+        int blockAlign = repaired.getShort(32);
+        int samplesPerBlock = repaired.getShort(38);
+        int blocks = (samples.length + samplesPerBlock - 1) / samplesPerBlock;
+        assertEquals(blocks * blockAlign, repaired.getInt(DATA_OFFSET - 4));
+        assertEquals(DATA_OFFSET + blocks * blockAlign, repaired.limit());
+        assertEquals(blocks * samplesPerBlock, repaired.getInt(48));
+    }
+
+    @Test
+    public void repairLeavesUnreadablePartsAndFinishedFilesAlone() throws IOException {
+        File finished = record("done", speechLike(1000), false);
+        long finishedLength = finished.length();
+        File stub = folder.newFile("stub" + CallRecorder.PARTIAL_EXTENSION);
+        Files.write(stub.toPath(), new byte[100]);
+        File garbage = folder.newFile("garbage" + CallRecorder.PARTIAL_EXTENSION);
+        Files.write(garbage.toPath(), new byte[DATA_OFFSET + 64]);
+
+        assertEquals(0, CallRecorder.repairAll(folder.getRoot()));
+
+        assertTrue(stub.exists());
+        assertTrue(garbage.exists());
+        assertEquals(finishedLength, finished.length());
+        assertEquals(0, CallRecorder.repairAll(new File(folder.getRoot(), "missing")));
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CallRollupsTest {
+
+    private static final long MINUTE = CallRollups.LEVEL_WIDTH_MS[CallRollups.LEVEL_MINUTE];
+    private static final long HOUR = CallRollups.LEVEL_WIDTH_MS[CallRollups.LEVEL_HOUR];
+    private static final long DAY = CallRollups.LEVEL_WIDTH_MS[CallRollups.LEVEL_DAY];
+    // Local midnight
+    private static final long DAY0 = 20_000 * DAY;
+
+    private static final int CELLULAR = CallRollups.channelIndex(CallJournal.CHANNEL_CELLULAR);
+    private static final int WHATSAPP = CallRollups.channelIndex(CallJournal.CHANNEL_WHATSAPP);
+
+    private final CallRollups rollups = new CallRollups();
+
+    private static long at(int day, int hour, int minute, int second) {
+        return DAY0 + day * DAY + hour * HOUR + minute * MINUTE + second * 1000L;
+    }
+
+    private int rings(long fromMs, long toMs) {
+        return rollups.query(fromMs, toMs, CallRollups.ALL_CHANNELS).rings;
+    }
+
+    @Test
+    public void rangeEdgesFallOnMinuteBuckets() {
+        rollups.addRing(at(0, 10, 29, 59), CELLULAR);
+        rollups.addRing(at(0, 10, 30, 0), CELLULAR);
+        rollups.addRing(at(0, 12, 0, 0), WHATSAPP);
+        rollups.addRing(at(0, 13, 44, 59), CELLULAR);
+        rollups.addRing(at(0, 13, 45, 0), CELLULAR);
+
+        // Minutes 10:30-10:59, hours 11 and 12, minutes 13:00-13:44
+        assertEquals(3, rings(at(0, 10, 30, 0), at(0, 13, 45, 0)));
+        assertEquals(5, rings(at(0, 10, 29, 0), at(0, 13, 46, 0)));
+        assertEquals(0, rings(at(0, 10, 31, 0), at(0, 11, 59, 0)));
+        assertEquals(5, rings(at(0, 0, 0, 0), at(1, 0, 0, 0)));
+        assertEquals(1, rollups.query(at(0, 0, 0, 0), at(1, 0, 0, 0),
+                CallRollups.channelMask(CallJournal.CHANNEL_WHATSAPP)).rings);
+    }
+
+    @Test
+    public void wholeDaysComeFromDayBucketsAcrossMonths() {
+        for (int day = 0; day < 90; day++) {
+            rollups.addRing(at(day, 9, 0, 0), CELLULAR);
+        }
+        // Day 0 is past the hour level's two months, but the day level still has it
+        assertEquals(90, rings(at(0, 0, 0, 0), at(90, 0, 0, 0)));
+        assertEquals(10, rings(at(80, 0, 0, 0), at(90, 0, 0, 0)));
+    }
+
+    @Test
+    public void edgeOutsideMinuteRetentionUsesTheHourBucket() {
+        rollups.addRing(at(0, 10, 10, 0), CELLULAR);
+        rollups.addRing(at(0, 10, 50, 0), CELLULAR);
+        // Three days on, minute buckets of day 0 are gone
+        rollups.addRing(at(3, 10, 0, 0), CELLULAR);
+
+        // Starts mid-hour, so the 10:00 hour bucket is taken whole
+        assertEquals(2, rings(at(0, 10, 30, 0), at(0, 12, 0, 0)));
+        assertEquals(0, rings(at(0, 11, 0, 0), at(0, 12, 0, 0)));
+    }
+
+    @Test
+    public void wrappedMinuteSlotForgetsTheOldBucket() {
+        long first = at(0, 8, 15, 0);
+        long wrapped = first + DAY; // same minute slot, one day later
+        rollups.addRing(first, CELLULAR);
+        rollups.addRing(first + 1000, CELLULAR);
+        rollups.addRing(wrapped, CELLULAR);
+
+        int[] ringsOut = new int[1];
+        int[] answersOut = new int[1];
+        rollups.series(CallRollups.LEVEL_MINUTE, wrapped, 1, CallRollups.ALL_CHANNELS, ringsOut, answersOut);
+        assertEquals(1, ringsOut[0]);
+        rollups.series(CallRollups.LEVEL_MINUTE, first, 1, CallRollups.ALL_CHANNELS, ringsOut, answersOut);
+        assertEquals(0, ringsOut[0]);
+        // The coarser levels still hold the first day
+        rollups.series(CallRollups.LEVEL_HOUR, first, 1, CallRollups.ALL_CHANNELS, ringsOut, answersOut);
+        assertEquals(2, ringsOut[0]);
+    }
+
+    @Test
+    public void lateEventForAWrappedSlotSkipsOnlyTheFineLevel() {
+        long first = at(0, 8, 15, 0);
+        rollups.addRing(first + DAY, CELLULAR);
+        // Arrives after its minute slot was reused by the next day
+        rollups.addRing(first, CELLULAR);
+
+        int[] ringsOut = new int[1];
+        int[] answersOut = new int[1];
+        rollups.series(CallRollups.LEVEL_MINUTE, first + DAY, 1, CallRollups.ALL_CHANNELS, ringsOut, answersOut);
+        assertEquals(1, ringsOut[0]);
+        rollups.series(CallRollups.LEVEL_HOUR, first, 1, CallRollups.ALL_CHANNELS, ringsOut, answersOut);
+        assertEquals(1, ringsOut[0]);
+        assertEquals(1, rings(at(0, 0, 0, 0), at(1, 0, 0, 0)));
+    }
+
+    @Test
+    public void latencyPercentileInterpolatesInsideABin() {
+        CallRollups.Summary summary = new CallRollups.Summary();
+        assertEquals(-1, summary.latencyPercentile(0.5));
+
+        // Four answers in the 750..1000 ms bin
+        summary.latency[3] = 4;
+        assertEquals(875, summary.latencyPercentile(0.5));
+        assertEquals(1000, summary.latencyPercentile(1.0));
+        assertEquals(750, summary.latencyPercentile(0.0));
+    }
+
+    @Test
+    public void latencyPercentileWalksAcrossBins() {
+        CallRollups.Summary summary = new CallRollups.Summary();
+        summary.latency[0] = 1; // 0..250
+        summary.latency[4] = 3; // 1000..1500
+
+        assertEquals(125, summary.latencyPercentile(0.125));
+        assertEquals(250, summary.latencyPercentile(0.25));
+        assertEquals(1167, summary.latencyPercentile(0.5));
+        assertEquals(1500, summary.latencyPercentile(1.0));
+    }
+
+    @Test
+    public void openEndedBinDoublesItsLowerEdge() {
+        CallRollups.Summary summary = new CallRollups.Summary();
+        summary.latency[CallRollups.LATENCY_BINS - 1] = 2;
+
+        assertEquals(90_000, summary.latencyPercentile(0.5));
+        assertEquals(120_000, summary.latencyPercentile(1.0));
+    }
+
+    @Test
+    public void answersArePairedWithTheirRing() {
+        long ring = at(0, 9, 59, 50);
+        rollups.addRing(ring, WHATSAPP);
+        rollups.addAnswer(ring + 900, WHATSAPP);
+        // A second answer for the same ring carries no latency
+        rollups.addAnswer(ring + 2000, WHATSAPP);
+
+        CallRollups.Summary summary = rollups.query(at(0, 9, 0, 0), at(0, 10, 0, 0), CallRollups.ALL_CHANNELS);
+        assertEquals(1, summary.rings);
+        assertEquals(2, summary.answers);
+        assertEquals(1, summary.latency[3]);
+        assertEquals(875, summary.latencyPercentile(0.5));
+    }
+}
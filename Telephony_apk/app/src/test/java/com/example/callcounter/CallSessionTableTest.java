@@ -0,0 +1,170 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import static com.example.callcounter.CallSessionTable.RingPolicy.ANSWER_ALL;
+import static com.example.callcounter.CallSessionTable.RingPolicy.ANSWER_FIRST;
+import static com.example.callcounter.CallSessionTable.RingPolicy.PER_CHANNEL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CallSessionTableTest {
+
+    private final CallSessionTable table = new CallSessionTable();
+
+    private CallSessionTable.CallSession ring(String id, String channel) {
+        CallSessionTable.CallSession session = table.ring(id, channel, System.nanoTime(), true);
+        assertNotNull(session);
+        return session;
+    }
+
+    @Test
+    public void answerFirstLetsOneCallAnswerAcrossChannels() {
+        CallSessionTable.CallSession cellular = ring("cell-1", "cellular");
+        CallSessionTable.CallSession whatsapp = ring("wa-1", "whatsapp");
+        CallSessionTable.CallSession waiting = ring("cell-2", "cellular");
+
+        assertTrue(table.claimAnswer(cellular, ANSWER_FIRST));
+        assertFalse(table.claimAnswer(whatsapp, ANSWER_FIRST));
+        assertFalse(table.claimAnswer(waiting, ANSWER_FIRST));
+        assertEquals(CallSessionTable.STATE_RINGING, whatsapp.state());
+
+        // The slot opens up once the first call ends
+        assertTrue(table.end(cellular));
+        assertTrue(table.claimAnswer(whatsapp, ANSWER_FIRST));
+        assertEquals(CallSessionTable.STATE_ANSWERING, whatsapp.state());
+    }
+
+    @Test
+    public void perChannelAnswersOneCallPerChannel() {
+        CallSessionTable.CallSession cellular = ring("cell-1", "cellular");
+        CallSessionTable.CallSession whatsapp = ring("wa-1", "whatsapp");
+        CallSessionTable.CallSession waiting = ring("cell-2", "cellular");
+
+        assertTrue(table.claimAnswer(cellular, PER_CHANNEL));
+        assertTrue(table.claimAnswer(whatsapp, PER_CHANNEL));
+        assertFalse(table.claimAnswer(waiting, PER_CHANNEL));
+    }
+
+    @Test
+    public void answerAllAnswersEveryRing() {
+        CallSessionTable.CallSession first = ring("cell-1", "cellular");
+        CallSessionTable.CallSession waiting = ring("cell-2", "cellular");
+
+        assertTrue(table.claimAnswer(first, ANSWER_ALL));
+        assertTrue(table.claimAnswer(waiting, ANSWER_ALL));
+    }
+
+    @Test
+    public void claimingAgainKeepsTheSlotUntilConnected() {
+        CallSessionTable.CallSession session = ring("wa-1", "whatsapp");
+
+        assertTrue(table.claimAnswer(session, ANSWER_FIRST));
+        // A retry of the same answer cascade
+        assertTrue(table.claimAnswer(session, ANSWER_FIRST));
+        assertTrue(session.transition(CallSessionTable.STATE_ANSWERING, CallSessionTable.STATE_CONNECTED));
+        assertFalse(table.claimAnswer(session, ANSWER_FIRST));
+        // Still holds the slot while connected
+        assertFalse(table.claimAnswer(ring("wa-2", "whatsapp"), ANSWER_FIRST));
+    }
+
+    @Test
+    public void repostOfALiveRingIsNotASecondCall() {
+        CallSessionTable.CallSession session = ring("wa-1", "whatsapp");
+
+        assertNull(table.ring("wa-1", "whatsapp", System.nanoTime(), true));
+        assertSame(session, table.get("wa-1"));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void endedIdRingsAsANewSession() {
+        CallSessionTable.CallSession first = ring("wa-1", "whatsapp");
+        assertTrue(table.end(first));
+        assertFalse(table.end(first));
+        assertNull(table.get("wa-1"));
+
+        CallSessionTable.CallSession second = ring("wa-1", "whatsapp");
+
+        assertNotSame(first, second);
+        assertEquals(CallSessionTable.STATE_RINGING, second.state());
+        assertSame(second, table.get("wa-1"));
+    }
+
+    @Test
+    public void endedButNotYetRemovedSessionIsReplacedOnRing() {
+        CallSessionTable.CallSession first = ring("wa-1", "whatsapp");
+        // Ended by a racing thread that hasn't removed it from the table yet
+        assertTrue(first.transition(CallSessionTable.STATE_RINGING, CallSessionTable.STATE_ENDED));
+
+        CallSessionTable.CallSession second = ring("wa-1", "whatsapp");
+
+        assertNotSame(first, second);
+        assertEquals(1, table.size());
+        // The late end() of the old session must not remove the new one
+        assertFalse(table.end(first));
+        assertSame(second, table.get("wa-1"));
+    }
+
+    @Test
+    public void sessionEndedBeforeItsClaimGivesTheSlotBack() {
+        CallSessionTable.CallSession ended = ring("wa-1", "whatsapp");
+        table.end(ended);
+
+        assertFalse(table.claimAnswer(ended, ANSWER_FIRST));
+        assertEquals(CallSessionTable.STATE_ENDED, ended.state());
+        assertTrue(table.claimAnswer(ring("cell-1", "cellular"), ANSWER_FIRST));
+    }
+
+    @Test
+    public void slotOfAnEndedHolderThatDidNotReleaseIsTakenOver() {
+        CallSessionTable.CallSession holder = ring("wa-1", "whatsapp");
+        assertTrue(table.claimAnswer(holder, ANSWER_FIRST));
+        // Ended concurrently with a claim, before end() got to free the slot
+        assertTrue(holder.transition(CallSessionTable.STATE_ANSWERING, CallSessionTable.STATE_ENDED));
+
+        CallSessionTable.CallSession next = ring("cell-1", "cellular");
+        assertTrue(table.claimAnswer(next, ANSWER_FIRST));
+
+        // The holder's own end() must not free the slot it lost
+        table.end(holder);
+        assertFalse(table.claimAnswer(ring("cell-2", "cellular"), ANSWER_FIRST));
+    }
+
+    @Test
+    public void releaseSlotFreesItWhileTheCallStaysUp() {
+        // Seen only on screen, so no end signal will ever free its slot
+        CallSessionTable.CallSession screenOnly = table.ring("wa-1", "whatsapp", System.nanoTime(), false);
+        assertTrue(table.claimAnswer(screenOnly, ANSWER_FIRST));
+        assertTrue(screenOnly.transition(CallSessionTable.STATE_ANSWERING, CallSessionTable.STATE_CONNECTED));
+        CallSessionTable.CallSession next = ring("cell-1", "cellular");
+        assertFalse(table.claimAnswer(next, ANSWER_FIRST));
+
+        table.releaseSlot(screenOnly);
+
+        assertEquals(CallSessionTable.STATE_CONNECTED, screenOnly.state());
+        assertSame(screenOnly, table.get("wa-1"));
+        assertTrue(table.claimAnswer(next, ANSWER_FIRST));
+        // Releasing again, or after someone else took the slot, changes nothing
+        table.releaseSlot(screenOnly);
+        assertFalse(table.claimAnswer(ring("cell-2", "cellular"), ANSWER_FIRST));
+    }
+
+    @Test
+    public void releaseSlotWithoutAClaimIsHarmless() {
+        CallSessionTable.CallSession session = ring("wa-1", "whatsapp");
+        table.releaseSlot(session);
+        assertTrue(table.claimAnswer(session, ANSWER_FIRST));
+    }
+
+    @Test
+    public void ringPolicyParsesIgnoringCase() {
+        assertEquals(PER_CHANNEL, CallSessionTable.RingPolicy.parse("per_channel"));
+        assertEquals(ANSWER_ALL, CallSessionTable.RingPolicy.parse("ANSWER_ALL"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelMixerTest {
+
+    @Test
+    public void stereoPairsAreAveragedInPlace() {
+        short[] samples = {100, 300, -200, -400, 32767, 32767, -32768, -32768};
+        assertEquals(4, ChannelMixer.downmix(samples, 0, 4, 2));
+        assertArrayEquals(new short[]{200, -300, 32767, -32768},
+                new short[]{samples[0], samples[1], samples[2], samples[3]});
+    }
+
+    @Test
+    public void anyChannelCountDownmixesFromAnOffset() {
+        short[] samples = {9, 9, 30, 60, 90, -3, -6, -9};
+        assertEquals(2, ChannelMixer.downmix(samples, 2, 2, 3));
+        assertEquals(9, samples[0]);
+        assertEquals(60, samples[2]);
+        assertEquals(-6, samples[3]);
+    }
+
+    @Test
+    public void monoIsLeftAlone() {
+        short[] samples = {1, 2, 3};
+        assertEquals(3, ChannelMixer.downmix(samples, 0, 3, 1));
+        assertArrayEquals(new short[]{1, 2, 3}, samples);
+    }
+
+    @Test
+    public void promptInPlaybackFormatIsNotCopied() {
+        ByteBuffer pcm = ByteBuffer.allocate(2048).order(ByteOrder.LITTLE_ENDIAN);
+        assertSame(pcm, PromptCache.toPlaybackFormat(pcm, CallAudioPipeline.RECEIVE_SAMPLE_RATE, 1));
+    }
+
+    @Test
+    public void stereoPromptBecomesMonoAtThePlaybackRate() {
+        int frames = 4800; // 100 ms at 48 kHz
+        ByteBuffer pcm = ByteBuffer.allocate(frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            short tone = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / 48000.0));
+            // Same tone on both sides, opposite-phase noise that the downmix cancels
+            short noise = (short) ((i * 7919 % 2001) - 1000);
+            pcm.putShort((short) (tone + noise)).putShort((short) (tone - noise));
+        }
+        pcm.flip();
+
+        ByteBuffer mono = PromptCache.toPlaybackFormat(pcm, 48000, 2);
+
+        int outFrames = mono.remaining() / 2;
+        assertTrue("frames " + outFrames, Math.abs(outFrames - frames / 2) <= 32);
+        short peak = 0;
+        for (int i = 0; i < outFrames; i++) peak = (short) Math.max(peak, Math.abs(mono.getShort(i * 2)));
+        assertTrue("peak " + peak, peak > 7000 && peak < 8600);
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.callcounter;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledCallerRulesTest {
+
+    private static final int NOON = 12 * 60;
+
+    private static CompiledCallerRules compile(String... lines) {
+        List<CallerRule> rules = new ArrayList<>();
+        for (String line : lines) rules.add(CallerRule.parse(line));
+        return CompiledCallerRules.compile(rules);
+    }
+
+    private static CallerRule.Action eval(CompiledCallerRules rules, String number) {
+        return rules.evaluate(CallJournal.CHANNEL_CELLULAR, number, null, NOON);
+    }
+
+    @Test
+    public void internationalPrefixRuleMatchesNationalCaller() {
+        CompiledCallerRules rules = compile("deny prefix +1900");
+        assertEquals(CallerRule.Action.DENY, eval(rules, "9005550100"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+1 900 555 0100"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "1-900-555-0100"));
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "+1 800 555 0100"));
+    }
+
+    @Test
+    public void nationalPrefixRuleMatchesInternationalCaller() {
+        CompiledCallerRules rules = compile("deny prefix 0800");
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+44 800 123 456"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "0044800123456"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "0800 123 456"));
+    }
+
+    @Test
+    public void exactRuleMatchesWithAndWithoutCountryCode() {
+        CompiledCallerRules rules = compile("deny exact \"+1 (555) 010-2030\"");
+        assertEquals(CallerRule.Action.DENY, eval(rules, "5550102030"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+15550102030"));
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "5550102031"));
+
+        CompiledCallerRules national = compile("deny exact 5550102030");
+        assertEquals(CallerRule.Action.DENY, eval(national, "+1 555 010 2030"));
+    }
+
+    @Test
+    public void countryPrefixRuleDoesNotMatchAnotherCountry() {
+        CompiledCallerRules rules = compile("deny prefix +1900");
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "+44 900 123 4567"));
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "0044 900 123 4567"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "001 900 555 0100"));
+    }
+
+    @Test
+    public void countryExactRuleDoesNotMatchAnotherCountry() {
+        CompiledCallerRules rules = compile("deny exact +15550102030");
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "+44 5550102030"));
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "+7 555 010 2030"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+1 555 010 2030"));
+    }
+
+    @Test
+    public void countryAllowRuleDoesNotAdmitForeignCallers() {
+        CompiledCallerRules rules = compile("deny any -", "allow prefix +1555", "allow exact +447700900123");
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "+1 555 010 2030"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+49 555 010 2030"));
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "+44 7700 900123"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+33 7700 900123"));
+        // A national-format caller has no country to check
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "555 010 2030"));
+    }
+
+    @Test
+    public void ruleWithoutCountryCodeMatchesEveryCountry() {
+        CompiledCallerRules rules = compile("deny prefix 900", "deny exact 7700900123");
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+44 900 123 4567"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+1 900 555 0100"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+44 7700 900123"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+33 7700 900123"));
+    }
+
+    @Test
+    public void exactKeyAgreesWithContactMatchKey() {
+        String[] forms = {"+1 555 010 2030", "15550102030", "(555) 010-2030", "001 555 010 2030"};
+        for (String form : forms) {
+            assertEquals(form, "5550102030", PhoneNumbers.matchKey(form));
+        }
+        assertEquals("2079460958", PhoneNumbers.matchKey("+44 20 7946 0958"));
+        assertEquals("2079460958", PhoneNumbers.matchKey("020 7946 0958"));
+    }
+
+    @Test
+    public void countryCodeRuleMatchesOnlyThatCountry() {
+        CompiledCallerRules rules = compile("deny prefix +44");
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+44 20 7946 0958"));
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "+1 440 555 0100"));
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "4405550100"));
+        // Three-digit code must not be confused with a shorter one
+        assertEquals(CallerRule.Action.ALLOW, eval(compile("deny prefix +35"), "+351 912 345 678"));
+        assertEquals(CallerRule.Action.DENY, eval(compile("deny prefix +351"), "+351 912 345 678"));
+    }
+
+    @Test
+    public void nationalPrefixBeatsCountryRule() {
+        CompiledCallerRules rules = compile("deny prefix +44", "allow prefix +4420");
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "+44 20 7946 0958"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "+44 161 496 0000"));
+    }
+
+    @Test
+    public void longestPrefixWinsAndExactBeatsPrefix() {
+        CompiledCallerRules rules = compile("deny prefix +1555", "allow prefix +1555010", "deny exact +15550102030");
+        assertEquals(CallerRule.Action.DENY, eval(rules, "5559990000"));
+        assertEquals(CallerRule.Action.ALLOW, eval(rules, "5550109999"));
+        assertEquals(CallerRule.Action.DENY, eval(rules, "5550102030"));
+    }
+
+    @Test
+    public void nameRulesIgnoreCaseAndSurroundingSpace() {
+        CompiledCallerRules rules = compile("deny name \"Unknown Caller\"", "allow name Mom");
+        assertEquals(CallerRule.Action.DENY,
+                rules.evaluate(CallJournal.CHANNEL_CELLULAR, null, "  UNKNOWN caller ", NOON));
+        assertEquals(CallerRule.Action.ALLOW, rules.evaluate(CallJournal.CHANNEL_CELLULAR, null, "mom", NOON));
+        assertEquals(CallerRule.Action.ALLOW, rules.evaluate(CallJournal.CHANNEL_CELLULAR, null, "Unknown", NOON));
+    }
+
+    @Test
+    public void nameRuleBeatsPrefixRule() {
+        CompiledCallerRules rules = compile("deny prefix +1555", "allow name Mom");
+        assertEquals(CallerRule.Action.ALLOW,
+                rules.evaluate(CallJournal.CHANNEL_CELLULAR, "+15550102030", "Mom", NOON));
+    }
+
+    @Test
+    public void channelAndTimeWindowScopeRules() {
+        CompiledCallerRules rules = compile("deny any - channel=whatsapp time=22:00-07:00");
+        assertEquals(CallerRule.Action.DENY, rules.evaluate(CallJournal.CHANNEL_WHATSAPP, null, null, 23 * 60));
+        assertEquals(CallerRule.Action.DENY, rules.evaluate(CallJournal.CHANNEL_WHATSAPP, null, null, 6 * 60));
+        assertEquals(CallerRule.Action.ALLOW, rules.evaluate(CallJournal.CHANNEL_WHATSAPP, null, null, NOON));
+        assertEquals(CallerRule.Action.ALLOW, rules.evaluate(CallJournal.CHANNEL_CELLULAR, null, null, 23 * 60));
+    }
+
+    @Test
+    public void denyWinsWithinALevel() {
+        CompiledCallerRules rules = compile("allow prefix +1555", "deny prefix 555");
+        assertEquals(CallerRule.Action.DENY, eval(rules, "5550102030"));
+    }
+
+    @Test
+    public void evaluateDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        CompiledCallerRules rules = compile("deny prefix +1900", "allow exact +15550102030",
+                "deny prefix +44", "deny name \"Unknown Caller\"", "allow any - time=09:00-18:00");
+        String number = "+1 (555) 010-2031";
+        String name = " Some Caller ";
+        int sink = 0;
+        // Warm up so the JIT has compiled the path before measuring
+        for (int i = 0; i < 20000; i++) sink += eval(rules, number).ordinal();
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 10000; i++) {
+            sink += rules.evaluate(CallJournal.CHANNEL_WHATSAPP, number, name, i % 1440).ordinal();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(sink >= 0);
+        // Allowance for the measurement itself; a single allocation per call would be >= 160 KB
+        assertTrue("allocated " + allocated + " bytes", allocated < 16 * 1024);
+    }
+}
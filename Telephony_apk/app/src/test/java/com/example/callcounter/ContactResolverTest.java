@@ -0,0 +1,57 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContactResolverTest {
+
+    @Test
+    public void lruDropsTheEldestEntryPastItsSize() {
+        Map<String, Integer> lru = new ContactResolver.LruMap<>(3);
+        lru.put("a", 1);
+        lru.put("b", 2);
+        lru.put("c", 3);
+        lru.put("d", 4);
+        assertEquals(3, lru.size());
+        assertFalse(lru.containsKey("a"));
+        assertEquals(Arrays.asList("b", "c", "d"), Arrays.asList(lru.keySet().toArray()));
+    }
+
+    @Test
+    public void lruKeepsRecentlyReadEntries() {
+        Map<String, Integer> lru = new ContactResolver.LruMap<>(3);
+        lru.put("a", 1);
+        lru.put("b", 2);
+        lru.put("c", 3);
+        assertEquals(Integer.valueOf(1), lru.get("a"));
+        lru.put("d", 4);
+        assertTrue(lru.containsKey("a"));
+        assertFalse(lru.containsKey("b"));
+    }
+
+    @Test
+    public void lruReplacingAKeyDoesNotEvict() {
+        Map<String, Integer> lru = new ContactResolver.LruMap<>(2);
+        lru.put("a", 1);
+        lru.put("b", 2);
+        lru.put("a", 10);
+        assertEquals(2, lru.size());
+        assertEquals(Integer.valueOf(10), lru.get("a"));
+        assertEquals(Integer.valueOf(2), lru.get("b"));
+    }
+
+    @Test
+    public void lruStaysBoundedUnderManyInserts() {
+        Map<Integer, Integer> lru = new ContactResolver.LruMap<>(256);
+        for (int i = 0; i < 1000; i++) lru.put(i, i);
+        assertEquals(256, lru.size());
+        assertTrue(lru.containsKey(999));
+        assertFalse(lru.containsKey(743));
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.callcounter;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class DetectionConfigTest {
+
+    private static final String WHATSAPP = "com.whatsapp";
+
+    private static void assertRejected(String json) throws JSONException {
+        try {
+            DetectionConfig.parse(json);
+            fail("accepted " + json);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static String app(String fields) {
+        return "{\"apps\": [{\"package\": \"" + WHATSAPP + "\", " + fields + "}]}";
+    }
+
+    @Test
+    public void emptyFileIsTheDefaults() throws JSONException {
+        DetectionConfig config = DetectionConfig.parse("{}");
+
+        assertEquals(0, config.version);
+        assertEquals(DetectionConfig.DEFAULT.confirmTimeoutMs, config.confirmTimeoutMs);
+        assertEquals(DetectionConfig.DEFAULT.maxScanNodes, config.maxScanNodes);
+        assertSame(DetectionConfig.DEFAULT.ringPolicy, config.ringPolicy);
+        assertEquals(DetectionConfig.DEFAULT.registry.profiles().size(), config.registry.profiles().size());
+    }
+
+    @Test
+    public void newerSchemaIsRejected() throws JSONException {
+        assertRejected("{\"schema\": " + (DetectionConfig.SCHEMA_VERSION + 1) + "}");
+        assertEquals(4, DetectionConfig.parse("{\"schema\": " + DetectionConfig.SCHEMA_VERSION
+                + ", \"version\": 4}").version);
+    }
+
+    @Test
+    public void emptyKeywordListIsRejected() throws JSONException {
+        assertRejected(app("\"call_keywords\": []"));
+        // Blank entries are dropped, which leaves nothing
+        assertRejected(app("\"answer_button_texts\": [\" \", \"\"]"));
+    }
+
+    @Test
+    public void outOfRangeFractionIsRejected() throws JSONException {
+        assertRejected(app("\"answer_button_min_y_fraction\": 1.2"));
+        assertRejected(app("\"answer_button_min_y_fraction\": -0.1"));
+        assertRejected(app("\"answer_tap_fractions\": [[0.5, 0.85], [0.5, 1.01]]"));
+        assertRejected(app("\"answer_button_min_y_fraction\": \"NaN\""));
+    }
+
+    @Test
+    public void outOfRangeDelayOrCountIsRejected() throws JSONException {
+        assertRejected("{\"confirm_timeout_ms\": -1}");
+        assertRejected("{\"ringing_removed_grace_ms\": 60001}");
+        assertRejected(app("\"event_scan_delay_ms\": 600000"));
+        assertRejected("{\"max_answer_retries\": 11}");
+        assertRejected("{\"max_timer_step_seconds\": 0}");
+        assertRejected("{\"max_scan_nodes\": 49}");
+        assertRejected("{\"concurrent_ring_policy\": \"answer_some\"}");
+        // The bounds themselves are fine
+        DetectionConfig config = DetectionConfig.parse("{\"confirm_timeout_ms\": 60000, \"max_answer_retries\": 0}");
+        assertEquals(60000, config.confirmTimeoutMs);
+        assertEquals(0, config.maxAnswerRetries);
+    }
+
+    @Test(expected = JSONException.class)
+    public void newPackageWithoutChannelIsRejected() throws JSONException {
+        DetectionConfig.parse("{\"apps\": [{\"package\": \"org.example.voip\", \"call_keywords\": [\"call\"]}]}");
+    }
+
+    @Test
+    public void newPackageWithChannelIsAdded() throws JSONException {
+        DetectionConfig config = DetectionConfig.parse("{\"apps\": [{\"package\": \"org.example.voip\","
+                + " \"channel\": \"example\", \"call_keywords\": [\"call\"]}]}");
+
+        VoipAppProfile added = config.registry.get("org.example.voip");
+        assertNotNull(added);
+        assertEquals("example", added.channel);
+        assertArrayEquals(new String[] {"call"}, added.callKeywords);
+        assertNotNull(config.registry.get(WHATSAPP));
+    }
+
+    @Test
+    public void partialOverrideKeepsEveryOtherDefault() throws JSONException {
+        VoipAppProfile base = DetectionConfig.DEFAULT.registry.get(WHATSAPP);
+        DetectionConfig config = DetectionConfig.parse("{\"version\": 12, \"confirm_timeout_ms\": 8000,"
+                + " \"concurrent_ring_policy\": \"per_channel\","
+                + " \"apps\": [{\"package\": \"" + WHATSAPP + "\", \"answer_button_texts\": [\" Answer \", \"accept\"],"
+                + " \"event_scan_delay_ms\": 900}]}");
+
+        assertEquals(12, config.version);
+        assertEquals(8000, config.confirmTimeoutMs);
+        assertSame(CallSessionTable.RingPolicy.PER_CHANNEL, config.ringPolicy);
+        assertEquals(DetectionConfig.DEFAULT.maxAnswerRetries, config.maxAnswerRetries);
+        assertEquals(DetectionConfig.DEFAULT.maxTimerStepSeconds, config.maxTimerStepSeconds);
+        assertEquals(DetectionConfig.DEFAULT.ringingRemovedGraceMs, config.ringingRemovedGraceMs);
+
+        VoipAppProfile whatsapp = config.registry.get(WHATSAPP);
+        assertArrayEquals(new String[] {"Answer", "accept"}, whatsapp.answerButtonTexts);
+        assertEquals(900, whatsapp.eventScanDelayMs);
+        assertEquals(base.channel, whatsapp.channel);
+        assertArrayEquals(base.callKeywords, whatsapp.callKeywords);
+        assertArrayEquals(base.callWindowTitles, whatsapp.callWindowTitles);
+        assertEquals(base.answerButtonMinYFraction, whatsapp.answerButtonMinYFraction, 0f);
+        assertEquals(base.answerTapFractions.length, whatsapp.answerTapFractions.length);
+        assertEquals(base.launchFollowUpDelayMs, whatsapp.launchFollowUpDelayMs);
+        // Other apps are untouched
+        for (VoipAppProfile profile : DetectionConfig.DEFAULT.registry.profiles()) {
+            if (profile.packageName.equals(WHATSAPP)) continue;
+            assertArrayEquals(profile.callKeywords, config.registry.get(profile.packageName).callKeywords);
+        }
+        assertEquals(DetectionConfig.DEFAULT.registry.profiles().size(), config.registry.profiles().size());
+    }
+
+    @Test
+    public void telemetryEndpointIsTakenFromTheFile() throws JSONException {
+        assertEquals("https://telemetry.example.com/v1/ingest", DetectionConfig.parse(
+                "{\"telemetry_endpoint\": \" https://telemetry.example.com/v1/ingest \"}").telemetryEndpoint);
+        // Empty turns uploads off
+        assertEquals("", DetectionConfig.parse("{\"telemetry_endpoint\": \"\"}").telemetryEndpoint);
+        // Absent leaves the stored endpoint alone
+        assertNull(DetectionConfig.parse("{\"version\": 3}").telemetryEndpoint);
+        assertNull(DetectionConfig.DEFAULT.telemetryEndpoint);
+    }
+
+    @Test
+    public void telemetryEndpointMustBeAnHttpUrl() throws JSONException {
+        assertRejected("{\"telemetry_endpoint\": \"ftp://example.com/upload\"}");
+        assertRejected("{\"telemetry_endpoint\": \"example.com/upload\"}");
+        assertRejected("{\"telemetry_endpoint\": \"https://\"}");
+        assertRejected("{\"telemetry_endpoint\": \"http://exa mple.com\"}");
+    }
+}
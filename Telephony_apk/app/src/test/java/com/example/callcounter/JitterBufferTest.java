@@ -0,0 +1,199 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JitterBufferTest {
+
+    private static final int RATE = 16000;
+    private static final int PACKET_FRAMES = 320;   // 20 ms per packet
+    private static final int READ_FRAMES = 160;     // 10 ms per playback read
+    private static final long MS = 1_000_000L;
+
+    // Speech stand-in: never below the silence threshold, and each sample tells its stream position
+    private static short speech(long position) {
+        return (short) (1000 + position % 20000);
+    }
+
+    private static ByteBuffer packet(long firstPosition, int frames) {
+        ByteBuffer buffer = ByteBuffer.allocate(frames * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) buffer.putShort(speech(firstPosition + i));
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer silence(int frames) {
+        return ByteBuffer.allocate(frames * 2).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Outcome of replaying an arrival trace against a steady 10 ms playback clock. */
+    private static final class Playout {
+        long streamFrames;
+        long outOfOrder;
+    }
+
+    /**
+     * Offers packet i at arrivalMs[i] and reads READ_FRAMES every 10 ms until the trace has
+     * played out, checking that stream samples come out in order with nothing lost.
+     */
+    private static Playout replay(JitterBuffer buffer, long[] arrivalMs) {
+        Playout playout = new Playout();
+        short[] out = new short[READ_FRAMES];
+        long expected = 0;
+        int next = 0;
+        long end = arrivalMs[arrivalMs.length - 1] + 1000;
+        for (long t = 0; t <= end; t++) {
+            while (next < arrivalMs.length && arrivalMs[next] <= t) {
+                buffer.offer(packet((long) next * PACKET_FRAMES, PACKET_FRAMES), t * MS);
+                next++;
+            }
+            if (next == arrivalMs.length) buffer.endOfStream();
+            if (t % 10 != 0) continue;
+            int got = buffer.read(out, 0, READ_FRAMES, t * MS);
+            playout.streamFrames += got;
+            for (int i = 0; i < READ_FRAMES; i++) {
+                if (out[i] == 0) continue;
+                if (out[i] != speech(expected)) playout.outOfOrder++;
+                expected++;
+            }
+        }
+        return playout;
+    }
+
+    @Test
+    public void steadyArrivalsSettleAtTheFloor() {
+        JitterBuffer buffer = new JitterBuffer(RATE, 1000, READ_FRAMES);
+        long[] arrivals = new long[300];
+        for (int i = 0; i < arrivals.length; i++) arrivals[i] = 20L * i;
+
+        Playout playout = replay(buffer, arrivals);
+
+        assertEquals((long) arrivals.length * PACKET_FRAMES, playout.streamFrames);
+        assertEquals(0, playout.outOfOrder);
+        assertEquals(0, buffer.getUnderruns());
+        assertEquals(0, buffer.getJitterMs());
+        // 40 ms minimum plus one 10 ms read
+        assertEquals(50, buffer.getTargetDelayMs());
+    }
+
+    @Test
+    public void jitteryArrivalsRaiseTheTargetWithoutUnderruns() {
+        JitterBuffer buffer = new JitterBuffer(RATE, 1000, READ_FRAMES);
+        Random random = new Random(42);
+        long[] arrivals = new long[300];
+        long previous = 0;
+        for (int i = 0; i < arrivals.length; i++) {
+            // Up to 60 ms network delay, delivered in order
+            previous = Math.max(previous, 20L * i + random.nextInt(61));
+            arrivals[i] = previous;
+        }
+
+        Playout playout = replay(buffer, arrivals);
+
+        assertEquals((long) arrivals.length * PACKET_FRAMES, playout.streamFrames);
+        assertEquals(0, playout.outOfOrder);
+        assertTrue("jitter " + buffer.getJitterMs(), buffer.getJitterMs() >= 10);
+        assertTrue("target " + buffer.getTargetDelayMs(), buffer.getTargetDelayMs() >= 80);
+        assertTrue("underruns " + buffer.getUnderruns(), buffer.getUnderruns() <= 1);
+    }
+
+    @Test
+    public void burstyArrivalsAfterSteadyStartAdaptUpward() {
+        JitterBuffer buffer = new JitterBuffer(RATE, 1000, READ_FRAMES);
+        long[] arrivals = new long[300];
+        for (int i = 0; i < arrivals.length; i++) {
+            // Wi-Fi style: packets held back and delivered five at a time
+            arrivals[i] = i < 100 ? 20L * i : 20L * (i - i % 5 + 4);
+        }
+
+        Playout playout = replay(buffer, arrivals);
+
+        assertEquals(0, playout.outOfOrder);
+        assertEquals((long) arrivals.length * PACKET_FRAMES, playout.streamFrames);
+        assertTrue("target " + buffer.getTargetDelayMs(), buffer.getTargetDelayMs() > 50);
+    }
+
+    @Test
+    public void waitsForTargetBeforePlaying() {
+        JitterBuffer buffer = new JitterBuffer(RATE, 1000, READ_FRAMES);
+        short[] out = new short[READ_FRAMES];
+        buffer.offer(packet(0, PACKET_FRAMES), 0);
+        // 20 ms queued against a 90 ms initial target, producer still active
+        assertEquals(0, buffer.read(out, 0, READ_FRAMES, MS));
+        assertEquals(0, out[0]);
+        for (int i = 1; i < 5; i++) buffer.offer(packet((long) i * PACKET_FRAMES, PACKET_FRAMES), i * 20 * MS);
+        assertEquals(READ_FRAMES, buffer.read(out, 0, READ_FRAMES, 81 * MS));
+        assertEquals(speech(0), out[0]);
+    }
+
+    @Test
+    public void endOfStreamPlaysOutTheTailWithoutUnderruns() {
+        JitterBuffer buffer = new JitterBuffer(RATE, 1000, READ_FRAMES);
+        short[] out = new short[READ_FRAMES];
+        buffer.offer(packet(0, 800), 0);
+        buffer.endOfStream();
+        int played = 0;
+        for (int i = 0; i < 10; i++) played += buffer.read(out, 0, READ_FRAMES, i * 10 * MS);
+        assertEquals(800, played);
+        assertEquals(0, buffer.getUnderruns());
+    }
+
+    @Test
+    public void longPauseIsCompressed() {
+        JitterBuffer buffer = new JitterBuffer(RATE, 2000, READ_FRAMES);
+        short[] out = new short[READ_FRAMES];
+        // A late burst: 500 ms of pause, then speech, all at once
+        buffer.offer(silence(8000), 0);
+        buffer.offer(packet(0, 1600), 0);
+        int framesBeforeSpeech = 0;
+        boolean heardSpeech = false;
+        for (int i = 0; i < 100 && !heardSpeech; i++) {
+            buffer.read(out, 0, READ_FRAMES, 0);
+            for (int k = 0; k < READ_FRAMES && !heardSpeech; k++) {
+                if (out[k] != 0) heardSpeech = true; else framesBeforeSpeech++;
+            }
+        }
+        assertTrue(heardSpeech);
+        assertTrue("compressed " + buffer.getCompressedFrames(), buffer.getCompressedFrames() > 0);
+        assertEquals(8000, framesBeforeSpeech + buffer.getCompressedFrames());
+    }
+
+    @Test
+    public void flushDropsQueuedAudio() {
+        JitterBuffer buffer = new JitterBuffer(RATE, 1000, READ_FRAMES);
+        short[] out = new short[READ_FRAMES];
+        buffer.offer(packet(0, 3200), 0);
+        buffer.read(out, 0, READ_FRAMES, 0);
+        buffer.flush();
+        buffer.offer(packet(10000, 3200), MS);
+        short first = 0;
+        for (int i = 0; i < 20 && first == 0; i++) {
+            buffer.read(out, 0, READ_FRAMES, (2 + i) * MS);
+            for (short sample : out) {
+                if (sample != 0) {
+                    first = sample;
+                    break;
+                }
+            }
+        }
+        assertEquals(speech(10000), first);
+        assertEquals(3200 - READ_FRAMES, buffer.getFlushedFrames());
+    }
+
+    @Test
+    public void overflowDropsTheExcess() {
+        // 100 ms at 16 kHz is 3200 bytes, rounded up to a 4096 byte ring
+        JitterBuffer buffer = new JitterBuffer(RATE, 100, READ_FRAMES);
+        ByteBuffer pcm = packet(0, 3200);
+        assertEquals(4096, buffer.offer(pcm, 0));
+        assertEquals(0, pcm.remaining());
+        assertEquals(3200 - 2048, buffer.getOverflowDroppedFrames());
+        assertEquals(128, buffer.getBufferedMs());
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.callcounter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LiveMessageDecoderTest {
+
+    private static class Recorder implements LiveMessageDecoder.Listener {
+        final ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        int setups;
+        int turnsComplete;
+        int interruptions;
+
+        @Override
+        public void onSetupComplete() {
+            setups++;
+        }
+
+        @Override
+        public void onAudio(ByteBuffer pcm) {
+            audio.write(pcm.array(), pcm.arrayOffset() + pcm.position(), pcm.remaining());
+            pcm.position(pcm.limit());
+        }
+
+        @Override
+        public void onTurnComplete() {
+            turnsComplete++;
+        }
+
+        @Override
+        public void onInterrupted() {
+            interruptions++;
+        }
+    }
+
+    private static byte[] pcm(int length, int seed) {
+        byte[] pcm = new byte[length];
+        new Random(seed).nextBytes(pcm);
+        return pcm;
+    }
+
+    // A server audio message as the Live API sends it, built with JSONObject
+    private static String audioMessage(byte[] pcm, String mimeType) throws Exception {
+        JSONObject inlineData = new JSONObject()
+                .put("mimeType", mimeType)
+                .put("data", Base64.getEncoder().encodeToString(pcm));
+        JSONObject modelTurn = new JSONObject()
+                .put("parts", new JSONArray().put(new JSONObject().put("inlineData", inlineData)));
+        return new JSONObject().put("serverContent", new JSONObject().put("modelTurn", modelTurn)).toString();
+    }
+
+    private static String stream(byte[]... chunks) throws Exception {
+        StringBuilder stream = new StringBuilder("{\"setupComplete\":{}}\n");
+        for (byte[] chunk : chunks) stream.append(audioMessage(chunk, "audio/pcm;rate=24000")).append('\n');
+        stream.append("{\"serverContent\":{\"turnComplete\":true}}");
+        return stream.toString();
+    }
+
+    private static byte[] concat(byte[]... chunks) {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) all.write(chunk, 0, chunk.length);
+        return all.toByteArray();
+    }
+
+    @Test
+    public void decodesWholeMessagesBuiltWithJsonObject() throws Exception {
+        byte[] first = pcm(4800, 1);
+        byte[] second = pcm(1001, 2);
+        Recorder recorder = new Recorder();
+        LiveMessageDecoder decoder = new LiveMessageDecoder(recorder);
+        byte[] bytes = stream(first, second).getBytes(StandardCharsets.UTF_8);
+
+        decoder.feed(bytes, 0, bytes.length);
+
+        assertArrayEquals(concat(first, second), recorder.audio.toByteArray());
+        assertEquals(1, recorder.setups);
+        assertEquals(1, recorder.turnsComplete);
+        assertEquals(4, decoder.getMessageCount());
+        assertEquals(first.length + second.length, decoder.getDecodedBytes());
+    }
+
+    @Test
+    public void anyFragmentationDecodesTheSame() throws Exception {
+        byte[] first = pcm(3000, 3);
+        byte[] second = pcm(20, 4);
+        byte[] bytes = stream(first, second).getBytes(StandardCharsets.UTF_8);
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            Recorder recorder = new Recorder();
+            LiveMessageDecoder decoder = new LiveMessageDecoder(recorder);
+            int offset = 0;
+            while (offset < bytes.length) {
+                int length = Math.min(bytes.length - offset, 1 + random.nextInt(round < 10 ? round + 1 : 300));
+                decoder.feed(bytes, offset, length);
+                offset += length;
+            }
+            assertArrayEquals(concat(first, second), recorder.audio.toByteArray());
+            assertEquals(1, recorder.turnsComplete);
+        }
+    }
+
+    @Test
+    public void directBuffersDecodeTheSameAsArrays() throws Exception {
+        byte[] chunk = pcm(5000, 5);
+        byte[] bytes = stream(chunk).getBytes(StandardCharsets.UTF_8);
+        Recorder recorder = new Recorder();
+        LiveMessageDecoder decoder = new LiveMessageDecoder(recorder);
+        ByteBuffer direct = ByteBuffer.allocateDirect(97);
+        for (int offset = 0; offset < bytes.length; offset += direct.capacity()) {
+            direct.clear();
+            direct.put(bytes, offset, Math.min(direct.capacity(), bytes.length - offset)).flip();
+            decoder.feed(direct);
+            assertEquals(0, direct.remaining());
+        }
+        assertArrayEquals(chunk, recorder.audio.toByteArray());
+    }
+
+    @Test
+    public void payloadLargerThanTheAudioBufferIsFlushedInWholeSamples() throws Exception {
+        byte[] chunk = pcm(100_000, 6);
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onAudio(ByteBuffer pcm) {
+                assertEquals(0, pcm.remaining() % 2);
+                super.onAudio(pcm);
+            }
+        };
+        LiveMessageDecoder decoder = new LiveMessageDecoder(recorder);
+        byte[] bytes = stream(chunk).getBytes(StandardCharsets.UTF_8);
+        decoder.feed(bytes, 0, bytes.length);
+        assertArrayEquals(chunk, recorder.audio.toByteArray());
+    }
+
+    @Test
+    public void escapedSlashesAndUrlSafeAlphabetAreAccepted() throws Exception {
+        byte[] chunk = pcm(999, 8);
+        String base64 = Base64.getEncoder().encodeToString(chunk);
+        String escaped = "{\"serverContent\":{\"modelTurn\":{\"parts\":[{\"inlineData\":{\"mimeType\":\"audio\\/pcm\","
+                + "\"data\":\"" + base64.replace("/", "\\/") + "\"}}]}}}";
+        String urlSafe = "{\"serverContent\":{\"modelTurn\":{\"parts\":[{\"inlineData\":{\"mimeType\":\"audio/pcm\","
+                + "\"data\":\"" + Base64.getUrlEncoder().encodeToString(chunk) + "\"}}]}}}";
+        for (String message : new String[]{escaped, urlSafe}) {
+            Recorder recorder = new Recorder();
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            new LiveMessageDecoder(recorder).feed(bytes, 0, bytes.length);
+            assertArrayEquals(chunk, recorder.audio.toByteArray());
+        }
+    }
+
+    @Test
+    public void skipsNonAudioPartsAndReportsControlEvents() throws Exception {
+        // mimeType ahead of data, as the server writes it; the decoder can't look back once
+        // data has been decoded
+        String text = "{\"serverContent\":{\"modelTurn\":{\"parts\":[{\"text\":\"data: \\\"not audio\\\"\"},"
+                + "{\"inlineData\":{\"mimeType\":\"image/png\",\"data\":\""
+                + Base64.getEncoder().encodeToString(pcm(30, 9)) + "\"}}]}}}";
+        String stream = text + "{\"serverContent\":{\"interrupted\":true}}"
+                + "{\"serverContent\":{\"turnComplete\":false}}"
+                + "{\"toolCall\":{\"functionCalls\":[{\"name\":\"x\",\"args\":{\"turnComplete\":true}}]}}";
+        Recorder recorder = new Recorder();
+        LiveMessageDecoder decoder = new LiveMessageDecoder(recorder);
+        byte[] bytes = stream.getBytes(StandardCharsets.UTF_8);
+        decoder.feed(bytes, 0, bytes.length);
+
+        assertEquals(0, recorder.audio.size());
+        assertEquals(1, recorder.interruptions);
+        assertEquals(0, recorder.turnsComplete);
+        assertEquals(4, decoder.getMessageCount());
+    }
+
+    @Test
+    public void encoderOutputShapeDecodesBack() throws Exception {
+        // The encoder's realtimeInput frame renamed to the server's shape round-trips the PCM
+        byte[] chunk = pcm(2048, 10);
+        LiveMessageEncoder encoder = new LiveMessageEncoder(24000);
+        ByteBuffer dst = ByteBuffer.allocate(encoder.maxAudioMessageBytes(chunk.length));
+        int length = encoder.encodeAudio(ByteBuffer.wrap(chunk), dst);
+        JSONObject sent = new JSONObject(new String(dst.array(), 0, length, StandardCharsets.UTF_8));
+        JSONObject media = sent.getJSONObject("realtimeInput").getJSONArray("mediaChunks").getJSONObject(0);
+
+        Recorder recorder = new Recorder();
+        byte[] bytes = audioMessage(Base64.getDecoder().decode(media.getString("data")), media.getString("mimeType"))
+                .getBytes(StandardCharsets.UTF_8);
+        new LiveMessageDecoder(recorder).feed(bytes, 0, bytes.length);
+        assertArrayEquals(chunk, recorder.audio.toByteArray());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.callcounter;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LiveMessageEncoderTest {
+
+    private final LiveMessageEncoder encoder = new LiveMessageEncoder(16000);
+
+    private static byte[] pcm(int length) {
+        byte[] pcm = new byte[length];
+        for (int i = 0; i < length; i++) pcm[i] = (byte) (i * 73 + 11);
+        return pcm;
+    }
+
+    private static JSONObject parse(ByteBuffer dst, int length) throws Exception {
+        return new JSONObject(new String(dst.array(), 0, length, StandardCharsets.UTF_8));
+    }
+
+    private JSONObject encodeAudio(byte[] pcm, boolean direct) throws Exception {
+        ByteBuffer src = direct ? ByteBuffer.allocateDirect(pcm.length) : ByteBuffer.allocate(pcm.length + 4);
+        if (!direct) src.position(4);
+        src.put(pcm).flip();
+        if (!direct) src.position(4);
+        int max = encoder.maxAudioMessageBytes(pcm.length);
+        ByteBuffer dst = ByteBuffer.allocate(max);
+        int length = encoder.encodeAudio(src, dst);
+        assertEquals(length, dst.position());
+        assertEquals(max, length);
+        assertFalse(src.hasRemaining());
+        return parse(dst, length);
+    }
+
+    @Test
+    public void audioMatchesJsonAndBase64ForEveryTailLength() throws Exception {
+        for (int length : new int[]{0, 1, 2, 3, 4, 5, 6, 7, 2048, 4097}) {
+            for (boolean direct : new boolean[]{false, true}) {
+                byte[] pcm = pcm(length);
+                JSONObject chunk = encodeAudio(pcm, direct)
+                        .getJSONObject("realtimeInput").getJSONArray("mediaChunks").getJSONObject(0);
+                assertEquals("audio/pcm;rate=16000", chunk.getString("mimeType"));
+                String data = chunk.getString("data");
+                assertEquals(Base64.getEncoder().encodeToString(pcm), data);
+                assertArrayEquals(pcm, Base64.getDecoder().decode(data));
+            }
+        }
+    }
+
+    @Test
+    public void audioAppendsAtDestinationPosition() throws Exception {
+        byte[] pcm = pcm(10);
+        ByteBuffer dst = ByteBuffer.allocate(3 + encoder.maxAudioMessageBytes(pcm.length));
+        dst.put("abc".getBytes(StandardCharsets.UTF_8));
+        int length = encoder.encodeAudio(ByteBuffer.wrap(pcm), dst);
+        assertEquals(3 + length, dst.position());
+        assertEquals("abc", new String(dst.array(), 0, 3, StandardCharsets.UTF_8));
+        JSONObject message = new JSONObject(new String(dst.array(), 3, length, StandardCharsets.UTF_8));
+        assertTrue(message.has("realtimeInput"));
+    }
+
+    @Test
+    public void textRoundTripsThroughJsonParser() throws Exception {
+        String[] texts = {
+            "",
+            "Hello, who's calling?",
+            "quote \" backslash \\ slash /",
+            "tab\tnewline\ncontrol\u0001\u001f",
+            "café üß € 你好",
+            "emoji 📞 end"
+        };
+        for (String text : texts) {
+            for (boolean complete : new boolean[]{true, false}) {
+                ByteBuffer dst = ByteBuffer.allocate(LiveMessageEncoder.maxTextMessageBytes(text.length()));
+                int length = encoder.encodeText(text, complete, dst);
+                JSONObject content = parse(dst, length).getJSONObject("clientContent");
+                JSONObject turn = content.getJSONArray("turns").getJSONObject(0);
+                assertEquals("user", turn.getString("role"));
+                assertEquals(text, turn.getJSONArray("parts").getJSONObject(0).getString("text"));
+                assertEquals(complete, content.getBoolean("turnComplete"));
+            }
+        }
+    }
+
+    @Test
+    public void textMatchesJsonObjectEncodingOfTheSameMessage() throws Exception {
+        String text = "Line one\nsays \"hi\" é";
+        ByteBuffer dst = ByteBuffer.allocate(LiveMessageEncoder.maxTextMessageBytes(text.length()));
+        int length = encoder.encodeText(text, true, dst);
+
+        JSONObject expected = new JSONObject()
+                .put("clientContent", new JSONObject()
+                        .put("turns", new org.json.JSONArray().put(new JSONObject()
+                                .put("role", "user")
+                                .put("parts", new org.json.JSONArray().put(new JSONObject().put("text", text)))))
+                        .put("turnComplete", true));
+        assertTrue(expected.similar(parse(dst, length)));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** Families are process-wide, so every test registers its own names and reads only those back. */
+public class MetricsTest {
+
+    // Exposition lines for name and its _bucket/_sum/_count series, sorted; HELP/TYPE lines first
+    private static List<String> scrape(String name) {
+        StringBuilder out = new StringBuilder();
+        Metrics.render(out);
+        List<String> header = new ArrayList<>();
+        List<String> samples = new ArrayList<>();
+        for (String line : out.toString().split("\n")) {
+            if (line.startsWith("# HELP " + name + " ") || line.startsWith("# TYPE " + name + " ")) {
+                header.add(line);
+            } else if (line.startsWith(name + " ") || line.startsWith(name + "{") || line.startsWith(name + "_")) {
+                samples.add(line);
+            }
+        }
+        Collections.sort(samples);
+        header.addAll(samples);
+        return header;
+    }
+
+    @Test
+    public void histogramBucketsAreCumulativeWithSumAndCount() {
+        Metrics.Histogram histogram = Metrics.histogram("test_latency_seconds", "Test latency",
+                new double[] {0.1, 0.5, 1}, "scan");
+        histogram.observe(0.05, "detect");
+        histogram.observe(0.1, "detect"); // on a bound: le is inclusive
+        histogram.observe(0.3, "detect");
+        histogram.observe(2.5, "detect");
+
+        assertEquals(Arrays.asList(
+                "# HELP test_latency_seconds Test latency",
+                "# TYPE test_latency_seconds histogram",
+                "test_latency_seconds_bucket{scan=\"detect\",le=\"+Inf\"} 4",
+                "test_latency_seconds_bucket{scan=\"detect\",le=\"0.1\"} 2",
+                "test_latency_seconds_bucket{scan=\"detect\",le=\"0.5\"} 3",
+                "test_latency_seconds_bucket{scan=\"detect\",le=\"1\"} 3",
+                "test_latency_seconds_count{scan=\"detect\"} 4",
+                "test_latency_seconds_sum{scan=\"detect\"} 2.95"), scrape("test_latency_seconds"));
+    }
+
+    @Test
+    public void histogramSeriesAreRenderedPerLabelValue() {
+        Metrics.Histogram histogram = Metrics.histogram("test_split_seconds", "Split", new double[] {1}, "scan");
+        histogram.observe(0.5, "detect");
+        histogram.observe(3, "answer");
+        histogram.observe(4, "answer");
+
+        List<String> lines = scrape("test_split_seconds");
+        assertTrue(lines.contains("test_split_seconds_bucket{scan=\"answer\",le=\"1\"} 0"));
+        assertTrue(lines.contains("test_split_seconds_bucket{scan=\"answer\",le=\"+Inf\"} 2"));
+        assertTrue(lines.contains("test_split_seconds_sum{scan=\"answer\"} 7"));
+        assertTrue(lines.contains("test_split_seconds_count{scan=\"detect\"} 1"));
+        assertEquals(2 + 2 * 4, lines.size());
+    }
+
+    @Test
+    public void labelValuesAreEscaped() {
+        Metrics.Counter counter = Metrics.counter("test_escaped_total", "Escaping", "reason");
+        counter.inc("say \"hi\"\\now\nplease");
+
+        assertEquals("test_escaped_total{reason=\"say \\\"hi\\\"\\\\now\\nplease\"} 1",
+                scrape("test_escaped_total").get(2));
+    }
+
+    @Test
+    public void multiLabelKeysKeepEachValueInItsLabel() {
+        Metrics.Counter counter = Metrics.counter("test_answered_total", "Answered", "channel", "by");
+        counter.inc("whatsapp", "auto");
+        counter.add(2, "whatsapp", "auto");
+        counter.inc("whatsapp", "user");
+        counter.inc("cellular", "auto");
+        // Empty values and a separator-looking value stay put
+        counter.inc("", "a,b=\"c\"");
+
+        assertEquals(Arrays.asList(
+                "# HELP test_answered_total Answered",
+                "# TYPE test_answered_total counter",
+                "test_answered_total{channel=\"\",by=\"a,b=\\\"c\\\"\"} 1",
+                "test_answered_total{channel=\"cellular\",by=\"auto\"} 1",
+                "test_answered_total{channel=\"whatsapp\",by=\"auto\"} 3",
+                "test_answered_total{channel=\"whatsapp\",by=\"user\"} 1"), scrape("test_answered_total"));
+    }
+
+    @Test
+    public void wrongLabelCountIsRejected() {
+        Metrics.Counter counter = Metrics.counter("test_arity_total", "Arity", "channel", "by");
+        try {
+            counter.inc("whatsapp");
+            fail("accepted one label for two");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void gaugeIsReadAtScrapeTimeAndReplacedOnReRegister() {
+        long[] value = {5};
+        Metrics.gauge("test_queue_depth", "Queue depth", () -> value[0]);
+        value[0] = 7;
+        assertEquals(Arrays.asList("# HELP test_queue_depth Queue depth", "# TYPE test_queue_depth gauge",
+                "test_queue_depth 7"), scrape("test_queue_depth"));
+
+        Metrics.gauge("test_queue_depth", "Queue depth", () -> 9);
+        assertEquals(Arrays.asList("# HELP test_queue_depth Queue depth", "# TYPE test_queue_depth gauge",
+                "test_queue_depth 9"), scrape("test_queue_depth"));
+    }
+}
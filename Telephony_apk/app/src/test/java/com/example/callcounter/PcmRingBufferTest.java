@@ -0,0 +1,117 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PcmRingBufferTest {
+
+    private static ByteBuffer pcm(int firstSample, int samples) {
+        ByteBuffer buffer = ByteBuffer.allocate(samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < samples; i++) buffer.putShort((short) (firstSample + i));
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(1024, new PcmRingBuffer(1000).capacityBytes());
+        assertEquals(1024, new PcmRingBuffer(1024).capacityBytes());
+    }
+
+    @Test
+    public void wrapsAroundWithoutLosingOrder() {
+        PcmRingBuffer ring = new PcmRingBuffer(64);
+        short[] out = new short[32];
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 20; round++) {
+            // 24 samples in, 24 out: the write index crosses the end every few rounds
+            assertEquals(48, ring.write(pcm(next, 24)));
+            next += 24;
+            assertEquals(24, ring.read(out, 0, 32));
+            for (int i = 0; i < 24; i++) assertEquals((short) expected++, out[i]);
+        }
+        assertEquals(20 * 48, ring.consumedBytes());
+    }
+
+    @Test
+    public void writeStopsAtCapacityInWholeSamples() {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        ByteBuffer src = pcm(0, 12);
+        // Odd remaining byte count must never split a sample
+        src.limit(src.limit() - 1);
+        assertEquals(16, ring.write(src));
+        assertEquals(0, ring.freeBytes());
+        assertEquals(0, ring.write(pcm(100, 1)));
+        assertEquals(16, src.position());
+    }
+
+    @Test
+    public void peekDoesNotConsumeAndSkipDoes() {
+        PcmRingBuffer ring = new PcmRingBuffer(64);
+        ring.write(pcm(10, 8));
+        short[] out = new short[8];
+        assertEquals(4, ring.peek(out, 0, 4));
+        assertEquals(16, ring.availableBytes());
+        assertEquals(4, ring.skip(4));
+        assertEquals(6, ring.read(out, 0, 8));
+        assertEquals(12, out[0]);
+        assertEquals(0, ring.clear());
+    }
+
+    @Test
+    public void byteBufferReadMatchesShortWrite() {
+        PcmRingBuffer ring = new PcmRingBuffer(32);
+        short[] samples = {1, -1, Short.MAX_VALUE, Short.MIN_VALUE, 1234};
+        assertEquals(5, ring.write(samples, 0, 5));
+        ByteBuffer dst = ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(8, ring.read(dst));
+        dst.flip();
+        for (int i = 0; i < 4; i++) assertEquals(samples[i], dst.getShort());
+        assertEquals(2, ring.availableBytes());
+    }
+
+    @Test
+    public void singleProducerSingleConsumerKeepsSequence() throws Exception {
+        final PcmRingBuffer ring = new PcmRingBuffer(4096);
+        final int total = 2_000_000;
+        final AtomicReference<String> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            short[] chunk = new short[160];
+            int next = 0;
+            while (next < total) {
+                int count = Math.min(chunk.length, total - next);
+                for (int i = 0; i < count; i++) chunk[i] = (short) (next + i);
+                int offset = 0;
+                while (offset < count) offset += ring.write(chunk, offset, count - offset);
+                next += count;
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            short[] chunk = new short[237];
+            int expected = 0;
+            while (expected < total) {
+                int got = ring.read(chunk, 0, chunk.length);
+                for (int i = 0; i < got; i++) {
+                    if (chunk[i] != (short) expected) {
+                        failure.compareAndSet(null, "sample " + expected + " was " + chunk[i]);
+                        return;
+                    }
+                    expected++;
+                }
+            }
+        });
+        producer.start();
+        consumer.start();
+        producer.join(20000);
+        consumer.join(20000);
+        assertNull(failure.get());
+        assertEquals((long) total * 2, ring.consumedBytes());
+    }
+}
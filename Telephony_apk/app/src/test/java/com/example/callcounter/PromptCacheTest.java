@@ -0,0 +1,161 @@
+package com.example.callcounter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PromptCacheTest {
+
+    private static final int RATE = CallAudioPipeline.RECEIVE_SAMPLE_RATE;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Mono playback-rate PCM whose samples encode the seed, so clips can't be mistaken for each other
+    private static ByteBuffer clip(int frames, int seed) {
+        ByteBuffer pcm = ByteBuffer.allocate(frames * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) pcm.putShort((short) (seed * 1000 + i % 997));
+        pcm.flip();
+        return pcm;
+    }
+
+    @Test
+    public void getReturnsWhatWasPut() throws IOException {
+        PromptCache cache = new PromptCache(folder.newFolder("prompts"));
+        ByteBuffer greeting = clip(4800, 1);
+
+        assertNull(cache.get(PromptCache.PROMPT_GREETING));
+        assertTrue(cache.put(PromptCache.PROMPT_GREETING, greeting, RATE, 1));
+
+        assertTrue(cache.contains(PromptCache.PROMPT_GREETING));
+        assertEquals(greeting, cache.get(PromptCache.PROMPT_GREETING));
+        // Every get is a fresh view from the start
+        ByteBuffer first = cache.get(PromptCache.PROMPT_GREETING);
+        first.position(first.limit());
+        assertEquals(greeting, cache.get(PromptCache.PROMPT_GREETING));
+    }
+
+    @Test
+    public void clipsSurviveAReload() throws IOException {
+        File dir = folder.newFolder("prompts");
+        PromptCache cache = new PromptCache(dir);
+        cache.put(PromptCache.PROMPT_GREETING, clip(4800, 1), RATE, 1);
+        cache.put(PromptCache.PROMPT_HOLD, clip(2400, 2), RATE, 1);
+
+        PromptCache reloaded = new PromptCache(dir);
+        assertEquals(clip(4800, 1), reloaded.get(PromptCache.PROMPT_GREETING));
+        assertEquals(clip(2400, 2), reloaded.get(PromptCache.PROMPT_HOLD));
+    }
+
+    @Test
+    public void putConvertsToMonoAtThePlaybackRate() throws IOException {
+        PromptCache cache = new PromptCache(folder.newFolder("prompts"));
+        ByteBuffer stereo = ByteBuffer.allocate(48000 * 4).order(ByteOrder.LITTLE_ENDIAN);
+
+        assertTrue(cache.put(PromptCache.PROMPT_FALLBACK, stereo, 48000, 2));
+
+        int frames = cache.get(PromptCache.PROMPT_FALLBACK).remaining() / 2;
+        assertTrue("frames " + frames, Math.abs(frames - RATE) <= 64);
+    }
+
+    @Test
+    public void leastRecentlyUsedClipIsEvictedAtTheCountLimit() throws IOException {
+        PromptCache cache = new PromptCache(folder.newFolder("prompts"));
+        for (int i = 0; i < PromptCache.MAX_CLIPS; i++) {
+            assertTrue(cache.put("clip" + i, clip(100, i), RATE, 1));
+        }
+        // clip0 was just used, so clip1 is now the oldest
+        assertNotNull(cache.get("clip0"));
+
+        assertTrue(cache.put("extra", clip(100, 99), RATE, 1));
+
+        assertTrue(cache.contains("clip0"));
+        assertFalse(cache.contains("clip1"));
+        assertTrue(cache.contains("clip2"));
+        assertEquals(clip(100, 99), cache.get("extra"));
+        // Survivors were moved into the rewritten data file intact
+        assertEquals(clip(100, 0), cache.get("clip0"));
+        assertEquals(clip(100, 31), cache.get("clip31"));
+    }
+
+    @Test
+    public void clipsAreEvictedUntilTheNewOneFitsTheByteLimit() throws IOException {
+        PromptCache cache = new PromptCache(folder.newFolder("prompts"));
+        int frames = (int) (PromptCache.MAX_TOTAL_BYTES / 2 / 3);
+        cache.put("a", clip(frames, 1), RATE, 1);
+        cache.put("b", clip(frames, 2), RATE, 1);
+
+        assertTrue(cache.put("c", clip(frames * 2, 3), RATE, 1));
+
+        assertFalse(cache.contains("a"));
+        assertTrue(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertFalse(cache.put("huge", clip((int) PromptCache.MAX_TOTAL_BYTES / 2 + 1, 4), RATE, 1));
+        assertTrue(cache.contains("b"));
+    }
+
+    @Test
+    public void corruptedClipFailsItsHashCheck() throws IOException {
+        File dir = folder.newFolder("prompts");
+        PromptCache cache = new PromptCache(dir);
+        cache.put(PromptCache.PROMPT_GREETING, clip(4800, 1), RATE, 1);
+        cache.put(PromptCache.PROMPT_HOLD, clip(2400, 2), RATE, 1);
+
+        // Flip one sample inside the greeting, which is stored first
+        try (RandomAccessFile data = new RandomAccessFile(new File(dir, "prompts.bin"), "rw")) {
+            data.seek(100);
+            data.write(data.read() ^ 0xFF);
+        }
+
+        PromptCache reloaded = new PromptCache(dir);
+        assertNull(reloaded.get(PromptCache.PROMPT_GREETING));
+        assertFalse(reloaded.contains(PromptCache.PROMPT_GREETING));
+        assertEquals(clip(2400, 2), reloaded.get(PromptCache.PROMPT_HOLD));
+    }
+
+    @Test
+    public void parsesPcmWavSkippingOtherChunks() {
+        ByteBuffer wav = ByteBuffer.allocate(12 + 8 + 3 + 1 + 8 + 16 + 8 + 8).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes()).putInt(wav.capacity() - 8).put("WAVE".getBytes());
+        // Odd-sized chunk with its pad byte
+        wav.put("LIST".getBytes()).putInt(3).put(new byte[4]);
+        wav.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 2).putInt(44100)
+                .putInt(44100 * 4).putShort((short) 4).putShort((short) 16);
+        wav.put("data".getBytes()).putInt(8).putShort((short) 1).putShort((short) 2)
+                .putShort((short) 3).putShort((short) 4);
+        wav.flip();
+
+        PromptCache.Wav parsed = PromptCache.parseWav(wav);
+
+        assertEquals(44100, parsed.sampleRate);
+        assertEquals(2, parsed.channels);
+        assertEquals(8, parsed.pcm.remaining());
+        assertEquals(3, parsed.pcm.getShort(4));
+    }
+
+    @Test
+    public void rejectsWavThatIsNotSixteenBitPcm() {
+        ByteBuffer wav = ByteBuffer.allocate(12 + 24 + 8).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes()).putInt(wav.capacity() - 8).put("WAVE".getBytes());
+        // 8-bit samples
+        wav.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1).putInt(8000)
+                .putInt(8000).putShort((short) 1).putShort((short) 8);
+        wav.put("data".getBytes()).putInt(0);
+        wav.flip();
+
+        assertNull(PromptCache.parseWav(wav));
+        assertNull(PromptCache.parseWav(ByteBuffer.wrap(new byte[] {'R', 'I', 'F', 'F'})));
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceWatchdogTest {
+
+    private static final long HEARTBEAT = ServiceWatchdog.HEARTBEAT_MS;
+
+    @Test
+    public void outageIsAccountedEachBeatAndOnRecovery() {
+        ServiceWatchdog.Health health = new ServiceWatchdog.Health(ServiceWatchdog.COMPONENT_LISTENER);
+        long t = 1000;
+        assertTrue(health.down(t));
+        assertTrue(health.isDown());
+
+        long accounted = 0;
+        // Still down on the next two beats: each adds only the time since the last one
+        assertFalse(health.down(t + HEARTBEAT));
+        accounted += health.account(t + HEARTBEAT);
+        assertEquals(HEARTBEAT, accounted);
+        assertFalse(health.down(t + 2 * HEARTBEAT));
+        accounted += health.account(t + 2 * HEARTBEAT);
+
+        // Back up half way to the next beat
+        long upAt = t + 2 * HEARTBEAT + HEARTBEAT / 2;
+        accounted += health.account(upAt);
+        assertEquals(upAt - t, health.up(upAt));
+        assertEquals(upAt - t, accounted);
+        assertFalse(health.isDown());
+    }
+
+    @Test
+    public void healthyComponentAccountsNothing() {
+        ServiceWatchdog.Health health = new ServiceWatchdog.Health(ServiceWatchdog.COMPONENT_ACCESSIBILITY);
+        assertEquals(0, health.account(5000));
+        assertEquals(-1, health.up(5000));
+    }
+
+    @Test
+    public void secondOutageStartsFromZero() {
+        ServiceWatchdog.Health health = new ServiceWatchdog.Health(ServiceWatchdog.COMPONENT_LISTENER);
+        health.down(1000);
+        health.account(2000);
+        health.up(3000);
+
+        assertTrue(health.down(10000));
+        assertEquals(500, health.account(10500));
+        assertEquals(700, health.up(10700));
+    }
+
+    @Test
+    public void clearDropsTheOutageWithoutCountingIt() {
+        ServiceWatchdog.Health health = new ServiceWatchdog.Health(ServiceWatchdog.COMPONENT_ACCESSIBILITY);
+        health.down(1000);
+        health.clear();
+        assertFalse(health.isDown());
+        assertEquals(0, health.account(60000));
+        assertEquals(-1, health.up(60000));
+    }
+
+    @Test
+    public void processGapIsTimeBeyondOneHeartbeat() {
+        long last = 1_700_000_000_000L;
+        assertEquals(0, ServiceWatchdog.processGapMs(0, last));
+        // Restarted within one beat of the last heartbeat: nothing was missed
+        assertEquals(0, ServiceWatchdog.processGapMs(last, last + HEARTBEAT - 1));
+        assertEquals(0, ServiceWatchdog.processGapMs(last, last + HEARTBEAT));
+        assertEquals(90000, ServiceWatchdog.processGapMs(last, last + HEARTBEAT + 90000));
+        // Wall clock set back since the last beat
+        assertEquals(0, ServiceWatchdog.processGapMs(last, last - 60000));
+    }
+}
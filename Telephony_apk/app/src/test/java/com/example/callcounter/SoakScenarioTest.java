@@ -0,0 +1,137 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SoakScenarioTest {
+
+    private static int count(SoakScenario scenario, int kind) {
+        int count = 0;
+        for (SoakScenario.Step step : scenario.steps) {
+            if (step.kind == kind) count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void stormIsSortedAndEveryCallEndsAfterItsDuration() {
+        SoakScenario scenario = SoakScenario.storm("com.whatsapp", 600_000, 600, 30_000, 45_000, 8_000, 1);
+        long previous = Long.MIN_VALUE;
+        Map<Integer, Long> ringAt = new HashMap<>();
+        Map<Integer, Long> endAt = new HashMap<>();
+        for (SoakScenario.Step step : scenario.steps) {
+            assertTrue(step.atMs >= previous);
+            previous = step.atMs;
+            if (step.kind == SoakScenario.KIND_RING || step.kind == SoakScenario.KIND_PHONE) {
+                assertNull(ringAt.put(step.callId, step.atMs));
+            } else if (step.kind == SoakScenario.KIND_END) {
+                assertNull(endAt.put(step.callId, step.atMs));
+            } else {
+                assertEquals(-1, step.callId);
+            }
+        }
+        assertEquals(scenario.callCount, ringAt.size());
+        assertEquals(ringAt.keySet(), endAt.keySet());
+        for (Map.Entry<Integer, Long> ring : ringAt.entrySet()) {
+            assertEquals(ring.getValue() + 8_000, (long) endAt.get(ring.getKey()));
+            assertTrue(endAt.get(ring.getKey()) < 600_000);
+        }
+        assertEquals(previous, scenario.durationMs);
+    }
+
+    @Test
+    public void stormRingsOnSchedule() {
+        SoakScenario scenario = SoakScenario.storm("com.whatsapp", 600_000, 0, 30_000, 45_000, 8_000, 1);
+        // VoIP at 15 s + 30 s * k, cellular at 15 s + 45 s * k, each ending before 600 s
+        assertEquals(20, count(scenario, SoakScenario.KIND_RING));
+        assertEquals(13, count(scenario, SoakScenario.KIND_PHONE));
+        assertEquals(0, count(scenario, SoakScenario.KIND_CHAT));
+        for (SoakScenario.Step step : scenario.steps) {
+            if (step.kind == SoakScenario.KIND_PHONE) {
+                assertNull(step.packageName);
+                assertTrue(step.text.startsWith("+1555"));
+            } else if (step.kind == SoakScenario.KIND_RING) {
+                assertEquals("com.whatsapp", step.packageName);
+            }
+        }
+    }
+
+    @Test
+    public void chatFloodFollowsTheRequestedRate() {
+        SoakScenario scenario = SoakScenario.storm("com.whatsapp", 600_000, 600, 0, 0, 8_000, 7);
+        // 6000 expected; a Poisson count is within a few percent at this size
+        int chats = count(scenario, SoakScenario.KIND_CHAT);
+        assertTrue("chats " + chats, chats > 5600 && chats < 6400);
+        assertEquals(0, scenario.callCount);
+        for (SoakScenario.Step step : scenario.steps) {
+            assertTrue(step.text.contains("|"));
+        }
+    }
+
+    @Test
+    public void sameSeedGivesTheSameStorm() {
+        SoakScenario first = SoakScenario.storm("com.whatsapp", 60_000, 1200, 10_000, 0, 5_000, 99);
+        SoakScenario second = SoakScenario.storm("com.whatsapp", 60_000, 1200, 10_000, 0, 5_000, 99);
+        assertEquals(first.steps.size(), second.steps.size());
+        for (int i = 0; i < first.steps.size(); i++) {
+            assertEquals(first.steps.get(i).atMs, second.steps.get(i).atMs);
+            assertEquals(first.steps.get(i).text, second.steps.get(i).text);
+        }
+    }
+
+    @Test
+    public void parsesTheDocumentedScript() throws IOException {
+        String script = "# at_ms kind   arguments\n"
+                + "0      chat   com.whatsapp Family|Bob: are you coming?\n"
+                + "\n"
+                + "4000   phone  6000 +1 5551234567\n"
+                + "1500   ring   com.whatsapp 8000 Alice Smith\n"
+                + "4200   screen com.whatsapp 0:03\n";
+        SoakScenario scenario = SoakScenario.parse(new StringReader(script));
+
+        assertEquals(6, scenario.steps.size());
+        assertEquals(2, scenario.callCount);
+        assertEquals(10_000, scenario.durationMs);
+
+        SoakScenario.Step chat = scenario.steps.get(0);
+        assertEquals(SoakScenario.KIND_CHAT, chat.kind);
+        assertEquals("Family|Bob: are you coming?", chat.text);
+
+        SoakScenario.Step ring = scenario.steps.get(1);
+        assertEquals(SoakScenario.KIND_RING, ring.kind);
+        assertEquals(1500, ring.atMs);
+        assertEquals("Alice Smith", ring.text);
+
+        SoakScenario.Step phone = scenario.steps.get(2);
+        assertEquals(SoakScenario.KIND_PHONE, phone.kind);
+        assertEquals("+1 5551234567", phone.text);
+
+        assertEquals(SoakScenario.KIND_SCREEN, scenario.steps.get(3).kind);
+        assertEquals("0:03", scenario.steps.get(3).text);
+        assertEquals(SoakScenario.KIND_END, scenario.steps.get(4).kind);
+        assertEquals(ring.callId, scenario.steps.get(4).callId);
+        assertEquals(phone.callId, scenario.steps.get(5).callId);
+    }
+
+    @Test
+    public void badLinesReportTheirLineNumber() {
+        for (String script : new String[]{"0 chat com.whatsapp hi\nsoon ring com.whatsapp 100 X\n",
+                "0 chat com.whatsapp hi\n10 dance com.whatsapp\n"}) {
+            try {
+                SoakScenario.parse(new StringReader(script));
+                fail("parsed " + script);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Soak script line 2"));
+            }
+        }
+    }
+}
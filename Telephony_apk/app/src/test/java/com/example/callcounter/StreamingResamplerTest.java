@@ -0,0 +1,133 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingResamplerTest {
+
+    private static final int AMPLITUDE = 10000;
+
+    private static short[] sine(int rate, double frequency, int frames) {
+        short[] samples = new short[frames];
+        for (int i = 0; i < frames; i++) {
+            samples[i] = (short) Math.round(AMPLITUDE * Math.sin(2 * Math.PI * frequency * i / rate));
+        }
+        return samples;
+    }
+
+    // Runs input through the resampler in chunks of chunkFrames
+    private static short[] resample(StreamingResampler resampler, short[] input, int chunkFrames) {
+        short[] output = new short[resampler.maxOutputFrames(input.length) + input.length / chunkFrames + 1];
+        int written = 0;
+        for (int offset = 0; offset < input.length; offset += chunkFrames) {
+            int frames = Math.min(chunkFrames, input.length - offset);
+            written += resampler.process(input, offset, frames, output, written);
+        }
+        return Arrays.copyOf(output, written);
+    }
+
+    /**
+     * SNR in dB of output against the best-fitting sine at frequency, over the steady-state
+     * part (the filter's start-up transient is skipped).
+     */
+    private static double snr(short[] output, int rate, double frequency) {
+        int from = output.length / 4;
+        int to = output.length - output.length / 8;
+        double sin = 0, cos = 0, sinSin = 0, cosCos = 0, sinCos = 0;
+        for (int i = from; i < to; i++) {
+            double s = Math.sin(2 * Math.PI * frequency * i / rate);
+            double c = Math.cos(2 * Math.PI * frequency * i / rate);
+            sin += output[i] * s;
+            cos += output[i] * c;
+            sinSin += s * s;
+            cosCos += c * c;
+            sinCos += s * c;
+        }
+        // Least-squares a*sin + b*cos
+        double det = sinSin * cosCos - sinCos * sinCos;
+        double a = (sin * cosCos - cos * sinCos) / det;
+        double b = (cos * sinSin - sin * sinCos) / det;
+        double signal = 0, noise = 0;
+        for (int i = from; i < to; i++) {
+            double fit = a * Math.sin(2 * Math.PI * frequency * i / rate) + b * Math.cos(2 * Math.PI * frequency * i / rate);
+            signal += fit * fit;
+            noise += (output[i] - fit) * (output[i] - fit);
+        }
+        return 10 * Math.log10(signal / Math.max(noise, 1e-9));
+    }
+
+    private static double rms(short[] output) {
+        double sum = 0;
+        int from = output.length / 4;
+        for (int i = from; i < output.length; i++) sum += (double) output[i] * output[i];
+        return Math.sqrt(sum / (output.length - from));
+    }
+
+    @Test
+    public void downsamples48kTo16kCleanly() {
+        StreamingResampler resampler = new StreamingResampler(48000, 16000, 960);
+        short[] output = resample(resampler, sine(48000, 1000, 48000), 960);
+        assertEquals(16000, output.length, 1);
+        double snr = snr(output, 16000, 1000);
+        assertTrue("SNR " + snr, snr > 60);
+        // Passband gain stays at unity
+        assertEquals(AMPLITUDE / Math.sqrt(2), rms(output), AMPLITUDE * 0.02);
+    }
+
+    @Test
+    public void resamples44100To16kCleanly() {
+        StreamingResampler resampler = new StreamingResampler(44100, 16000, 882);
+        short[] output = resample(resampler, sine(44100, 440, 44100), 882);
+        assertEquals(16000, output.length, 1);
+        double snr = snr(output, 16000, 440);
+        assertTrue("SNR " + snr, snr > 60);
+    }
+
+    @Test
+    public void upsamples24kTo48kCleanly() {
+        StreamingResampler resampler = new StreamingResampler(24000, 48000, 480);
+        short[] output = resample(resampler, sine(24000, 3000, 24000), 480);
+        assertEquals(48000, output.length, 1);
+        double snr = snr(output, 48000, 3000);
+        assertTrue("SNR " + snr, snr > 60);
+    }
+
+    @Test
+    public void rejectsContentAboveTheNewNyquist() {
+        // 12 kHz would alias to 4 kHz at 16 kHz if it weren't filtered out
+        StreamingResampler resampler = new StreamingResampler(48000, 16000, 960);
+        short[] output = resample(resampler, sine(48000, 12000, 48000), 960);
+        double attenuationDb = 20 * Math.log10((AMPLITUDE / Math.sqrt(2)) / Math.max(rms(output), 1e-9));
+        assertTrue("attenuation " + attenuationDb, attenuationDb > 60);
+    }
+
+    @Test
+    public void chunkingDoesNotChangeTheOutput() {
+        short[] input = sine(44100, 997, 20000);
+        short[] whole = resample(new StreamingResampler(44100, 16000, input.length), input, input.length);
+        short[] chunked = resample(new StreamingResampler(44100, 16000, 441), input, 441);
+        short[] odd = resample(new StreamingResampler(44100, 16000, 441), input, 37);
+        assertArrayEquals(whole, chunked);
+        assertArrayEquals(whole, odd);
+    }
+
+    @Test
+    public void resetClearsHistory() {
+        StreamingResampler resampler = new StreamingResampler(48000, 16000, 960);
+        short[] input = sine(48000, 1000, 960);
+        short[] first = resample(resampler, input, 960);
+        resample(resampler, sine(48000, 2500, 960), 960);
+        resampler.reset();
+        assertArrayEquals(first, resample(resampler, input, 960));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOversizedChunk() {
+        new StreamingResampler(48000, 16000, 480).process(new short[481], 0, 481, new short[200], 0);
+    }
+}
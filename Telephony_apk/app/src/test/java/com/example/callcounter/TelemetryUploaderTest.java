@@ -0,0 +1,255 @@
+package com.example.callcounter;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryUploaderTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    /** One POST as the stub server saw it, already inflated. */
+    private static final class Batch {
+        final long offset;
+        final int declaredBytes;
+        final String deviceId;
+        final String dictionary;
+        final String encoding;
+        final String body;
+
+        Batch(long offset, int declaredBytes, String deviceId, String dictionary, String encoding, String body) {
+            this.offset = offset;
+            this.declaredBytes = declaredBytes;
+            this.deviceId = deviceId;
+            this.dictionary = dictionary;
+            this.encoding = encoding;
+            this.body = body;
+        }
+    }
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final List<Batch> batches = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int status = 200;
+    private String endpoint;
+    private TelemetryUploader uploader;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/telemetry", exchange -> {
+            try {
+                byte[] body = readAll(exchange.getRequestBody());
+                batches.add(new Batch(
+                        Long.parseLong(exchange.getRequestHeaders().getFirst("X-Batch-Offset")),
+                        Integer.parseInt(exchange.getRequestHeaders().getFirst("X-Batch-Bytes")),
+                        exchange.getRequestHeaders().getFirst("X-Device-Id"),
+                        exchange.getRequestHeaders().getFirst("X-Telemetry-Dictionary"),
+                        exchange.getRequestHeaders().getFirst("Content-Encoding"),
+                        inflate(body)));
+            } catch (Exception e) {
+                batches.add(new Batch(-1, -1, null, null, null, "bad request: " + e));
+            }
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/telemetry";
+    }
+
+    @After
+    public void tearDown() {
+        if (uploader != null) uploader.stop();
+        server.stop(0);
+    }
+
+    private TelemetryUploader newUploader(String url) {
+        TelemetryUploader created = new TelemetryUploader(new File(folder.getRoot(), "spool"), 1024 * 1024, "device-1");
+        created.setEndpoint(url);
+        created.start();
+        return created;
+    }
+
+    private static String record(int i) {
+        return "{\"ts\":17000000" + i + ",\"type\":\"call_event\",\"channel\":\"whatsapp\",\"event\":\"ringing\",\"id\":" + i + "}";
+    }
+
+    @Test
+    public void flushUploadsOneDictionaryCompressedBatch() {
+        uploader = newUploader(endpoint);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            uploader.record(record(i));
+            expected.append(record(i)).append('\n');
+        }
+        uploader.flush();
+        // The batch counts as uploaded just before the spool commits it
+        awaitTrue("upload", () -> uploader.getUploadedBatches() == 1 && uploader.getPendingBytes() == 0);
+
+        assertEquals(1, batches.size());
+        Batch batch = batches.get(0);
+        assertEquals(expected.toString(), batch.body);
+        assertEquals(0, batch.offset);
+        assertEquals(expected.length(), batch.declaredBytes);
+        assertEquals("device-1", batch.deviceId);
+        assertEquals(String.valueOf(TelemetryUploader.DICTIONARY_VERSION), batch.dictionary);
+        assertEquals("deflate", batch.encoding);
+        assertEquals(0, uploader.getPendingBytes());
+        // Repetitive records against the dictionary compress well
+        assertTrue(uploader.getCompressedBytes() * 4 < uploader.getUploadedBytes());
+    }
+
+    @Test
+    public void largeBacklogGoesOutInContiguousBatches() {
+        uploader = newUploader(endpoint);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            uploader.record(record(i));
+            expected.append(record(i)).append('\n');
+        }
+        uploader.flush();
+        awaitTrue("upload", () -> uploader.getPendingBytes() == 0 && uploader.getUploadedBytes() == expected.length());
+
+        assertTrue(batches.size() > 1);
+        StringBuilder received = new StringBuilder();
+        long offset = 0;
+        for (Batch batch : batches) {
+            assertEquals(offset, batch.offset);
+            assertTrue(batch.body.endsWith("\n"));
+            offset += batch.declaredBytes;
+            received.append(batch.body);
+        }
+        assertEquals(expected.toString(), received.toString());
+    }
+
+    @Test
+    public void serverErrorBacksOffAndKeepsTheBatch() {
+        status = 503;
+        uploader = newUploader(endpoint);
+        uploader.record(record(1));
+        uploader.flush();
+        awaitTrue("failure", () -> uploader.getFailedAttempts() == 1);
+
+        // Still inside the backoff window: the second flush doesn't reach the server
+        uploader.record(record(2));
+        uploader.flush();
+        awaitTrue("pending", () -> uploader.getPendingBytes() == 2 * (record(1).length() + 1));
+        assertEquals(1, requests.get());
+        assertEquals(0, uploader.getUploadedBatches());
+        assertTrue(uploader.getLastError(), uploader.getLastError().contains("HTTP 503"));
+    }
+
+    @Test
+    public void rejectedBatchIsSkipped() {
+        status = 400;
+        uploader = newUploader(endpoint);
+        uploader.record(record(1));
+        uploader.flush();
+        awaitTrue("rejection", () -> uploader.getRejectedBatches() == 1);
+        awaitTrue("skip", () -> uploader.getPendingBytes() == 0);
+
+        status = 200;
+        uploader.record(record(2));
+        uploader.flush();
+        awaitTrue("upload", () -> uploader.getUploadedBatches() == 1);
+        Batch last = batches.get(batches.size() - 1);
+        assertEquals(record(2) + "\n", last.body);
+        assertEquals(record(1).length() + 1, last.offset);
+    }
+
+    @Test
+    public void resumesFromTheCommittedOffsetAfterRestart() {
+        uploader = newUploader(endpoint);
+        uploader.record(record(1));
+        uploader.flush();
+        awaitTrue("first upload", () -> uploader.getUploadedBatches() == 1);
+        // Spooled while offline, then the process dies
+        uploader.setEndpoint(null);
+        uploader.record(record(2));
+        uploader.record(record(3));
+        uploader.flush();
+        awaitTrue("spooled", () -> uploader.getPendingBytes() > 0);
+        uploader.stop();
+
+        uploader = newUploader(endpoint);
+        uploader.flush();
+        awaitTrue("resumed upload", () -> uploader.getUploadedBatches() == 1);
+        Batch resumed = batches.get(batches.size() - 1);
+        assertEquals(record(1).length() + 1, resumed.offset);
+        assertEquals(record(2) + "\n" + record(3) + "\n", resumed.body);
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void sourcesAreCollectedBeforeEachCheck() {
+        uploader = newUploader(endpoint);
+        AtomicInteger calls = new AtomicInteger();
+        uploader.addSource(records -> {
+            if (calls.incrementAndGet() == 1) records.add(record(42));
+        });
+        uploader.flush();
+        awaitTrue("upload", () -> uploader.getUploadedBatches() == 1);
+        assertEquals(record(42) + "\n", batches.get(0).body);
+    }
+
+    private static String inflate(byte[] body) throws Exception {
+        Inflater inflater = new Inflater();
+        inflater.setInput(body);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(chunk);
+            if (n == 0 && inflater.needsDictionary()) {
+                inflater.setDictionary(TelemetryUploader.DICTIONARY);
+            } else if (n == 0 && inflater.needsInput()) {
+                throw new IllegalStateException("truncated batch");
+            }
+            out.write(chunk, 0, n);
+        }
+        inflater.end();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int n;
+        while ((n = in.read(chunk)) >= 0) out.write(chunk, 0, n);
+        return out.toByteArray();
+    }
+
+    private static void awaitTrue(String what, BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("timed out waiting for " + what);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.callcounter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Synthetic capture: a harmonic "voice" (150 Hz fundamental, falling harmonics, slow vibrato)
+ * at 1-2 s and 4.5-5.5 s, loud white noise at 2.5-3.5 s, faint hiss everywhere else.
+ */
+public class VoiceActivityDetectorTest {
+
+    private static final int RATE = CallAudioPipeline.SEND_SAMPLE_RATE;
+    private static final int FRAMES_PER_SECOND = 1000 / VoiceActivityDetector.FRAME_MS;
+
+    private static final class Events implements VoiceActivityDetector.Listener {
+        final List<Long> starts = new ArrayList<>();
+        final List<Long> ends = new ArrayList<>();
+
+        @Override
+        public void onSpeechStart(long frameIndex) {
+            starts.add(frameIndex);
+        }
+
+        @Override
+        public void onSpeechEnd(long frameIndex) {
+            ends.add(frameIndex);
+        }
+    }
+
+    private static short[] scene(double seconds) {
+        short[] samples = new short[(int) (seconds * RATE)];
+        Random random = new Random(7);
+        double phase = 0;
+        for (int i = 0; i < samples.length; i++) {
+            double t = (double) i / RATE;
+            double value = random.nextGaussian() * 20;
+            if ((t >= 1.0 && t < 2.0) || (t >= 4.5 && t < 5.5)) {
+                double f0 = 150 + 10 * Math.sin(2 * Math.PI * 5 * t);
+                phase += 2 * Math.PI * f0 / RATE;
+                for (int h = 1; h <= 12; h++) {
+                    value += 6000.0 / h * Math.sin(h * phase);
+                }
+            } else if (t >= 2.5 && t < 3.5) {
+                value += random.nextGaussian() * 6000;
+            }
+            samples[i] = (short) Math.max(-32768, Math.min(32767, Math.round(value)));
+        }
+        return samples;
+    }
+
+    private VoiceActivityDetector detector;
+    private Events events;
+
+    @Before
+    public void setUp() {
+        detector = new VoiceActivityDetector(RATE);
+        events = new Events();
+        detector.setListener(events);
+    }
+
+    @Test
+    public void speechStartAndEndLandOnTheVoicedSegments() {
+        short[] samples = scene(6.5);
+        detector.process(samples, 0, samples.length);
+
+        assertEquals(2, events.starts.size());
+        assertEquals(2, events.ends.size());
+        assertFrameNear(1.0, events.starts.get(0));
+        assertFrameNear(2.0, events.ends.get(0));
+        assertFrameNear(4.5, events.starts.get(1));
+        assertFrameNear(5.5, events.ends.get(1));
+        assertFalse(detector.isSpeaking());
+    }
+
+    @Test
+    public void loudWhiteNoiseNeverTriggers() {
+        short[] samples = scene(3.6);
+        // Only the noise burst and the hiss around it
+        detector.process(samples, (int) (2.2 * RATE), (int) (1.4 * RATE));
+        assertTrue(events.starts.isEmpty());
+        assertFalse(detector.isSpeaking());
+    }
+
+    @Test
+    public void chunkSizeDoesNotChangeTheEvents() {
+        short[] samples = scene(6.5);
+        detector.process(samples, 0, samples.length);
+
+        VoiceActivityDetector chunked = new VoiceActivityDetector(RATE);
+        Events chunkedEvents = new Events();
+        chunked.setListener(chunkedEvents);
+        for (int offset = 0; offset < samples.length; offset += 137) {
+            chunked.process(samples, offset, Math.min(137, samples.length - offset));
+        }
+        assertEquals(events.starts, chunkedEvents.starts);
+        assertEquals(events.ends, chunkedEvents.ends);
+    }
+
+    @Test
+    public void bargeInFlushesTheDownlinkAndDropsTheInterruptedTurn() {
+        CallAudioPipeline pipeline = new CallAudioPipeline(null, null);
+        BargeInController bargeIn = new BargeInController(pipeline);
+        List<Integer> interrupted = new ArrayList<>();
+        bargeIn.setListener(interrupted::add);
+
+        int turn = bargeIn.onModelTurnStarted();
+        ByteBuffer model = ByteBuffer.allocate(12000 * 2).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(model.remaining(), pipeline.writeDownlink(model));
+        assertTrue(pipeline.downlinkBufferedBytes() > 0);
+
+        short[] samples = scene(1.5);
+        bargeIn.getDetector().process(samples, 0, samples.length);
+
+        assertEquals(1, bargeIn.getBargeInCount());
+        assertEquals(1, interrupted.size());
+        assertEquals(turn, (int) interrupted.get(0));
+        // The cut is applied on the playback thread's next read: nothing of the turn plays
+        JitterBuffer downlink = pipeline.getDownlinkJitterBuffer();
+        assertEquals(0, downlink.read(new short[480], 0, 480));
+        assertEquals(12000, downlink.getFlushedFrames());
+        assertEquals(0, pipeline.downlinkBufferedBytes());
+        assertTrue(bargeIn.isTurnInterrupted());
+        assertFalse(bargeIn.shouldAcceptModelAudio());
+
+        // The model's next turn is accepted again
+        bargeIn.onModelTurnStarted();
+        assertTrue(bargeIn.shouldAcceptModelAudio());
+    }
+
+    @Test
+    public void speechWithoutModelAudioIsNotABargeIn() {
+        CallAudioPipeline pipeline = new CallAudioPipeline(null, null);
+        BargeInController bargeIn = new BargeInController(pipeline);
+
+        short[] samples = scene(1.5);
+        bargeIn.getDetector().process(samples, 0, samples.length);
+
+        assertTrue(bargeIn.getDetector().isSpeaking());
+        assertEquals(0, bargeIn.getBargeInCount());
+        assertTrue(bargeIn.shouldAcceptModelAudio());
+    }
+
+    // Within two frames (40 ms) of the expected time
+    private static void assertFrameNear(double seconds, long frame) {
+        long expected = Math.round(seconds * FRAMES_PER_SECOND);
+        assertTrue("frame " + frame + ", expected about " + expected, Math.abs(frame - expected) <= 2);
+    }
+}
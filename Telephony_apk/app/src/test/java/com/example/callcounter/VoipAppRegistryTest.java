@@ -0,0 +1,50 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VoipAppRegistryTest {
+
+    private static VoipAppProfile profile(String packageName) {
+        return VoipAppRegistry.getDefault().get(packageName);
+    }
+
+    @Test
+    public void telegramChatMentioningCallIsNotARing() {
+        VoipAppProfile telegram = profile(VoipAppRegistry.PACKAGE_TELEGRAM);
+        assertFalse(telegram.isIncomingCallNotification("alice can you call me later?", false, false));
+        assertFalse(telegram.isIncomingCallNotification("alice missed call", false, false));
+        // Matching text alone is not enough without the call category or an answer action
+        assertFalse(telegram.isIncomingCallNotification("alice incoming call", false, false));
+    }
+
+    @Test
+    public void telegramRingingNotificationIsARing() {
+        VoipAppProfile telegram = profile(VoipAppRegistry.PACKAGE_TELEGRAM);
+        assertTrue(telegram.isIncomingCallNotification("alice telegram call", true, true));
+        assertTrue(telegram.isIncomingCallNotification("alice incoming video call", false, true));
+    }
+
+    @Test
+    public void signalNeedsItsOwnPhrasesOnACallNotification() {
+        VoipAppProfile signal = profile(VoipAppRegistry.PACKAGE_SIGNAL);
+        assertTrue(signal.isIncomingCallNotification("bob incoming voice call", true, true));
+        assertFalse(signal.isIncomingCallNotification("bob let's call tonight", true, false));
+        assertFalse(signal.isIncomingCallNotification("bob signal voice call", false, false));
+    }
+
+    @Test
+    public void whatsappKeepsTextOnlyMatching() {
+        VoipAppProfile whatsapp = profile(VoipAppRegistry.PACKAGE_WHATSAPP);
+        assertTrue(whatsapp.isIncomingCallNotification("carol incoming voice call", false, false));
+    }
+
+    @Test
+    public void overrideKeepsCallSignatureRequirement() {
+        VoipAppProfile telegram = profile(VoipAppRegistry.PACKAGE_TELEGRAM);
+        VoipAppProfile copy = new VoipAppProfile.Builder(telegram).label("Telegram X").build();
+        assertFalse(copy.isIncomingCallNotification("incoming call", false, false));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.callcounter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class WhatsAppCallDetectorTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long MAX_RING = AnswerConfirmationDetector.MAX_RING_MS;
+    private static final String WHATSAPP = "com.whatsapp";
+
+    @Test
+    public void isCatchUpRingTable() {
+        // callCategory, answerAction, inCall, age in ms, replayed
+        Object[][] cases = {
+            {true, true, false, 3000L, true},           // fresh ringing call
+            {true, true, false, MAX_RING, true},        // as old as a ring can last
+            {true, false, false, 3000L, false},         // missed call left in the shade
+            {false, true, false, 3000L, false},         // answer action outside the call category
+            {true, true, true, 3000L, false},           // in-call notification
+            {true, true, false, MAX_RING + 1, false},   // older than a ring can last
+            {true, true, false, 3_600_000L, false},
+        };
+        for (Object[] c : cases) {
+            assertEquals(Arrays.toString(c), c[4], WhatsAppCallDetector.isCatchUpRing(
+                    (Boolean) c[0], (Boolean) c[1], (Boolean) c[2], NOW - (Long) c[3], NOW));
+        }
+    }
+
+    private static WhatsAppCallDetector.ActiveNotification notification(String packageName, boolean ongoing,
+                                                                         boolean chronometer, long age,
+                                                                         String... actions) {
+        return new WhatsAppCallDetector.ActiveNotification(null, packageName, true, actions, ongoing,
+                chronometer, NOW - age);
+    }
+
+    @Test
+    public void catchUpReplaysOnlyTheCallStillRinging() {
+        WhatsAppCallDetector.ActiveNotification ringing = notification(WHATSAPP, true, false, 3000, "Decline", "Answer");
+        WhatsAppCallDetector.ActiveNotification ongoing = notification(WHATSAPP, true, true, 40_000, "Hang up");
+        WhatsAppCallDetector.ActiveNotification stale = notification(WHATSAPP, true, false, MAX_RING + 60_000,
+                "Decline", "Answer");
+
+        List<WhatsAppCallDetector.ActiveNotification> rings = WhatsAppCallDetector.selectCatchUpRings(
+                Arrays.asList(ongoing, stale, ringing), DetectionConfig.DEFAULT.registry, NOW);
+
+        assertEquals(1, rings.size());
+        assertSame(ringing, rings.get(0));
+    }
+
+    @Test
+    public void catchUpIgnoresUnwatchedAppsAndNonCallNotifications() {
+        WhatsAppCallDetector.ActiveNotification otherApp = notification("org.example.chat", true, false, 3000, "Answer");
+        WhatsAppCallDetector.ActiveNotification missed = notification(WHATSAPP, false, false, 3000, "Call back", "Message");
+        WhatsAppCallDetector.ActiveNotification noActions = notification(WHATSAPP, true, false, 3000);
+        WhatsAppCallDetector.ActiveNotification chat = new WhatsAppCallDetector.ActiveNotification(null, WHATSAPP,
+                false, new CharSequence[] {"Reply", "Accept invite"}, false, false, NOW - 3000);
+
+        assertEquals(0, WhatsAppCallDetector.selectCatchUpRings(Arrays.asList(otherApp, missed, noActions, chat),
+                DetectionConfig.DEFAULT.registry, NOW).size());
+    }
+
+    @Test
+    public void catchUpKeepsEveryRingingCallInOrder() {
+        WhatsAppCallDetector.ActiveNotification first = notification(WHATSAPP, true, false, 9000, "Answer");
+        WhatsAppCallDetector.ActiveNotification second = notification(WHATSAPP, false, false, 2000, null, "ACCEPT");
+
+        List<WhatsAppCallDetector.ActiveNotification> rings = WhatsAppCallDetector.selectCatchUpRings(
+                Arrays.asList(first, second), DetectionConfig.DEFAULT.registry, NOW);
+
+        assertEquals(Arrays.asList(first, second), rings);
+    }
+}